@@ -0,0 +1,62 @@
+package com.trading.candle.aggregator.codec;
+
+import com.trading.candle.aggregator.storage.CandleSeries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a history response in both formats, into a reused buffer so only the encoder's own
+ * work and allocations are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CandleColumnEncoderBenchmark {
+
+    @Param({"100", "5000"})
+    public int candles;
+
+    @Param({"JSON", "COLUMNAR"})
+    public CandleHistoryFormat format;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+    private CandleSeries series;
+
+    @Setup
+    public void setUp() {
+        long[] openTimes = new long[candles];
+        double[] open = new double[candles];
+        double[] high = new double[candles];
+        double[] low = new double[candles];
+        double[] close = new double[candles];
+        long[] volume = new long[candles];
+        for (int i = 0; i < candles; i++) {
+            double price = 30000.0 + (i % 500) * 0.25;
+            openTimes[i] = 1640995200L + i * 60L;
+            open[i] = price;
+            high[i] = price + 12.5;
+            low[i] = price - 7.75;
+            close[i] = price + 3.125;
+            volume[i] = 100 + i % 37;
+        }
+        series = new CandleSeries(openTimes, open, high, low, close, volume);
+    }
+
+    @Benchmark
+    public int encode() {
+        out.reset();
+        format.open(out, jsonMapper).encode(series);
+        return out.size();
+    }
+}
@@ -0,0 +1,92 @@
+package com.trading.candle.aggregator.engine;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.model.BidAskEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events published into the partitioned engine by one or several producer threads. The rings
+ * block when full, so the score is bounded by how fast the partitions apply events to every
+ * interval, not only by how fast producers can claim slots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregationEngineBenchmark {
+
+    private static final String[] SYMBOLS = {"BTC-USD", "ETH-USD", "AAPL", "GOOGL", "TSLA"};
+    private static final int EVENTS_PER_SECOND = 1000;
+
+    @Param({"CASCADING", "INDEPENDENT"})
+    public AggregationMode aggregationMode;
+
+    @Param({"4"})
+    public int partitions;
+
+    private PartitionedAggregationEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CandleAggregationProperties properties = new CandleAggregationProperties();
+        properties.setIntervals(List.of("1s", "1m", "5m", "15m", "1h", "4h", "1d"));
+        properties.getProcessing().setPriceCalculationDivisor(2.0);
+        properties.getProcessing().setPartitions(partitions);
+        properties.getProcessing().setAggregationMode(aggregationMode);
+        engine = new PartitionedAggregationEngine(properties);
+    }
+
+    // Stands in for the scheduled flush, so the stores stay at their usual size
+    @TearDown(Level.Iteration)
+    public void drain() {
+        engine.drain();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        private long sequence;
+        private int offset;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            offset = threadParams.getThreadIndex();
+        }
+
+        BidAskEvent next() {
+            long n = sequence++;
+            double bid = 30000.0 + (n & 63);
+            return new BidAskEvent(SYMBOLS[(int) ((n + offset) % SYMBOLS.length)], bid, bid + 1.0,
+                    1640995200L + n / EVENTS_PER_SECOND);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean publishSingleProducer(Producer producer) {
+        return engine.publish(producer.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean publishFourProducers(Producer producer) {
+        return engine.publish(producer.next());
+    }
+}
@@ -0,0 +1,84 @@
+package com.trading.candle.aggregator.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tick work of a partition thread: packing candle keys and updating the candle store,
+ * directly or through the cascading rollup. A tick mostly hits an existing candle; every
+ * {@code ticksPerCandle} ticks it opens a new base candle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CandleStoreBenchmark {
+
+    private static final String[] INTERVALS = {"1s", "1m", "5m", "15m", "1h", "4h", "1d"};
+    private static final long[] INTERVAL_SECONDS = {1, 60, 300, 900, 3600, 14400, 86400};
+    private static final int SYMBOLS = 5;
+
+    @Param({"1", "100"})
+    public int ticksPerCandle;
+
+    private CandleStore store;
+    private CascadingRollup rollup;
+    private long tick;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        store = new CandleStore(1024);
+        rollup = new CascadingRollup(new IntervalHierarchy(INTERVALS, INTERVAL_SECONDS));
+        tick = 0;
+    }
+
+    @Benchmark
+    public long packKey() {
+        long timestamp = timestamp();
+        return CandleKeyCodec.pack(symbolId(), (int) (tick % INTERVALS.length), timestamp / 60);
+    }
+
+    @Benchmark
+    public boolean updateEveryInterval() {
+        long timestamp = timestamp();
+        int symbolId = symbolId();
+        double price = price();
+        boolean created = false;
+        for (int intervalId = 0; intervalId < INTERVAL_SECONDS.length; intervalId++) {
+            created |= store.update(CandleKeyCodec.pack(symbolId, intervalId, timestamp / INTERVAL_SECONDS[intervalId]),
+                    timestamp, price);
+        }
+        return created;
+    }
+
+    @Benchmark
+    public boolean updateCascading() {
+        return rollup.onTick(store, symbolId(), timestamp(), price());
+    }
+
+    private long timestamp() {
+        tick++;
+        // Drained stores start empty again; keep the store at the size of a flush interval
+        if (tick % 100_000 == 0) {
+            rollup.propagateAll(store);
+            store.clear();
+        }
+        return 1640995200L + tick / ticksPerCandle;
+    }
+
+    private int symbolId() {
+        return (int) (tick % SYMBOLS);
+    }
+
+    private double price() {
+        return 30000.0 + (tick & 63);
+    }
+}
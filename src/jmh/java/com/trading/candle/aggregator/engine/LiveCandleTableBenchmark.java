@@ -0,0 +1,54 @@
+package com.trading.candle.aggregator.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishing a tick to the live candles of a partition with a growing number of configured
+ * intervals, all multiples of 1s. The time per tick should stay flat as intervals are added.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LiveCandleTableBenchmark {
+
+    private static final long[] INTERVAL_SECONDS = {1, 60, 180, 300, 900, 1800, 3600, 7200, 14400, 21600,
+            43200, 86400, 604800};
+    private static final int SYMBOLS = 5;
+
+    @Param({"1", "7", "13"})
+    public int intervals;
+
+    private LiveCandleTable table;
+    private long tick;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        table = new LiveCandleTable(Arrays.copyOf(INTERVAL_SECONDS, intervals));
+        tick = 0;
+    }
+
+    @Benchmark
+    public void update() {
+        tick++;
+        // Ten ticks per second and symbol, so one in ten rolls the 1s candle over
+        table.update((int) (tick % SYMBOLS), 1640995200L + tick / (10 * SYMBOLS), 30000.0 + (tick & 63), 0);
+    }
+
+    @Benchmark
+    public LiveCandle readCoarsest() {
+        tick++;
+        table.update((int) (tick % SYMBOLS), 1640995200L + tick / (10 * SYMBOLS), 30000.0 + (tick & 63), 0);
+        return table.read((int) (tick % SYMBOLS), intervals - 1);
+    }
+}
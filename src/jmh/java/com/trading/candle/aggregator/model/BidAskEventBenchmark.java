@@ -0,0 +1,29 @@
+package com.trading.candle.aggregator.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction and validation of an incoming event, paid by every producer before publishing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BidAskEventBenchmark {
+
+    private final String symbol = "BTC-USD";
+    private double bid = 30000.0;
+    private long timestamp = 1640995200L;
+
+    @Benchmark
+    public BidAskEvent construct() {
+        bid += 0.5;
+        return new BidAskEvent(symbol, bid, bid + 1.0, timestamp++);
+    }
+}
@@ -0,0 +1,116 @@
+package com.trading.candle.aggregator.storage;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.repository.CandleMergeRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One flush written to each storage engine: every symbol and interval gets a closed candle
+ * inserted and its open candle updated, like a write of the resident candles. The relational
+ * engine merges into an embedded H2 database, the segment engine appends to memory-mapped
+ * columns in a temporary directory. Both start empty every iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CandleStorageWriteBenchmark {
+
+    private static final String[] SYMBOLS = {"BTC-USD", "ETH-USD", "AAPL", "GOOGL", "TSLA"};
+    private static final String[] INTERVALS = {"1s", "1m", "5m", "15m", "1h", "4h", "1d"};
+    private static final long[] INTERVAL_SECONDS = {1, 60, 300, 900, 3600, 14400, 86400};
+
+    @Param({"RELATIONAL", "SEGMENT"})
+    public StorageEngine engine;
+
+    private CandleStorage storage;
+    private SingleConnectionDataSource dataSource;
+    private Path directory;
+    private long flush;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        flush = 0;
+        if (engine == StorageEngine.SEGMENT) {
+            directory = Files.createTempDirectory("candle-segments");
+            storage = new SegmentCandleStorage(directory, 4096);
+            return;
+        }
+        dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "", true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        // Writes in merge mode only go through the merge repository
+        storage = new RelationalCandleStorage(null, new CandleMergeRepository(jdbcTemplate), null,
+                new CandleAggregationProperties());
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        if (engine == StorageEngine.SEGMENT) {
+            ((SegmentCandleStorage) storage).close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+            return;
+        }
+        new JdbcTemplate(dataSource).execute("SHUTDOWN");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public void writeFlush() {
+        long now = 1640995200L + flush++;
+        List<CandleEntity> closed = new ArrayList<>(SYMBOLS.length * INTERVALS.length);
+        List<CandleEntity> open = new ArrayList<>(SYMBOLS.length * INTERVALS.length);
+        for (String symbol : SYMBOLS) {
+            for (int i = 0; i < INTERVALS.length; i++) {
+                long openTime = now / INTERVAL_SECONDS[i] * INTERVAL_SECONDS[i];
+                open.add(candle(symbol, INTERVALS[i], openTime, now));
+                if (INTERVAL_SECONDS[i] == 1) {
+                    closed.add(candle(symbol, INTERVALS[i], openTime - 1, now));
+                }
+            }
+        }
+        storage.write(closed, open);
+    }
+
+    private static CandleEntity candle(String symbol, String interval, long openTime, long tick) {
+        double price = 30000.0 + (tick & 63);
+        CandleEntity candle = new CandleEntity();
+        candle.setSymbol(symbol);
+        candle.setCandleInterval(interval);
+        candle.setOpenTime(openTime);
+        candle.setOpenPrice(price);
+        candle.setHighPrice(price + 5.0);
+        candle.setLowPrice(price - 5.0);
+        candle.setClosePrice(price + 1.0);
+        candle.setVolume(10);
+        return candle;
+    }
+}
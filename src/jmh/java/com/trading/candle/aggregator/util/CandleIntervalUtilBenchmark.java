@@ -0,0 +1,44 @@
+package com.trading.candle.aggregator.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interval parsing and alignment, as done per request by the history validator and resampler.
+ * The engine resolves interval lengths once at startup instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CandleIntervalUtilBenchmark {
+
+    private static final List<String> STORED_INTERVALS = List.of("1s", "1m", "5m", "15m", "1h", "4h", "1d");
+
+    @Param({"1s", "15m", "1d"})
+    public String interval;
+
+    private long timestamp = 1640995200L;
+
+    @Benchmark
+    public long alignTime() {
+        return CandleIntervalUtil.alignTime(timestamp++, interval);
+    }
+
+    @Benchmark
+    public long toSeconds() {
+        return CandleIntervalUtil.toSeconds(interval);
+    }
+
+    @Benchmark
+    public String baseInterval() {
+        return CandleIntervalUtil.baseInterval(interval, STORED_INTERVALS);
+    }
+}
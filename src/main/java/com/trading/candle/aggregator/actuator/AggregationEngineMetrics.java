@@ -0,0 +1,82 @@
+package com.trading.candle.aggregator.actuator;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.engine.IngestionStats;
+import com.trading.candle.aggregator.engine.PartitionedAggregationEngine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Meters of the aggregation engine. They read the counters the partitions keep anyway when
+ * scraped, so nothing is recorded or allocated per event; rates are left to the backend.
+ */
+@Component
+public class AggregationEngineMetrics implements MeterBinder {
+
+    private final PartitionedAggregationEngine aggregationEngine;
+    private final CandleAggregationProperties properties;
+
+    public AggregationEngineMetrics(PartitionedAggregationEngine aggregationEngine,
+                                    CandleAggregationProperties properties) {
+        this.aggregationEngine = aggregationEngine;
+        this.properties = properties;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String symbol : properties.getSupportedSymbols()) {
+            FunctionCounter.builder("candle.events.applied", aggregationEngine, engine -> engine.appliedEvents(symbol))
+                    .description("Events applied to the candles of the symbol")
+                    .tag("symbol", symbol)
+                    .register(registry);
+        }
+
+        for (int i = 0; i < aggregationEngine.partitionCount(); i++) {
+            int partition = i;
+            String tag = Integer.toString(partition);
+            FunctionTimer.builder("candle.partition.apply", aggregationEngine,
+                            engine -> engine.batchedEvents(partition), engine -> engine.batchNanos(partition),
+                            TimeUnit.NANOSECONDS)
+                    .description("Time spent applying events to every interval, per event")
+                    .tag("partition", tag)
+                    .register(registry);
+            Gauge.builder("candle.ingestion.lag", aggregationEngine, engine -> stat(engine, partition, IngestionStats::lag))
+                    .description("Events published but not yet applied")
+                    .tag("partition", tag)
+                    .register(registry);
+            FunctionCounter.builder("candle.events.late", aggregationEngine,
+                            engine -> stat(engine, partition, IngestionStats::lateEvents))
+                    .description("Events rejected because their candle was already finalized")
+                    .tag("partition", tag)
+                    .register(registry);
+            FunctionCounter.builder("candle.events.failed", aggregationEngine,
+                            engine -> stat(engine, partition, IngestionStats::failedEvents))
+                    .description("Events that could not be applied")
+                    .tag("partition", tag)
+                    .register(registry);
+            FunctionCounter.builder("candle.events.dropped", aggregationEngine,
+                            engine -> stat(engine, partition, IngestionStats::droppedOldest))
+                    .description("Events dropped by the overflow policy of a full ring")
+                    .tag("partition", tag)
+                    .tag("policy", "drop-oldest")
+                    .register(registry);
+            FunctionCounter.builder("candle.events.dropped", aggregationEngine,
+                            engine -> stat(engine, partition, IngestionStats::droppedNewest))
+                    .description("Events dropped by the overflow policy of a full ring")
+                    .tag("partition", tag)
+                    .tag("policy", "drop-newest")
+                    .register(registry);
+        }
+    }
+
+    private static double stat(PartitionedAggregationEngine engine, int partition, ToLongFunction<IngestionStats> stat) {
+        return stat.applyAsLong(engine.ingestionStats(partition));
+    }
+}
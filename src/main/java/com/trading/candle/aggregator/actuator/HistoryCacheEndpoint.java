@@ -0,0 +1,42 @@
+package com.trading.candle.aggregator.actuator;
+
+import com.trading.candle.aggregator.storage.CachingCandleStorage;
+import com.trading.candle.aggregator.storage.CandleStorage;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@Endpoint(id = "historycache")
+public class HistoryCacheEndpoint {
+
+    private final CandleStorage candleStorage;
+
+    public HistoryCacheEndpoint(CandleStorage candleStorage) {
+        this.candleStorage = candleStorage;
+    }
+
+    @ReadOperation
+    public Map<String, Object> historyCache() {
+        Map<String, Object> response = new HashMap<>();
+        if (!(candleStorage instanceof CachingCandleStorage cache)) {
+            response.put("enabled", false);
+            return response;
+        }
+        CachingCandleStorage.Stats stats = cache.stats();
+        long lookups = stats.hits() + stats.misses();
+        response.put("enabled", true);
+        response.put("hits", stats.hits());
+        response.put("misses", stats.misses());
+        response.put("hitRatio", lookups == 0 ? 0.0 : (double) stats.hits() / lookups);
+        response.put("evictions", stats.evictions());
+        response.put("expirations", stats.expirations());
+        response.put("invalidations", stats.invalidations());
+        response.put("ranges", stats.ranges());
+        response.put("candles", stats.candles());
+        return response;
+    }
+}
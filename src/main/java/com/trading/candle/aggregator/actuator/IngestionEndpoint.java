@@ -0,0 +1,36 @@
+package com.trading.candle.aggregator.actuator;
+
+import com.trading.candle.aggregator.engine.IngestionStats;
+import com.trading.candle.aggregator.engine.PartitionedAggregationEngine;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@Endpoint(id = "ingestion")
+public class IngestionEndpoint {
+
+    private final PartitionedAggregationEngine aggregationEngine;
+
+    public IngestionEndpoint(PartitionedAggregationEngine aggregationEngine) {
+        this.aggregationEngine = aggregationEngine;
+    }
+
+    @ReadOperation
+    public Map<String, Object> ingestion() {
+        List<IngestionStats> partitions = aggregationEngine.ingestionStats();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("totalLag", partitions.stream().mapToLong(IngestionStats::lag).sum());
+        response.put("droppedOldest", partitions.stream().mapToLong(IngestionStats::droppedOldest).sum());
+        response.put("droppedNewest", partitions.stream().mapToLong(IngestionStats::droppedNewest).sum());
+        response.put("blockedPublishes", partitions.stream().mapToLong(IngestionStats::blockedPublishes).sum());
+        response.put("lateEvents", partitions.stream().mapToLong(IngestionStats::lateEvents).sum());
+        response.put("partitions", partitions);
+        return response;
+    }
+}
@@ -0,0 +1,51 @@
+package com.trading.candle.aggregator.actuator;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.engine.LatencySnapshot;
+import com.trading.candle.aggregator.service.PipelineLatencyService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+@Component
+@Endpoint(id = "latency")
+public class LatencyEndpoint {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final PipelineLatencyService pipelineLatency;
+    private final CandleAggregationProperties properties;
+
+    public LatencyEndpoint(PipelineLatencyService pipelineLatency, CandleAggregationProperties properties) {
+        this.pipelineLatency = pipelineLatency;
+        this.properties = properties;
+    }
+
+    @ReadOperation
+    public Map<String, Object> latency() {
+        Set<PipelineLatencyService.Stage> breached = pipelineLatency.breachedSlos();
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (Map.Entry<PipelineLatencyService.Stage, LatencySnapshot> entry : pipelineLatency.latency().entrySet()) {
+            LatencySnapshot snapshot = entry.getValue();
+            Map<String, Object> stage = new LinkedHashMap<>();
+            stage.put("count", snapshot.count());
+            stage.put("p50Ms", snapshot.p50Nanos() / NANOS_PER_MILLI);
+            stage.put("p99Ms", snapshot.p99Nanos() / NANOS_PER_MILLI);
+            stage.put("p999Ms", snapshot.p999Nanos() / NANOS_PER_MILLI);
+            stage.put("maxMs", snapshot.maxNanos() / NANOS_PER_MILLI);
+            stage.put("p99SloMs", pipelineLatency.sloMillis(entry.getKey()));
+            stage.put("sloBreached", breached.contains(entry.getKey()));
+            stages.put(entry.getKey().name().toLowerCase(), stage);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("windowMs", properties.getLatency().getWindowMs());
+        response.put("stages", stages);
+        return response;
+    }
+}
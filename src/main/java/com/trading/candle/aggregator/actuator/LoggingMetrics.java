@@ -0,0 +1,46 @@
+package com.trading.candle.aggregator.actuator;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import com.trading.candle.aggregator.logging.DroppingAsyncAppender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+
+/**
+ * Meters of the asynchronous log appenders attached to the root logger: events dropped
+ * because their queue was full, and events waiting to be written.
+ */
+@Component
+public class LoggingMetrics implements MeterBinder {
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+        if (!(loggerFactory instanceof LoggerContext loggerContext)) {
+            return;
+        }
+        Iterator<Appender<ILoggingEvent>> appenders =
+                loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders();
+        while (appenders.hasNext()) {
+            if (appenders.next() instanceof DroppingAsyncAppender appender) {
+                FunctionCounter.builder("logging.events.dropped", appender, DroppingAsyncAppender::getDroppedEvents)
+                        .description("Log events dropped because the appender queue was full")
+                        .tag("appender", appender.getName())
+                        .register(registry);
+                Gauge.builder("logging.queue.size", appender, DroppingAsyncAppender::getQueuedEvents)
+                        .description("Log events waiting to be written")
+                        .tag("appender", appender.getName())
+                        .register(registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.trading.candle.aggregator.codec;
+
+import com.trading.candle.aggregator.storage.CandleRowHandler;
+
+/**
+ * Columns of a history response, in the order they are encoded.
+ */
+public enum CandleColumn {
+    OPEN_TIME("t"),
+    OPEN("o"),
+    HIGH("h"),
+    LOW("l"),
+    CLOSE("c"),
+    VOLUME("v");
+
+    private final String key;
+
+    CandleColumn(String key) {
+        this.key = key;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    /**
+     * Returns a handler that writes this column's value of every candle it receives.
+     */
+    public CandleRowHandler writerFor(CandleColumnEncoder encoder) {
+        return switch (this) {
+            case OPEN_TIME -> (t, o, h, l, c, v) -> encoder.writeLong(t);
+            case OPEN -> (t, o, h, l, c, v) -> encoder.writeDouble(o);
+            case HIGH -> (t, o, h, l, c, v) -> encoder.writeDouble(h);
+            case LOW -> (t, o, h, l, c, v) -> encoder.writeDouble(l);
+            case CLOSE -> (t, o, h, l, c, v) -> encoder.writeDouble(c);
+            case VOLUME -> (t, o, h, l, c, v) -> encoder.writeLong(v);
+        };
+    }
+}
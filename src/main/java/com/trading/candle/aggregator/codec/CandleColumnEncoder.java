@@ -0,0 +1,44 @@
+package com.trading.candle.aggregator.codec;
+
+import com.trading.candle.aggregator.storage.CandleSeries;
+
+/**
+ * Writes a history response column by column, straight from primitive values. Calls follow
+ * {@code begin}, then for every {@link CandleColumn} in order {@code beginColumn}, its values
+ * and {@code endColumn}, then {@code end}.
+ */
+public interface CandleColumnEncoder {
+
+    /**
+     * Whether {@link #begin} needs the number of candles up front.
+     */
+    boolean requiresCount();
+
+    /**
+     * Starts the response; {@code count} is negative if unknown and not required.
+     */
+    void begin(long count);
+
+    void beginColumn(CandleColumn column);
+
+    void writeLong(long value);
+
+    void writeDouble(double value);
+
+    void endColumn();
+
+    /**
+     * Completes the response and flushes it.
+     */
+    void end();
+
+    default void encode(CandleSeries candles) {
+        begin(candles.size());
+        for (CandleColumn column : CandleColumn.values()) {
+            beginColumn(column);
+            candles.forEach(column.writerFor(this));
+            endColumn();
+        }
+        end();
+    }
+}
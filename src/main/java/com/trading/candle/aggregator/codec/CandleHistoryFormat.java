@@ -0,0 +1,60 @@
+package com.trading.candle.aggregator.codec;
+
+import org.springframework.http.MediaType;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Encodings of a history response, chosen by the Accept header.
+ */
+public enum CandleHistoryFormat {
+    JSON(MediaType.APPLICATION_JSON),
+    COLUMNAR(MediaType.valueOf(CandleHistoryFormat.COLUMNAR_VALUE));
+
+    public static final String COLUMNAR_VALUE = "application/vnd.candles.columnar";
+
+    private final MediaType mediaType;
+
+    CandleHistoryFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType mediaType() {
+        return mediaType;
+    }
+
+    public CandleColumnEncoder open(OutputStream out, JsonMapper jsonMapper) {
+        return switch (this) {
+            case JSON -> new JsonColumnEncoder(jsonMapper.createGenerator(out));
+            case COLUMNAR -> new ColumnarBinaryEncoder(out);
+        };
+    }
+
+    /**
+     * Returns the format preferred by the Accept header, JSON for wildcards and a missing
+     * header, or null if the header accepts neither format.
+     */
+    public static CandleHistoryFormat negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON;
+        }
+        List<MediaType> accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() <= 0) {
+                continue;
+            }
+            if (type.equalsTypeAndSubtype(COLUMNAR.mediaType)) {
+                return COLUMNAR;
+            }
+            if (type.includes(JSON.mediaType)) {
+                return JSON;
+            }
+        }
+        return null;
+    }
+}
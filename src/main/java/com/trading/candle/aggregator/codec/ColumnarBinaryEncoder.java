@@ -0,0 +1,134 @@
+package com.trading.candle.aggregator.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes the {@code application/vnd.candles.columnar} format, all values little-endian:
+ * <pre>
+ * header   "CNDL", version byte 1, status byte, 2 reserved bytes, int32 count, 4 reserved bytes
+ * t        int64 first open time, then count - 1 int32 deltas to the previous open time,
+ *          zero-padded to a multiple of 8 bytes
+ * o h l c  count float64 each
+ * v        count int64
+ * </pre>
+ * Every column starts at a multiple of 8 bytes, so clients can map the columns directly onto
+ * typed arrays. An empty response is the header alone. The status is 0 for candles and 1 for a
+ * query that failed, whose block is the header alone with count 0; a batch answers each query
+ * with one block.
+ */
+public class ColumnarBinaryEncoder implements CandleColumnEncoder {
+
+    public static final int VERSION = 1;
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_ERROR = 1;
+    static final int HEADER_BYTES = 16;
+    private static final byte[] MAGIC = {'C', 'N', 'D', 'L'};
+    private static final int BUFFER_BYTES = 8192;
+
+    private final OutputStream out;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private int count;
+    private CandleColumn column;
+    private int written;
+    private long previousOpenTime;
+
+    public ColumnarBinaryEncoder(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public boolean requiresCount() {
+        return true;
+    }
+
+    @Override
+    public void begin(long count) {
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unsupported candle count " + count);
+        }
+        this.count = (int) count;
+        header(STATUS_OK, this.count);
+    }
+
+    /**
+     * Writes the block of a failed query in place of its candles, and flushes it.
+     */
+    public void encodeError() {
+        header(STATUS_ERROR, 0);
+        end();
+    }
+
+    @Override
+    public void beginColumn(CandleColumn column) {
+        this.column = column;
+        this.written = 0;
+    }
+
+    @Override
+    public void writeLong(long value) {
+        ensureRemaining(Long.BYTES);
+        if (column != CandleColumn.OPEN_TIME) {
+            buffer.putLong(value);
+        } else if (written == 0) {
+            buffer.putLong(value);
+        } else {
+            // Open times only ever increase by whole intervals, which fit an int for any realistic range
+            buffer.putInt(Math.toIntExact(value - previousOpenTime));
+        }
+        previousOpenTime = value;
+        written++;
+    }
+
+    @Override
+    public void writeDouble(double value) {
+        ensureRemaining(Double.BYTES);
+        buffer.putDouble(value);
+        written++;
+    }
+
+    @Override
+    public void endColumn() {
+        if (written != count) {
+            throw new IllegalStateException(
+                    "Column " + column.key() + " has " + written + " values instead of " + count);
+        }
+        // An odd number of int32 deltas needs padding to keep the next column aligned
+        if (column == CandleColumn.OPEN_TIME && count > 0 && count % 2 == 0) {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(0);
+        }
+    }
+
+    @Override
+    public void end() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void header(int status, int count) {
+        buffer.put(MAGIC).put((byte) VERSION).put((byte) status).put(new byte[2]).putInt(count).putInt(0);
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        try {
+            out.write(buffer.array(), 0, buffer.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,66 @@
+package com.trading.candle.aggregator.codec;
+
+import tools.jackson.core.JsonGenerator;
+
+/**
+ * Writes {@code {"s":"ok","t":[...],"o":[...],...}} with numbers taken straight from the
+ * primitive values, without building any intermediate collections.
+ */
+public class JsonColumnEncoder implements CandleColumnEncoder {
+
+    private final JsonGenerator json;
+    private final boolean closeOnEnd;
+
+    public JsonColumnEncoder(JsonGenerator json) {
+        this(json, true);
+    }
+
+    /**
+     * With {@code closeOnEnd} false the response is written as one value of a larger document
+     * and the generator is left open.
+     */
+    public JsonColumnEncoder(JsonGenerator json, boolean closeOnEnd) {
+        this.json = json;
+        this.closeOnEnd = closeOnEnd;
+    }
+
+    @Override
+    public boolean requiresCount() {
+        return false;
+    }
+
+    @Override
+    public void begin(long count) {
+        json.writeStartObject();
+        json.writeStringProperty("s", "ok");
+    }
+
+    @Override
+    public void beginColumn(CandleColumn column) {
+        json.writeName(column.key());
+        json.writeStartArray();
+    }
+
+    @Override
+    public void writeLong(long value) {
+        json.writeNumber(value);
+    }
+
+    @Override
+    public void writeDouble(double value) {
+        json.writeNumber(value);
+    }
+
+    @Override
+    public void endColumn() {
+        json.writeEndArray();
+    }
+
+    @Override
+    public void end() {
+        json.writeEndObject();
+        if (closeOnEnd) {
+            json.close();
+        }
+    }
+}
@@ -1,24 +1,88 @@
 package com.trading.candle.aggregator.config;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableAsync
 public class CandleAggregationAsyncConfig {
 
+    // Active, queued and completed tasks of every executor are metered by Spring Boot, rejections here
     @Bean(name = "candleAggregationExecutor")
-    public Executor candleAggregationExecutor() {
+    public Executor candleAggregationExecutor(MeterRegistry meterRegistry) {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(4);
         executor.setMaxPoolSize(16);
         executor.setQueueCapacity(100);
+        executor.setRejectedExecutionHandler(counting("candleAggregationExecutor",
+                new ThreadPoolExecutor.AbortPolicy(), meterRegistry));
         executor.setThreadNamePrefix("CandleAggregation-");
         executor.initialize();
         return executor;
     }
+
+    // Queries beyond the queue are read on the batch's own thread rather than rejected
+    @Bean(name = "historyBatchExecutor")
+    public Executor historyBatchExecutor(CandleAggregationProperties properties, MeterRegistry meterRegistry) {
+        int parallelism = properties.getHistory().getBatchParallelism();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setQueueCapacity(properties.getHistory().getMaxBatchQueries() * 4);
+        executor.setRejectedExecutionHandler(counting("historyBatchExecutor",
+                new ThreadPoolExecutor.CallerRunsPolicy(), meterRegistry));
+        executor.setThreadNamePrefix("HistoryBatch-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Each subscriber has at most one write queued, so the queue never holds more than the subscribers
+    @Bean(name = "candlePushExecutor")
+    public Executor candlePushExecutor(CandleAggregationProperties properties, MeterRegistry meterRegistry) {
+        int threads = properties.getPush().getSenderThreads();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(Math.max(1, properties.getPush().getMaxSubscribers()));
+        executor.setRejectedExecutionHandler(counting("candlePushExecutor",
+                new ThreadPoolExecutor.AbortPolicy(), meterRegistry));
+        executor.setThreadNamePrefix("CandlePush-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Publishing reads every subscribed series, so it runs here instead of on the shared scheduler
+    // thread; one publish may wait behind a running one, later ticks are skipped until it starts
+    @Bean(name = "candlePublishExecutor")
+    public Executor candlePublishExecutor(MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setRejectedExecutionHandler(counting("candlePublishExecutor",
+                new ThreadPoolExecutor.DiscardPolicy(), meterRegistry));
+        executor.setThreadNamePrefix("CandlePublish-");
+        executor.initialize();
+        return executor;
+    }
+
+    private static RejectedExecutionHandler counting(String name, RejectedExecutionHandler policy,
+                                                     MeterRegistry meterRegistry) {
+        Counter rejected = Counter.builder("executor.rejected")
+                .description("Tasks the executor had no room for, handled by its rejection policy")
+                .tag("name", name)
+                .register(meterRegistry);
+        return (task, pool) -> {
+            rejected.increment();
+            policy.rejectedExecution(task, pool);
+        };
+    }
 }
@@ -0,0 +1,14 @@
+package com.trading.candle.aggregator.config;
+
+import com.trading.candle.aggregator.engine.PartitionedAggregationEngine;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CandleAggregationEngineConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public PartitionedAggregationEngine partitionedAggregationEngine(CandleAggregationProperties properties) {
+        return new PartitionedAggregationEngine(properties);
+    }
+}
@@ -1,5 +1,8 @@
 package com.trading.candle.aggregator.config;
 
+import com.trading.candle.aggregator.engine.AggregationMode;
+import com.trading.candle.aggregator.engine.OverflowPolicy;
+import com.trading.candle.aggregator.storage.StorageEngine;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
@@ -16,6 +19,13 @@ public class CandleAggregationProperties {
     private long flushRateMs;
     private Persistence persistence = new Persistence();
     private Processing processing = new Processing();
+    private Ingestion ingestion = new Ingestion();
+    private Journal journal = new Journal();
+    private Storage storage = new Storage();
+    private History history = new History();
+    private Push push = new Push();
+    private Latency latency = new Latency();
+    private Logging logging = new Logging();
     private Simulator simulator = new Simulator();
 
     public List<String> getIntervals() {
@@ -66,6 +76,62 @@ public class CandleAggregationProperties {
         this.processing = processing;
     }
 
+    public Ingestion getIngestion() {
+        return ingestion;
+    }
+
+    public void setIngestion(Ingestion ingestion) {
+        this.ingestion = ingestion;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public void setStorage(Storage storage) {
+        this.storage = storage;
+    }
+
+    public History getHistory() {
+        return history;
+    }
+
+    public void setHistory(History history) {
+        this.history = history;
+    }
+
+    public Push getPush() {
+        return push;
+    }
+
+    public void setPush(Push push) {
+        this.push = push;
+    }
+
+    public Latency getLatency() {
+        return latency;
+    }
+
+    public void setLatency(Latency latency) {
+        this.latency = latency;
+    }
+
+    public Logging getLogging() {
+        return logging;
+    }
+
+    public void setLogging(Logging logging) {
+        this.logging = logging;
+    }
+
     public Simulator getSimulator() {
         return simulator;
     }
@@ -78,6 +144,8 @@ public class CandleAggregationProperties {
         private int batchSize;
         private int maxRetries;
         private long retryDelayMs;
+        private long openCandleWriteIntervalMs = 60000;
+        private PersistenceWriteMode writeMode = PersistenceWriteMode.MERGE;
 
         public int getBatchSize() {
             return batchSize;
@@ -102,12 +170,31 @@ public class CandleAggregationProperties {
         public void setRetryDelayMs(long retryDelayMs) {
             this.retryDelayMs = retryDelayMs;
         }
+
+        public long getOpenCandleWriteIntervalMs() {
+            return openCandleWriteIntervalMs;
+        }
+
+        public void setOpenCandleWriteIntervalMs(long openCandleWriteIntervalMs) {
+            this.openCandleWriteIntervalMs = openCandleWriteIntervalMs;
+        }
+
+        public PersistenceWriteMode getWriteMode() {
+            return writeMode;
+        }
+
+        public void setWriteMode(PersistenceWriteMode writeMode) {
+            this.writeMode = writeMode;
+        }
     }
 
     public static class Processing {
         private double priceCalculationDivisor;
         private int maxConcurrentIntervals;
         private long eventTimeoutMs;
+        private int partitions;
+        private AggregationMode aggregationMode = AggregationMode.CASCADING;
+        private long allowedLatenessSeconds = 5;
 
         public double getPriceCalculationDivisor() {
             return priceCalculationDivisor;
@@ -132,12 +219,374 @@ public class CandleAggregationProperties {
         public void setEventTimeoutMs(long eventTimeoutMs) {
             this.eventTimeoutMs = eventTimeoutMs;
         }
+
+        public int getPartitions() {
+            return partitions;
+        }
+
+        public void setPartitions(int partitions) {
+            this.partitions = partitions;
+        }
+
+        public AggregationMode getAggregationMode() {
+            return aggregationMode;
+        }
+
+        public void setAggregationMode(AggregationMode aggregationMode) {
+            this.aggregationMode = aggregationMode;
+        }
+
+        public long getAllowedLatenessSeconds() {
+            return allowedLatenessSeconds;
+        }
+
+        public void setAllowedLatenessSeconds(long allowedLatenessSeconds) {
+            this.allowedLatenessSeconds = allowedLatenessSeconds;
+        }
+    }
+
+    public static class Ingestion {
+        private int ringBufferSize = 65536;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private int batchSize = 256;
+
+        public int getRingBufferSize() {
+            return ringBufferSize;
+        }
+
+        public void setRingBufferSize(int ringBufferSize) {
+            this.ringBufferSize = ringBufferSize;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    public static class Journal {
+        private boolean enabled;
+        private String directory = "data/journal";
+        private int segmentSizeBytes = 64 * 1024 * 1024;
+        private long syncIntervalMs = 10;
+        private long checkpointIntervalMs = 30000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentSizeBytes() {
+            return segmentSizeBytes;
+        }
+
+        public void setSegmentSizeBytes(int segmentSizeBytes) {
+            this.segmentSizeBytes = segmentSizeBytes;
+        }
+
+        public long getSyncIntervalMs() {
+            return syncIntervalMs;
+        }
+
+        public void setSyncIntervalMs(long syncIntervalMs) {
+            this.syncIntervalMs = syncIntervalMs;
+        }
+
+        public long getCheckpointIntervalMs() {
+            return checkpointIntervalMs;
+        }
+
+        public void setCheckpointIntervalMs(long checkpointIntervalMs) {
+            this.checkpointIntervalMs = checkpointIntervalMs;
+        }
+    }
+
+    public static class Storage {
+        private StorageEngine engine = StorageEngine.RELATIONAL;
+        private String directory = "data/segments";
+        private int segmentCandles = 4096;
+
+        public StorageEngine getEngine() {
+            return engine;
+        }
+
+        public void setEngine(StorageEngine engine) {
+            this.engine = engine;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentCandles() {
+            return segmentCandles;
+        }
+
+        public void setSegmentCandles(int segmentCandles) {
+            this.segmentCandles = segmentCandles;
+        }
+    }
+
+    public static class History {
+        private int recentCandles = 1000;
+        private int streamingThresholdCandles = 10000;
+        private int fetchSize = 1000;
+        private int maxPageCandles = 5000;
+        private int maxBatchQueries = 100;
+        private int batchParallelism = 8;
+        private long finalizedMaxAgeSeconds = 86400;
+        private ResultCache resultCache = new ResultCache();
+
+        public int getRecentCandles() {
+            return recentCandles;
+        }
+
+        public void setRecentCandles(int recentCandles) {
+            this.recentCandles = recentCandles;
+        }
+
+        public int getStreamingThresholdCandles() {
+            return streamingThresholdCandles;
+        }
+
+        public void setStreamingThresholdCandles(int streamingThresholdCandles) {
+            this.streamingThresholdCandles = streamingThresholdCandles;
+        }
+
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
+        public void setFetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+        }
+
+        public int getMaxPageCandles() {
+            return maxPageCandles;
+        }
+
+        public void setMaxPageCandles(int maxPageCandles) {
+            this.maxPageCandles = maxPageCandles;
+        }
+
+        public int getMaxBatchQueries() {
+            return maxBatchQueries;
+        }
+
+        public void setMaxBatchQueries(int maxBatchQueries) {
+            this.maxBatchQueries = maxBatchQueries;
+        }
+
+        public int getBatchParallelism() {
+            return batchParallelism;
+        }
+
+        public void setBatchParallelism(int batchParallelism) {
+            this.batchParallelism = batchParallelism;
+        }
+
+        public long getFinalizedMaxAgeSeconds() {
+            return finalizedMaxAgeSeconds;
+        }
+
+        public void setFinalizedMaxAgeSeconds(long finalizedMaxAgeSeconds) {
+            this.finalizedMaxAgeSeconds = finalizedMaxAgeSeconds;
+        }
+
+        public ResultCache getResultCache() {
+            return resultCache;
+        }
+
+        public void setResultCache(ResultCache resultCache) {
+            this.resultCache = resultCache;
+        }
+    }
+
+    public static class ResultCache {
+        private boolean enabled = true;
+        private long maxCandles = 1_000_000;
+        private long ttlMs = 5000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxCandles() {
+            return maxCandles;
+        }
+
+        public void setMaxCandles(long maxCandles) {
+            this.maxCandles = maxCandles;
+        }
+
+        public long getTtlMs() {
+            return ttlMs;
+        }
+
+        public void setTtlMs(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+    }
+
+    public static class Push {
+        private long intervalMs = 250;
+        private int maxSubscribers = 10000;
+        private int maxPendingCandles = 16;
+        private long heartbeatIntervalMs = 15000;
+        private int senderThreads = 4;
+
+        public long getIntervalMs() {
+            return intervalMs;
+        }
+
+        public void setIntervalMs(long intervalMs) {
+            this.intervalMs = intervalMs;
+        }
+
+        public int getMaxSubscribers() {
+            return maxSubscribers;
+        }
+
+        public void setMaxSubscribers(int maxSubscribers) {
+            this.maxSubscribers = maxSubscribers;
+        }
+
+        public int getMaxPendingCandles() {
+            return maxPendingCandles;
+        }
+
+        public void setMaxPendingCandles(int maxPendingCandles) {
+            this.maxPendingCandles = maxPendingCandles;
+        }
+
+        public long getHeartbeatIntervalMs() {
+            return heartbeatIntervalMs;
+        }
+
+        public void setHeartbeatIntervalMs(long heartbeatIntervalMs) {
+            this.heartbeatIntervalMs = heartbeatIntervalMs;
+        }
+
+        public int getSenderThreads() {
+            return senderThreads;
+        }
+
+        public void setSenderThreads(int senderThreads) {
+            this.senderThreads = senderThreads;
+        }
+    }
+
+    public static class Latency {
+        private long windowMs = 60000;
+        private int windowSlices = 6;
+        private long aggregationSloMs = 50;
+        private long flushSloMs = 3000;
+        private long commitSloMs = 5000;
+
+        public long getWindowMs() {
+            return windowMs;
+        }
+
+        public void setWindowMs(long windowMs) {
+            this.windowMs = windowMs;
+        }
+
+        public int getWindowSlices() {
+            return windowSlices;
+        }
+
+        public void setWindowSlices(int windowSlices) {
+            this.windowSlices = windowSlices;
+        }
+
+        /**
+         * How often the window drops its oldest slice.
+         */
+        public long getSliceMs() {
+            return Math.max(1, windowMs / Math.max(1, windowSlices));
+        }
+
+        public long getAggregationSloMs() {
+            return aggregationSloMs;
+        }
+
+        public void setAggregationSloMs(long aggregationSloMs) {
+            this.aggregationSloMs = aggregationSloMs;
+        }
+
+        public long getFlushSloMs() {
+            return flushSloMs;
+        }
+
+        public void setFlushSloMs(long flushSloMs) {
+            this.flushSloMs = flushSloMs;
+        }
+
+        public long getCommitSloMs() {
+            return commitSloMs;
+        }
+
+        public void setCommitSloMs(long commitSloMs) {
+            this.commitSloMs = commitSloMs;
+        }
+    }
+
+    public static class Logging {
+        private int sampledLinesPerSecond = 1;
+        private long summaryIntervalMs = 10000;
+
+        public int getSampledLinesPerSecond() {
+            return sampledLinesPerSecond;
+        }
+
+        public void setSampledLinesPerSecond(int sampledLinesPerSecond) {
+            this.sampledLinesPerSecond = sampledLinesPerSecond;
+        }
+
+        public long getSummaryIntervalMs() {
+            return summaryIntervalMs;
+        }
+
+        public void setSummaryIntervalMs(long summaryIntervalMs) {
+            this.summaryIntervalMs = summaryIntervalMs;
+        }
     }
 
     public static class Simulator {
         private long eventGenerationRateMs;
         private double priceVariationRange;
         private double bidAskSpread;
+        private Load load = new Load();
 
         public long getEventGenerationRateMs() {
             return eventGenerationRateMs;
@@ -162,5 +611,160 @@ public class CandleAggregationProperties {
         public void setBidAskSpread(double bidAskSpread) {
             this.bidAskSpread = bidAskSpread;
         }
+
+        public Load getLoad() {
+            return load;
+        }
+
+        public void setLoad(Load load) {
+            this.load = load;
+        }
+    }
+
+    public static class Load {
+        private boolean enabled;
+        private int producers = 4;
+        private long startRate = 5000;
+        private long rateIncrement = 5000;
+        private long maxRate = 200000;
+        private long stepSeconds = 10;
+        private int symbols = 2000;
+        private double zipfExponent = 1.1;
+        private long seed = 42;
+        private String replayFile;
+        private int queryRatePerSecond = 50;
+        private long maxLagEvents = 10000;
+        private double minDeliveredRatio = 0.95;
+        private String reportFile = "build/load/load-report.json";
+        private boolean exitOnCompletion = true;
+        private long failBelowRate;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getProducers() {
+            return producers;
+        }
+
+        public void setProducers(int producers) {
+            this.producers = producers;
+        }
+
+        public long getStartRate() {
+            return startRate;
+        }
+
+        public void setStartRate(long startRate) {
+            this.startRate = startRate;
+        }
+
+        public long getRateIncrement() {
+            return rateIncrement;
+        }
+
+        public void setRateIncrement(long rateIncrement) {
+            this.rateIncrement = rateIncrement;
+        }
+
+        public long getMaxRate() {
+            return maxRate;
+        }
+
+        public void setMaxRate(long maxRate) {
+            this.maxRate = maxRate;
+        }
+
+        public long getStepSeconds() {
+            return stepSeconds;
+        }
+
+        public void setStepSeconds(long stepSeconds) {
+            this.stepSeconds = stepSeconds;
+        }
+
+        public int getSymbols() {
+            return symbols;
+        }
+
+        public void setSymbols(int symbols) {
+            this.symbols = symbols;
+        }
+
+        public double getZipfExponent() {
+            return zipfExponent;
+        }
+
+        public void setZipfExponent(double zipfExponent) {
+            this.zipfExponent = zipfExponent;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public void setSeed(long seed) {
+            this.seed = seed;
+        }
+
+        public String getReplayFile() {
+            return replayFile;
+        }
+
+        public void setReplayFile(String replayFile) {
+            this.replayFile = replayFile;
+        }
+
+        public int getQueryRatePerSecond() {
+            return queryRatePerSecond;
+        }
+
+        public void setQueryRatePerSecond(int queryRatePerSecond) {
+            this.queryRatePerSecond = queryRatePerSecond;
+        }
+
+        public long getMaxLagEvents() {
+            return maxLagEvents;
+        }
+
+        public void setMaxLagEvents(long maxLagEvents) {
+            this.maxLagEvents = maxLagEvents;
+        }
+
+        public double getMinDeliveredRatio() {
+            return minDeliveredRatio;
+        }
+
+        public void setMinDeliveredRatio(double minDeliveredRatio) {
+            this.minDeliveredRatio = minDeliveredRatio;
+        }
+
+        public String getReportFile() {
+            return reportFile;
+        }
+
+        public void setReportFile(String reportFile) {
+            this.reportFile = reportFile;
+        }
+
+        public boolean isExitOnCompletion() {
+            return exitOnCompletion;
+        }
+
+        public void setExitOnCompletion(boolean exitOnCompletion) {
+            this.exitOnCompletion = exitOnCompletion;
+        }
+
+        public long getFailBelowRate() {
+            return failBelowRate;
+        }
+
+        public void setFailBelowRate(long failBelowRate) {
+            this.failBelowRate = failBelowRate;
+        }
     }
 }
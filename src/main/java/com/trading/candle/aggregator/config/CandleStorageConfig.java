@@ -0,0 +1,36 @@
+package com.trading.candle.aggregator.config;
+
+import com.trading.candle.aggregator.repository.CandleCursorRepository;
+import com.trading.candle.aggregator.repository.CandleMergeRepository;
+import com.trading.candle.aggregator.repository.CandleRepository;
+import com.trading.candle.aggregator.storage.CachingCandleStorage;
+import com.trading.candle.aggregator.storage.CandleStorage;
+import com.trading.candle.aggregator.storage.RelationalCandleStorage;
+import com.trading.candle.aggregator.storage.SegmentCandleStorage;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class CandleStorageConfig {
+
+    @Bean
+    public CandleStorage candleStorage(CandleAggregationProperties properties,
+                                       CandleRepository candleRepository,
+                                       CandleMergeRepository mergeRepository,
+                                       CandleCursorRepository cursorRepository) {
+        CandleAggregationProperties.Storage storage = properties.getStorage();
+        CandleStorage engine = switch (storage.getEngine()) {
+            case RELATIONAL -> new RelationalCandleStorage(candleRepository, mergeRepository, cursorRepository,
+                    properties);
+            case SEGMENT -> new SegmentCandleStorage(Path.of(storage.getDirectory()), storage.getSegmentCandles());
+        };
+        CandleAggregationProperties.ResultCache resultCache = properties.getHistory().getResultCache();
+        if (!resultCache.isEnabled()) {
+            return engine;
+        }
+        return new CachingCandleStorage(engine, resultCache.getMaxCandles(), resultCache.getTtlMs(),
+                properties.getProcessing().getAllowedLatenessSeconds());
+    }
+}
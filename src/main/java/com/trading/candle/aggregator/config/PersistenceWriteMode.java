@@ -0,0 +1,8 @@
+package com.trading.candle.aggregator.config;
+
+public enum PersistenceWriteMode {
+    /** A flush is written as batched native MERGE statements on the candle key. */
+    MERGE,
+    /** Existing candles are looked up and updated through JPA, new ones inserted with saveAll. */
+    JPA
+}
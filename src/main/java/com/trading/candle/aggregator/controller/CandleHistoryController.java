@@ -1,38 +1,217 @@
 package com.trading.candle.aggregator.controller;
 
+import com.trading.candle.aggregator.codec.CandleHistoryFormat;
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.dto.BatchHistoryRequest;
 import com.trading.candle.aggregator.dto.ErrorResponse;
+import com.trading.candle.aggregator.dto.HistoryCursor;
+import com.trading.candle.aggregator.dto.HistoryQuery;
 import com.trading.candle.aggregator.exception.ValidationException;
+import com.trading.candle.aggregator.service.CandleHistoryBatchService;
 import com.trading.candle.aggregator.service.CandleHistoryService;
+import com.trading.candle.aggregator.storage.StorageDataset;
+import com.trading.candle.aggregator.util.CandleIntervalUtil;
 import com.trading.candle.aggregator.validation.CandleHistoryValidator;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Map;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("api/v1/candle-aggregator")
 @Validated
 public class CandleHistoryController {
 
+    /**
+     * Response header carrying the cursor of the next page, absent on the last one.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final CandleHistoryService candleHistoryService;
+    private final CandleHistoryBatchService candleHistoryBatchService;
     private final CandleHistoryValidator validator;
+    private final CacheControl finalizedCacheControl;
 
-    public CandleHistoryController(CandleHistoryService candleHistoryService, CandleHistoryValidator validator) {
+    public CandleHistoryController(CandleHistoryService candleHistoryService,
+                                   CandleHistoryBatchService candleHistoryBatchService,
+                                   CandleHistoryValidator validator,
+                                   CandleAggregationProperties properties) {
         this.candleHistoryService = candleHistoryService;
+        this.candleHistoryBatchService = candleHistoryBatchService;
         this.validator = validator;
+        this.finalizedCacheControl = CacheControl
+                .maxAge(properties.getHistory().getFinalizedMaxAgeSeconds(), TimeUnit.SECONDS)
+                .cachePublic()
+                .immutable();
     }
 
-    @GetMapping(value = "/history")
-    public ResponseEntity<Map<String, Object>> getCandleHistory(
+    @GetMapping(value = "/history", produces = {MediaType.APPLICATION_JSON_VALUE, CandleHistoryFormat.COLUMNAR_VALUE})
+    public ResponseEntity<StreamingResponseBody> getCandleHistory(
             @RequestParam String symbol,
             @RequestParam String interval,
             @RequestParam long from,
-            @RequestParam long to) {
+            @RequestParam long to,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Integer countback,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest webRequest)
+            throws HttpMediaTypeNotAcceptableException {
 
         ErrorResponse validationError = validator.validateInputs(symbol, interval, from, to);
+        if (validationError == null) validationError = validator.validatePage(limit, countback, cursor);
         if (validationError != null) throw new ValidationException(validationError);
+        CandleHistoryFormat format = negotiate(accept);
+
+        String trimmedSymbol = symbol.trim();
+        String trimmedInterval = interval.trim();
+        if (limit != null || countback != null) {
+            return getCandlePage(trimmedSymbol, trimmedInterval, from, to, countback != null ? countback : limit,
+                    countback != null, cursor, format);
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(format.mediaType());
+        if (candleHistoryService.isFinalized(trimmedSymbol, trimmedInterval, from, to)) {
+            // The response of a final range never changes within a dataset, so it is identified
+            // by the dataset and the query alone
+            StorageDataset dataset = candleHistoryService.dataset();
+            String eTag = finalizedETag(dataset, trimmedSymbol, trimmedInterval, from, to, format);
+            long lastModified = Math.max(dataset.createdAtMillis(), closeTimeMillis(trimmedInterval, to));
+            if (webRequest.checkNotModified(eTag, lastModified)) {
+                // The validators were already set on the response by the check
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .cacheControl(finalizedCacheControl)
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .build();
+            }
+            response.eTag(eTag)
+                    .lastModified(lastModified)
+                    .cacheControl(finalizedCacheControl)
+                    .varyBy(HttpHeaders.ACCEPT);
+        }
+        if (candleHistoryService.isStreamed(trimmedInterval, from, to)) {
+            // Large ranges are written while they are read instead of being built up first
+            StreamingResponseBody body = out ->
+                    candleHistoryService.streamCandleHistory(trimmedSymbol, trimmedInterval, from, to, format, out);
+            return response.body(body);
+        }
+        // Read on the request thread, so only writing out the encoded bytes is left to the body
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        candleHistoryService.writeCandleHistory(trimmedSymbol, trimmedInterval, from, to, format, encoded);
+        return response.contentLength(encoded.size()).body(encoded::writeTo);
+    }
+
+    /**
+     * Answers several history queries in one response, see {@link CandleHistoryBatchService}.
+     * Ranges too large to be built in memory are rejected, they belong on /history.
+     */
+    @PostMapping(value = "/history/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {MediaType.APPLICATION_JSON_VALUE, CandleHistoryFormat.COLUMNAR_VALUE})
+    public ResponseEntity<StreamingResponseBody> getCandleHistories(
+            @RequestBody BatchHistoryRequest request,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
+            throws HttpMediaTypeNotAcceptableException {
+
+        ErrorResponse validationError = validator.validateBatch(request.queries());
+        if (validationError != null) throw new ValidationException(validationError);
+        CandleHistoryFormat format = negotiate(accept);
+
+        List<HistoryQuery> queries = new ArrayList<>(request.queries().size());
+        for (HistoryQuery query : request.queries()) {
+            HistoryQuery trimmed = new HistoryQuery(query.symbol().trim(), query.interval().trim(),
+                    query.from(), query.to());
+            if (candleHistoryService.isStreamed(trimmed.interval(), trimmed.from(), trimmed.to())) {
+                throw new ValidationException(new ErrorResponse("BAD_REQUEST",
+                        "Range of " + trimmed.symbol() + " " + trimmed.interval() + " is too large for a batch"));
+            }
+            queries.add(trimmed);
+        }
+        StreamingResponseBody body = out -> candleHistoryBatchService.writeCandleHistories(queries, format, out);
+        return ResponseEntity.ok().contentType(format.mediaType()).body(body);
+    }
+
+    // A SHA-256 of the length-prefixed query, so no two queries share a tag
+    static String finalizedETag(StorageDataset dataset, String symbol, String interval, long from, long to,
+                                CandleHistoryFormat format) {
+        byte[] symbolBytes = symbol.getBytes(StandardCharsets.UTF_8);
+        byte[] intervalBytes = interval.getBytes(StandardCharsets.UTF_8);
+        byte[] formatBytes = format.name().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer query = ByteBuffer.allocate(3 * Integer.BYTES + 2 * Long.BYTES
+                + symbolBytes.length + intervalBytes.length + formatBytes.length);
+        query.putInt(symbolBytes.length).put(symbolBytes)
+                .putInt(intervalBytes.length).put(intervalBytes)
+                .putLong(from).putLong(to)
+                .putInt(formatBytes.length).put(formatBytes);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(query.array());
+            return dataset.id() + "-" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static long closeTimeMillis(String interval, long to) {
+        long seconds = CandleIntervalUtil.toSeconds(interval);
+        return (Math.floorDiv(to, seconds) + 1) * seconds * 1000;
+    }
+
+    private static CandleHistoryFormat negotiate(String accept) throws HttpMediaTypeNotAcceptableException {
+        CandleHistoryFormat format = CandleHistoryFormat.negotiate(accept);
+        if (format == null) {
+            throw new HttpMediaTypeNotAcceptableException(
+                    List.of(MediaType.APPLICATION_JSON, CandleHistoryFormat.COLUMNAR.mediaType()));
+        }
+        return format;
+    }
+
+    // Pages are keyset seeks: a cursor moves the start of a forward page or the end of a countback page
+    private ResponseEntity<StreamingResponseBody> getCandlePage(String symbol, String interval, long from, long to,
+                                                                int size, boolean countback, String cursor,
+                                                                CandleHistoryFormat format) {
+        if (cursor != null) {
+            HistoryCursor position = decodeCursor(cursor);
+            if (!position.symbol().equals(symbol) || !position.interval().equals(interval)
+                    || position.countback() != countback) {
+                throw new ValidationException(new ErrorResponse("BAD_REQUEST", "Cursor belongs to another query"));
+            }
+            if (countback) {
+                to = position.position();
+            } else {
+                from = position.position();
+            }
+        }
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        Long next = candleHistoryService.writeCandlePage(symbol, interval, from, to, size, countback, format, encoded);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(format.mediaType())
+                .contentLength(encoded.size());
+        if (next != null) {
+            response.header(NEXT_CURSOR_HEADER, new HistoryCursor(symbol, interval, countback, next).encode());
+        }
+        return response.body(encoded::writeTo);
+    }
 
-        return ResponseEntity.ok(candleHistoryService.getCandleHistory(symbol.trim(), interval.trim(), from, to));
+    private static HistoryCursor decodeCursor(String cursor) {
+        try {
+            return HistoryCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(new ErrorResponse("BAD_REQUEST", "Invalid cursor"));
+        }
     }
 }
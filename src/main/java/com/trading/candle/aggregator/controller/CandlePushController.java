@@ -0,0 +1,43 @@
+package com.trading.candle.aggregator.controller;
+
+import com.trading.candle.aggregator.dto.ErrorResponse;
+import com.trading.candle.aggregator.exception.ValidationException;
+import com.trading.candle.aggregator.service.CandlePushService;
+import com.trading.candle.aggregator.validation.CandleHistoryValidator;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("api/v1/candle-aggregator")
+public class CandlePushController {
+
+    private final CandlePushService candlePushService;
+    private final CandleHistoryValidator validator;
+
+    public CandlePushController(CandlePushService candlePushService, CandleHistoryValidator validator) {
+        this.candlePushService = candlePushService;
+        this.validator = validator;
+    }
+
+    /**
+     * Streams the candles of a series as server-sent {@code candle} events, each the current
+     * state of one candle. A slow client may skip intermediate states, never the newest one.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamCandles(@RequestParam String symbol, @RequestParam String interval) {
+        ErrorResponse validationError = validator.validateSubscription(symbol, interval);
+        if (validationError != null) throw new ValidationException(validationError);
+
+        SseEmitter emitter = candlePushService.subscribe(symbol.trim(), interval.trim());
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+}
@@ -1,11 +1,13 @@
 package com.trading.candle.aggregator.controller;
 
+import com.trading.candle.aggregator.service.PipelineLatencyService;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
@@ -15,6 +17,11 @@ public class HealthController {
     private final AtomicBoolean isAggregationRunning = new AtomicBoolean(true);
     private final AtomicBoolean isPersistenceHealthy = new AtomicBoolean(true);
     private volatile long lastCandleProcessed = System.currentTimeMillis();
+    private final PipelineLatencyService pipelineLatency;
+
+    public HealthController(PipelineLatencyService pipelineLatency) {
+        this.pipelineLatency = pipelineLatency;
+    }
 
     public void setAggregationStatus(boolean isRunning) {
         this.isAggregationRunning.set(isRunning);
@@ -34,13 +41,17 @@ public class HealthController {
 
         boolean isHealthy = isAggregationRunning.get() && isPersistenceHealthy.get();
         long timeSinceLastCandle = System.currentTimeMillis() - lastCandleProcessed;
+        Set<PipelineLatencyService.Stage> breachedSlos = pipelineLatency.breachedSlos();
 
         response.put("status", isHealthy ? "UP" : "DOWN");
         response.put("aggregationRunning", isAggregationRunning.get());
         response.put("persistenceHealthy", isPersistenceHealthy.get());
         response.put("lastCandleProcessed", lastCandleProcessed);
         response.put("timeSinceLastCandleMs", timeSinceLastCandle);
-        response.put("dataStatus", timeSinceLastCandle > 60000 ? "STALE" : "ACTIVE");
+        response.put("latencySloBreaches", breachedSlos);
+        // Data that is late is worse than data that is slow
+        response.put("dataStatus", timeSinceLastCandle > 60000 ? "STALE"
+                : !breachedSlos.isEmpty() ? "DEGRADED" : "ACTIVE");
 
         return response;
     }
@@ -0,0 +1,5 @@
+package com.trading.candle.aggregator.dto;
+
+import java.util.List;
+
+public record BatchHistoryRequest(List<HistoryQuery> queries) {}
@@ -0,0 +1,6 @@
+package com.trading.candle.aggregator.dto;
+
+/**
+ * Current state of one candle as pushed to subscribers, keyed like the history columns.
+ */
+public record CandleUpdate(long t, double o, double h, double l, double c, long v) {}
@@ -0,0 +1,31 @@
+package com.trading.candle.aggregator.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Continuation of a paged history request: the series and direction it belongs to and the
+ * open time the next page seeks to, which replaces {@code from} of a forward page and
+ * {@code to} of a countback page. Clients treat the encoded form as opaque.
+ */
+public record HistoryCursor(String symbol, String interval, boolean countback, long position) {
+
+    private static final String SEPARATOR = "|";
+
+    public String encode() {
+        String raw = String.join(SEPARATOR, symbol, interval, countback ? "b" : "f", Long.toString(position));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses an encoded cursor, throwing {@link IllegalArgumentException} if it is malformed.
+     */
+    public static HistoryCursor decode(String cursor) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] parts = raw.split("\\|", -1);
+        if (parts.length != 4 || !parts[2].equals("b") && !parts[2].equals("f")) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return new HistoryCursor(parts[0], parts[1], parts[2].equals("b"), Long.parseLong(parts[3]));
+    }
+}
@@ -0,0 +1,6 @@
+package com.trading.candle.aggregator.dto;
+
+/**
+ * One range of one series in a batch history request.
+ */
+public record HistoryQuery(String symbol, String interval, long from, long to) {}
@@ -0,0 +1,18 @@
+package com.trading.candle.aggregator.dto;
+
+import java.util.List;
+
+/**
+ * Result of a load run: the highest target rate sustained without lag or drops, and every step
+ * that led to it.
+ */
+public record LoadReport(
+        String version,
+        String source,
+        long seed,
+        int producers,
+        int symbols,
+        long stepSeconds,
+        long maxSustainedRate,
+        List<LoadStepResult> steps
+) {}
@@ -0,0 +1,24 @@
+package com.trading.candle.aggregator.dto;
+
+/**
+ * Outcome of one step of a load run at a fixed target rate. Latencies are p99s in milliseconds
+ * over the pipeline latency window; {@code sustained} is false once the producers fell behind
+ * the target or events were dropped, blocked or piled up in the rings.
+ */
+public record LoadStepResult(
+        int step,
+        long targetRate,
+        long sentEvents,
+        double achievedRate,
+        long rejectedEvents,
+        long droppedEvents,
+        long blockedPublishes,
+        long maxLag,
+        double aggregationP99Ms,
+        double flushP99Ms,
+        double commitP99Ms,
+        long queries,
+        double queryP50Ms,
+        double queryP99Ms,
+        boolean sustained
+) {}
@@ -0,0 +1,8 @@
+package com.trading.candle.aggregator.engine;
+
+public enum AggregationMode {
+    /** Every tick updates the candle of every configured interval. */
+    INDEPENDENT,
+    /** Ticks update the finest interval only; coarser candles are rolled up from finer ones. */
+    CASCADING
+}
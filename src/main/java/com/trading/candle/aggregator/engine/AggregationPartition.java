@@ -0,0 +1,374 @@
+package com.trading.candle.aggregator.engine;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.logging.LogSampler;
+import com.trading.candle.aggregator.util.CandleIntervalUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single aggregation partition. All candle state of the partition is owned by exactly one
+ * thread, so updates need no locking and events of a symbol are applied in publication order.
+ * <p>
+ * Candles are written into the current store generation. A flush bumps the requested epoch;
+ * the partition thread then swaps in the spare (empty) generation and publishes the sealed one
+ * to the flusher, which converts and clears it off the ingestion path.
+ * <p>
+ * Events are bucketed by their own timestamp. Each symbol has an event-time watermark; events
+ * behind it are applied in place as long as their candle is not finalized and counted as late
+ * otherwise. Finalizations travel with the generation they were recorded in.
+ * <p>
+ * With a journal, every admitted event is appended to it before it is applied, and the
+ * journal position at each seal is handed over with the sealed generation.
+ * <p>
+ * Every applied tick is also published to a {@link LiveCandleTable}, which other threads can
+ * read without waiting for the next drain.
+ * <p>
+ * The partition counts applied events per symbol and times the batches it takes from its ring.
+ * Counters are plain fields written by the partition thread and read without locking, so they
+ * cost nothing per event beyond the increment.
+ * <p>
+ * The time from publication until an event is applied is recorded into the partition's
+ * latency histogram. Each generation remembers when its oldest event was published, so the
+ * drainer can tell how long the events of a drain waited.
+ */
+final class AggregationPartition {
+
+    private static final Logger logger = LoggerFactory.getLogger(AggregationPartition.class);
+
+    private static final int INITIAL_STORE_CAPACITY = 1024;
+    private static final int IDLE_SPINS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long SEAL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int index;
+    private final SymbolRegistry symbolRegistry;
+    private final String[] intervalNames;
+    private final long[] intervalSeconds;
+    private final double priceCalculationDivisor;
+    private final int batchSize;
+    private final CascadingRollup rollup;
+    private final EventTimeWatermarks watermarks;
+    private final PartitionJournal journal;
+    private byte[][] journalSymbols = new byte[16][];
+
+    private final EventRingBuffer ringBuffer;
+    private final EventRingBuffer.EventHandler eventHandler = this::apply;
+    private final LongAdder failedEvents = new LongAdder();
+    private final LongAdder lateEvents = new LongAdder();
+    private final LiveCandleTable liveCandles;
+    private final LatencyHistogram aggregationLatency;
+    private final LogSampler candleLog;
+    // Publication stamp of the oldest event of the current / last sealed generation
+    private long ingestedSince = EventRingBuffer.UNSTAMPED;
+    private long sealedIngestedSince = EventRingBuffer.UNSTAMPED;
+    // Indexed by symbol id, replaced by a larger copy when a new symbol does not fit
+    private volatile long[] appliedEvents = new long[16];
+    private volatile long batchedEvents;
+    private volatile long batchNanos;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Current generation, only ever touched from the partition thread
+    private CandleStore candles = new CandleStore(INITIAL_STORE_CAPACITY);
+    // Handed over to the flusher once sealedEpoch reaches the requested epoch; empty otherwise
+    private CandleStore sealed = new CandleStore(INITIAL_STORE_CAPACITY);
+    private long[] sealedFinalizations = new long[0];
+    private long sealedJournalPosition;
+    // Number of generations sealed before the current one, the partition thread's copy of sealedEpoch
+    private long currentGeneration;
+    private volatile long requestedEpoch;
+    private volatile long sealedEpoch;
+
+    AggregationPartition(int index, SymbolRegistry symbolRegistry, List<String> intervals,
+                         AggregationMode aggregationMode, double priceCalculationDivisor,
+                         long allowedLatenessSeconds, int ringBufferSize, OverflowPolicy overflowPolicy, int batchSize,
+                         PartitionJournal journal, LatencyHistogram aggregationLatency, LogSampler candleLog) {
+        this.index = index;
+        this.symbolRegistry = symbolRegistry;
+        this.intervalNames = intervals.toArray(new String[0]);
+        this.intervalSeconds = intervals.stream().mapToLong(CandleIntervalUtil::toSeconds).toArray();
+        this.priceCalculationDivisor = priceCalculationDivisor;
+        this.batchSize = batchSize;
+        this.rollup = aggregationMode == AggregationMode.CASCADING
+                ? new CascadingRollup(new IntervalHierarchy(intervalNames, intervalSeconds))
+                : null;
+        this.watermarks = new EventTimeWatermarks(intervalSeconds, allowedLatenessSeconds);
+        this.journal = journal;
+        this.ringBuffer = new EventRingBuffer(ringBufferSize, overflowPolicy);
+        this.liveCandles = new LiveCandleTable(intervalSeconds);
+        this.aggregationLatency = aggregationLatency;
+        this.candleLog = candleLog;
+        this.thread = new Thread(this::run, "CandlePartition-" + index);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    boolean publish(String symbol, double bid, double ask, long timestamp) {
+        return ringBuffer.publish(symbol, bid, ask, timestamp);
+    }
+
+    /**
+     * Publishes a replayed event. Replay always waits for room, whatever the overflow policy.
+     */
+    void publishReplayed(String symbol, double bid, double ask, long timestamp) {
+        ringBuffer.publish(symbol, bid, ask, timestamp, EventRingBuffer.UNSTAMPED, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Asks the partition thread to seal the current generation. Callers must not request a new
+     * epoch before the previous one was drained.
+     */
+    long requestSeal() {
+        long epoch = requestedEpoch + 1;
+        requestedEpoch = epoch;
+        LockSupport.unpark(thread);
+        return epoch;
+    }
+
+    /**
+     * Waits for the generation sealed at the given epoch, converts it and recycles it as the
+     * next spare, then reports the finalizations recorded with it. Runs on the caller's thread.
+     */
+    List<CandleEntity> drainSealed(long epoch, CandleFinalizationListener listener) {
+        while (sealedEpoch < epoch) {
+            if (!thread.isAlive()) {
+                // Nobody left to seal, the caller now owns the partition state
+                seal();
+                break;
+            }
+            LockSupport.parkNanos(SEAL_WAIT_NANOS);
+        }
+        CandleStore generation = sealed;
+        List<CandleEntity> drained = toEntities(generation);
+        generation.clear();
+        for (long key : sealedFinalizations) {
+            int intervalId = CandleKeyCodec.intervalId(key);
+            listener.onFinalized(symbolRegistry.symbolOf(CandleKeyCodec.symbolId(key)), intervalNames[intervalId],
+                    CandleKeyCodec.bucket(key) * intervalSeconds[intervalId]);
+        }
+        sealedFinalizations = new long[0];
+        return drained;
+    }
+
+    /**
+     * Journal position of the last drained generation: every event before it is contained in
+     * that generation or an earlier one.
+     */
+    long sealedJournalPosition() {
+        return sealedJournalPosition;
+    }
+
+    /**
+     * Publication stamp of the oldest event in the last drained generation, or
+     * {@link EventRingBuffer#UNSTAMPED} if it held no live events.
+     */
+    long sealedIngestedSince() {
+        return sealedIngestedSince;
+    }
+
+    PartitionJournal journal() {
+        return journal;
+    }
+
+    LiveCandle liveCandle(int symbolId, int intervalId) {
+        return liveCandles.read(symbolId, intervalId);
+    }
+
+    long appliedEvents(int symbolId) {
+        long[] counts = appliedEvents;
+        return symbolId < counts.length ? (long) COUNTS.getOpaque(counts, symbolId) : 0;
+    }
+
+    /**
+     * Events applied in batches taken from the ring, and the time it took to apply them.
+     * Events applied while sealing are not timed.
+     */
+    long batchedEvents() {
+        return batchedEvents;
+    }
+
+    long batchNanos() {
+        return batchNanos;
+    }
+
+    IngestionStats stats() {
+        return ringBuffer.stats(index, failedEvents.sum(), lateEvents.sum());
+    }
+
+    void shutdown(long timeoutMs) {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(timeoutMs);
+            if (thread.isAlive()) {
+                logger.warn("Partition {} did not terminate within {} ms", index, timeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        int idle = 0;
+        while (running || !ringBuffer.isEmpty()) {
+            if (requestedEpoch != sealedEpoch) {
+                seal();
+            }
+            long started = System.nanoTime();
+            int drained = ringBuffer.drain(eventHandler, batchSize);
+            if (drained > 0) {
+                batchNanos += System.nanoTime() - started;
+                batchedEvents += drained;
+                idle = 0;
+            } else if (++idle < IDLE_SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            if (journal != null) {
+                journal.syncIfDue(System.nanoTime());
+            }
+        }
+        if (journal != null) {
+            journal.sync();
+        }
+        logger.info("Partition {} stopped", index);
+    }
+
+    private void seal() {
+        // Everything published before the request belongs to the sealed generation
+        ringBuffer.drainAll(eventHandler, batchSize);
+        propagatePending();
+        CandleStore spare = sealed;
+        sealed = candles;
+        candles = spare;
+        watermarks.advanceIdle(System.nanoTime());
+        sealedFinalizations = watermarks.takeFinalized();
+        sealedIngestedSince = ingestedSince;
+        ingestedSince = EventRingBuffer.UNSTAMPED;
+        if (journal != null) {
+            sealedJournalPosition = journal.position();
+        }
+        currentGeneration = requestedEpoch;
+        sealedEpoch = currentGeneration;
+    }
+
+
+    private void apply(String symbol, double bid, double ask, long timestamp, long ingestNanos) {
+        try {
+            double price = (bid + ask) / priceCalculationDivisor;
+            int symbolId = symbolRegistry.idOf(symbol);
+            if (!watermarks.admit(symbolId, timestamp, ingestNanos)) {
+                lateEvents.increment();
+                return;
+            }
+            if (journal != null) {
+                journal.append(journalSymbol(symbolId, symbol), bid, ask, timestamp);
+            }
+
+            if (rollup != null) {
+                boolean created = rollup.onTick(candles, symbolId, timestamp, price);
+                if (logger.isInfoEnabled() && candleLog.sample()) {
+                    logCandle(created, symbol, rollup.baseInterval(), timestamp, price);
+                }
+                liveCandles.update(symbolId, timestamp, price, currentGeneration);
+                countApplied(symbolId);
+                recordLatency(ingestNanos);
+                return;
+            }
+
+            // One pass over every interval for the symbol, on the owning thread
+            for (int intervalId = 0; intervalId < intervalSeconds.length; intervalId++) {
+                long seconds = intervalSeconds[intervalId];
+                long alignedTime = (timestamp / seconds) * seconds;
+                long key = CandleKeyCodec.pack(symbolId, intervalId, alignedTime / seconds);
+                boolean created = candles.update(key, timestamp, price);
+                if (logger.isInfoEnabled() && candleLog.sample()) {
+                    logCandle(created, symbol, intervalId, alignedTime, price);
+                }
+            }
+            liveCandles.update(symbolId, timestamp, price, currentGeneration);
+            countApplied(symbolId);
+            recordLatency(ingestNanos);
+        } catch (Exception e) {
+            failedEvents.increment();
+            logger.error("Error applying event for symbol {} on partition {}: {}", symbol, index, e.getMessage(), e);
+        }
+    }
+
+    private void logCandle(boolean created, String symbol, int intervalId, long time, double price) {
+        logger.info("{} candle: symbol={}, interval={}, time={}, price={} ({} similar lines suppressed)",
+                created ? "Creating new" : "Updating existing", symbol, intervalNames[intervalId], time, price,
+                candleLog.takeSuppressed());
+    }
+
+    private void countApplied(int symbolId) {
+        long[] counts = appliedEvents;
+        if (symbolId >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(symbolId + 1, counts.length << 1));
+            appliedEvents = counts;
+        }
+        COUNTS.setOpaque(counts, symbolId, counts[symbolId] + 1);
+    }
+
+    private void recordLatency(long ingestNanos) {
+        if (ingestNanos == EventRingBuffer.UNSTAMPED) {
+            return;
+        }
+        aggregationLatency.record(System.nanoTime() - ingestNanos);
+        // Producers race for slots, so the first event of a generation need not be the oldest
+        if (ingestedSince == EventRingBuffer.UNSTAMPED || ingestNanos - ingestedSince < 0) {
+            ingestedSince = ingestNanos;
+        }
+    }
+
+    private byte[] journalSymbol(int symbolId, String symbol) {
+        if (symbolId >= journalSymbols.length) {
+            journalSymbols = Arrays.copyOf(journalSymbols, Math.max(symbolId + 1, journalSymbols.length << 1));
+        }
+        byte[] encoded = journalSymbols[symbolId];
+        if (encoded == null) {
+            encoded = symbol.getBytes(StandardCharsets.UTF_8);
+            journalSymbols[symbolId] = encoded;
+        }
+        return encoded;
+    }
+
+    private void propagatePending() {
+        if (rollup != null) {
+            rollup.propagateAll(candles);
+        }
+    }
+
+    private List<CandleEntity> toEntities(CandleStore store) {
+        List<CandleEntity> entities = new ArrayList<>(store.size());
+        store.forEach((key, firstTime, lastTime, open, high, low, close, volume) -> {
+            int intervalId = CandleKeyCodec.intervalId(key);
+            CandleEntity candle = new CandleEntity();
+            candle.setSymbol(symbolRegistry.symbolOf(CandleKeyCodec.symbolId(key)));
+            candle.setCandleInterval(intervalNames[intervalId]);
+            candle.setOpenTime(CandleKeyCodec.bucket(key) * intervalSeconds[intervalId]);
+            candle.setOpenPrice(open);
+            candle.setHighPrice(high);
+            candle.setLowPrice(low);
+            candle.setClosePrice(close);
+            candle.setVolume(volume);
+            candle.setFirstEventTime(firstTime);
+            candle.setLastEventTime(lastTime);
+            entities.add(candle);
+        });
+        return entities;
+    }
+}
@@ -0,0 +1,12 @@
+package com.trading.candle.aggregator.engine;
+
+/**
+ * Notified when the event-time watermark of a symbol passes the end of its candles. Every
+ * candle of the symbol and interval opening before {@code closedBefore} is final and will not
+ * change anymore. Called on the draining thread after the sealed candles were converted.
+ */
+@FunctionalInterface
+public interface CandleFinalizationListener {
+
+    void onFinalized(String symbol, String interval, long closedBefore);
+}
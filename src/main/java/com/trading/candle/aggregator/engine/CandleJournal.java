@@ -0,0 +1,136 @@
+package com.trading.candle.aggregator.engine;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Write-ahead journal of the engine: one {@link PartitionJournal} per partition plus a
+ * checkpoint of the candles that were drained but not yet persisted.
+ * <p>
+ * On startup a non-empty journal directory is moved aside and replayed from its checkpoint,
+ * one thread per journaled partition. The replayed events are journaled again, so the moved
+ * directory is only deleted once a checkpoint of the new journal exists. Should the process
+ * die before that, the next start discards the new journal and replays the moved one again.
+ */
+final class CandleJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(CandleJournal.class);
+
+    private final Path directory;
+    private final Path recoveryDirectory;
+    private final int segmentSize;
+    private final long syncIntervalMs;
+    private boolean recovered;
+
+    CandleJournal(Path directory, int segmentSize, long syncIntervalMs) {
+        this.directory = directory;
+        this.recoveryDirectory = directory.resolveSibling(directory.getFileName() + ".recovering");
+        this.segmentSize = segmentSize;
+        this.syncIntervalMs = syncIntervalMs;
+        try {
+            if (Files.isDirectory(recoveryDirectory)) {
+                // A previous recovery did not complete, its partial replay is discarded
+                deleteRecursively(directory);
+            } else if (hasEntries(directory)) {
+                Files.move(directory, recoveryDirectory);
+            }
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not prepare journal directory " + directory, e);
+        }
+        this.recovered = !Files.isDirectory(recoveryDirectory);
+    }
+
+    PartitionJournal open(int partition) {
+        return new PartitionJournal(directory, partition, segmentSize, syncIntervalMs);
+    }
+
+    /**
+     * Replays the journal left by the previous run and returns the candles of its checkpoint.
+     */
+    synchronized List<CandleEntity> recover(PartitionJournal.RecordHandler handler) {
+        if (recovered) {
+            return List.of();
+        }
+        JournalCheckpoint checkpoint;
+        try {
+            checkpoint = JournalCheckpoint.read(recoveryDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read journal checkpoint from " + recoveryDirectory, e);
+        }
+        List<Integer> journaled = PartitionJournal.partitions(recoveryDirectory);
+        long started = System.currentTimeMillis();
+        long replayed;
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, journaled.size()))) {
+            List<CompletableFuture<Long>> replays = new ArrayList<>(journaled.size());
+            for (int partition : journaled) {
+                replays.add(CompletableFuture.supplyAsync(() -> PartitionJournal.replay(recoveryDirectory, partition,
+                        checkpoint.positionOf(partition), handler), executor));
+            }
+            replayed = replays.stream().mapToLong(CompletableFuture::join).sum();
+        }
+        recovered = true;
+        logger.info("Recovered {} checkpointed candles and replayed {} journaled events from {} partitions in {} ms",
+                checkpoint.candles().size(), replayed, journaled.size(), System.currentTimeMillis() - started);
+        return checkpoint.candles();
+    }
+
+    /**
+     * Writes a checkpoint of the unpersisted candles covering the journals up to the given
+     * positions, then deletes the segments it makes obsolete.
+     */
+    synchronized void checkpoint(PartitionJournal[] journals, long[] positions, List<CandleEntity> unpersisted) {
+        Map<Integer, Long> checkpointPositions = new HashMap<>();
+        for (int i = 0; i < positions.length; i++) {
+            checkpointPositions.put(i, positions[i]);
+        }
+        try {
+            new JournalCheckpoint(checkpointPositions, unpersisted).write(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write journal checkpoint to " + directory, e);
+        }
+        for (int i = 0; i < journals.length; i++) {
+            journals[i].deleteBefore(positions[i]);
+        }
+        if (recovered && Files.isDirectory(recoveryDirectory)) {
+            deleteRecursively(recoveryDirectory);
+        }
+    }
+
+    private static boolean hasEntries(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return false;
+        }
+        try (Stream<Path> entries = Files.list(path)) {
+            return entries.findAny().isPresent();
+        }
+    }
+
+    private static void deleteRecursively(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> entries = Files.walk(path)) {
+            for (Path entry : entries.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(entry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete " + path, e);
+        }
+    }
+}
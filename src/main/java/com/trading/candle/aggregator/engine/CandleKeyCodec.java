@@ -0,0 +1,39 @@
+package com.trading.candle.aggregator.engine;
+
+/**
+ * Packs (symbol id, interval id, bucket) into a single non-negative long:
+ * 20 bits of symbol id, 5 bits of interval id and 38 bits of bucket index
+ * (open time divided by the interval length).
+ */
+public final class CandleKeyCodec {
+
+    public static final int MAX_SYMBOLS = 1 << 20;
+    public static final int MAX_INTERVALS = 1 << 5;
+
+    private static final int BUCKET_BITS = 38;
+    private static final int INTERVAL_BITS = 5;
+    private static final long BUCKET_MASK = (1L << BUCKET_BITS) - 1;
+    private static final long INTERVAL_MASK = (1L << INTERVAL_BITS) - 1;
+    private static final long SYMBOL_MASK = MAX_SYMBOLS - 1;
+
+    private CandleKeyCodec() {
+    }
+
+    public static long pack(int symbolId, int intervalId, long bucket) {
+        return ((long) symbolId << (INTERVAL_BITS + BUCKET_BITS))
+                | ((long) intervalId << BUCKET_BITS)
+                | (bucket & BUCKET_MASK);
+    }
+
+    public static int symbolId(long key) {
+        return (int) ((key >>> (INTERVAL_BITS + BUCKET_BITS)) & SYMBOL_MASK);
+    }
+
+    public static int intervalId(long key) {
+        return (int) ((key >>> BUCKET_BITS) & INTERVAL_MASK);
+    }
+
+    public static long bucket(long key) {
+        return key & BUCKET_MASK;
+    }
+}
@@ -0,0 +1,188 @@
+package com.trading.candle.aggregator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from packed candle keys to OHLCV values held in parallel
+ * primitive arrays. Not thread-safe: a store is owned by a single partition thread.
+ * <p>
+ * The event times of the first and last tick are kept per candle, so a late tick only replaces
+ * the open if it is earlier than every tick seen, and the close if it is not older than the last.
+ */
+final class CandleStore {
+
+    private static final long EMPTY = -1L;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private double[] open;
+    private double[] high;
+    private double[] low;
+    private double[] close;
+    private long[] volume;
+    private long[] firstTime;
+    private long[] lastTime;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    @FunctionalInterface
+    interface CandleVisitor {
+        void visit(long key, long firstTime, long lastTime, double open, double high, double low, double close,
+                   long volume);
+    }
+
+    CandleStore(int expectedCandles) {
+        allocate(tableSizeFor(expectedCandles));
+    }
+
+    /**
+     * Applies one tick at the given event time to the candle, creating it when absent. Returns
+     * true if the candle is new.
+     */
+    boolean update(long key, long timestamp, double price) {
+        int slot = findSlot(key);
+        if (keys[slot] == key) {
+            if (timestamp < firstTime[slot]) {
+                open[slot] = price;
+                firstTime[slot] = timestamp;
+            }
+            high[slot] = Math.max(high[slot], price);
+            low[slot] = Math.min(low[slot], price);
+            if (timestamp >= lastTime[slot]) {
+                close[slot] = price;
+                lastTime[slot] = timestamp;
+            }
+            volume[slot]++;
+            return false;
+        }
+        insert(slot, key, timestamp, timestamp, price, price, price, price, 1);
+        return true;
+    }
+
+    /**
+     * Merges a partial candle whose ticks span the given event times into the stored one,
+     * e.g. a finished finer candle.
+     */
+    void merge(long key, long first, long last, double o, double h, double l, double c, long v) {
+        int slot = findSlot(key);
+        if (keys[slot] == key) {
+            if (first < firstTime[slot]) {
+                open[slot] = o;
+                firstTime[slot] = first;
+            }
+            high[slot] = Math.max(high[slot], h);
+            low[slot] = Math.min(low[slot], l);
+            if (last >= lastTime[slot]) {
+                close[slot] = c;
+                lastTime[slot] = last;
+            }
+            volume[slot] += v;
+            return;
+        }
+        insert(slot, key, first, last, o, h, l, c, v);
+    }
+
+    void forEach(CandleVisitor visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                visitor.visit(keys[slot], firstTime[slot], lastTime[slot], open[slot], high[slot], low[slot],
+                        close[slot], volume[slot]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+    }
+
+    private void insert(int slot, long key, long first, long last, double o, double h, double l, double c, long v) {
+        keys[slot] = key;
+        firstTime[slot] = first;
+        lastTime[slot] = last;
+        open[slot] = o;
+        high[slot] = h;
+        low[slot] = l;
+        close[slot] = c;
+        volume[slot] = v;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private int findSlot(long key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        double[] oldOpen = open;
+        double[] oldHigh = high;
+        double[] oldLow = low;
+        double[] oldClose = close;
+        long[] oldVolume = volume;
+        long[] oldFirstTime = firstTime;
+        long[] oldLastTime = lastTime;
+
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                open[slot] = oldOpen[i];
+                high[slot] = oldHigh[i];
+                low[slot] = oldLow[i];
+                close[slot] = oldClose[i];
+                volume[slot] = oldVolume[i];
+                firstTime[slot] = oldFirstTime[i];
+                lastTime[slot] = oldLastTime[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        open = new double[capacity];
+        high = new double[capacity];
+        low = new double[capacity];
+        close = new double[capacity];
+        volume = new long[capacity];
+        firstTime = new long[capacity];
+        lastTime = new long[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * 0.6);
+        size = 0;
+    }
+
+    private static int tableSizeFor(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, (int) (expected / 0.6)) - 1) << 1;
+        return Math.max(MIN_CAPACITY, capacity);
+    }
+
+    // Murmur3 finalizer, spreads the packed bucket bits across the table
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
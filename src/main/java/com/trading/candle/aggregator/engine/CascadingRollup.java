@@ -0,0 +1,143 @@
+package com.trading.candle.aggregator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical aggregation for one partition. A tick touches only the base candle; the part of
+ * a candle not yet handed to its coarser intervals is kept per symbol and level, and merged
+ * upwards when the candle rolls over or when the partition is drained or snapshotted. Per-event
+ * work is therefore independent of the number of configured intervals. Candles are written to
+ * whichever store generation the caller passes in.
+ */
+final class CascadingRollup {
+
+    private final IntervalHierarchy hierarchy;
+    private Pending[] pendingBySymbol = new Pending[16];
+
+    CascadingRollup(IntervalHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
+    int baseInterval() {
+        return hierarchy.base();
+    }
+
+    /**
+     * Returns true if the tick opened a new base candle.
+     */
+    boolean onTick(CandleStore store, int symbolId, long timestamp, double price) {
+        int base = hierarchy.base();
+        long seconds = hierarchy.seconds(base);
+        long bucket = timestamp / seconds;
+
+        Pending pending = pendingFor(symbolId);
+        if (pending.active[base] && pending.bucket[base] != bucket) {
+            // The previous base candle is finished
+            propagate(store, symbolId, pending, base);
+        }
+        pending.add(base, bucket, timestamp, timestamp, price, price, price, price, 1);
+        return store.update(CandleKeyCodec.pack(symbolId, base, bucket), timestamp, price);
+    }
+
+    /**
+     * Pushes every pending change up to the coarsest intervals.
+     */
+    void propagateAll(CandleStore store) {
+        for (int symbolId = 0; symbolId < pendingBySymbol.length; symbolId++) {
+            Pending pending = pendingBySymbol[symbolId];
+            if (pending == null) {
+                continue;
+            }
+            for (int level : hierarchy.ascending()) {
+                propagate(store, symbolId, pending, level);
+            }
+        }
+    }
+
+    private void propagate(CandleStore store, int symbolId, Pending pending, int level) {
+        if (!pending.active[level]) {
+            return;
+        }
+        long openTime = pending.bucket[level] * hierarchy.seconds(level);
+        for (int child : hierarchy.children(level)) {
+            long childBucket = openTime / hierarchy.seconds(child);
+            if (pending.active[child] && pending.bucket[child] != childBucket) {
+                propagate(store, symbolId, pending, child);
+            }
+            // A late part of an earlier candle only moves the child's open and close by event time
+            pending.add(child, childBucket, pending.firstTime[level], pending.lastTime[level], pending.open[level],
+                    pending.high[level], pending.low[level], pending.close[level], pending.volume[level]);
+            store.merge(CandleKeyCodec.pack(symbolId, child, childBucket), pending.firstTime[level],
+                    pending.lastTime[level], pending.open[level], pending.high[level], pending.low[level],
+                    pending.close[level], pending.volume[level]);
+        }
+        pending.active[level] = false;
+    }
+
+    private Pending pendingFor(int symbolId) {
+        if (symbolId >= pendingBySymbol.length) {
+            pendingBySymbol = Arrays.copyOf(pendingBySymbol, Math.max(symbolId + 1, pendingBySymbol.length << 1));
+        }
+        Pending pending = pendingBySymbol[symbolId];
+        if (pending == null) {
+            pending = new Pending(hierarchy.size());
+            pendingBySymbol[symbolId] = pending;
+        }
+        return pending;
+    }
+
+    /**
+     * Per-symbol OHLCV not yet merged into the coarser intervals, one slot per level, with the
+     * event times of its first and last tick.
+     */
+    private static final class Pending {
+        final boolean[] active;
+        final long[] bucket;
+        final long[] firstTime;
+        final long[] lastTime;
+        final double[] open;
+        final double[] high;
+        final double[] low;
+        final double[] close;
+        final long[] volume;
+
+        Pending(int levels) {
+            active = new boolean[levels];
+            bucket = new long[levels];
+            firstTime = new long[levels];
+            lastTime = new long[levels];
+            open = new double[levels];
+            high = new double[levels];
+            low = new double[levels];
+            close = new double[levels];
+            volume = new long[levels];
+        }
+
+        void add(int level, long candleBucket, long first, long last, double o, double h, double l, double c,
+                 long v) {
+            if (!active[level]) {
+                active[level] = true;
+                bucket[level] = candleBucket;
+                firstTime[level] = first;
+                lastTime[level] = last;
+                open[level] = o;
+                high[level] = h;
+                low[level] = l;
+                close[level] = c;
+                volume[level] = v;
+                return;
+            }
+            if (first < firstTime[level]) {
+                open[level] = o;
+                firstTime[level] = first;
+            }
+            high[level] = Math.max(high[level], h);
+            low[level] = Math.min(low[level], l);
+            if (last >= lastTime[level]) {
+                close[level] = c;
+                lastTime[level] = last;
+            }
+            volume[level] += v;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.trading.candle.aggregator.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated multi-producer, single-consumer ring of event slots. Producers claim a
+ * sequence with a CAS, fill the slot in place and publish it; the partition thread drains
+ * published slots in batches. Nothing is allocated per event.
+ * <p>
+ * Each slot carries the {@link System#nanoTime()} at which its event was published, so the
+ * consumer can measure how long the event took to get through the engine.
+ */
+final class EventRingBuffer {
+
+    private static final long BLOCKED_PARK_NANOS = 1_000;
+    // Ingest stamp of events that did not arrive live, e.g. replayed from the journal
+    static final long UNSTAMPED = Long.MIN_VALUE;
+
+    @FunctionalInterface
+    interface EventHandler {
+        void onEvent(String symbol, double bid, double ask, long timestamp, long ingestNanos);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+
+    private final String[] symbols;
+    private final double[] bids;
+    private final double[] asks;
+    private final long[] timestamps;
+    private final long[] ingestNanos;
+    private final AtomicLongArray published;
+
+    // Next sequence to be claimed by a producer / read by the consumer
+    private final AtomicLong claimSequence = new AtomicLong();
+    private final AtomicLong consumeSequence = new AtomicLong();
+
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder droppedNewest = new LongAdder();
+    private final LongAdder blockedPublishes = new LongAdder();
+
+    EventRingBuffer(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer size must be a power of two, got: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.symbols = new String[capacity];
+        this.bids = new double[capacity];
+        this.asks = new double[capacity];
+        this.timestamps = new long[capacity];
+        this.ingestNanos = new long[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1L);
+        }
+    }
+
+    /**
+     * Returns false if the event was dropped because the ring was full.
+     */
+    boolean publish(String symbol, double bid, double ask, long timestamp) {
+        return publish(symbol, bid, ask, timestamp, System.nanoTime(), overflowPolicy);
+    }
+
+    /**
+     * Publishes with an explicit ingest stamp and overflow policy, e.g. {@link #UNSTAMPED} and
+     * {@link OverflowPolicy#BLOCK} for replayed events that must not be lost.
+     */
+    boolean publish(String symbol, double bid, double ask, long timestamp, long ingestNanos,
+                    OverflowPolicy overflowPolicy) {
+        long sequence;
+        boolean blocked = false;
+        while (true) {
+            sequence = claimSequence.get();
+            long consumed = consumeSequence.get();
+            if (sequence - consumed >= capacity) {
+                switch (overflowPolicy) {
+                    case DROP_NEWEST -> {
+                        droppedNewest.increment();
+                        return false;
+                    }
+                    case DROP_OLDEST -> dropOldest(consumed);
+                    case BLOCK -> {
+                        if (!blocked) {
+                            blocked = true;
+                            blockedPublishes.increment();
+                        }
+                        LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+                    }
+                }
+                continue;
+            }
+            if (claimSequence.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        int slot = (int) sequence & mask;
+        symbols[slot] = symbol;
+        bids[slot] = bid;
+        asks[slot] = ask;
+        timestamps[slot] = timestamp;
+        this.ingestNanos[slot] = ingestNanos;
+        published.set(slot, sequence);
+        return true;
+    }
+
+    /**
+     * Hands up to maxBatch published events to the handler. Must only be called by the consumer.
+     */
+    int drain(EventHandler handler, int maxBatch) {
+        boolean contended = overflowPolicy == OverflowPolicy.DROP_OLDEST;
+        long next = consumeSequence.get();
+        int processed = 0;
+        while (processed < maxBatch) {
+            int slot = (int) next & mask;
+            if (published.get(slot) != next) {
+                break;
+            }
+            String symbol = symbols[slot];
+            double bid = bids[slot];
+            double ask = asks[slot];
+            long timestamp = timestamps[slot];
+            long ingested = ingestNanos[slot];
+            if (contended && !consumeSequence.compareAndSet(next, next + 1)) {
+                // A producer dropped this slot while we were reading it
+                next = consumeSequence.get();
+                continue;
+            }
+            handler.onEvent(symbol, bid, ask, timestamp, ingested);
+            next++;
+            processed++;
+        }
+        if (!contended && processed > 0) {
+            consumeSequence.lazySet(next);
+        }
+        return processed;
+    }
+
+    /**
+     * Drains until every event claimed before the call has been consumed.
+     */
+    void drainAll(EventHandler handler, int maxBatch) {
+        long target = claimSequence.get();
+        while (consumeSequence.get() < target) {
+            if (drain(handler, maxBatch) == 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return consumeSequence.get() >= claimSequence.get();
+    }
+
+    IngestionStats stats(int partition, long failedEvents, long lateEvents) {
+        long consumed = consumeSequence.get();
+        long claimed = claimSequence.get();
+        return new IngestionStats(partition, capacity, claimed, consumed, Math.max(0, claimed - consumed),
+                droppedOldest.sum(), droppedNewest.sum(), blockedPublishes.sum(), failedEvents, lateEvents);
+    }
+
+    private void dropOldest(long consumed) {
+        // Only discard a fully published slot, so a slow producer is never overwritten mid-write
+        if (published.get((int) consumed & mask) == consumed
+                && consumeSequence.compareAndSet(consumed, consumed + 1)) {
+            droppedOldest.increment();
+        } else {
+            Thread.onSpinWait();
+        }
+    }
+}
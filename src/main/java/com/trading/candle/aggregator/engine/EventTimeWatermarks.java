@@ -0,0 +1,138 @@
+package com.trading.candle.aggregator.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-symbol event-time watermarks of one partition. The watermark of a symbol trails the
+ * newest event time seen for it by the allowed lateness; a candle is finalized once the
+ * watermark reaches its end. Late events whose finest candle is still open are applied in
+ * place, events whose finest candle was already finalized are rejected.
+ * <p>
+ * A symbol that stops receiving events would otherwise never finalize its last candles, so
+ * {@link #advanceIdle} lets its event time move on with processing time: the newest event time
+ * plus the time since that event was published.
+ * <p>
+ * Finalizations are recorded as packed keys whose bucket is the first candle that is still
+ * open, i.e. every candle of the symbol and interval before it is final.
+ */
+final class EventTimeWatermarks {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final long[] intervalSeconds;
+    private final int finest;
+    private final long allowedLateness;
+
+    private long[] maxEventTime = new long[0];
+    // Publish stamp of the newest event, unstamped until the idle clock of a replayed symbol starts
+    private long[] maxEventNanos = new long[0];
+    // Per symbol and interval: open time before which every candle is final
+    private long[][] closedBefore = new long[0][];
+    private long[] finalized = new long[64];
+    private int finalizedCount;
+
+    EventTimeWatermarks(long[] intervalSeconds, long allowedLateness) {
+        if (allowedLateness < 0) {
+            throw new IllegalArgumentException("Allowed lateness must not be negative, got: " + allowedLateness);
+        }
+        this.intervalSeconds = intervalSeconds.clone();
+        this.allowedLateness = allowedLateness;
+        int finestInterval = 0;
+        for (int i = 1; i < intervalSeconds.length; i++) {
+            if (intervalSeconds[i] < intervalSeconds[finestInterval]) {
+                finestInterval = i;
+            }
+        }
+        this.finest = finestInterval;
+    }
+
+    /**
+     * Advances the watermark of the symbol and returns false if the event falls into a candle
+     * that is already finalized. {@code ingestNanos} is the publish stamp of the event, or
+     * {@link EventRingBuffer#UNSTAMPED} for a replayed one.
+     */
+    boolean admit(int symbolId, long timestamp, long ingestNanos) {
+        ensureCapacity(symbolId);
+        long[] closed = closedBefore[symbolId];
+        if (timestamp < closed[finest]) {
+            return false;
+        }
+        if (timestamp <= maxEventTime[symbolId]) {
+            return true;
+        }
+        maxEventTime[symbolId] = timestamp;
+        maxEventNanos[symbolId] = ingestNanos;
+        advance(symbolId, timestamp - allowedLateness);
+        return true;
+    }
+
+    /**
+     * Advances the watermark of every symbol by the processing time passed since its newest
+     * event was published, so idle symbols finalize their candles too.
+     */
+    void advanceIdle(long nowNanos) {
+        for (int symbolId = 0; symbolId < maxEventTime.length; symbolId++) {
+            if (maxEventTime[symbolId] == NONE) {
+                continue;
+            }
+            if (maxEventNanos[symbolId] == EventRingBuffer.UNSTAMPED) {
+                maxEventNanos[symbolId] = nowNanos;
+                continue;
+            }
+            long idleSeconds = TimeUnit.NANOSECONDS.toSeconds(nowNanos - maxEventNanos[symbolId]);
+            if (idleSeconds > 0) {
+                advance(symbolId, maxEventTime[symbolId] + idleSeconds - allowedLateness);
+            }
+        }
+    }
+
+    private void advance(int symbolId, long watermark) {
+        long[] closed = closedBefore[symbolId];
+        if (closed[finest] != NONE && watermark < closed[finest] + intervalSeconds[finest]) {
+            // Coarser candles cannot close before the finest one does
+            return;
+        }
+        for (int intervalId = 0; intervalId < intervalSeconds.length; intervalId++) {
+            long seconds = intervalSeconds[intervalId];
+            long boundary = Math.floorDiv(watermark, seconds) * seconds;
+            if (boundary > closed[intervalId]) {
+                closed[intervalId] = boundary;
+                record(CandleKeyCodec.pack(symbolId, intervalId, boundary / seconds));
+            }
+        }
+    }
+
+    /**
+     * Hands over the finalizations recorded since the previous call.
+     */
+    long[] takeFinalized() {
+        long[] taken = Arrays.copyOf(finalized, finalizedCount);
+        finalizedCount = 0;
+        return taken;
+    }
+
+    private void record(long key) {
+        if (finalizedCount == finalized.length) {
+            finalized = Arrays.copyOf(finalized, finalizedCount << 1);
+        }
+        finalized[finalizedCount++] = key;
+    }
+
+    private void ensureCapacity(int symbolId) {
+        if (symbolId < maxEventTime.length) {
+            return;
+        }
+        int oldLength = maxEventTime.length;
+        int newLength = Math.max(symbolId + 1, Math.max(16, oldLength << 1));
+        maxEventTime = Arrays.copyOf(maxEventTime, newLength);
+        maxEventNanos = Arrays.copyOf(maxEventNanos, newLength);
+        closedBefore = Arrays.copyOf(closedBefore, newLength);
+        for (int i = oldLength; i < newLength; i++) {
+            maxEventTime[i] = NONE;
+            maxEventNanos[i] = EventRingBuffer.UNSTAMPED;
+            closedBefore[i] = new long[intervalSeconds.length];
+            Arrays.fill(closedBefore[i], NONE);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.trading.candle.aggregator.engine;
+
+public record IngestionStats(
+        int partition,
+        int capacity,
+        long producerSequence,
+        long consumerSequence,
+        long lag,
+        long droppedOldest,
+        long droppedNewest,
+        long blockedPublishes,
+        long failedEvents,
+        long lateEvents
+) {}
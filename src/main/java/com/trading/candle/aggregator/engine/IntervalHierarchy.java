@@ -0,0 +1,88 @@
+package com.trading.candle.aggregator.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Roll-up tree over the configured intervals. Every interval except the finest one is fed by
+ * the coarsest configured interval that evenly divides it, e.g. 1m feeds both 3m and 5m.
+ */
+final class IntervalHierarchy {
+
+    private static final int[] NO_CHILDREN = new int[0];
+
+    private final long[] seconds;
+    private final int base;
+    private final int[][] children;
+    private final int[] ascending;
+
+    IntervalHierarchy(String[] names, long[] seconds) {
+        this.seconds = seconds.clone();
+        this.ascending = IntStream.range(0, seconds.length)
+                .boxed()
+                .sorted(Comparator.comparingLong(i -> seconds[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.base = ascending[0];
+
+        List<List<Integer>> childLists = new ArrayList<>();
+        for (int i = 0; i < seconds.length; i++) {
+            childLists.add(new ArrayList<>());
+        }
+        for (int i = 0; i < seconds.length; i++) {
+            if (i == base) {
+                continue;
+            }
+            int source = -1;
+            for (int j : ascending) {
+                if (seconds[j] < seconds[i] && seconds[i] % seconds[j] == 0) {
+                    source = j;
+                }
+            }
+            if (source < 0) {
+                throw new IllegalArgumentException("Interval " + names[i]
+                        + " is not a multiple of any finer configured interval, cannot roll it up from "
+                        + names[base]);
+            }
+            childLists.get(source).add(i);
+        }
+
+        this.children = new int[seconds.length][];
+        for (int i = 0; i < seconds.length; i++) {
+            children[i] = childLists.get(i).isEmpty()
+                    ? NO_CHILDREN
+                    : childLists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    int base() {
+        return base;
+    }
+
+    long seconds(int interval) {
+        return seconds[interval];
+    }
+
+    int[] children(int interval) {
+        return children[interval];
+    }
+
+    /**
+     * Interval ids from finest to coarsest, so one pass pushes pending data all the way up.
+     */
+    int[] ascending() {
+        return ascending;
+    }
+
+    int size() {
+        return seconds.length;
+    }
+
+    @Override
+    public String toString() {
+        return "IntervalHierarchy{base=" + base + ", children=" + Arrays.deepToString(children) + "}";
+    }
+}
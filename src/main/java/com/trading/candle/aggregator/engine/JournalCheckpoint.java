@@ -0,0 +1,108 @@
+package com.trading.candle.aggregator.engine;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact image of the candle state not yet persisted, together with the journal position of
+ * every partition it covers. Written to a temporary file, forced and atomically renamed, so a
+ * reader sees either the previous or the new checkpoint.
+ */
+record JournalCheckpoint(Map<Integer, Long> positions, List<CandleEntity> candles) {
+
+    static final String FILE_NAME = "checkpoint.bin";
+
+    private static final int MAGIC = 0x43444c4b;
+    private static final int VERSION = 2;
+
+    static JournalCheckpoint empty() {
+        return new JournalCheckpoint(Map.of(), List.of());
+    }
+
+    long positionOf(int partition) {
+        return positions.getOrDefault(partition, 0L);
+    }
+
+    void write(Path directory) throws IOException {
+        Path temporary = directory.resolve(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream stream = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(positions.size());
+            for (Map.Entry<Integer, Long> position : positions.entrySet()) {
+                out.writeInt(position.getKey());
+                out.writeLong(position.getValue());
+            }
+            out.writeInt(candles.size());
+            for (CandleEntity candle : candles) {
+                out.writeUTF(candle.getSymbol());
+                out.writeUTF(candle.getCandleInterval());
+                out.writeLong(candle.getOpenTime());
+                out.writeDouble(candle.getOpenPrice());
+                out.writeDouble(candle.getHighPrice());
+                out.writeDouble(candle.getLowPrice());
+                out.writeDouble(candle.getClosePrice());
+                out.writeLong(candle.getVolume());
+                out.writeLong(candle.getFirstEventTime());
+                out.writeLong(candle.getLastEventTime());
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(FILE_NAME),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static JournalCheckpoint read(Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported journal checkpoint " + file);
+            }
+            int partitionCount = in.readInt();
+            Map<Integer, Long> positions = new HashMap<>();
+            for (int i = 0; i < partitionCount; i++) {
+                positions.put(in.readInt(), in.readLong());
+            }
+            int candleCount = in.readInt();
+            List<CandleEntity> candles = new ArrayList<>(candleCount);
+            for (int i = 0; i < candleCount; i++) {
+                CandleEntity candle = new CandleEntity();
+                candle.setSymbol(in.readUTF());
+                candle.setCandleInterval(in.readUTF());
+                candle.setOpenTime(in.readLong());
+                candle.setOpenPrice(in.readDouble());
+                candle.setHighPrice(in.readDouble());
+                candle.setLowPrice(in.readDouble());
+                candle.setClosePrice(in.readDouble());
+                candle.setVolume(in.readLong());
+                candle.setFirstEventTime(in.readLong());
+                candle.setLastEventTime(in.readLong());
+                candles.add(candle);
+            }
+            return new JournalCheckpoint(positions, candles);
+        }
+    }
+}
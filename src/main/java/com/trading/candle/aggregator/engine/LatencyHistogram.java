@@ -0,0 +1,106 @@
+package com.trading.candle.aggregator.engine;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.IntervalHistogramProvider;
+import org.HdrHistogram.Recorder;
+import org.HdrHistogram.SingleWriterRecorder;
+import org.HdrHistogram.ValueRecorder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution over a sliding window. Values are recorded into an HdrHistogram
+ * recorder, which is wait-free and allocation-free for writers. The window is a ring of
+ * slices. {@link #rotate} folds the recorded values into the current slice and moves on to the
+ * next one, clearing it, so a snapshot covers between {@code slices - 1} and {@code slices}
+ * rotation periods.
+ * <p>
+ * Values above one hour are recorded as one hour, so the histogram never has to resize on
+ * the recording path.
+ */
+public final class LatencyHistogram {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final ValueRecorder recorder;
+    private final IntervalHistogramProvider<Histogram> intervals;
+    private final Histogram[] slices;
+    private final Histogram interval = newHistogram();
+    private int current;
+
+    private <R extends ValueRecorder & IntervalHistogramProvider<Histogram>> LatencyHistogram(R recorder, int slices) {
+        if (slices <= 0) {
+            throw new IllegalArgumentException("A latency window needs at least one slice, got: " + slices);
+        }
+        this.recorder = recorder;
+        this.intervals = recorder;
+        this.slices = new Histogram[slices];
+        for (int i = 0; i < slices; i++) {
+            this.slices[i] = newHistogram();
+        }
+    }
+
+    /**
+     * A histogram recorded into by a single thread at a time.
+     */
+    public static LatencyHistogram singleWriter(int slices) {
+        return new LatencyHistogram(new SingleWriterRecorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS), slices);
+    }
+
+    /**
+     * A histogram any number of threads may record into concurrently.
+     */
+    public static LatencyHistogram concurrent(int slices) {
+        return new LatencyHistogram(new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS), slices);
+    }
+
+    public void record(long nanos) {
+        recorder.recordValue(Math.min(Math.max(nanos, 0), HIGHEST_TRACKABLE_NANOS));
+    }
+
+    /**
+     * Starts a new slice, dropping the oldest one from the window.
+     */
+    public synchronized void rotate() {
+        collect();
+        current = (current + 1) % slices.length;
+        slices[current].reset();
+    }
+
+    public LatencySnapshot snapshot() {
+        return snapshot(this);
+    }
+
+    /**
+     * Combines the windows of several histograms, e.g. one per writing thread.
+     */
+    public static LatencySnapshot snapshot(LatencyHistogram... histograms) {
+        Histogram merged = newHistogram();
+        for (LatencyHistogram histogram : histograms) {
+            histogram.addWindowTo(merged);
+        }
+        if (merged.getTotalCount() == 0) {
+            return new LatencySnapshot(0, 0, 0, 0, 0);
+        }
+        return new LatencySnapshot(merged.getTotalCount(), merged.getValueAtPercentile(50.0),
+                merged.getValueAtPercentile(99.0), merged.getValueAtPercentile(99.9), merged.getMaxValue());
+    }
+
+    private synchronized void addWindowTo(Histogram target) {
+        collect();
+        for (Histogram slice : slices) {
+            target.add(slice);
+        }
+    }
+
+    // Callers hold the monitor
+    private void collect() {
+        intervals.getIntervalHistogramInto(interval);
+        slices[current].add(interval);
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    }
+}
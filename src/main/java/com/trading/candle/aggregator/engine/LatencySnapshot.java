@@ -0,0 +1,12 @@
+package com.trading.candle.aggregator.engine;
+
+/**
+ * Latency percentiles over the window of a {@link LatencyHistogram}, in nanoseconds.
+ */
+public record LatencySnapshot(
+        long count,
+        long p50Nanos,
+        long p99Nanos,
+        long p999Nanos,
+        long maxNanos
+) {}
@@ -0,0 +1,15 @@
+package com.trading.candle.aggregator.engine;
+
+/**
+ * Part of a candle applied since the last drain. {@code generation} is the number of drains
+ * that happened before it, see {@link PartitionedAggregationEngine#drainedEpoch()}.
+ */
+public record LiveCandle(
+        long openTime,
+        double open,
+        double high,
+        double low,
+        double close,
+        long volume,
+        long generation
+) {}
@@ -0,0 +1,263 @@
+package com.trading.candle.aggregator.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Newest candle of every symbol and interval of one partition, as far as it changed in the
+ * current store generation. Written only by the partition thread, read by any thread without
+ * locking: each slot carries a sequence that is odd while the slot is being written, and a
+ * reader retries until it saw the same even sequence before and after copying the slot.
+ * <p>
+ * Each slot is stamped with the generation it belongs to. Its values are the part of the
+ * candle that the generation will hand over when sealed, so a reader can add them to
+ * everything drained before that generation.
+ * <p>
+ * A tick only updates the candle of the finest interval, the root. The slot of every coarser
+ * interval it divides holds the finished root candles of the coarser candle, merged in when the
+ * root candle rolls over, and a read adds the current root candle to them. The root's sequence
+ * guards its coarser slots too, so per-tick work does not grow with the number of intervals.
+ * Intervals that no finer interval divides are roots of their own.
+ */
+final class LiveCandleTable {
+
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long NONE = -1L;
+
+    private final long[] intervalSeconds;
+    private final int intervals;
+    // Root each interval is derived from, itself for a root
+    private final int[] source;
+    private final int[] roots;
+    private final int[][] derived;
+    private volatile Slots slots;
+
+    LiveCandleTable(long[] intervalSeconds) {
+        this.intervalSeconds = intervalSeconds.clone();
+        this.intervals = intervalSeconds.length;
+        this.source = new int[intervals];
+        int[] ascending = IntStream.range(0, intervals)
+                .boxed()
+                .sorted(Comparator.comparingLong(i -> intervalSeconds[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        List<Integer> rootList = new ArrayList<>();
+        List<List<Integer>> derivedLists = new ArrayList<>();
+        for (int interval : ascending) {
+            source[interval] = interval;
+            for (int i = 0; i < rootList.size(); i++) {
+                if (intervalSeconds[interval] % intervalSeconds[rootList.get(i)] == 0) {
+                    source[interval] = rootList.get(i);
+                    derivedLists.get(i).add(interval);
+                    break;
+                }
+            }
+            if (source[interval] == interval) {
+                rootList.add(interval);
+                derivedLists.add(new ArrayList<>());
+            }
+        }
+        this.roots = rootList.stream().mapToInt(Integer::intValue).toArray();
+        this.derived = new int[intervals][];
+        Arrays.fill(derived, new int[0]);
+        for (int i = 0; i < roots.length; i++) {
+            derived[roots[i]] = derivedLists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.slots = new Slots(16 * intervals);
+    }
+
+    /**
+     * Number of intervals a tick writes to.
+     */
+    int rootCount() {
+        return roots.length;
+    }
+
+    /**
+     * Applies a tick to the live candles of the symbol. Partition thread only.
+     */
+    void update(int symbolId, long timestamp, double price, long generation) {
+        int first = symbolId * intervals;
+        Slots current = slots;
+        if (first + intervals > current.size()) {
+            current = grow(first + intervals);
+        }
+        for (int root : roots) {
+            update(current, first, root, timestamp, price, generation);
+        }
+    }
+
+    private void update(Slots current, int first, int root, long timestamp, double price, long generation) {
+        int slot = first + root;
+        long bucket = timestamp / intervalSeconds[root];
+        boolean fresh = current.generation[slot] != generation;
+        boolean late = !fresh && bucket < current.bucket[slot];
+        if (late && derived[root].length == 0) {
+            // A late tick for an older candle, it becomes visible once drained
+            return;
+        }
+
+        long sequence = current.sequence[slot];
+        SEQUENCE.setOpaque(current.sequence, slot, sequence + 1);
+        VarHandle.storeStoreFence();
+        if (late) {
+            // Only the coarser candles the root candle is still part of show it before the drain
+            long rootOpenTime = current.bucket[slot] * intervalSeconds[root];
+            for (int interval : derived[root]) {
+                long seconds = intervalSeconds[interval];
+                if (timestamp / seconds == rootOpenTime / seconds) {
+                    addLateTick(current, first + interval, rootOpenTime / seconds, price, generation);
+                }
+            }
+        } else if (fresh || bucket > current.bucket[slot]) {
+            if (!fresh) {
+                long rootOpenTime = current.bucket[slot] * intervalSeconds[root];
+                for (int interval : derived[root]) {
+                    rollUp(current, slot, first + interval, rootOpenTime / intervalSeconds[interval]);
+                }
+            }
+            current.generation[slot] = generation;
+            current.bucket[slot] = bucket;
+            current.open[slot] = price;
+            current.high[slot] = price;
+            current.low[slot] = price;
+            current.close[slot] = price;
+            current.volume[slot] = 1;
+        } else {
+            current.high[slot] = Math.max(current.high[slot], price);
+            current.low[slot] = Math.min(current.low[slot], price);
+            current.close[slot] = price;
+            current.volume[slot]++;
+        }
+        SEQUENCE.setRelease(current.sequence, slot, sequence + 2);
+    }
+
+    // Merges the finished root candle into the coarser candle it belongs to
+    private static void rollUp(Slots current, int rootSlot, int slot, long bucket) {
+        if (current.generation[slot] != current.generation[rootSlot] || current.bucket[slot] != bucket) {
+            current.generation[slot] = current.generation[rootSlot];
+            current.bucket[slot] = bucket;
+            current.open[slot] = current.open[rootSlot];
+            current.high[slot] = current.high[rootSlot];
+            current.low[slot] = current.low[rootSlot];
+            current.close[slot] = current.close[rootSlot];
+            current.volume[slot] = current.volume[rootSlot];
+            return;
+        }
+        current.high[slot] = Math.max(current.high[slot], current.high[rootSlot]);
+        current.low[slot] = Math.min(current.low[slot], current.low[rootSlot]);
+        current.close[slot] = current.close[rootSlot];
+        current.volume[slot] += current.volume[rootSlot];
+    }
+
+    // The close of a coarser candle always comes from the current root candle, so it is left alone
+    private static void addLateTick(Slots current, int slot, long bucket, double price, long generation) {
+        if (current.generation[slot] != generation || current.bucket[slot] != bucket) {
+            current.generation[slot] = generation;
+            current.bucket[slot] = bucket;
+            current.open[slot] = price;
+            current.high[slot] = price;
+            current.low[slot] = price;
+            current.close[slot] = price;
+            current.volume[slot] = 1;
+            return;
+        }
+        current.high[slot] = Math.max(current.high[slot], price);
+        current.low[slot] = Math.min(current.low[slot], price);
+        current.volume[slot]++;
+    }
+
+    /**
+     * Returns a consistent copy of the live candle of the series, or null if it has none.
+     */
+    LiveCandle read(int symbolId, int intervalId) {
+        int first = symbolId * intervals;
+        Slots current = slots;
+        if (first + intervals > current.size()) {
+            return null;
+        }
+        int rootSlot = first + source[intervalId];
+        int slot = first + intervalId;
+        while (true) {
+            long sequence = (long) SEQUENCE.getAcquire(current.sequence, rootSlot);
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long generation = current.generation[rootSlot];
+            long rootBucket = current.bucket[rootSlot];
+            double open = current.open[rootSlot];
+            double high = current.high[rootSlot];
+            double low = current.low[rootSlot];
+            double close = current.close[rootSlot];
+            long volume = current.volume[rootSlot];
+            long rolledGeneration = current.generation[slot];
+            long rolledBucket = current.bucket[slot];
+            double rolledOpen = current.open[slot];
+            double rolledHigh = current.high[slot];
+            double rolledLow = current.low[slot];
+            long rolledVolume = current.volume[slot];
+            VarHandle.loadLoadFence();
+            if ((long) SEQUENCE.getOpaque(current.sequence, rootSlot) != sequence) {
+                continue;
+            }
+            if (generation == NONE) {
+                return null;
+            }
+            long seconds = intervalSeconds[intervalId];
+            long bucket = rootBucket * intervalSeconds[source[intervalId]] / seconds;
+            if (slot != rootSlot && rolledGeneration == generation && rolledBucket == bucket) {
+                return new LiveCandle(bucket * seconds, rolledOpen, Math.max(high, rolledHigh),
+                        Math.min(low, rolledLow), close, volume + rolledVolume, generation);
+            }
+            return new LiveCandle(bucket * seconds, open, high, low, close, volume, generation);
+        }
+    }
+
+    // Readers of the old slots may still see a value from before the copy, never a torn one
+    private Slots grow(int size) {
+        Slots grown = new Slots(Math.max(size, slots.size() << 1));
+        Slots old = slots;
+        System.arraycopy(old.generation, 0, grown.generation, 0, old.size());
+        System.arraycopy(old.bucket, 0, grown.bucket, 0, old.size());
+        System.arraycopy(old.open, 0, grown.open, 0, old.size());
+        System.arraycopy(old.high, 0, grown.high, 0, old.size());
+        System.arraycopy(old.low, 0, grown.low, 0, old.size());
+        System.arraycopy(old.close, 0, grown.close, 0, old.size());
+        System.arraycopy(old.volume, 0, grown.volume, 0, old.size());
+        slots = grown;
+        return grown;
+    }
+
+    private static final class Slots {
+        final long[] sequence;
+        final long[] generation;
+        final long[] bucket;
+        final double[] open;
+        final double[] high;
+        final double[] low;
+        final double[] close;
+        final long[] volume;
+
+        Slots(int size) {
+            sequence = new long[size];
+            generation = new long[size];
+            Arrays.fill(generation, NONE);
+            bucket = new long[size];
+            open = new double[size];
+            high = new double[size];
+            low = new double[size];
+            close = new double[size];
+            volume = new long[size];
+        }
+
+        int size() {
+            return sequence.length;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.trading.candle.aggregator.engine;
+
+public enum OverflowPolicy {
+    /** Producers wait until the partition consumer frees a slot. */
+    BLOCK,
+    /** The oldest unconsumed event is discarded to make room. */
+    DROP_OLDEST,
+    /** The incoming event is discarded. */
+    DROP_NEWEST
+}
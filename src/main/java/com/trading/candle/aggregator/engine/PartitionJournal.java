@@ -0,0 +1,242 @@
+package com.trading.candle.aggregator.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of the events applied by one partition, written through memory-mapped
+ * segment files. Appends are plain memory writes on the partition thread; the mapped pages are
+ * forced to disk at most once per sync interval, so one fsync covers a whole group of events.
+ * <p>
+ * A record is its payload length, a CRC32C of the payload and the payload itself: symbol,
+ * bid, ask and timestamp. A zero length marks the end of a segment, a checksum mismatch a
+ * torn write at the tail. Positions pack the segment number and the offset into one long.
+ */
+final class PartitionJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionJournal.class);
+
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+    private static final int FIXED_PAYLOAD_BYTES = Short.BYTES + Double.BYTES * 2 + Long.BYTES;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("partition-(\\d+)-(\\d+)\\.journal");
+
+    @FunctionalInterface
+    interface RecordHandler {
+        void onRecord(String symbol, double bid, double ask, long timestamp);
+    }
+
+    private final Path directory;
+    private final int partition;
+    private final int segmentSize;
+    private final long syncIntervalNanos;
+    private final CRC32C crc = new CRC32C();
+
+    private MappedByteBuffer buffer;
+    private long segment = -1;
+    private int syncedOffset;
+    private long lastSyncNanos = System.nanoTime();
+
+    PartitionJournal(Path directory, int partition, int segmentSize, long syncIntervalMs) {
+        if (segmentSize < HEADER_BYTES + FIXED_PAYLOAD_BYTES + 1024) {
+            throw new IllegalArgumentException("Journal segment size is too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.partition = partition;
+        this.segmentSize = segmentSize;
+        this.syncIntervalNanos = syncIntervalMs * 1_000_000;
+        roll();
+    }
+
+    void append(byte[] symbol, double bid, double ask, long timestamp) {
+        int payloadLength = FIXED_PAYLOAD_BYTES + symbol.length;
+        if (buffer.remaining() < HEADER_BYTES + payloadLength + HEADER_BYTES) {
+            // Keep room for the zero end marker, which the mapping already provides
+            sync();
+            roll();
+        }
+        int start = buffer.position();
+        buffer.position(start + HEADER_BYTES);
+        buffer.putShort((short) symbol.length);
+        buffer.put(symbol);
+        buffer.putDouble(bid);
+        buffer.putDouble(ask);
+        buffer.putLong(timestamp);
+
+        crc.reset();
+        crc.update(buffer.slice(start + HEADER_BYTES, payloadLength));
+        // Length last, so a reader never sees a length without its payload
+        buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(start, payloadLength);
+    }
+
+    /**
+     * Forces the appended records to disk if the sync interval has elapsed.
+     */
+    void syncIfDue(long nowNanos) {
+        if (nowNanos - lastSyncNanos >= syncIntervalNanos) {
+            sync();
+            lastSyncNanos = nowNanos;
+        }
+    }
+
+    void sync() {
+        int offset = buffer.position();
+        if (offset > syncedOffset) {
+            buffer.force(syncedOffset, offset - syncedOffset);
+            syncedOffset = offset;
+        }
+    }
+
+    long position() {
+        return (segment << 32) | buffer.position();
+    }
+
+    /**
+     * Deletes the segments that lie completely before the given position. Safe to call from
+     * another thread, the segment being written is never touched.
+     */
+    void deleteBefore(long position) {
+        long keepFrom = position >>> 32;
+        for (Path file : segments(directory, partition)) {
+            if (segmentOf(file) < keepFrom) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    private void roll() {
+        segment++;
+        Path file = directory.resolve(String.format("partition-%d-%010d.journal", partition, segment));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed and is zero-filled by the OS
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create journal segment " + file, e);
+        }
+        syncedOffset = 0;
+    }
+
+    /**
+     * Replays the records of one partition from the given position. Stops at the first torn
+     * record and returns the number of records replayed.
+     */
+    static long replay(Path directory, int partition, long fromPosition, RecordHandler handler) {
+        long fromSegment = fromPosition >>> 32;
+        long replayed = 0;
+        for (Path file : segments(directory, partition)) {
+            long fileSegment = segmentOf(file);
+            if (fileSegment < fromSegment) {
+                continue;
+            }
+            int offset = fileSegment == fromSegment ? (int) fromPosition : 0;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer segmentBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                long records = replaySegment(segmentBuffer, offset, handler);
+                if (records < 0) {
+                    logger.warn("Journal segment {} ends with a torn record, replayed {} records", file, -records - 1);
+                    return replayed - records - 1;
+                }
+                replayed += records;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not replay journal segment " + file, e);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Returns the number of records replayed, or {@code -(records + 1)} if a torn record was hit.
+     */
+    private static long replaySegment(MappedByteBuffer segmentBuffer, int offset, RecordHandler handler) {
+        CRC32C checksum = new CRC32C();
+        segmentBuffer.position(offset);
+        long records = 0;
+        while (segmentBuffer.remaining() >= HEADER_BYTES) {
+            int start = segmentBuffer.position();
+            int payloadLength = segmentBuffer.getInt();
+            if (payloadLength == 0) {
+                return records;
+            }
+            int expectedCrc = segmentBuffer.getInt();
+            if (payloadLength < FIXED_PAYLOAD_BYTES || payloadLength > segmentBuffer.remaining()) {
+                return -records - 1;
+            }
+            checksum.reset();
+            checksum.update(segmentBuffer.slice(start + HEADER_BYTES, payloadLength));
+            if ((int) checksum.getValue() != expectedCrc) {
+                return -records - 1;
+            }
+            byte[] symbol = new byte[segmentBuffer.getShort()];
+            segmentBuffer.get(symbol);
+            handler.onRecord(new String(symbol, StandardCharsets.UTF_8),
+                    segmentBuffer.getDouble(), segmentBuffer.getDouble(), segmentBuffer.getLong());
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * Partition indexes that have segments in the directory.
+     */
+    static List<Integer> partitions(Path directory) {
+        return list(directory).stream()
+                .map(file -> SEGMENT_NAME.matcher(file.getFileName().toString()))
+                .filter(Matcher::matches)
+                .map(matcher -> Integer.parseInt(matcher.group(1)))
+                .distinct()
+                .sorted()
+                .toList();
+    }
+
+    private static List<Path> segments(Path directory, int partition) {
+        return list(directory).stream()
+                .filter(file -> {
+                    Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                    return matcher.matches() && Integer.parseInt(matcher.group(1)) == partition;
+                })
+                .sorted()
+                .toList();
+    }
+
+    private static long segmentOf(Path file) {
+        Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a journal segment: " + file);
+        }
+        return Long.parseLong(matcher.group(2));
+    }
+
+    private static List<Path> list(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list journal directory " + directory, e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete journal segment {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.trading.candle.aggregator.engine;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.logging.LogSampler;
+import com.trading.candle.aggregator.model.BidAskEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Routes every event to a fixed partition chosen by its symbol. Each partition is owned by a
+ * single thread that updates all configured intervals of the symbol in one pass.
+ */
+public class PartitionedAggregationEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedAggregationEngine.class);
+    private static final long SHUTDOWN_TIMEOUT_MS = 30_000;
+
+    /**
+     * Returned by {@link #drainedIngestedSince()} when the last drain held no live events.
+     */
+    public static final long UNSTAMPED = EventRingBuffer.UNSTAMPED;
+
+    private final SymbolRegistry symbolRegistry = new SymbolRegistry();
+    private final List<String> intervals;
+    private final AggregationPartition[] partitions;
+    private final LatencyHistogram[] aggregationLatency;
+    private final List<CandleFinalizationListener> finalizationListeners = new CopyOnWriteArrayList<>();
+    private final CandleJournal journal;
+    private final long[] drainedJournalPositions;
+    private volatile long drainedEpoch;
+    private volatile long drainedIngestedSince = UNSTAMPED;
+
+    public PartitionedAggregationEngine(CandleAggregationProperties properties) {
+        List<String> intervals = properties.getIntervals();
+        this.intervals = List.copyOf(intervals);
+        CandleAggregationProperties.Ingestion ingestion = properties.getIngestion();
+        int partitionCount = properties.getProcessing().getPartitions() > 0
+                ? properties.getProcessing().getPartitions()
+                : Runtime.getRuntime().availableProcessors();
+        if (intervals.size() > CandleKeyCodec.MAX_INTERVALS) {
+            throw new IllegalArgumentException("At most " + CandleKeyCodec.MAX_INTERVALS
+                    + " intervals are supported, got: " + intervals.size());
+        }
+
+        CandleAggregationProperties.Journal journalProperties = properties.getJournal();
+        this.journal = journalProperties.isEnabled()
+                ? new CandleJournal(Path.of(journalProperties.getDirectory()),
+                        journalProperties.getSegmentSizeBytes(), journalProperties.getSyncIntervalMs())
+                : null;
+        this.drainedJournalPositions = new long[partitionCount];
+
+        this.partitions = new AggregationPartition[partitionCount];
+        this.aggregationLatency = new LatencyHistogram[partitionCount];
+        // One budget of sampled per-candle lines shared by all partitions
+        LogSampler candleLog = new LogSampler(properties.getLogging().getSampledLinesPerSecond());
+        for (int i = 0; i < partitionCount; i++) {
+            aggregationLatency[i] = LatencyHistogram.singleWriter(properties.getLatency().getWindowSlices());
+            partitions[i] = new AggregationPartition(i, symbolRegistry, intervals,
+                    properties.getProcessing().getAggregationMode(),
+                    properties.getProcessing().getPriceCalculationDivisor(),
+                    properties.getProcessing().getAllowedLatenessSeconds(),
+                    ingestion.getRingBufferSize(), ingestion.getOverflowPolicy(), ingestion.getBatchSize(),
+                    journal != null ? journal.open(i) : null, aggregationLatency[i], candleLog);
+        }
+        logger.info("Started {} aggregation engine with {} partitions for intervals {} (ring size {}, overflow policy {}, allowed lateness {}s)",
+                properties.getProcessing().getAggregationMode(), partitionCount, intervals,
+                ingestion.getRingBufferSize(), ingestion.getOverflowPolicy(),
+                properties.getProcessing().getAllowedLatenessSeconds());
+        if (journal != null) {
+            logger.info("Journaling applied events to {}", journalProperties.getDirectory());
+        }
+    }
+
+    /**
+     * Publishes the event to the ring of the partition owning its symbol. Returns false if the
+     * event was dropped by the overflow policy.
+     */
+    public boolean publish(BidAskEvent event) {
+        return partitions[partitionIndex(event.symbol())]
+                .publish(event.symbol(), event.bid(), event.ask(), event.timestamp());
+    }
+
+    /**
+     * Hands over every candle accumulated so far. Each partition swaps in an empty generation in
+     * O(1) and keeps ingesting while the sealed one is converted here, so no update is lost and
+     * ingestion never waits for a flush. Candles finalized by the watermarks up to the seal are
+     * reported to the finalization listeners before this returns.
+     */
+    public synchronized List<CandleEntity> drain() {
+        long[] epochs = new long[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            epochs[i] = partitions[i].requestSeal();
+        }
+        List<CandleEntity> result = new ArrayList<>();
+        long ingestedSince = UNSTAMPED;
+        for (int i = 0; i < partitions.length; i++) {
+            result.addAll(partitions[i].drainSealed(epochs[i], this::notifyFinalized));
+            drainedJournalPositions[i] = partitions[i].sealedJournalPosition();
+            long partitionSince = partitions[i].sealedIngestedSince();
+            if (partitionSince != UNSTAMPED && (ingestedSince == UNSTAMPED || partitionSince - ingestedSince < 0)) {
+                ingestedSince = partitionSince;
+            }
+        }
+        drainedIngestedSince = ingestedSince;
+        // Partitions are always sealed together, so their epochs are equal
+        drainedEpoch = epochs[0];
+        return result;
+    }
+
+    /**
+     * Number of drains so far. A {@link LiveCandle} of generation {@code n} holds changes made
+     * after the n-th drain and not yet drained.
+     */
+    public long drainedEpoch() {
+        return drainedEpoch;
+    }
+
+    /**
+     * {@link System#nanoTime()} at which the oldest event of the last drain was published, or
+     * {@link #UNSTAMPED} if it held no live events. Replayed events are not stamped.
+     */
+    public long drainedIngestedSince() {
+        return drainedIngestedSince;
+    }
+
+    /**
+     * Time from publication until events were applied and visible, over the latency window.
+     */
+    public LatencySnapshot aggregationLatency() {
+        return LatencyHistogram.snapshot(aggregationLatency);
+    }
+
+    /**
+     * Advances the latency window by one slice.
+     */
+    public void rotateLatencyWindow() {
+        for (LatencyHistogram histogram : aggregationLatency) {
+            histogram.rotate();
+        }
+    }
+
+    /**
+     * Returns the part of the newest candle of the series applied since the last drain, or null
+     * if nothing changed. Never blocks the partition.
+     */
+    public LiveCandle liveCandle(String symbol, String interval) {
+        int symbolId = symbolRegistry.find(symbol);
+        int intervalId = intervals.indexOf(interval);
+        if (symbolId < 0 || intervalId < 0) {
+            return null;
+        }
+        return partitions[partitionIndex(symbol)].liveCandle(symbolId, intervalId);
+    }
+
+    public boolean isJournaled() {
+        return journal != null;
+    }
+
+    /**
+     * Replays the journal of the previous run into the partitions and returns the candles of
+     * its checkpoint, which were drained back then but not persisted. Returns an empty list
+     * without a journal or when there is nothing to recover.
+     */
+    public List<CandleEntity> recover() {
+        if (journal == null) {
+            return List.of();
+        }
+        return journal.recover((symbol, bid, ask, timestamp) ->
+                partitions[partitionIndex(symbol)].publishReplayed(symbol, bid, ask, timestamp));
+    }
+
+    /**
+     * Checkpoints the journal at the last drain. {@code unpersisted} must hold every candle
+     * drained so far that is not persisted yet; callers have to make sure no other drain runs
+     * between their drain and this call.
+     */
+    public synchronized void checkpoint(List<CandleEntity> unpersisted) {
+        if (journal == null) {
+            return;
+        }
+        PartitionJournal[] journals = new PartitionJournal[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            journals[i] = partitions[i].journal();
+        }
+        journal.checkpoint(journals, drainedJournalPositions.clone(), unpersisted);
+    }
+
+    public void addFinalizationListener(CandleFinalizationListener listener) {
+        finalizationListeners.add(listener);
+    }
+
+    public List<IngestionStats> ingestionStats() {
+        List<IngestionStats> stats = new ArrayList<>(partitions.length);
+        for (AggregationPartition partition : partitions) {
+            stats.add(partition.stats());
+        }
+        return stats;
+    }
+
+    public IngestionStats ingestionStats(int partition) {
+        return partitions[partition].stats();
+    }
+
+    /**
+     * Events of the symbol applied since startup, without late and failed ones.
+     */
+    public long appliedEvents(String symbol) {
+        int symbolId = symbolRegistry.find(symbol);
+        return symbolId < 0 ? 0 : partitions[partitionIndex(symbol)].appliedEvents(symbolId);
+    }
+
+    /**
+     * Events the partition applied in batches taken from its ring, see {@link #batchNanos}.
+     */
+    public long batchedEvents(int partition) {
+        return partitions[partition].batchedEvents();
+    }
+
+    /**
+     * Time the partition spent applying its batched events, every interval of them included.
+     */
+    public long batchNanos(int partition) {
+        return partitions[partition].batchNanos();
+    }
+
+    public int partitionCount() {
+        return partitions.length;
+    }
+
+    int partitionIndex(String symbol) {
+        int hash = symbol.hashCode();
+        hash ^= (hash >>> 16);
+        return Math.floorMod(hash, partitions.length);
+    }
+
+    public void shutdown() {
+        logger.info("Shutting down aggregation engine");
+        for (AggregationPartition partition : partitions) {
+            partition.shutdown(SHUTDOWN_TIMEOUT_MS);
+        }
+    }
+
+    private void notifyFinalized(String symbol, String interval, long closedBefore) {
+        for (CandleFinalizationListener listener : finalizationListeners) {
+            listener.onFinalized(symbol, interval, closedBefore);
+        }
+    }
+}
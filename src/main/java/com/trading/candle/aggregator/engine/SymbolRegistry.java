@@ -0,0 +1,50 @@
+package com.trading.candle.aggregator.engine;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Assigns small, dense integer ids to symbols. Lookups of known symbols do not allocate.
+ */
+public class SymbolRegistry {
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> symbols = new CopyOnWriteArrayList<>();
+
+    public int idOf(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : register(symbol);
+    }
+
+    /**
+     * Returns the id of a known symbol, or -1 without registering it.
+     */
+    public int find(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : -1;
+    }
+
+    public String symbolOf(int id) {
+        return symbols.get(id);
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    private synchronized int register(String symbol) {
+        Integer existing = ids.get(symbol);
+        if (existing != null) {
+            return existing;
+        }
+        int id = symbols.size();
+        if (id >= CandleKeyCodec.MAX_SYMBOLS) {
+            throw new IllegalStateException("Symbol registry is full, cannot register: " + symbol);
+        }
+        symbols.add(symbol);
+        ids.put(symbol, id);
+        return id;
+    }
+}
@@ -39,6 +39,13 @@ public class CandleEntity {
     @Column(name = "volume")
     private long volume;
 
+    // Event times of the ticks that set the open and close price, 0 if not known
+    @Column(name = "first_event_time")
+    private long firstEventTime;
+
+    @Column(name = "last_event_time")
+    private long lastEventTime;
+
     public Long getId() {
         return id;
     }
@@ -110,4 +117,20 @@ public class CandleEntity {
     public void setVolume(long volume) {
         this.volume = volume;
     }
+
+    public long getFirstEventTime() {
+        return firstEventTime;
+    }
+
+    public void setFirstEventTime(long firstEventTime) {
+        this.firstEventTime = firstEventTime;
+    }
+
+    public long getLastEventTime() {
+        return lastEventTime;
+    }
+
+    public void setLastEventTime(long lastEventTime) {
+        this.lastEventTime = lastEventTime;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+package com.trading.candle.aggregator.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands log events to a bounded queue that one worker thread writes to the attached appenders,
+ * so the threads that log never wait on encoding or the console. When the queue is full the
+ * event is dropped and counted instead of blocking the caller; the worker reports the drops
+ * through the same appenders at most once per {@code dropReportIntervalMs}.
+ * <p>
+ * Unlike Logback's {@code AsyncAppender} no event is discarded while there is room, and the
+ * number of dropped events is kept for the metrics.
+ */
+public class DroppingAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    public static final int DEFAULT_QUEUE_SIZE = 8192;
+
+    private static final int BATCH_SIZE = 256;
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final LongAdder droppedEvents = new LongAdder();
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private long maxFlushTimeMs = 1000;
+    private long dropReportIntervalMs = 1000;
+    private volatile BlockingQueue<ILoggingEvent> queue;
+    private Thread worker;
+
+    // Owned by the worker thread
+    private long reportedDrops;
+    private long lastDropReport;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (queueSize <= 0) {
+            addError("Queue size must be positive, got: " + queueSize);
+            return;
+        }
+        if (!appenders.iteratorForAppenders().hasNext()) {
+            addWarn("No appender attached to " + getName() + ", events will be discarded");
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        worker = Thread.ofPlatform().name("log-appender-" + getName()).daemon().unstarted(this::run);
+        super.start();
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        // The worker writes out whatever is still queued before it exits
+        worker.interrupt();
+        try {
+            worker.join(maxFlushTimeMs);
+            if (worker.isAlive()) {
+                addWarn("Log queue not flushed within " + maxFlushTimeMs + " ms, " + queue.size()
+                        + " events discarded");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        BlockingQueue<ILoggingEvent> events = queue;
+        // Checked first so a full queue does not cost the caller the formatting
+        if (events.remainingCapacity() == 0) {
+            droppedEvents.increment();
+            return;
+        }
+        // Message, MDC and thread name are captured on the calling thread
+        event.prepareForDeferredProcessing();
+        if (!events.offer(event)) {
+            droppedEvents.increment();
+        }
+    }
+
+    private void run() {
+        List<ILoggingEvent> batch = new ArrayList<>(BATCH_SIZE);
+        while (isStarted()) {
+            try {
+                ILoggingEvent event = queue.poll(dropReportIntervalMs, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    batch.add(event);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    write(batch);
+                }
+                reportDrops(false);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+            write(batch);
+        }
+        reportDrops(true);
+    }
+
+    private void write(List<ILoggingEvent> batch) {
+        for (ILoggingEvent event : batch) {
+            try {
+                appenders.appendLoopOnAppenders(event);
+            } catch (RuntimeException e) {
+                addError("Failed to write log event", e);
+            }
+        }
+        batch.clear();
+    }
+
+    private void reportDrops(boolean force) {
+        long dropped = droppedEvents.sum();
+        long now = System.currentTimeMillis();
+        if (dropped == reportedDrops || (!force && now - lastDropReport < dropReportIntervalMs)) {
+            return;
+        }
+        LoggerContext loggerContext = (LoggerContext) getContext();
+        LoggingEvent report = new LoggingEvent(DroppingAsyncAppender.class.getName(),
+                loggerContext.getLogger(DroppingAsyncAppender.class), Level.WARN,
+                "Dropped {} log events because the queue of {} was full, {} in total",
+                null, new Object[]{dropped - reportedDrops, queueSize, dropped});
+        appenders.appendLoopOnAppenders(report);
+        reportedDrops = dropped;
+        lastDropReport = now;
+    }
+
+    /**
+     * Events dropped since start because the queue was full.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Events waiting to be written.
+     */
+    public int getQueuedEvents() {
+        BlockingQueue<ILoggingEvent> events = queue;
+        return events != null ? events.size() : 0;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public long getMaxFlushTimeMs() {
+        return maxFlushTimeMs;
+    }
+
+    public void setMaxFlushTimeMs(long maxFlushTimeMs) {
+        this.maxFlushTimeMs = maxFlushTimeMs;
+    }
+
+    public long getDropReportIntervalMs() {
+        return dropReportIntervalMs;
+    }
+
+    public void setDropReportIntervalMs(long dropReportIntervalMs) {
+        this.dropReportIntervalMs = dropReportIntervalMs;
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.addAppender(appender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
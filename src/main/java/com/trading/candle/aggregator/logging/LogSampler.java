@@ -0,0 +1,49 @@
+package com.trading.candle.aggregator.logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate limit for a log statement on a hot path: at most a fixed number of lines per second
+ * pass, the rest are counted so the next line that passes can say how many were left out.
+ * Once the second's lines are used up, a call only reads shared state and bumps a striped
+ * counter, so concurrent callers do not contend. Zero lines per second suppresses every line.
+ */
+public final class LogSampler {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int linesPerSecond;
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger passed = new AtomicInteger();
+    private final LongAdder suppressed = new LongAdder();
+
+    public LogSampler(int linesPerSecond) {
+        this.linesPerSecond = Math.max(0, linesPerSecond);
+    }
+
+    /**
+     * Returns true if the line may be logged, otherwise counts it as suppressed.
+     */
+    public boolean sample() {
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+            passed.set(0);
+        }
+        if (passed.get() < linesPerSecond && passed.incrementAndGet() <= linesPerSecond) {
+            return true;
+        }
+        suppressed.increment();
+        return false;
+    }
+
+    /**
+     * Lines suppressed since the last call.
+     */
+    public long takeSuppressed() {
+        return suppressed.sumThenReset();
+    }
+}
@@ -0,0 +1,49 @@
+package com.trading.candle.aggregator.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Reads candle ranges through a forward-only, read-only cursor, fetching {@code fetchSize} rows
+ * per round-trip. Rows are handed to the callback as they arrive and never collected, so a
+ * range of any size is read in constant memory. Drivers that only stream inside a transaction
+ * need the caller to hold one.
+ */
+@Repository
+public class CandleCursorRepository {
+
+    private static final String RANGE_SQL = """
+            SELECT open_time, open_price, high_price, low_price, close_price, volume
+            FROM candles
+            WHERE symbol = ? AND candle_interval = ? AND open_time BETWEEN ? AND ?
+            ORDER BY open_time
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CandleCursorRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Streams the range in open time order. Columns are open_time, open_price, high_price,
+     * low_price, close_price and volume, in that order.
+     */
+    public void streamRange(String symbol, String interval, long from, long to, int fetchSize,
+                            RowCallbackHandler handler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(RANGE_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            statement.setString(1, symbol);
+            statement.setString(2, interval);
+            statement.setLong(3, from);
+            statement.setLong(4, to);
+            return statement;
+        }, handler);
+    }
+}
@@ -1,6 +1,7 @@
 package com.trading.candle.aggregator.repository;
 
 import com.trading.candle.aggregator.entity.CandleEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -25,6 +26,24 @@ public interface CandleRepository extends JpaRepository<CandleEntity, Long> {
             long from,
             long to
     );
+
+
+    // Keyset seeks on the (symbol, candle_interval, open_time) unique index
+    List<CandleEntity> findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(
+            String symbol,
+            String candleInterval,
+            long from,
+            long to,
+            Limit limit
+    );
+
+    List<CandleEntity> findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeDesc(
+            String symbol,
+            String candleInterval,
+            long from,
+            long to,
+            Limit limit
+    );
     
     @Query("SELECT c FROM CandleEntity c WHERE " +
            "c.symbol = :symbol AND c.candleInterval = :interval AND c.openTime IN :openTimes")
@@ -36,16 +55,22 @@ public interface CandleRepository extends JpaRepository<CandleEntity, Long> {
     
     @Modifying
     @Query("UPDATE CandleEntity c SET " +
+           "c.openPrice = CASE WHEN :firstEventTime < c.firstEventTime THEN :openPrice ELSE c.openPrice END, " +
            "c.highPrice = GREATEST(c.highPrice, :highPrice), " +
            "c.lowPrice = LEAST(c.lowPrice, :lowPrice), " +
-           "c.closePrice = :closePrice, " +
-           "c.volume = c.volume + :volume " +
+           "c.closePrice = CASE WHEN :lastEventTime >= c.lastEventTime THEN :closePrice ELSE c.closePrice END, " +
+           "c.volume = c.volume + :volume, " +
+           "c.firstEventTime = LEAST(c.firstEventTime, :firstEventTime), " +
+           "c.lastEventTime = GREATEST(c.lastEventTime, :lastEventTime) " +
            "WHERE c.id = :candleId")
     int updateCandleAggregation(
             @Param("candleId") Long candleId,
+            @Param("openPrice") double openPrice,
             @Param("highPrice") double highPrice,
             @Param("lowPrice") double lowPrice,
             @Param("closePrice") double closePrice,
-            @Param("volume") long volume
+            @Param("volume") long volume,
+            @Param("firstEventTime") long firstEventTime,
+            @Param("lastEventTime") long lastEventTime
     );
 }
\ No newline at end of file
@@ -2,8 +2,6 @@ package com.trading.candle.aggregator.service;
 
 import com.trading.candle.aggregator.model.BidAskEvent;
 
-import java.util.concurrent.CompletableFuture;
-
 public interface CandleAggregationService {
-    CompletableFuture<Void> processEvent(BidAskEvent event);
+    boolean processEvent(BidAskEvent event);
 }
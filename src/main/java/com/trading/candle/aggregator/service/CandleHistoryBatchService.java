@@ -0,0 +1,17 @@
+package com.trading.candle.aggregator.service;
+
+import com.trading.candle.aggregator.codec.CandleHistoryFormat;
+import com.trading.candle.aggregator.dto.HistoryQuery;
+
+import java.io.OutputStream;
+import java.util.List;
+
+public interface CandleHistoryBatchService {
+
+    /**
+     * Reads the queries in parallel and writes their results to the stream in query order:
+     * for JSON an object whose {@code results} array holds one history response per query, for
+     * the columnar format one columnar block per query.
+     */
+    void writeCandleHistories(List<HistoryQuery> queries, CandleHistoryFormat format, OutputStream out);
+}
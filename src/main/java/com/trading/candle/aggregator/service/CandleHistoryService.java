@@ -1,7 +1,54 @@
 package com.trading.candle.aggregator.service;
 
+import com.trading.candle.aggregator.codec.CandleHistoryFormat;
+import com.trading.candle.aggregator.storage.CandleSeries;
+import com.trading.candle.aggregator.storage.StorageDataset;
+
+import java.io.OutputStream;
 import java.util.Map;
 
 public interface CandleHistoryService {
     Map<String, Object> getCandleHistory(String symbol, String interval, long from, long to);
+
+    /**
+     * Returns the same candles as {@link #getCandleHistory} in column form.
+     */
+    CandleSeries readCandleHistory(String symbol, String interval, long from, long to);
+
+    /**
+     * Writes one page of the range in the given format: its first {@code limit} candles, or its
+     * last ones for a countback page. Returns the open time the next page seeks to, the
+     * {@code from} of a forward page or the {@code to} of a countback page, or null if no
+     * candles are left.
+     */
+    Long writeCandlePage(String symbol, String interval, long from, long to, int limit, boolean countback,
+                         CandleHistoryFormat format, OutputStream out);
+
+    /**
+     * Whether the range spans enough candles to be streamed rather than built in memory.
+     */
+    boolean isStreamed(String interval, long from, long to);
+
+    /**
+     * Whether every candle of the range is final and committed to storage, so the response for
+     * it will never change.
+     */
+    boolean isFinalized(String symbol, String interval, long from, long to);
+
+    /**
+     * The dataset of the stored candles, which final ranges are read from.
+     */
+    StorageDataset dataset();
+
+    /**
+     * Writes the same candles as {@link #getCandleHistory} to the stream in the given format.
+     */
+    void writeCandleHistory(String symbol, String interval, long from, long to, CandleHistoryFormat format,
+                            OutputStream out);
+
+    /**
+     * Writes the same response as {@link #writeCandleHistory}, in constant memory.
+     */
+    void streamCandleHistory(String symbol, String interval, long from, long to, CandleHistoryFormat format,
+                             OutputStream out);
 }
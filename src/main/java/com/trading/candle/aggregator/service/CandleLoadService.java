@@ -0,0 +1,12 @@
+package com.trading.candle.aggregator.service;
+
+import com.trading.candle.aggregator.dto.LoadReport;
+
+public interface CandleLoadService {
+
+    /**
+     * Feeds events through the aggregation service at stepwise increasing rates until a step
+     * is not sustained or the maximum rate is reached, and reports every step.
+     */
+    LoadReport run();
+}
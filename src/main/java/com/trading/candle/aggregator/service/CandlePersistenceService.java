@@ -7,5 +7,7 @@ import java.util.concurrent.CompletableFuture;
 
 public interface CandlePersistenceService {
     CompletableFuture<Void> persistCandles(List<CandleEntity> candles);
+    CompletableFuture<Void> persistCandles(List<CandleEntity> candles, List<CandleEntity> persistedCandles);
     void persistCandlesTransactional(List<CandleEntity> candles);
+    void persistCandlesTransactional(List<CandleEntity> candles, List<CandleEntity> persistedCandles);
 }
@@ -0,0 +1,14 @@
+package com.trading.candle.aggregator.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public interface CandlePushService {
+
+    /**
+     * Subscribes to the candles of a series: the current ones right away, then every change.
+     * Returns null if the subscriber limit is reached.
+     */
+    SseEmitter subscribe(String symbol, String interval);
+
+    int subscriberCount();
+}
@@ -0,0 +1,42 @@
+package com.trading.candle.aggregator.service;
+
+import com.trading.candle.aggregator.engine.LatencySnapshot;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Latency of events through the pipeline, measured from the moment they were published to the
+ * engine. Stamps are {@link System#nanoTime()} values; {@code PartitionedAggregationEngine.UNSTAMPED}
+ * means there is nothing to measure.
+ */
+public interface PipelineLatencyService {
+
+    enum Stage {
+        /** Applied by the engine and visible to history reads. */
+        AGGREGATION,
+        /** Drained out of the engine and pending the next write. */
+        FLUSH,
+        /** Committed to storage by the first successful write of the candle it changed. */
+        COMMIT
+    }
+
+    /**
+     * Records a drain whose oldest event was published at {@code ingestedSince}.
+     */
+    void onDrained(long ingestedSince);
+
+    /**
+     * Records a write whose oldest event was published at {@code ingestedSince}.
+     */
+    void onCommitted(long ingestedSince);
+
+    Map<Stage, LatencySnapshot> latency();
+
+    long sloMillis(Stage stage);
+
+    /**
+     * Stages whose p99 over the window is above their SLO.
+     */
+    Set<Stage> breachedSlos();
+}
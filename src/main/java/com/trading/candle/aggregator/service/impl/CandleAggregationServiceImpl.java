@@ -3,27 +3,32 @@ package com.trading.candle.aggregator.service.impl;
 import com.trading.candle.aggregator.config.ApplicationLifecycleManager;
 import com.trading.candle.aggregator.config.CandleAggregationProperties;
 import com.trading.candle.aggregator.controller.HealthController;
+import com.trading.candle.aggregator.engine.PartitionedAggregationEngine;
 import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.logging.LogSampler;
 import com.trading.candle.aggregator.model.BidAskEvent;
-import com.trading.candle.aggregator.repository.CandleRepository;
 import com.trading.candle.aggregator.service.CandleAggregationService;
 import com.trading.candle.aggregator.service.CandlePersistenceService;
-import com.trading.candle.aggregator.util.CandleIntervalUtil;
+import com.trading.candle.aggregator.service.PipelineLatencyService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class CandleAggregationServiceImpl implements CandleAggregationService {
@@ -32,67 +37,98 @@ public class CandleAggregationServiceImpl implements CandleAggregationService {
 
     private final CandleAggregationProperties properties;
 
-    private final ConcurrentMap<String, CandleEntity> activeCandles = new ConcurrentHashMap<>();
-    private List<String> supportedIntervals;
-
-    private final CandleRepository candleRepository;
     private final CandlePersistenceService persistenceService;
-    private final Executor taskExecutor;
+    private final PartitionedAggregationEngine aggregationEngine;
     private final ApplicationLifecycleManager lifecycleManager;
     private final HealthController healthController;
+    private final RecentCandleCache recentCandles;
+    private final PipelineLatencyService pipelineLatency;
+    private final Object drainLock = new Object();
+    private final Timer drainTimer;
+    private final Timer flushSuccessTimer;
+    private final Timer flushFailureTimer;
+    private final DistributionSummary flushBatchSize;
+    private final Map<String, Counter> createdCandles = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final LogSampler receivedEventLog;
+    private volatile ResidentCandleCache residentCandles;
 
-    public CandleAggregationServiceImpl(CandleRepository candleRepository,
-                                        CandlePersistenceService persistenceService,
-                                        @Qualifier("candleAggregationExecutor") Executor taskExecutor,
+    public CandleAggregationServiceImpl(CandlePersistenceService persistenceService,
+                                        PartitionedAggregationEngine aggregationEngine,
                                         CandleAggregationProperties properties,
                                         ApplicationLifecycleManager lifecycleManager,
-                                        HealthController healthController) {
-        this.candleRepository = candleRepository;
+                                        HealthController healthController,
+                                        RecentCandleCache recentCandles,
+                                        PipelineLatencyService pipelineLatency,
+                                        MeterRegistry meterRegistry) {
         this.persistenceService = persistenceService;
-        this.taskExecutor = taskExecutor;
+        this.aggregationEngine = aggregationEngine;
         this.properties = properties;
         this.lifecycleManager = lifecycleManager;
         this.healthController = healthController;
+        this.recentCandles = recentCandles;
+        this.pipelineLatency = pipelineLatency;
+        this.meterRegistry = meterRegistry;
+        this.receivedEventLog = new LogSampler(properties.getLogging().getSampledLinesPerSecond());
+        this.drainTimer = Timer.builder("candle.drain")
+                .description("Draining the engine into the resident and recent candles")
+                .register(meterRegistry);
+        this.flushSuccessTimer = flushTimer("success", meterRegistry);
+        this.flushFailureTimer = flushTimer("failure", meterRegistry);
+        this.flushBatchSize = DistributionSummary.builder("candle.flush.batch.size")
+                .description("Candles written per flush")
+                .baseUnit("candles")
+                .register(meterRegistry);
+        Gauge.builder("candle.active", this, CandleAggregationServiceImpl::residentCandleCount)
+                .description("Candles held in memory between flushes, open or not yet written")
+                .baseUnit("candles")
+                .register(meterRegistry);
+    }
+
+    private static Timer flushTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("candle.flush")
+                .description("Flush from the drain until the persisted candles are committed")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 
     @PostConstruct
     public void init() {
-        this.supportedIntervals = properties.getIntervals();
-        logger.info("Initialized candle aggregation with intervals: {}", supportedIntervals);
+        this.residentCandles = new ResidentCandleCache(properties.getPersistence().getOpenCandleWriteIntervalMs(),
+                recentCandles::onCommitted);
+        aggregationEngine.addFinalizationListener(residentCandles::onFinalized);
+        aggregationEngine.addFinalizationListener(recentCandles::onFinalized);
+        recoverJournal();
+        logger.info("Initialized candle aggregation with intervals {} across {} partitions",
+                properties.getIntervals(), aggregationEngine.partitionCount());
     }
 
     @Override
-    @Async
-    public CompletableFuture<Void> processEvent(BidAskEvent event) {
-        logger.info("Received new event: symbol={}, bid={}, ask={}, timestamp={}",
-                event.symbol(), event.bid(), event.ask(), event.timestamp());
+    public boolean processEvent(BidAskEvent event) {
+        if (logger.isInfoEnabled() && receivedEventLog.sample()) {
+            logger.info("Received new event: symbol={}, bid={}, ask={}, timestamp={} ({} similar lines suppressed)",
+                    event.symbol(), event.bid(), event.ask(), event.timestamp(), receivedEventLog.takeSuppressed());
+        }
 
         // Reject new events during shutdown
         if (lifecycleManager.isShuttingDown()) {
             logger.warn("Rejecting event during shutdown: symbol={}", event.symbol());
-            return CompletableFuture.completedFuture(null);
+            return false;
         }
 
         try {
-            List<CompletableFuture<Void>> futures = supportedIntervals.stream()
-                    .map(interval -> CompletableFuture.runAsync(() -> {
-                        try {
-                            processEventForInterval(event, interval);
-                        } catch (Exception e) {
-                            logger.error("Error processing event for interval {}: {}", interval, e.getMessage(), e);
-                            healthController.setAggregationStatus(false);
-                        }
-                    }, taskExecutor))
-                    .toList();
+            // Lands in a preallocated slot of the partition owning the symbol; overflow is
+            // handled by the configured policy and counted in the ingestion stats
+            boolean accepted = aggregationEngine.publish(event);
 
             // Update health indicator with successful processing
             healthController.updateLastCandleProcessed();
 
-            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+            return accepted;
         } catch (Exception e) {
             logger.error("Error processing event: {}", e.getMessage(), e);
             healthController.setAggregationStatus(false);
-            return CompletableFuture.failedFuture(e);
+            return false;
         }
     }
 
@@ -106,71 +142,46 @@ public class CandleAggregationServiceImpl implements CandleAggregationService {
             return CompletableFuture.completedFuture(null);
         }
 
-        if (activeCandles.isEmpty()) {
+        long started = System.nanoTime();
+        drainIntoResidentCandles();
+        ResidentCandleCache.FlushBatch batch = residentCandles.collectWrites(System.currentTimeMillis(), false);
+        if (batch.isEmpty()) {
             return CompletableFuture.completedFuture(null);
         }
 
-        logger.info("Flushing {} candles to database", activeCandles.size());
-        List<CandleEntity> candlesToSave = new java.util.ArrayList<>(activeCandles.values());
+        logger.info("Flushing {} candles to database ({} resident)", batch.size(), residentCandles.size());
+        flushBatchSize.record(batch.size());
 
-        return persistenceService.persistCandles(candlesToSave)
+        return persistenceService.persistCandles(batch.newCandles(), batch.persistedCandles())
                 .thenRun(() -> {
-                    logger.info("Successfully flushed {} candles", candlesToSave.size());
-                    activeCandles.clear();
+                    residentCandles.onWritten(batch);
+                    // Events of the written candles must not be replayed on top of them after a crash
+                    checkpointJournal(false);
+                    countCreated(batch.newCandles());
+                    pipelineLatency.onCommitted(batch.ingestedSince());
+                    flushSuccessTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                    logger.info("Successfully flushed {} candles", batch.size());
                     healthController.setPersistenceStatus(true);
                 })
                 .exceptionally(throwable -> {
                     logger.error("Failed to flush candles to database: {}", throwable.getMessage(), throwable);
+                    // Candles stay dirty and are retried on the next flush
+                    residentCandles.onWriteFailed(batch);
+                    flushFailureTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
                     healthController.setPersistenceStatus(false);
                     return null;
                 });
     }
 
-    private void processEventForInterval(BidAskEvent event, String interval) {
-        long alignedTime = CandleIntervalUtil.alignTimeWithDelay(event.timestamp(), interval);
-        String key = generateCandleKey(event.symbol(), interval, alignedTime);
-        double price = calculateMidPrice(event.bid(), event.ask());
-
-        activeCandles.compute(key, (k, existing) -> {
-            if (existing == null) {
-                logger.info("Creating new candle: symbol={}, interval={}, time={}, price={}",
-                        event.symbol(), interval, alignedTime, price);
-                return createNewCandle(event.symbol(), interval, alignedTime, price);
-            } else {
-                logger.info("Updating existing candle: symbol={}, interval={}, time={}, price={}",
-                        event.symbol(), interval, alignedTime, price);
-                return updateExistingCandle(existing, price);
-            }
-        });
-    }
-
-    private String generateCandleKey(String symbol, String interval, long alignedTime) {
-        return symbol + "_" + interval + "_" + alignedTime;
-    }
-
-    private double calculateMidPrice(double bid, double ask) {
-        return (bid + ask) / properties.getProcessing().getPriceCalculationDivisor();
-    }
-
-    private CandleEntity createNewCandle(String symbol, String interval, long alignedTime, double price) {
-        CandleEntity candle = new CandleEntity();
-        candle.setSymbol(symbol);
-        candle.setCandleInterval(interval);
-        candle.setOpenTime(alignedTime);
-        candle.setOpenPrice(price);
-        candle.setHighPrice(price);
-        candle.setLowPrice(price);
-        candle.setClosePrice(price);
-        candle.setVolume(1);
-        return candle;
-    }
-
-    private CandleEntity updateExistingCandle(CandleEntity existing, double price) {
-        existing.setHighPrice(Math.max(existing.getHighPrice(), price));
-        existing.setLowPrice(Math.min(existing.getLowPrice(), price));
-        existing.setClosePrice(price);
-        existing.setVolume(existing.getVolume() + 1);
-        return existing;
+    /**
+     * Checkpoints the unpersisted candles, so the journal only has to be replayed from here.
+     */
+    @Scheduled(fixedRateString = "#{@candleAggregationProperties.journal.checkpointIntervalMs}")
+    public void checkpoint() {
+        if (!aggregationEngine.isJournaled() || lifecycleManager.isShuttingDown()) {
+            return;
+        }
+        checkpointJournal(true);
     }
 
     @PreDestroy
@@ -178,13 +189,14 @@ public class CandleAggregationServiceImpl implements CandleAggregationService {
         logger.info("Shutting down candle aggregation service...");
         healthController.setAggregationStatus(false);
 
-        if (!activeCandles.isEmpty()) {
-            logger.info("Flushing {} remaining candles before shutdown", activeCandles.size());
+        drainIntoResidentCandles();
+        ResidentCandleCache.FlushBatch batch = residentCandles.collectWrites(System.currentTimeMillis(), true);
+        if (!batch.isEmpty()) {
+            logger.info("Flushing {} remaining candles before shutdown", batch.size());
             try {
-                List<CandleEntity> candlesToSave = new java.util.ArrayList<>(activeCandles.values());
-                persistenceService.persistCandles(candlesToSave).get();
-                logger.info("Successfully flushed {} candles on shutdown", candlesToSave.size());
-                activeCandles.clear();
+                persistenceService.persistCandles(batch.newCandles(), batch.persistedCandles()).get();
+                residentCandles.onWritten(batch);
+                logger.info("Successfully flushed {} candles on shutdown", batch.size());
                 healthController.setPersistenceStatus(true);
             } catch (Exception e) {
                 logger.error("Failed to flush candles during shutdown: {}", e.getMessage(), e);
@@ -192,6 +204,78 @@ public class CandleAggregationServiceImpl implements CandleAggregationService {
             }
         }
 
+        // Whatever could not be written stays in the journal for the next start
+        checkpointJournal(true);
+
         logger.info("Candle aggregation service shutdown completed");
     }
+
+    private void recoverJournal() {
+        if (!aggregationEngine.isJournaled()) {
+            return;
+        }
+        List<CandleEntity> recovered = aggregationEngine.recover();
+        synchronized (drainLock) {
+            residentCandles.apply(recovered);
+            recentCandles.apply(recovered, aggregationEngine.drainedEpoch());
+        }
+        checkpointJournal(true);
+    }
+
+    private void drainIntoResidentCandles() {
+        synchronized (drainLock) {
+            applyDrained();
+        }
+    }
+
+    // Callers hold the drain lock
+    private void applyDrained() {
+        long started = System.nanoTime();
+        List<CandleEntity> drained = aggregationEngine.drain();
+        long ingestedSince = aggregationEngine.drainedIngestedSince();
+        residentCandles.apply(drained, ingestedSince);
+        recentCandles.apply(drained, aggregationEngine.drainedEpoch());
+        pipelineLatency.onDrained(ingestedSince);
+        drainTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts the candles a write inserted, per interval, for the periodic activity summary.
+     */
+    private void countCreated(List<CandleEntity> inserted) {
+        for (CandleEntity candle : inserted) {
+            createdCandles.computeIfAbsent(candle.getCandleInterval(), interval -> Counter.builder("candle.created")
+                            .description("Candles written for the first time")
+                            .baseUnit("candles")
+                            .tag("interval", interval)
+                            .register(meterRegistry))
+                    .increment();
+        }
+    }
+
+    private int residentCandleCount() {
+        ResidentCandleCache resident = residentCandles;
+        return resident == null ? 0 : resident.size();
+    }
+
+    /**
+     * Checkpoints the journal at the last drain, after a new one with {@code drainFirst}. Run
+     * after every committed write, so a recovery never replays events whose candles are already
+     * stored: both storage engines add the volume of a write to the stored candle.
+     */
+    private void checkpointJournal(boolean drainFirst) {
+        if (!aggregationEngine.isJournaled()) {
+            return;
+        }
+        try {
+            synchronized (drainLock) {
+                if (drainFirst) {
+                    applyDrained();
+                }
+                aggregationEngine.checkpoint(residentCandles.unpersisted());
+            }
+        } catch (Exception e) {
+            logger.error("Failed to checkpoint candle journal: {}", e.getMessage(), e);
+        }
+    }
 }
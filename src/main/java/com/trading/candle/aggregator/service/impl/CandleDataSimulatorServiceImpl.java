@@ -37,6 +37,10 @@ public class CandleDataSimulatorServiceImpl implements CandleDataSimulatorServic
     @Override
     @Scheduled(fixedRateString = "#{@candleAggregationProperties.simulator.eventGenerationRateMs}")
     public void generateEvent() {
+        // The load harness drives ingestion on its own during a load run
+        if (properties.getSimulator().getLoad().isEnabled()) {
+            return;
+        }
         try {
             List<String> symbols = properties.getSupportedSymbols();
             Map<String, Double> baseValues = properties.getSymbolBaseValues();
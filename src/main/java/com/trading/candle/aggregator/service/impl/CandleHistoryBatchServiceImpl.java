@@ -0,0 +1,107 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.codec.CandleHistoryFormat;
+import com.trading.candle.aggregator.codec.ColumnarBinaryEncoder;
+import com.trading.candle.aggregator.codec.JsonColumnEncoder;
+import com.trading.candle.aggregator.dto.HistoryQuery;
+import com.trading.candle.aggregator.service.CandleHistoryBatchService;
+import com.trading.candle.aggregator.service.CandleHistoryService;
+import com.trading.candle.aggregator.storage.CandleSeries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Fans the queries of a batch out over the history batch executor, so a batch takes about as
+ * long as its slowest query, and writes each result as soon as it and all earlier ones are
+ * done. A failed query is answered with an error entry in either format, the others are still
+ * written.
+ */
+@Service
+public class CandleHistoryBatchServiceImpl implements CandleHistoryBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CandleHistoryBatchServiceImpl.class);
+
+    private final CandleHistoryService candleHistoryService;
+    private final Executor executor;
+    private final JsonMapper jsonMapper;
+
+    public CandleHistoryBatchServiceImpl(CandleHistoryService candleHistoryService,
+                                         @Qualifier("historyBatchExecutor") Executor executor,
+                                         JsonMapper jsonMapper) {
+        this.candleHistoryService = candleHistoryService;
+        this.executor = executor;
+        this.jsonMapper = jsonMapper;
+    }
+
+    @Override
+    public void writeCandleHistories(List<HistoryQuery> queries, CandleHistoryFormat format, OutputStream out) {
+        List<CompletableFuture<CandleSeries>> results = queries.stream()
+                .map(query -> CompletableFuture.supplyAsync(() -> candleHistoryService.readCandleHistory(
+                        query.symbol(), query.interval(), query.from(), query.to()), executor))
+                .toList();
+        try {
+            if (format == CandleHistoryFormat.COLUMNAR) {
+                writeColumnar(queries, results, out);
+            } else {
+                writeJson(queries, results, out);
+            }
+        } finally {
+            // Nothing waits for the rest once writing failed
+            results.forEach(result -> result.cancel(false));
+        }
+    }
+
+    private void writeColumnar(List<HistoryQuery> queries, List<CompletableFuture<CandleSeries>> results,
+                               OutputStream out) {
+        for (int i = 0; i < results.size(); i++) {
+            ColumnarBinaryEncoder encoder = new ColumnarBinaryEncoder(out);
+            try {
+                encoder.encode(results.get(i).join());
+            } catch (CompletionException e) {
+                logFailure(queries.get(i), e);
+                encoder.encodeError();
+            }
+        }
+    }
+
+    private void writeJson(List<HistoryQuery> queries, List<CompletableFuture<CandleSeries>> results,
+                           OutputStream out) {
+        try (JsonGenerator json = jsonMapper.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringProperty("s", "ok");
+            json.writeName("results");
+            json.writeStartArray();
+            for (int i = 0; i < results.size(); i++) {
+                CandleSeries candles;
+                try {
+                    candles = results.get(i).join();
+                } catch (CompletionException e) {
+                    logFailure(queries.get(i), e);
+                    json.writeStartObject();
+                    json.writeStringProperty("s", "error");
+                    json.writeStringProperty("errmsg", "Could not read candle history");
+                    json.writeEndObject();
+                    continue;
+                }
+                new JsonColumnEncoder(json, false).encode(candles);
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    private static void logFailure(HistoryQuery query, CompletionException e) {
+        logger.warn("Batch history query for {} {} failed: {}", query.symbol(), query.interval(),
+                e.getCause().getMessage());
+    }
+}
@@ -1,41 +1,348 @@
 package com.trading.candle.aggregator.service.impl;
 
-import com.trading.candle.aggregator.entity.CandleEntity;
-import com.trading.candle.aggregator.repository.CandleRepository;
+import com.trading.candle.aggregator.codec.CandleColumn;
+import com.trading.candle.aggregator.codec.CandleColumnEncoder;
+import com.trading.candle.aggregator.codec.CandleHistoryFormat;
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.engine.LiveCandle;
+import com.trading.candle.aggregator.engine.PartitionedAggregationEngine;
 import com.trading.candle.aggregator.service.CandleHistoryService;
+import com.trading.candle.aggregator.storage.CandleResampler;
+import com.trading.candle.aggregator.storage.CandleRowHandler;
+import com.trading.candle.aggregator.storage.CandleSeries;
+import com.trading.candle.aggregator.storage.CandleStorage;
+import com.trading.candle.aggregator.storage.StorageDataset;
+import com.trading.candle.aggregator.util.CandleIntervalUtil;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
 public class CandleHistoryServiceImpl implements CandleHistoryService {
 
-    private final CandleRepository candleRepository;
+    private final CandleStorage candleStorage;
+    private final RecentCandleCache recentCandles;
+    private final PartitionedAggregationEngine aggregationEngine;
+    private final JsonMapper jsonMapper;
+    private final CandleAggregationProperties properties;
 
-    CandleHistoryServiceImpl(CandleRepository candleRepository) {
-        this.candleRepository = candleRepository;
+    CandleHistoryServiceImpl(CandleStorage candleStorage, RecentCandleCache recentCandles,
+                             PartitionedAggregationEngine aggregationEngine, JsonMapper jsonMapper,
+                             CandleAggregationProperties properties) {
+        this.candleStorage = candleStorage;
+        this.recentCandles = recentCandles;
+        this.aggregationEngine = aggregationEngine;
+        this.jsonMapper = jsonMapper;
+        this.properties = properties;
     }
 
+    @Override
     public Map<String, Object> getCandleHistory(
             String symbol,
             String interval,
             long from,
             long to) {
 
-        var candles = candleRepository
-                .findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(
-                        symbol, interval, from, to);
+        CandleSeries candles = readCandles(symbol, interval, from, to);
 
         Map<String, Object> response = new HashMap<>();
         response.put("s", "ok");
-        response.put("t", candles.stream().map(CandleEntity::getOpenTime).toList());
-        response.put("o", candles.stream().map(CandleEntity::getOpenPrice).toList());
-        response.put("h", candles.stream().map(CandleEntity::getHighPrice).toList());
-        response.put("l", candles.stream().map(CandleEntity::getLowPrice).toList());
-        response.put("c", candles.stream().map(CandleEntity::getClosePrice).toList());
-        response.put("v", candles.stream().map(CandleEntity::getVolume).toList());
+        response.put("t", Arrays.stream(candles.openTimes()).boxed().toList());
+        response.put("o", boxed(candles.open()));
+        response.put("h", boxed(candles.high()));
+        response.put("l", boxed(candles.low()));
+        response.put("c", boxed(candles.close()));
+        response.put("v", Arrays.stream(candles.volume()).boxed().toList());
 
         return response;
     }
+
+    @Override
+    public CandleSeries readCandleHistory(String symbol, String interval, long from, long to) {
+        return readCandles(symbol, interval, from, to);
+    }
+
+    @Override
+    public void writeCandleHistory(String symbol, String interval, long from, long to, CandleHistoryFormat format,
+                                   OutputStream out) {
+        format.open(out, jsonMapper).encode(readCandles(symbol, interval, from, to));
+    }
+
+    @Override
+    public Long writeCandlePage(String symbol, String interval, long from, long to, int limit, boolean countback,
+                                CandleHistoryFormat format, OutputStream out) {
+        QueryPlan plan = plan(interval, from, to);
+        CandleSeries page;
+        Long next;
+        if (plan.resampled()) {
+            // Bounded by time to the requested candles, which can leave pages short where data is sparse
+            long seconds = plan.resampleSeconds();
+            long first = plan.from();
+            long last = plan.to() - seconds + 1;
+            if (countback) {
+                long pageFrom = Math.max(first, last - (limit - 1L) * seconds);
+                page = readCandles(symbol, interval, pageFrom, to);
+                next = pageFrom > first ? pageFrom - 1 : null;
+            } else {
+                long pageTo = Math.min(last, first + (limit - 1L) * seconds);
+                page = readCandles(symbol, interval, from, pageTo);
+                next = pageTo < last ? pageTo + 1 : null;
+            }
+        } else {
+            // One candle more than the page tells whether another page follows
+            CandleSeries candles = countback
+                    ? readLast(symbol, interval, from, to, limit + 1)
+                    : readFirst(symbol, interval, from, to, limit + 1);
+            if (candles.size() <= limit) {
+                page = candles;
+                next = null;
+            } else if (countback) {
+                page = candles.last(limit);
+                next = page.openTimes()[0] - 1;
+            } else {
+                page = candles.first(limit);
+                next = page.openTimes()[limit - 1] + 1;
+            }
+        }
+        format.open(out, jsonMapper).encode(page);
+        return next;
+    }
+
+    // Counted in the candles read, which are finer than those returned when resampling
+    @Override
+    public boolean isStreamed(String interval, long from, long to) {
+        QueryPlan plan = plan(interval, from, to);
+        long candles = (plan.to() - plan.from()) / CandleIntervalUtil.toSeconds(plan.interval()) + 1;
+        return candles > properties.getHistory().getStreamingThresholdCandles();
+    }
+
+    // Finalized candles only count once they are committed, a response built before would miss
+    // the part not yet written. Resampled ranges are final with the stored candles they span.
+    @Override
+    public boolean isFinalized(String symbol, String interval, long from, long to) {
+        QueryPlan plan = plan(interval, from, to);
+        return plan.to() < recentCandles.committedBefore(symbol, plan.interval());
+    }
+
+    @Override
+    public StorageDataset dataset() {
+        return candleStorage.dataset();
+    }
+
+    /**
+     * Writes one column at a time: each column of the stored part is a separate pass over a
+     * storage cursor, followed by the cached recent candles. Formats that need the count up
+     * front get an extra counting pass. All passes run in one repeatable read transaction, so
+     * they see the same rows.
+     */
+    @Override
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void streamCandleHistory(String symbol, String interval, long from, long to, CandleHistoryFormat format,
+                                    OutputStream out) {
+        QueryPlan plan = plan(interval, from, to);
+        CandleSeries recent = CandleSeries.empty();
+        long storedTo = plan.to();
+        RecentCandleCache.CachedRange cached = recentCandles.read(symbol, plan.interval(), plan.from(), plan.to());
+        if (cached != null) {
+            recent = withLiveCandle(cached, symbol, plan.interval(), plan.from(), plan.to());
+            storedTo = Math.min(plan.to(), cached.coveredFrom() - 1);
+        }
+
+        CandleColumnEncoder encoder = format.open(out, jsonMapper);
+        StoredRows stored = new StoredRows(plan.from() <= storedTo);
+        if (encoder.requiresCount()) {
+            long[] count = {0};
+            streamPass(symbol, plan, storedTo, stored, recent, (t, o, h, l, c, v) -> count[0]++);
+            encoder.begin(count[0]);
+        } else {
+            encoder.begin(-1);
+        }
+        for (CandleColumn column : CandleColumn.values()) {
+            encoder.beginColumn(column);
+            streamPass(symbol, plan, storedTo, stored, recent, column.writerFor(encoder));
+            encoder.endColumn();
+        }
+        encoder.end();
+    }
+
+    // One pass over the stored and then the recent candles, merged into the requested interval
+    // in the same pass when resampling
+    private void streamPass(String symbol, QueryPlan plan, long storedTo, StoredRows stored, CandleSeries recent,
+                            CandleRowHandler handler) {
+        CandleResampler resampler = plan.resampled() ? new CandleResampler(plan.resampleSeconds(), handler) : null;
+        CandleRowHandler rows = resampler != null ? resampler : handler;
+        streamStored(symbol, plan.interval(), plan.from(), storedTo, stored, rows);
+        recent.forEach(rows);
+        if (resampler != null) {
+            resampler.flush();
+        }
+    }
+
+    // Storage such as the segment files is not transactional, so a late candle can be inserted
+    // anywhere in the range between passes. Later passes therefore only write the candles whose
+    // open times the first pass saw, and every column keeps the rows of the first.
+    private void streamStored(String symbol, String interval, long from, long to, StoredRows stored,
+                              CandleRowHandler handler) {
+        if (!stored.recorded()) {
+            candleStorage.stream(symbol, interval, from, to, (t, o, h, l, c, v) -> {
+                stored.add(t);
+                handler.onCandle(t, o, h, l, c, v);
+            });
+            stored.finish();
+            return;
+        }
+        if (stored.size() == 0) {
+            return;
+        }
+        int[] next = {0};
+        candleStorage.stream(symbol, interval, from, stored.last(), (t, o, h, l, c, v) -> {
+            // Both passes are in ascending open time, so the first pass's rows are matched in order
+            while (next[0] < stored.size() && stored.openTime(next[0]) < t) {
+                next[0]++;
+            }
+            if (next[0] < stored.size() && stored.openTime(next[0]) == t) {
+                next[0]++;
+                handler.onCandle(t, o, h, l, c, v);
+            }
+        });
+    }
+
+    /**
+     * Open times of the stored candles written by the first pass of a streamed response.
+     */
+    private static final class StoredRows {
+        private long[] openTimes = new long[64];
+        private int size;
+        private boolean recorded;
+
+        StoredRows(boolean hasStoredRange) {
+            // Without a stored part of the range there is nothing to record
+            this.recorded = !hasStoredRange;
+        }
+
+        boolean recorded() {
+            return recorded;
+        }
+
+        void add(long openTime) {
+            if (size == openTimes.length) {
+                openTimes = Arrays.copyOf(openTimes, size << 1);
+            }
+            openTimes[size++] = openTime;
+        }
+
+        void finish() {
+            recorded = true;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long openTime(int row) {
+            return openTimes[row];
+        }
+
+        long last() {
+            return openTimes[size - 1];
+        }
+    }
+
+    private CandleSeries readCandles(String symbol, String interval, long from, long to) {
+        QueryPlan plan = plan(interval, from, to);
+        CandleSeries candles = readStored(symbol, plan.interval(), plan.from(), plan.to());
+        return plan.resampled() ? CandleResampler.resample(candles, plan.resampleSeconds()) : candles;
+    }
+
+    /**
+     * Plans a query on the interval it is read from: the interval itself if it is aggregated,
+     * otherwise the coarsest aggregated interval dividing it, over the range of every candle
+     * that makes up the requested ones.
+     */
+    QueryPlan plan(String interval, long from, long to) {
+        List<String> storedIntervals = properties.getIntervals();
+        String base = storedIntervals == null ? null : CandleIntervalUtil.baseInterval(interval, storedIntervals);
+        if (base == null || base.equals(interval)) {
+            return new QueryPlan(interval, from, to, 0);
+        }
+        long seconds = CandleIntervalUtil.toSeconds(interval);
+        long first = Math.floorDiv(from + seconds - 1, seconds) * seconds;
+        long last = Math.floorDiv(to, seconds) * seconds;
+        return new QueryPlan(base, first, last + seconds - 1, seconds);
+    }
+
+    // Recent candles come from memory, storage is only read for the part of the range before them
+    private CandleSeries readStored(String symbol, String interval, long from, long to) {
+        RecentCandleCache.CachedRange cached = recentCandles.read(symbol, interval, from, to);
+        if (cached == null) {
+            return candleStorage.read(symbol, interval, from, to);
+        }
+        CandleSeries recent = withLiveCandle(cached, symbol, interval, from, to);
+        if (from >= cached.coveredFrom()) {
+            return recent;
+        }
+        return candleStorage.read(symbol, interval, from, Math.min(to, cached.coveredFrom() - 1))
+                .append(recent);
+    }
+
+    private CandleSeries readFirst(String symbol, String interval, long from, long to, int limit) {
+        RecentCandleCache.CachedRange cached = recentCandles.read(symbol, interval, from, to);
+        if (cached == null) {
+            return candleStorage.readFirst(symbol, interval, from, to, limit);
+        }
+        CandleSeries recent = withLiveCandle(cached, symbol, interval, from, to);
+        if (from >= cached.coveredFrom()) {
+            return recent.first(limit);
+        }
+        CandleSeries stored = candleStorage.readFirst(symbol, interval, from,
+                Math.min(to, cached.coveredFrom() - 1), limit);
+        return stored.size() == limit ? stored : stored.append(recent.first(limit - stored.size()));
+    }
+
+    private CandleSeries readLast(String symbol, String interval, long from, long to, int limit) {
+        RecentCandleCache.CachedRange cached = recentCandles.read(symbol, interval, from, to);
+        if (cached == null) {
+            return candleStorage.readLast(symbol, interval, from, to, limit);
+        }
+        CandleSeries recent = withLiveCandle(cached, symbol, interval, from, to);
+        if (recent.size() >= limit || from >= cached.coveredFrom()) {
+            return recent.last(limit);
+        }
+        return candleStorage.readLast(symbol, interval, from, Math.min(to, cached.coveredFrom() - 1),
+                limit - recent.size()).append(recent);
+    }
+
+    // The live candle holds what changed since the drain it was stamped with; it only adds up
+    // with cached candles reflecting exactly that drain, otherwise the next drain brings it in
+    private CandleSeries withLiveCandle(RecentCandleCache.CachedRange cached, String symbol, String interval,
+                                        long from, long to) {
+        LiveCandle live = aggregationEngine.liveCandle(symbol, interval);
+        if (live == null || live.generation() != cached.drainedEpoch()
+                || live.openTime() < Math.max(from, cached.coveredFrom()) || live.openTime() > to) {
+            return cached.candles();
+        }
+        return cached.candles().mergeNewer(live.openTime(), live.open(), live.high(), live.low(),
+                live.close(), live.volume());
+    }
+
+    private static List<Double> boxed(double[] column) {
+        return Arrays.stream(column).boxed().toList();
+    }
+
+    /**
+     * Stored interval and range to read; candles are merged into {@code resampleSeconds} if set.
+     */
+    record QueryPlan(String interval, long from, long to, long resampleSeconds) {
+
+        boolean resampled() {
+            return resampleSeconds > 0;
+        }
+    }
 }
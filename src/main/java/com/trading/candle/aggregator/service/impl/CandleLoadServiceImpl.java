@@ -0,0 +1,405 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.dto.LoadReport;
+import com.trading.candle.aggregator.dto.LoadStepResult;
+import com.trading.candle.aggregator.engine.IngestionStats;
+import com.trading.candle.aggregator.engine.LatencyHistogram;
+import com.trading.candle.aggregator.engine.LatencySnapshot;
+import com.trading.candle.aggregator.engine.PartitionedAggregationEngine;
+import com.trading.candle.aggregator.model.BidAskEvent;
+import com.trading.candle.aggregator.service.CandleAggregationService;
+import com.trading.candle.aggregator.service.CandleHistoryService;
+import com.trading.candle.aggregator.service.CandleLoadService;
+import com.trading.candle.aggregator.service.PipelineLatencyService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * Load harness on top of the simulator. Producer threads publish through the aggregation
+ * service at a paced target rate, which grows by a fixed increment every step, while a query
+ * thread reads recent history. Events come from a seeded Zipf distribution over synthetic
+ * symbols or from a recorded tick file, stamped with the current time.
+ * <p>
+ * A step is sustained if the producers delivered their target and no event was rejected,
+ * dropped or blocked, nor did the rings lag behind by more than the configured number of
+ * events. The run stops at the first step that is not.
+ */
+@Service
+public class CandleLoadServiceImpl implements CandleLoadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CandleLoadServiceImpl.class);
+
+    private static final String QUERY_INTERVAL = "1m";
+    private static final long QUERY_RANGE_SECONDS = 3600;
+    private static final long LAG_SAMPLE_MS = 100;
+    // Waits shorter than this are spun, parking is too coarse for them
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final CandleAggregationService aggregationService;
+    private final CandleHistoryService historyService;
+    private final PartitionedAggregationEngine aggregationEngine;
+    private final PipelineLatencyService pipelineLatency;
+    private final CandleAggregationProperties properties;
+    private final JsonMapper jsonMapper;
+    private final ConfigurableApplicationContext applicationContext;
+
+    public CandleLoadServiceImpl(CandleAggregationService aggregationService,
+                                 CandleHistoryService historyService,
+                                 PartitionedAggregationEngine aggregationEngine,
+                                 PipelineLatencyService pipelineLatency,
+                                 CandleAggregationProperties properties,
+                                 JsonMapper jsonMapper,
+                                 ConfigurableApplicationContext applicationContext) {
+        this.aggregationService = aggregationService;
+        this.historyService = historyService;
+        this.aggregationEngine = aggregationEngine;
+        this.pipelineLatency = pipelineLatency;
+        this.properties = properties;
+        this.jsonMapper = jsonMapper;
+        this.applicationContext = applicationContext;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (properties.getSimulator().getLoad().isEnabled()) {
+            Thread.ofPlatform().name("candle-load").start(this::runAndExit);
+        }
+    }
+
+    @Override
+    public LoadReport run() {
+        CandleAggregationProperties.Load load = properties.getSimulator().getLoad();
+        if (load.getProducers() <= 0 || load.getStepSeconds() <= 0 || load.getStartRate() <= 0) {
+            throw new IllegalArgumentException("Load runs need producers, a step duration and a start rate");
+        }
+        EventSource source = eventSource(load);
+        SplittableRandom seeds = new SplittableRandom(load.getSeed());
+        Producer[] producers = new Producer[load.getProducers()];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Producer(source, i, producers.length, seeds.split());
+        }
+        SplittableRandom queryRandom = seeds.split();
+        logger.info("Starting load run: {}, {} producers, {}/s up to {}/s in steps of {}/s every {}s",
+                source.describe(), producers.length, load.getStartRate(), load.getMaxRate(),
+                load.getRateIncrement(), load.getStepSeconds());
+
+        ExecutorService threads = Executors.newFixedThreadPool(producers.length + 1,
+                Thread.ofPlatform().name("candle-load-", 0).factory());
+        try {
+            List<LoadStepResult> steps = new ArrayList<>();
+            long maxSustainedRate = 0;
+            long rate = load.getStartRate();
+            for (int step = 1; rate <= load.getMaxRate(); step++) {
+                LoadStepResult result = runStep(step, rate, producers, source, queryRandom, threads, load);
+                steps.add(result);
+                logger.info("Step {}: target {}/s, achieved {}/s, rejected {}, dropped {}, blocked {}, max lag {}, "
+                                + "p99 aggregation {} ms, flush {} ms, commit {} ms, query {} ms -> {}",
+                        step, rate, Math.round(result.achievedRate()), result.rejectedEvents(), result.droppedEvents(),
+                        result.blockedPublishes(), result.maxLag(), result.aggregationP99Ms(), result.flushP99Ms(),
+                        result.commitP99Ms(), result.queryP99Ms(), result.sustained() ? "sustained" : "not sustained");
+                if (!result.sustained()) {
+                    break;
+                }
+                maxSustainedRate = rate;
+                if (load.getRateIncrement() <= 0) {
+                    break;
+                }
+                rate += load.getRateIncrement();
+            }
+            logger.info("Maximum sustained ingest rate: {} events/s", maxSustainedRate);
+            return new LoadReport(version(), source.describe(), load.getSeed(), producers.length, source.symbols(),
+                    load.getStepSeconds(), maxSustainedRate, steps);
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private LoadStepResult runStep(int step, long rate, Producer[] producers, EventSource source,
+                                   SplittableRandom queryRandom, ExecutorService threads,
+                                   CandleAggregationProperties.Load load) {
+        IngestionTotals before = ingestionTotals();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(load.getStepSeconds());
+
+        List<Future<long[]>> producing = new ArrayList<>(producers.length);
+        for (int i = 0; i < producers.length; i++) {
+            // Spread the remainder so the producer rates add up to the target
+            long producerRate = rate / producers.length + (i < rate % producers.length ? 1 : 0);
+            Producer producer = producers[i];
+            producing.add(threads.submit(() -> producer.run(producerRate, start, end)));
+        }
+        LatencyHistogram queryLatency = LatencyHistogram.concurrent(1);
+        Future<Long> querying = threads.submit(() ->
+                runQueries(load.getQueryRatePerSecond(), start, end, source, queryRandom, queryLatency));
+
+        long maxLag = 0;
+        try {
+            while (System.nanoTime() - end < 0) {
+                maxLag = Math.max(maxLag, ingestionTotals().lag());
+                Thread.sleep(LAG_SAMPLE_MS);
+            }
+            long sent = 0;
+            long rejected = 0;
+            for (Future<long[]> producer : producing) {
+                long[] counts = producer.get();
+                sent += counts[0];
+                rejected += counts[1];
+            }
+            long queries = querying.get();
+
+            IngestionTotals after = ingestionTotals();
+            maxLag = Math.max(maxLag, after.lag());
+            long dropped = after.dropped() - before.dropped();
+            long blocked = after.blocked() - before.blocked();
+            double achievedRate = sent / (double) load.getStepSeconds();
+            boolean sustained = achievedRate >= rate * load.getMinDeliveredRatio()
+                    && rejected == 0 && dropped == 0 && blocked == 0 && maxLag <= load.getMaxLagEvents();
+
+            Map<PipelineLatencyService.Stage, LatencySnapshot> latency = pipelineLatency.latency();
+            LatencySnapshot queryLatencies = queryLatency.snapshot();
+            return new LoadStepResult(step, rate, sent, achievedRate, rejected, dropped, blocked, maxLag,
+                    millis(latency.get(PipelineLatencyService.Stage.AGGREGATION).p99Nanos()),
+                    millis(latency.get(PipelineLatencyService.Stage.FLUSH).p99Nanos()),
+                    millis(latency.get(PipelineLatencyService.Stage.COMMIT).p99Nanos()),
+                    queries, millis(queryLatencies.p50Nanos()), millis(queryLatencies.p99Nanos()), sustained);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Load run was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Load step " + step + " failed", e.getCause());
+        }
+    }
+
+    private long runQueries(int queryRate, long start, long end, EventSource source, SplittableRandom random,
+                            LatencyHistogram latency) {
+        if (queryRate <= 0) {
+            return 0;
+        }
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / queryRate;
+        long next = start;
+        long queries = 0;
+        while (pace(next, end)) {
+            long now = System.currentTimeMillis() / 1000;
+            long started = System.nanoTime();
+            try {
+                historyService.readCandleHistory(source.querySymbol(random), QUERY_INTERVAL, now - QUERY_RANGE_SECONDS,
+                        now);
+                latency.record(System.nanoTime() - started);
+                queries++;
+            } catch (Exception e) {
+                logger.warn("History query failed during load run: {}", e.getMessage());
+            }
+            next += intervalNanos;
+        }
+        return queries;
+    }
+
+    private void runAndExit() {
+        CandleAggregationProperties.Load load = properties.getSimulator().getLoad();
+        int exitCode = 0;
+        try {
+            LoadReport report = run();
+            writeReport(report, Path.of(load.getReportFile()));
+            if (load.getFailBelowRate() > 0 && report.maxSustainedRate() < load.getFailBelowRate()) {
+                logger.error("Maximum sustained rate {} events/s is below the required {} events/s",
+                        report.maxSustainedRate(), load.getFailBelowRate());
+                exitCode = 2;
+            }
+        } catch (Exception e) {
+            logger.error("Load run failed: {}", e.getMessage(), e);
+            exitCode = 1;
+        }
+        if (load.isExitOnCompletion()) {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(applicationContext, () -> code));
+        }
+    }
+
+    private void writeReport(LoadReport report, Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        jsonMapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+        logger.info("Wrote load report to {}", file);
+    }
+
+    private EventSource eventSource(CandleAggregationProperties.Load load) {
+        if (load.getReplayFile() != null && !load.getReplayFile().isBlank()) {
+            try {
+                return new ReplaySource(RecordedTicks.load(Path.of(load.getReplayFile())), load.getReplayFile());
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot read tick file " + load.getReplayFile(), e);
+            }
+        }
+        CandleAggregationProperties.Simulator simulator = properties.getSimulator();
+        return new ZipfSource(new ZipfSymbolSampler(load.getSymbols(), load.getZipfExponent()), load.getZipfExponent(),
+                simulator.getPriceVariationRange(), simulator.getBidAskSpread());
+    }
+
+    private IngestionTotals ingestionTotals() {
+        long lag = 0;
+        long dropped = 0;
+        long blocked = 0;
+        for (IngestionStats stats : aggregationEngine.ingestionStats()) {
+            lag += stats.lag();
+            dropped += stats.droppedOldest() + stats.droppedNewest();
+            blocked += stats.blockedPublishes();
+        }
+        return new IngestionTotals(lag, dropped, blocked);
+    }
+
+    private static String version() {
+        String version = CandleLoadServiceImpl.class.getPackage().getImplementationVersion();
+        return version != null ? version : "unknown";
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Waits until {@code next}, or returns false once the step has ended.
+     */
+    private static boolean pace(long next, long end) {
+        while (true) {
+            long now = System.nanoTime();
+            if (now - end >= 0 || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            long wait = next - now;
+            if (wait <= 0) {
+                return true;
+            }
+            if (wait > SPIN_NANOS) {
+                LockSupport.parkNanos(wait - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    // Lag counts the events published to the rings that the partitions have not applied yet
+    private record IngestionTotals(long lag, long dropped, long blocked) {
+    }
+
+    private interface EventSource {
+        BidAskEvent event(int producer, int producers, long sequence, SplittableRandom random, long timestamp);
+
+        String querySymbol(SplittableRandom random);
+
+        int symbols();
+
+        String describe();
+    }
+
+    private record ZipfSource(ZipfSymbolSampler sampler, double exponent, double priceVariation,
+                              double spread) implements EventSource {
+        @Override
+        public BidAskEvent event(int producer, int producers, long sequence, SplittableRandom random, long timestamp) {
+            double price = 100.0 + random.nextDouble() * priceVariation;
+            return new BidAskEvent(sampler.next(random), Math.max(0, price - spread), price + spread, timestamp);
+        }
+
+        @Override
+        public String querySymbol(SplittableRandom random) {
+            return sampler.next(random);
+        }
+
+        @Override
+        public int symbols() {
+            return sampler.size();
+        }
+
+        @Override
+        public String describe() {
+            return "zipf(" + sampler.size() + " symbols, exponent " + exponent + ")";
+        }
+    }
+
+    private record ReplaySource(RecordedTicks ticks, String file) implements EventSource {
+        @Override
+        public BidAskEvent event(int producer, int producers, long sequence, SplittableRandom random, long timestamp) {
+            // Producers take turns over the ticks and start over at the end of the file
+            int index = (int) ((sequence * producers + producer) % ticks.size());
+            return new BidAskEvent(ticks.symbol(index), ticks.bid(index), ticks.ask(index), timestamp);
+        }
+
+        @Override
+        public String querySymbol(SplittableRandom random) {
+            return ticks.symbol(random.nextInt(ticks.size()));
+        }
+
+        @Override
+        public int symbols() {
+            return (int) IntStream.range(0, ticks.size()).mapToObj(ticks::symbol).distinct().count();
+        }
+
+        @Override
+        public String describe() {
+            return "replay(" + file + ", " + ticks.size() + " ticks)";
+        }
+    }
+
+    private final class Producer {
+        private final EventSource source;
+        private final int index;
+        private final int producers;
+        private final SplittableRandom random;
+        private long sequence;
+
+        Producer(EventSource source, int index, int producers, SplittableRandom random) {
+            this.source = source;
+            this.index = index;
+            this.producers = producers;
+            this.random = random;
+        }
+
+        /**
+         * Publishes at the given rate until the end of the step, catching up after stalls.
+         * Returns the number of events sent and of those the service rejected.
+         */
+        long[] run(long rate, long start, long end) {
+            if (rate <= 0) {
+                return new long[]{0, 0};
+            }
+            long intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / rate);
+            long next = start;
+            long sent = 0;
+            long rejected = 0;
+            while (pace(next, end)) {
+                BidAskEvent event = source.event(index, producers, sequence++, random,
+                        System.currentTimeMillis() / 1000);
+                if (!aggregationService.processEvent(event)) {
+                    rejected++;
+                }
+                sent++;
+                next += intervalNanos;
+            }
+            return new long[]{sent, rejected};
+        }
+    }
+}
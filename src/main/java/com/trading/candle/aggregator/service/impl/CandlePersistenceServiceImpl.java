@@ -1,8 +1,10 @@
 package com.trading.candle.aggregator.service.impl;
 
 import com.trading.candle.aggregator.entity.CandleEntity;
-import com.trading.candle.aggregator.repository.CandleRepository;
 import com.trading.candle.aggregator.service.CandlePersistenceService;
+import com.trading.candle.aggregator.storage.CandleStorage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -13,36 +15,68 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class CandlePersistenceServiceImpl implements CandlePersistenceService {
 
     private static final Logger logger = LoggerFactory.getLogger(CandlePersistenceServiceImpl.class);
 
-    private final CandleRepository candleRepository;
+    private final CandleStorage candleStorage;
     private final Executor taskExecutor;
     private final ApplicationContext applicationContext;
+    private final Timer queueTimer;
+    private final Timer writeTimer;
+    private final Timer transactionSuccessTimer;
+    private final Timer transactionFailureTimer;
 
-    public CandlePersistenceServiceImpl(CandleRepository candleRepository, 
+    public CandlePersistenceServiceImpl(CandleStorage candleStorage,
                                        @Qualifier("candleAggregationExecutor") Executor taskExecutor,
-                                       ApplicationContext applicationContext) {
-        this.candleRepository = candleRepository;
+                                       ApplicationContext applicationContext,
+                                       MeterRegistry meterRegistry) {
+        this.candleStorage = candleStorage;
         this.taskExecutor = taskExecutor;
         this.applicationContext = applicationContext;
+        this.queueTimer = Timer.builder("candle.persistence.queue")
+                .description("Wait for a persistence thread")
+                .register(meterRegistry);
+        this.writeTimer = Timer.builder("candle.persistence.write")
+                .description("Storage write statements, inside the transaction")
+                .register(meterRegistry);
+        this.transactionSuccessTimer = transactionTimer("success", meterRegistry);
+        this.transactionFailureTimer = transactionTimer("failure", meterRegistry);
+    }
+
+    // Includes the write and the commit, so the commit takes the difference to the write
+    private static Timer transactionTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("candle.persistence.transaction")
+                .description("Persistence transaction from begin to commit or rollback")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 
     @Override
     public CompletableFuture<Void> persistCandles(List<CandleEntity> candles) {
-        if (candles.isEmpty()) {
+        return persistCandles(candles, List.of());
+    }
+
+    @Override
+    public CompletableFuture<Void> persistCandles(List<CandleEntity> candles, List<CandleEntity> persistedCandles) {
+        if (candles.isEmpty() && persistedCandles.isEmpty()) {
             return CompletableFuture.completedFuture(null);
         }
 
+        long submitted = System.nanoTime();
         return CompletableFuture.runAsync(() -> {
+            long started = System.nanoTime();
+            queueTimer.record(started - submitted, TimeUnit.NANOSECONDS);
             try {
                 CandlePersistenceService proxy = applicationContext.getBean(CandlePersistenceService.class);
-                proxy.persistCandlesTransactional(candles);
-                logger.info("Successfully persisted {} candles", candles.size());
+                proxy.persistCandlesTransactional(candles, persistedCandles);
+                transactionSuccessTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                logger.info("Successfully persisted {} candles", candles.size() + persistedCandles.size());
             } catch (Exception e) {
+                transactionFailureTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
                 logger.error("Failed to persist candles: {}", e.getMessage(), e);
                 throw new RuntimeException("Failed to persist candles", e);
             }
@@ -51,62 +85,13 @@ public class CandlePersistenceServiceImpl implements CandlePersistenceService {
 
     @Transactional(propagation = org.springframework.transaction.annotation.Propagation.REQUIRES_NEW)
     public void persistCandlesTransactional(List<CandleEntity> candles) {
-        persistCandlesBulk(candles);
+        persistCandlesTransactional(candles, List.of());
     }
 
-    private void persistCandlesBulk(List<CandleEntity> candles) {
-        // Group candles by symbol and interval for efficient bulk operations
-        Map<String, List<CandleEntity>> groupedCandles = candles.stream()
-                .collect(HashMap::new, 
-                        (map, candle) -> map.computeIfAbsent(
-                                candle.getSymbol() + "_" + candle.getCandleInterval(), 
-                                k -> new ArrayList<>()).add(candle),
-                        HashMap::putAll);
-
-        List<CandleEntity> candlesToInsert = new ArrayList<>();
-        
-        for (List<CandleEntity> group : groupedCandles.values()) {
-            // Find existing candles in bulk
-            List<Long> openTimes = group.stream()
-                    .map(CandleEntity::getOpenTime)
-                    .toList();
-            
-            String symbol = group.get(0).getSymbol();
-            String interval = group.get(0).getCandleInterval();
-            
-            List<CandleEntity> existingCandles = candleRepository
-                    .findBySymbolAndCandleIntervalAndOpenTimeIn(symbol, interval, openTimes);
-            
-            Map<Long, CandleEntity> existingMap = existingCandles.stream()
-                    .collect(HashMap::new, 
-                            (map, candle) -> map.put(candle.getOpenTime(), candle),
-                            HashMap::putAll);
-            
-            // Process each candle in the group
-            for (CandleEntity candle : group) {
-                CandleEntity existing = existingMap.get(candle.getOpenTime());
-                if (existing != null) {
-                    // Update existing candle with bulk query
-                    int updated = candleRepository.updateCandleAggregation(
-                            existing.getId(),
-                            candle.getHighPrice(),
-                            candle.getLowPrice(),
-                            candle.getClosePrice(),
-                            candle.getVolume()
-                    );
-                    if (updated == 0) {
-                        logger.warn("No rows updated for candle ID: {}", existing.getId());
-                    }
-                } else {
-                    // Mark for bulk insert
-                    candlesToInsert.add(candle);
-                }
-            }
-        }
-        
-        // Bulk insert new candles
-        if (!candlesToInsert.isEmpty()) {
-            candleRepository.saveAll(candlesToInsert);
-        }
+    @Transactional(propagation = org.springframework.transaction.annotation.Propagation.REQUIRES_NEW)
+    public void persistCandlesTransactional(List<CandleEntity> candles, List<CandleEntity> persistedCandles) {
+        long started = System.nanoTime();
+        candleStorage.write(candles, persistedCandles);
+        writeTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
     }
 }
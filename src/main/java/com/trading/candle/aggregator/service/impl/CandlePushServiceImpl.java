@@ -0,0 +1,218 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.dto.CandleUpdate;
+import com.trading.candle.aggregator.service.CandleHistoryService;
+import com.trading.candle.aggregator.service.CandlePushService;
+import com.trading.candle.aggregator.storage.CandleSeries;
+import com.trading.candle.aggregator.util.CandleIntervalUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes candle changes to subscribers over server-sent events. Every subscribed series is
+ * read once per push interval through the history service, which combines the recent candles
+ * with the engine's live ones, and the candles that changed since the previous read are
+ * offered to each of its subscribers. The work per interval grows with the subscribed series,
+ * not with the subscribers; connections are asynchronous requests and hold no thread.
+ * <p>
+ * The reads run on the single publish thread, never on the shared scheduler thread, so a slow
+ * storage read delays only the next push, not the drains and flushes scheduled beside it.
+ */
+@Service
+public class CandlePushServiceImpl implements CandlePushService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CandlePushServiceImpl.class);
+
+    private final CandleHistoryService candleHistoryService;
+    private final CandleAggregationProperties properties;
+    private final Executor executor;
+    private final Executor publishExecutor;
+    private final Map<SeriesKey, SeriesFeed> feeds = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private long lastHeartbeatMs = System.currentTimeMillis();
+
+    public CandlePushServiceImpl(CandleHistoryService candleHistoryService,
+                                 CandleAggregationProperties properties,
+                                 @Qualifier("candlePushExecutor") Executor executor,
+                                 @Qualifier("candlePublishExecutor") Executor publishExecutor) {
+        this.candleHistoryService = candleHistoryService;
+        this.properties = properties;
+        this.executor = executor;
+        this.publishExecutor = publishExecutor;
+    }
+
+    // Never times out, closed connections are noticed by the heartbeat
+    @Override
+    public SseEmitter subscribe(String symbol, String interval) {
+        SseEmitter emitter = new SseEmitter(0L);
+        CandleSubscriber subscriber = new CandleSubscriber(emitter, executor,
+                properties.getPush().getMaxPendingCandles());
+        return subscribe(symbol, interval, subscriber) ? emitter : null;
+    }
+
+    @Override
+    public int subscriberCount() {
+        return subscribers.get();
+    }
+
+    boolean subscribe(String symbol, String interval, CandleSubscriber subscriber) {
+        if (subscribers.incrementAndGet() > properties.getPush().getMaxSubscribers()) {
+            subscribers.decrementAndGet();
+            return false;
+        }
+        SeriesKey key = new SeriesKey(symbol, interval);
+        SseEmitter emitter = subscriber.emitter();
+        emitter.onCompletion(() -> unsubscribe(key, subscriber));
+        emitter.onTimeout(() -> unsubscribe(key, subscriber));
+        emitter.onError(e -> unsubscribe(key, subscriber));
+        feeds.compute(key, (k, feed) -> {
+            SeriesFeed subscribed = feed != null ? feed : new SeriesFeed(symbol, interval);
+            subscribed.add(subscriber);
+            return subscribed;
+        });
+        return true;
+    }
+
+    @Scheduled(fixedRateString = "#{@candleAggregationProperties.push.intervalMs}")
+    public void publishUpdates() {
+        publishExecutor.execute(this::publishNow);
+    }
+
+    // Publish thread only
+    private void publishNow() {
+        long nowMs = System.currentTimeMillis();
+        boolean heartbeat = nowMs - lastHeartbeatMs >= properties.getPush().getHeartbeatIntervalMs();
+        if (heartbeat) {
+            lastHeartbeatMs = nowMs;
+        }
+        publishUpdates(nowMs / 1000, heartbeat);
+    }
+
+    void publishUpdates(long nowSeconds, boolean heartbeat) {
+        for (SeriesFeed feed : feeds.values()) {
+            try {
+                feed.publish(nowSeconds, heartbeat);
+            } catch (Exception e) {
+                logger.warn("Could not push candles of {} {}: {}", feed.symbol, feed.interval, e.getMessage());
+            }
+        }
+    }
+
+    // Open connections would otherwise hold up the graceful shutdown of the web server
+    @EventListener(ContextClosedEvent.class)
+    public void onContextClosed() {
+        for (SeriesFeed feed : feeds.values()) {
+            feed.completeAll();
+        }
+    }
+
+    private void unsubscribe(SeriesKey key, CandleSubscriber subscriber) {
+        if (!subscriber.close()) {
+            return;
+        }
+        subscribers.decrementAndGet();
+        feeds.computeIfPresent(key, (k, feed) -> feed.remove(subscriber) ? null : feed);
+        if (subscriber.dropped() > 0) {
+            logger.debug("Subscriber of {} {} fell behind, {} candle updates conflated away",
+                    key.symbol(), key.interval(), subscriber.dropped());
+        }
+    }
+
+    private record SeriesKey(String symbol, String interval) {}
+
+    /**
+     * The subscribers of one series and the candle states last offered to them. Publishing and
+     * subscribing hold the feed's lock, so a new subscriber never gets a state older than one
+     * it was already offered.
+     */
+    private final class SeriesFeed {
+        private final String symbol;
+        private final String interval;
+        private final long seconds;
+        // Candles this far back may still change within the allowed lateness
+        private final long lookback;
+        private final Set<CandleSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private final NavigableMap<Long, CandleUpdate> latest = new TreeMap<>();
+
+        SeriesFeed(String symbol, String interval) {
+            this.symbol = symbol;
+            this.interval = interval;
+            this.seconds = CandleIntervalUtil.toSeconds(interval);
+            long latenessCandles = Math.ceilDiv(properties.getProcessing().getAllowedLatenessSeconds(), seconds);
+            this.lookback = Math.max(1, latenessCandles) * seconds;
+        }
+
+        synchronized void add(CandleSubscriber subscriber) {
+            subscribers.add(subscriber);
+            for (CandleUpdate update : latest.values()) {
+                subscriber.offer(update);
+            }
+        }
+
+        // Returns whether the feed is left without subscribers
+        synchronized boolean remove(CandleSubscriber subscriber) {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty();
+        }
+
+        void publish(long nowSeconds, boolean heartbeat) {
+            long newest;
+            synchronized (this) {
+                newest = latest.isEmpty() ? Math.floorDiv(nowSeconds, seconds) * seconds : latest.lastKey();
+            }
+            long from = newest - lookback;
+            // Read outside the lock, subscribing does not wait for storage
+            CandleSeries candles = candleHistoryService.readCandleHistory(symbol, interval, from,
+                    Math.max(nowSeconds, newest) + seconds);
+
+            synchronized (this) {
+                List<CandleUpdate> changed = new ArrayList<>();
+                for (int i = 0; i < candles.size(); i++) {
+                    CandleUpdate update = new CandleUpdate(candles.openTimes()[i], candles.open()[i],
+                            candles.high()[i], candles.low()[i], candles.close()[i], candles.volume()[i]);
+                    CandleUpdate previous = latest.get(update.t());
+                    // The engine only shows the newest candle live, so right after the next one
+                    // opened a read can miss part of this one until it is drained; volume only grows
+                    if (previous == null || update.v() > previous.v()) {
+                        latest.put(update.t(), update);
+                        changed.add(update);
+                    }
+                }
+                if (!latest.isEmpty()) {
+                    latest.headMap(latest.lastKey() - lookback).clear();
+                }
+                for (CandleSubscriber subscriber : subscribers) {
+                    for (CandleUpdate update : changed) {
+                        subscriber.offer(update);
+                    }
+                    if (heartbeat && changed.isEmpty()) {
+                        subscriber.heartbeat();
+                    }
+                }
+            }
+        }
+
+        void completeAll() {
+            for (CandleSubscriber subscriber : subscribers) {
+                subscriber.emitter().complete();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.dto.CandleUpdate;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * One push connection. Updates are conflated per candle: a subscriber that falls behind keeps
+ * only the newest state of each pending candle, and at most {@code maxPending} candles, the
+ * oldest being dropped. Writes run on the push executor with at most one task per subscriber,
+ * which sends what is pending and hands the thread back, so a slow connection never holds
+ * more than one sender.
+ */
+final class CandleSubscriber {
+
+    static final String EVENT_NAME = "candle";
+
+    private final SseEmitter emitter;
+    private final Executor executor;
+    private final int maxPending;
+    private final NavigableMap<Long, CandleUpdate> pending = new TreeMap<>();
+    private boolean heartbeatDue;
+    private boolean scheduled;
+    private boolean closed;
+    private boolean released;
+    private long dropped;
+
+    CandleSubscriber(SseEmitter emitter, Executor executor, int maxPending) {
+        this.emitter = emitter;
+        this.executor = executor;
+        this.maxPending = maxPending;
+    }
+
+    void offer(CandleUpdate update) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            pending.put(update.t(), update);
+            if (pending.size() > maxPending) {
+                pending.pollFirstEntry();
+                dropped++;
+            }
+            if (!markScheduled()) {
+                return;
+            }
+        }
+        dispatch();
+    }
+
+    void heartbeat() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            heartbeatDue = true;
+            if (!markScheduled()) {
+                return;
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Stops sending, returns whether this is the first call, which releases the subscriber.
+     */
+    synchronized boolean close() {
+        stop();
+        if (released) {
+            return false;
+        }
+        released = true;
+        return true;
+    }
+
+    SseEmitter emitter() {
+        return emitter;
+    }
+
+    synchronized long dropped() {
+        return dropped;
+    }
+
+    private void stop() {
+        closed = true;
+        pending.clear();
+    }
+
+    private boolean markScheduled() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    private void dispatch() {
+        try {
+            executor.execute(this::send);
+        } catch (RejectedExecutionException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void send() {
+        List<CandleUpdate> batch;
+        boolean heartbeat;
+        synchronized (this) {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            heartbeat = heartbeatDue && batch.isEmpty();
+            heartbeatDue = false;
+        }
+        try {
+            for (CandleUpdate update : batch) {
+                emitter.send(SseEmitter.event().name(EVENT_NAME).data(update, MediaType.APPLICATION_JSON));
+            }
+            if (heartbeat) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The connection is gone, the emitter's callbacks unsubscribe it
+            synchronized (this) {
+                stop();
+            }
+            emitter.completeWithError(e);
+            return;
+        }
+        synchronized (this) {
+            if (closed || (pending.isEmpty() && !heartbeatDue)) {
+                scheduled = false;
+                return;
+            }
+        }
+        // Queued behind the other subscribers rather than looping, so no connection starves the rest
+        dispatch();
+    }
+}
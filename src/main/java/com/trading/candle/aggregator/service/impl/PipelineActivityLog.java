@@ -0,0 +1,91 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.engine.IngestionStats;
+import com.trading.candle.aggregator.engine.PartitionedAggregationEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs what the pipeline did since the last summary, in place of a line per event or candle:
+ * events applied, late, failed and dropped from the engine's counters, and candles created per
+ * interval from the {@code candle.created} meter. Nothing is logged while the pipeline is idle.
+ */
+@Component
+class PipelineActivityLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineActivityLog.class);
+
+    private final PartitionedAggregationEngine aggregationEngine;
+    private final MeterRegistry meterRegistry;
+    private final List<String> intervals;
+    private final Map<String, Long> lastCreated = new HashMap<>();
+    private Totals lastTotals;
+    private long lastNanos;
+
+    PipelineActivityLog(PartitionedAggregationEngine aggregationEngine, MeterRegistry meterRegistry,
+                        CandleAggregationProperties properties) {
+        this.aggregationEngine = aggregationEngine;
+        this.meterRegistry = meterRegistry;
+        this.intervals = List.copyOf(properties.getIntervals());
+        this.lastTotals = totals();
+        this.lastNanos = System.nanoTime();
+    }
+
+    @Scheduled(fixedRateString = "#{@candleAggregationProperties.logging.summaryIntervalMs}")
+    public synchronized void logSummary() {
+        long now = System.nanoTime();
+        Totals totals = totals();
+        Map<String, Long> created = new LinkedHashMap<>();
+        long createdTotal = 0;
+        for (String interval : intervals) {
+            Counter counter = meterRegistry.find("candle.created").tag("interval", interval).counter();
+            long count = counter != null ? (long) counter.count() : 0;
+            long delta = count - lastCreated.getOrDefault(interval, 0L);
+            lastCreated.put(interval, count);
+            created.put(interval, delta);
+            createdTotal += delta;
+        }
+
+        long applied = totals.consumed() - lastTotals.consumed();
+        long late = totals.late() - lastTotals.late();
+        long failed = totals.failed() - lastTotals.failed();
+        long dropped = totals.dropped() - lastTotals.dropped();
+        double seconds = Math.max(1, TimeUnit.NANOSECONDS.toMillis(now - lastNanos)) / 1000.0;
+        lastTotals = totals;
+        lastNanos = now;
+
+        if (applied == 0 && createdTotal == 0 && dropped == 0) {
+            return;
+        }
+        logger.info("Processed {} events in {} s ({} events/s), {} late, {} failed, {} dropped; candles created {}",
+                applied, String.format("%.1f", seconds), Math.round(applied / seconds), late, failed, dropped, created);
+    }
+
+    private Totals totals() {
+        long consumed = 0;
+        long late = 0;
+        long failed = 0;
+        long dropped = 0;
+        for (IngestionStats stats : aggregationEngine.ingestionStats()) {
+            consumed += stats.consumerSequence();
+            late += stats.lateEvents();
+            failed += stats.failedEvents();
+            dropped += stats.droppedOldest() + stats.droppedNewest();
+        }
+        return new Totals(consumed, late, failed, dropped);
+    }
+
+    private record Totals(long consumed, long late, long failed, long dropped) {
+    }
+}
@@ -0,0 +1,97 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.engine.LatencyHistogram;
+import com.trading.candle.aggregator.engine.LatencySnapshot;
+import com.trading.candle.aggregator.engine.PartitionedAggregationEngine;
+import com.trading.candle.aggregator.service.PipelineLatencyService;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.trading.candle.aggregator.engine.PartitionedAggregationEngine.UNSTAMPED;
+
+/**
+ * The engine measures the aggregation stage itself. Drains and writes are sampled once each,
+ * by their oldest event, so the flush and commit percentiles are those of the slowest event of
+ * every drain and write.
+ */
+@Service
+public class PipelineLatencyServiceImpl implements PipelineLatencyService {
+
+    private final PartitionedAggregationEngine aggregationEngine;
+    private final CandleAggregationProperties.Latency properties;
+    private final LatencyHistogram flushLatency;
+    private final LatencyHistogram commitLatency;
+
+    public PipelineLatencyServiceImpl(PartitionedAggregationEngine aggregationEngine,
+                                      CandleAggregationProperties properties) {
+        this.aggregationEngine = aggregationEngine;
+        this.properties = properties.getLatency();
+        this.flushLatency = LatencyHistogram.concurrent(this.properties.getWindowSlices());
+        this.commitLatency = LatencyHistogram.concurrent(this.properties.getWindowSlices());
+    }
+
+    @Override
+    public void onDrained(long ingestedSince) {
+        if (ingestedSince == UNSTAMPED) {
+            return;
+        }
+        flushLatency.record(System.nanoTime() - ingestedSince);
+    }
+
+    @Override
+    public void onCommitted(long ingestedSince) {
+        if (ingestedSince != UNSTAMPED) {
+            commitLatency.record(System.nanoTime() - ingestedSince);
+        }
+    }
+
+    @Scheduled(fixedRateString = "#{@candleAggregationProperties.latency.sliceMs}")
+    public void rotate() {
+        aggregationEngine.rotateLatencyWindow();
+        flushLatency.rotate();
+        commitLatency.rotate();
+    }
+
+    @Override
+    public Map<Stage, LatencySnapshot> latency() {
+        Map<Stage, LatencySnapshot> latency = new EnumMap<>(Stage.class);
+        latency.put(Stage.AGGREGATION, aggregationEngine.aggregationLatency());
+        latency.put(Stage.FLUSH, flushLatency.snapshot());
+        latency.put(Stage.COMMIT, commitLatency.snapshot());
+        return latency;
+    }
+
+    @Override
+    public long sloMillis(Stage stage) {
+        return switch (stage) {
+            case AGGREGATION -> properties.getAggregationSloMs();
+            case FLUSH -> properties.getFlushSloMs();
+            case COMMIT -> properties.getCommitSloMs();
+        };
+    }
+
+    @Override
+    public Set<Stage> breachedSlos() {
+        Set<Stage> breached = EnumSet.noneOf(Stage.class);
+        for (Map.Entry<Stage, LatencySnapshot> entry : latency().entrySet()) {
+            long slo = sloMillis(entry.getKey());
+            LatencySnapshot snapshot = entry.getValue();
+            if (slo > 0 && snapshot.count() > 0 && snapshot.p99Nanos() > TimeUnit.MILLISECONDS.toNanos(slo)) {
+                breached.add(entry.getKey());
+            }
+        }
+        return breached;
+    }
+
+    // Stamps are nanoTime values and are compared by their difference
+    static long older(long current, long stamp) {
+        return current == UNSTAMPED || stamp - current < 0 ? stamp : current;
+    }
+}
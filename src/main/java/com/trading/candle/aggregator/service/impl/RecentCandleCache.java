@@ -0,0 +1,314 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.storage.CandleSeries;
+import com.trading.candle.aggregator.storage.CandleStorage;
+import com.trading.candle.aggregator.util.CandleIntervalUtil;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The most recent candles of every supported symbol and configured interval, held in
+ * primitive columns. Each series is prewarmed from storage on startup and afterwards receives
+ * every change drained from the aggregation engine, so from its covered open time onwards it
+ * holds what storage holds once the pending writes have landed. Each series also records the
+ * drain epoch it reflects, to combine it with the engine's live candles, and the finalization
+ * horizon of the engine: candles opening before it are final and will not change anymore.
+ * <p>
+ * A series is a ring indexed by candle bucket: the slot of a candle is its bucket modulo the
+ * capacity, and moving to a newer bucket clears the slots it takes over. Like the engine, a slot
+ * keeps the event times of its open and close, so a late change only replaces them if it started
+ * earlier or did not end earlier. Candles prewarmed from storage have no event times and keep
+ * their open, while any drained change replaces their close.
+ */
+@Component
+class RecentCandleCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecentCandleCache.class);
+
+    private final CandleStorage candleStorage;
+    private final CandleAggregationProperties properties;
+    private final Map<SeriesKey, CandleRing> rings = new ConcurrentHashMap<>();
+    private final Map<SeriesKey, Long> pendingFinalizations = new ConcurrentHashMap<>();
+    private final Map<SeriesKey, Long> committedBefore = new ConcurrentHashMap<>();
+
+    RecentCandleCache(CandleStorage candleStorage, CandleAggregationProperties properties) {
+        this.candleStorage = candleStorage;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void prewarm() {
+        prewarm(System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Loads the window of recent candles ending at {@code nowSeconds} for every supported symbol
+     * and interval. Must run before the first drain, changes drained earlier would be missed.
+     */
+    void prewarm(long nowSeconds) {
+        int capacity = properties.getHistory().getRecentCandles();
+        List<String> symbols = properties.getSupportedSymbols();
+        if (capacity <= 0 || symbols == null || properties.getIntervals() == null) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        int loaded = 0;
+        for (String symbol : symbols) {
+            for (String interval : properties.getIntervals()) {
+                try {
+                    loaded += load(symbol, interval, capacity, nowSeconds);
+                } catch (Exception e) {
+                    // The series is simply not cached and every read goes to storage
+                    logger.warn("Could not prewarm recent candles of {} {}: {}", symbol, interval, e.getMessage());
+                }
+            }
+        }
+        logger.info("Prewarmed {} recent candles for {} series in {} ms",
+                loaded, rings.size(), System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Records a finalization reported by the engine during a drain. It is published with the
+     * next {@link #apply}, which carries the final values of the candles it closes.
+     */
+    void onFinalized(String symbol, String interval, long closedBefore) {
+        pendingFinalizations.merge(new SeriesKey(symbol, interval), closedBefore, Math::max);
+    }
+
+    /**
+     * Applies the changes of the given drain, or recovered changes with the current epoch.
+     * Every series moves to the epoch, whether it changed or not.
+     */
+    void apply(List<CandleEntity> changes, long drainedEpoch) {
+        Map<CandleRing, List<CandleEntity>> byRing = new HashMap<>();
+        for (CandleEntity change : changes) {
+            CandleRing ring = rings.get(new SeriesKey(change.getSymbol(), change.getCandleInterval()));
+            if (ring != null) {
+                byRing.computeIfAbsent(ring, k -> new ArrayList<>()).add(change);
+            }
+        }
+        for (Map.Entry<SeriesKey, CandleRing> entry : rings.entrySet()) {
+            CandleRing ring = entry.getValue();
+            Long closedBefore = pendingFinalizations.remove(entry.getKey());
+            ring.apply(byRing.getOrDefault(ring, List.of()), drainedEpoch,
+                    closedBefore != null ? closedBefore : Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Returns the open time before which every candle of the series is final and in the cache or
+     * storage, or {@link Long#MIN_VALUE} if the series is not cached or nothing was finalized yet.
+     */
+    long closedBefore(String symbol, String interval) {
+        CandleRing ring = rings.get(new SeriesKey(symbol, interval));
+        return ring == null ? Long.MIN_VALUE : ring.closedBefore();
+    }
+
+    /**
+     * Records that every candle of the series opening before {@code committedBefore} is final
+     * and committed to storage.
+     */
+    void onCommitted(String symbol, String interval, long committedBefore) {
+        this.committedBefore.merge(new SeriesKey(symbol, interval), committedBefore, Math::max);
+    }
+
+    /**
+     * Returns the open time before which every candle of the series is final and committed, so
+     * reads of the range before it never change, or {@link Long#MIN_VALUE} if nothing is yet.
+     * Tracked for every series, cached or not.
+     */
+    long committedBefore(String symbol, String interval) {
+        return committedBefore.getOrDefault(new SeriesKey(symbol, interval), Long.MIN_VALUE);
+    }
+
+    /**
+     * Returns the cached part of the range, or {@code null} if the series is not cached.
+     */
+    CachedRange read(String symbol, String interval, long from, long to) {
+        CandleRing ring = rings.get(new SeriesKey(symbol, interval));
+        return ring == null ? null : ring.read(from, to);
+    }
+
+    private int load(String symbol, String interval, int capacity, long nowSeconds) {
+        long seconds = CandleIntervalUtil.toSeconds(interval);
+        long nowBucket = Math.floorDiv(nowSeconds, seconds);
+        CandleSeries stored = candleStorage.read(symbol, interval, (nowBucket - capacity + 1) * seconds, Long.MAX_VALUE);
+
+        // Candles stored ahead of the clock move the window forward
+        long newestBucket = stored.size() == 0 ? nowBucket
+                : Math.max(nowBucket, Math.floorDiv(stored.openTimes()[stored.size() - 1], seconds));
+        CandleRing ring = new CandleRing(seconds, capacity, newestBucket);
+        for (int i = 0; i < stored.size(); i++) {
+            ring.merge(stored.openTimes()[i], 0, 0, stored.open()[i], stored.high()[i], stored.low()[i],
+                    stored.close()[i], stored.volume()[i]);
+        }
+        rings.put(new SeriesKey(symbol, interval), ring);
+        return stored.size();
+    }
+
+    /**
+     * Cached candles of a range, reflecting every drain up to {@code drainedEpoch}. Storage only
+     * has to be read for the part of the range before {@code coveredFrom}.
+     */
+    record CachedRange(CandleSeries candles, long coveredFrom, long drainedEpoch) {}
+
+    private record SeriesKey(String symbol, String interval) {}
+
+    private static final class CandleRing {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private final long seconds;
+        private final int capacity;
+        private final long[] openTimes;
+        private final double[] open;
+        private final double[] high;
+        private final double[] low;
+        private final double[] close;
+        private final long[] volume;
+        private final long[] firstEventTime;
+        private final long[] lastEventTime;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private long newestBucket;
+        // Every stored candle opening at or after this time is in the ring
+        private long coveredFrom;
+        private long drainedEpoch;
+        private long closedBefore = Long.MIN_VALUE;
+
+        CandleRing(long seconds, int capacity, long newestBucket) {
+            this.seconds = seconds;
+            this.capacity = capacity;
+            this.openTimes = new long[capacity];
+            this.open = new double[capacity];
+            this.high = new double[capacity];
+            this.low = new double[capacity];
+            this.close = new double[capacity];
+            this.volume = new long[capacity];
+            this.firstEventTime = new long[capacity];
+            this.lastEventTime = new long[capacity];
+            this.newestBucket = newestBucket;
+            this.coveredFrom = (newestBucket - capacity + 1) * seconds;
+            Arrays.fill(openTimes, EMPTY);
+        }
+
+        void apply(List<CandleEntity> changes, long epoch, long finalizedBefore) {
+            lock.writeLock().lock();
+            try {
+                for (CandleEntity change : changes) {
+                    merge(change.getOpenTime(), change.getFirstEventTime(), change.getLastEventTime(),
+                            change.getOpenPrice(), change.getHighPrice(), change.getLowPrice(),
+                            change.getClosePrice(), change.getVolume());
+                }
+                drainedEpoch = Math.max(drainedEpoch, epoch);
+                closedBefore = Math.max(closedBefore, finalizedBefore);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void merge(long openTime, long firstTime, long lastTime, double openPrice, double highPrice,
+                   double lowPrice, double closePrice, long candleVolume) {
+            lock.writeLock().lock();
+            try {
+                if (openTime < coveredFrom) {
+                    return;
+                }
+                long bucket = Math.floorDiv(openTime, seconds);
+                if (bucket > newestBucket) {
+                    advanceTo(bucket);
+                }
+                int slot = slot(bucket);
+                if (openTimes[slot] != openTime) {
+                    openTimes[slot] = openTime;
+                    open[slot] = openPrice;
+                    high[slot] = highPrice;
+                    low[slot] = lowPrice;
+                    close[slot] = closePrice;
+                    volume[slot] = candleVolume;
+                    firstEventTime[slot] = firstTime;
+                    lastEventTime[slot] = lastTime;
+                } else {
+                    if (firstTime < firstEventTime[slot]) {
+                        open[slot] = openPrice;
+                        firstEventTime[slot] = firstTime;
+                    }
+                    high[slot] = Math.max(high[slot], highPrice);
+                    low[slot] = Math.min(low[slot], lowPrice);
+                    if (lastTime >= lastEventTime[slot]) {
+                        close[slot] = closePrice;
+                        lastEventTime[slot] = lastTime;
+                    }
+                    volume[slot] += candleVolume;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        CachedRange read(long from, long to) {
+            lock.readLock().lock();
+            try {
+                long firstBucket = Math.floorDiv(Math.max(from, coveredFrom) + seconds - 1, seconds);
+                long lastBucket = Math.min(Math.floorDiv(to, seconds), newestBucket);
+                int count = 0;
+                for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+                    if (openTimes[slot(bucket)] == bucket * seconds) {
+                        count++;
+                    }
+                }
+                CandleSeries candles = new CandleSeries(new long[count], new double[count], new double[count],
+                        new double[count], new double[count], new long[count]);
+                int index = 0;
+                for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+                    int slot = slot(bucket);
+                    if (openTimes[slot] == bucket * seconds) {
+                        candles.openTimes()[index] = openTimes[slot];
+                        candles.open()[index] = open[slot];
+                        candles.high()[index] = high[slot];
+                        candles.low()[index] = low[slot];
+                        candles.close()[index] = close[slot];
+                        candles.volume()[index] = volume[slot];
+                        index++;
+                    }
+                }
+                return new CachedRange(candles, coveredFrom, drainedEpoch);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long closedBefore() {
+            lock.readLock().lock();
+            try {
+                return closedBefore;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void advanceTo(long bucket) {
+            long cleared = Math.min(bucket - newestBucket, capacity);
+            for (long next = bucket - cleared + 1; next <= bucket; next++) {
+                openTimes[slot(next)] = EMPTY;
+            }
+            newestBucket = bucket;
+            coveredFrom = Math.max(coveredFrom, (bucket - capacity + 1) * seconds);
+        }
+
+        private int slot(long bucket) {
+            return (int) Math.floorMod(bucket, (long) capacity);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.model.BidAskEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ticks of a recorded file, one {@code symbol,bid,ask,timestamp} line each, held in columns.
+ * A header line and lines that do not form a valid {@link BidAskEvent} are skipped.
+ */
+final class RecordedTicks {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecordedTicks.class);
+
+    private final String[] symbols;
+    private final double[] bids;
+    private final double[] asks;
+
+    private RecordedTicks(String[] symbols, double[] bids, double[] asks) {
+        this.symbols = symbols;
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    static RecordedTicks load(Path file) throws IOException {
+        List<String> symbols = new ArrayList<>();
+        List<double[]> quotes = new ArrayList<>();
+        // Repeated symbols share one instance, like they would on the wire
+        Map<String, String> interned = new HashMap<>();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    String[] fields = line.split(",");
+                    BidAskEvent event = new BidAskEvent(fields[0].trim(), Double.parseDouble(fields[1].trim()),
+                            Double.parseDouble(fields[2].trim()), Long.parseLong(fields[3].trim()));
+                    symbols.add(interned.computeIfAbsent(event.symbol(), s -> s));
+                    quotes.add(new double[]{event.bid(), event.ask()});
+                } catch (RuntimeException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (symbols.isEmpty()) {
+            throw new IllegalArgumentException("No valid ticks in " + file);
+        }
+        if (skipped > 0) {
+            logger.warn("Skipped {} lines of {} that are not valid ticks", skipped, file);
+        }
+        double[] bids = new double[quotes.size()];
+        double[] asks = new double[quotes.size()];
+        for (int i = 0; i < quotes.size(); i++) {
+            bids[i] = quotes.get(i)[0];
+            asks[i] = quotes.get(i)[1];
+        }
+        return new RecordedTicks(symbols.toArray(new String[0]), bids, asks);
+    }
+
+    int size() {
+        return symbols.length;
+    }
+
+    String symbol(int index) {
+        return symbols[index];
+    }
+
+    double bid(int index) {
+        return bids[index];
+    }
+
+    double ask(int index) {
+        return asks[index];
+    }
+}
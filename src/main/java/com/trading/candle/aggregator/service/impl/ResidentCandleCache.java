@@ -0,0 +1,324 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.trading.candle.aggregator.engine.PartitionedAggregationEngine.UNSTAMPED;
+import static com.trading.candle.aggregator.service.impl.PipelineLatencyServiceImpl.older;
+
+/**
+ * Keeps every open candle resident between flushes. Each candle carries a version that is
+ * bumped on change; only candles whose version moved past the last written one are handed to
+ * persistence. New candles are written right away, open candles at most once per write interval.
+ * Candles finalized by the engine's watermarks are immutable: they are written once more if
+ * needed and then evicted.
+ * <p>
+ * Writes are deltas in the sense of {@code updateCandleAggregation}: absolute open, high, low
+ * and close with the event times of open and close, plus the volume accumulated since the
+ * previous write. Open and close follow event time, so a late drained part only replaces the
+ * open if it started earlier and the close if it did not end earlier. Candles whose database id is
+ * known are updated by id without being read back first.
+ * <p>
+ * Each candle also carries the publish stamp of the oldest event it holds that is not yet
+ * handed to a write, so a batch knows the oldest event it commits.
+ * <p>
+ * Per series the cache also tracks how far the finalized candles are committed: once every
+ * final candle before an open time is written, the listener is told that the range before it
+ * reads the same from storage from now on.
+ */
+class ResidentCandleCache {
+
+    /**
+     * Notified after a write, when every candle of the series opening before
+     * {@code committedBefore} is final and committed to storage.
+     */
+    @FunctionalInterface
+    interface CommitListener {
+        void onCommitted(String symbol, String interval, long committedBefore);
+    }
+
+    private final long openCandleWriteIntervalMs;
+    private final CommitListener commitListener;
+    private final Map<CandleKey, ResidentCandle> candles = new HashMap<>();
+    private final Map<SeriesKey, Long> closedBefore = new HashMap<>();
+    // Finalizations reported during a drain count for commits once the drained candles are applied
+    private final Map<SeriesKey, Long> pendingFinalizations = new HashMap<>();
+    private final Map<SeriesKey, Long> appliedClosedBefore = new HashMap<>();
+    private final Map<SeriesKey, Long> committedBefore = new HashMap<>();
+
+    ResidentCandleCache(long openCandleWriteIntervalMs) {
+        this(openCandleWriteIntervalMs, (symbol, interval, committedBefore) -> { });
+    }
+
+    ResidentCandleCache(long openCandleWriteIntervalMs, CommitListener commitListener) {
+        this.openCandleWriteIntervalMs = openCandleWriteIntervalMs;
+        this.commitListener = commitListener;
+    }
+
+    synchronized void apply(List<CandleEntity> changes) {
+        apply(changes, UNSTAMPED);
+    }
+
+    /**
+     * Merges freshly drained candle changes into the resident candles. {@code ingestedSince} is
+     * the stamp of the oldest event of the drain.
+     */
+    synchronized void apply(List<CandleEntity> changes, long ingestedSince) {
+        for (CandleEntity change : changes) {
+            CandleKey key = new CandleKey(change.getSymbol(), change.getCandleInterval(), change.getOpenTime());
+            ResidentCandle resident = candles.get(key);
+            if (resident == null) {
+                resident = new ResidentCandle(change);
+                candles.put(key, resident);
+            } else {
+                resident.merge(change);
+            }
+            resident.unwrittenSince = older(resident.unwrittenSince, ingestedSince);
+        }
+        pendingFinalizations.forEach((series, closed) -> appliedClosedBefore.merge(series, closed, Math::max));
+        pendingFinalizations.clear();
+    }
+
+    /**
+     * Records that every candle of the series opening before {@code closedBefore} is final.
+     */
+    synchronized void onFinalized(String symbol, String interval, long closedBefore) {
+        SeriesKey series = new SeriesKey(symbol, interval);
+        this.closedBefore.merge(series, closedBefore, Math::max);
+        pendingFinalizations.merge(series, closedBefore, Math::max);
+    }
+
+    /**
+     * Collects the writes due at the given time and evicts finalized candles that are fully written.
+     * With {@code force} every dirty candle is collected, e.g. on shutdown.
+     */
+    synchronized FlushBatch collectWrites(long nowMs, boolean force) {
+        FlushBatch batch = new FlushBatch();
+        Iterator<ResidentCandle> iterator = candles.values().iterator();
+        while (iterator.hasNext()) {
+            ResidentCandle resident = iterator.next();
+            if (resident.writeInFlight) {
+                continue;
+            }
+            boolean finalized = isFinalized(resident);
+            if (!resident.isDirty()) {
+                if (finalized) {
+                    iterator.remove();
+                }
+                continue;
+            }
+            if (force || finalized || resident.writtenVersion == 0
+                    || nowMs - resident.lastWriteMs >= openCandleWriteIntervalMs) {
+                batch.add(resident, nowMs);
+            }
+        }
+        // Final candles written as open ones and unchanged since are committed without a write
+        advanceCommitted();
+        return batch;
+    }
+
+    /**
+     * Records a successful write: remembers the database ids and evicts finalized candles.
+     */
+    synchronized void onWritten(FlushBatch batch) {
+        for (int i = 0; i < batch.residents.size(); i++) {
+            ResidentCandle resident = batch.residents.get(i);
+            CandleEntity written = batch.writes.get(i);
+            resident.writeInFlight = false;
+            resident.writtenVersion = batch.versions.get(i);
+            resident.writtenVolume += written.getVolume();
+            resident.lastWriteMs = batch.writeTimeMs;
+            if (written.getId() != null) {
+                resident.id = written.getId();
+            }
+            if (!resident.isDirty() && isFinalized(resident)) {
+                candles.remove(resident.key);
+            }
+        }
+        advanceCommitted();
+    }
+
+    synchronized void onWriteFailed(FlushBatch batch) {
+        for (int i = 0; i < batch.residents.size(); i++) {
+            ResidentCandle resident = batch.residents.get(i);
+            resident.writeInFlight = false;
+            // The events are still unwritten, next to any applied while the write was in flight
+            resident.unwrittenSince = older(resident.unwrittenSince, batch.stamps.get(i));
+        }
+    }
+
+    /**
+     * Returns the pending write of every candle with changes not confirmed by the database,
+     * including writes still in flight, in the same delta form as {@link #collectWrites}.
+     */
+    synchronized List<CandleEntity> unpersisted() {
+        List<CandleEntity> unpersisted = new ArrayList<>();
+        for (ResidentCandle resident : candles.values()) {
+            if (resident.isDirty()) {
+                unpersisted.add(resident.toWrite());
+            }
+        }
+        return unpersisted;
+    }
+
+    synchronized int size() {
+        return candles.size();
+    }
+
+    /**
+     * Moves the committed horizon of every series up to its applied finalization, but not past
+     * the first candle with changes the database has not confirmed, in flight or not.
+     */
+    private void advanceCommitted() {
+        if (appliedClosedBefore.isEmpty()) {
+            return;
+        }
+        Map<SeriesKey, Long> unconfirmedFrom = new HashMap<>();
+        for (ResidentCandle resident : candles.values()) {
+            if (resident.isDirty()) {
+                unconfirmedFrom.merge(resident.series, resident.key.openTime(), Math::min);
+            }
+        }
+        for (Map.Entry<SeriesKey, Long> entry : appliedClosedBefore.entrySet()) {
+            SeriesKey series = entry.getKey();
+            long horizon = Math.min(entry.getValue(), unconfirmedFrom.getOrDefault(series, Long.MAX_VALUE));
+            Long previous = committedBefore.get(series);
+            if (previous == null || horizon > previous) {
+                committedBefore.put(series, horizon);
+                commitListener.onCommitted(series.symbol(), series.interval(), horizon);
+            }
+        }
+    }
+
+    private boolean isFinalized(ResidentCandle resident) {
+        Long closed = closedBefore.get(resident.series);
+        return closed != null && resident.key.openTime() < closed;
+    }
+
+    private record SeriesKey(String symbol, String interval) {}
+
+    private record CandleKey(String symbol, String interval, long openTime) {}
+
+    private static final class ResidentCandle {
+        final CandleKey key;
+        final SeriesKey series;
+        double open;
+        double high;
+        double low;
+        double close;
+        long volume;
+        long firstEventTime;
+        long lastEventTime;
+        long version = 1;
+
+        Long id;
+        long writtenVersion;
+        long writtenVolume;
+        long lastWriteMs;
+        boolean writeInFlight;
+        long unwrittenSince = UNSTAMPED;
+
+        ResidentCandle(CandleEntity change) {
+            this.key = new CandleKey(change.getSymbol(), change.getCandleInterval(), change.getOpenTime());
+            this.series = new SeriesKey(change.getSymbol(), change.getCandleInterval());
+            this.open = change.getOpenPrice();
+            this.high = change.getHighPrice();
+            this.low = change.getLowPrice();
+            this.close = change.getClosePrice();
+            this.volume = change.getVolume();
+            this.firstEventTime = change.getFirstEventTime();
+            this.lastEventTime = change.getLastEventTime();
+        }
+
+        void merge(CandleEntity change) {
+            if (change.getFirstEventTime() < firstEventTime) {
+                open = change.getOpenPrice();
+                firstEventTime = change.getFirstEventTime();
+            }
+            high = Math.max(high, change.getHighPrice());
+            low = Math.min(low, change.getLowPrice());
+            if (change.getLastEventTime() >= lastEventTime) {
+                close = change.getClosePrice();
+                lastEventTime = change.getLastEventTime();
+            }
+            volume += change.getVolume();
+            version++;
+        }
+
+        boolean isDirty() {
+            return version != writtenVersion;
+        }
+
+        CandleEntity toWrite() {
+            CandleEntity candle = new CandleEntity();
+            candle.setId(id);
+            candle.setSymbol(key.symbol());
+            candle.setCandleInterval(key.interval());
+            candle.setOpenTime(key.openTime());
+            candle.setOpenPrice(open);
+            candle.setHighPrice(high);
+            candle.setLowPrice(low);
+            candle.setClosePrice(close);
+            candle.setVolume(volume - writtenVolume);
+            candle.setFirstEventTime(firstEventTime);
+            candle.setLastEventTime(lastEventTime);
+            return candle;
+        }
+    }
+
+    /**
+     * Writes collected in one flush. Candles without a known id go through the lookup path,
+     * the others are updated by id.
+     */
+    static final class FlushBatch {
+        private final List<ResidentCandle> residents = new ArrayList<>();
+        private final List<CandleEntity> writes = new ArrayList<>();
+        private final List<Long> versions = new ArrayList<>();
+        private final List<Long> stamps = new ArrayList<>();
+        private final List<CandleEntity> newCandles = new ArrayList<>();
+        private final List<CandleEntity> persistedCandles = new ArrayList<>();
+        private long writeTimeMs;
+        private long ingestedSince = UNSTAMPED;
+
+        private void add(ResidentCandle resident, long nowMs) {
+            CandleEntity write = resident.toWrite();
+            resident.writeInFlight = true;
+            residents.add(resident);
+            writes.add(write);
+            versions.add(resident.version);
+            stamps.add(resident.unwrittenSince);
+            ingestedSince = older(ingestedSince, resident.unwrittenSince);
+            resident.unwrittenSince = UNSTAMPED;
+            (resident.id == null ? newCandles : persistedCandles).add(write);
+            writeTimeMs = nowMs;
+        }
+
+        /**
+         * Stamp of the oldest event the batch writes, or {@code UNSTAMPED}.
+         */
+        long ingestedSince() {
+            return ingestedSince;
+        }
+
+        List<CandleEntity> newCandles() {
+            return newCandles;
+        }
+
+        List<CandleEntity> persistedCandles() {
+            return persistedCandles;
+        }
+
+        boolean isEmpty() {
+            return writes.isEmpty();
+        }
+
+        int size() {
+            return writes.size();
+        }
+    }
+}
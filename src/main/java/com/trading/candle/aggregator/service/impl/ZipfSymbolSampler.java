@@ -0,0 +1,47 @@
+package com.trading.candle.aggregator.service.impl;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws symbols with Zipf-distributed popularity: the symbol of rank {@code k} is drawn with a
+ * probability proportional to {@code 1 / k^exponent}, so a few symbols get most of the events
+ * and a long tail gets the rest. Immutable and shared between producers, each of which brings
+ * its own random source.
+ */
+final class ZipfSymbolSampler {
+
+    private final String[] symbols;
+    private final double[] cumulative;
+
+    ZipfSymbolSampler(int count, double exponent) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("At least one symbol is required, got: " + count);
+        }
+        this.symbols = new String[count];
+        this.cumulative = new double[count];
+        double sum = 0;
+        for (int rank = 1; rank <= count; rank++) {
+            symbols[rank - 1] = String.format("SYM%05d", rank);
+            sum += 1.0 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < count; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    String next(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        // A miss returns -(insertion point) - 1, the first rank whose cumulative share exceeds the draw
+        return symbols[Math.min(index < 0 ? -index - 1 : index, symbols.length - 1)];
+    }
+
+    String symbol(int rank) {
+        return symbols[rank - 1];
+    }
+
+    int size() {
+        return symbols.length;
+    }
+}
@@ -0,0 +1,234 @@
+package com.trading.candle.aggregator.storage;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.util.CandleIntervalUtil;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the results of {@link #read} in front of another engine, bounded by the number of
+ * candles held and evicting the least recently used ranges first. Ranges whose candles are
+ * all closed stay until evicted; ranges reaching open candles expire after a TTL.
+ * <p>
+ * Every write drops exactly the cached ranges of the written series that contain a written
+ * open time, once the writing transaction completed. A per-series version keeps a read that
+ * raced a write from caching what it read. Cached series are shared with callers and must
+ * not be modified.
+ */
+public class CachingCandleStorage implements CandleStorage, AutoCloseable {
+
+    private final CandleStorage delegate;
+    private final long maxCandles;
+    private final long ttlMillis;
+    private final long allowedLatenessSeconds;
+    private final LongSupplier clock;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<RangeKey, CachedRange> ranges = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<SeriesKey, Set<RangeKey>> rangesBySeries = new HashMap<>();
+    private final Map<SeriesKey, AtomicLong> versions = new ConcurrentHashMap<>();
+    private long cachedCandles;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public CachingCandleStorage(CandleStorage delegate, long maxCandles, long ttlMillis,
+                                long allowedLatenessSeconds) {
+        this(delegate, maxCandles, ttlMillis, allowedLatenessSeconds, System::currentTimeMillis);
+    }
+
+    CachingCandleStorage(CandleStorage delegate, long maxCandles, long ttlMillis, long allowedLatenessSeconds,
+                         LongSupplier clock) {
+        this.delegate = delegate;
+        this.maxCandles = maxCandles;
+        this.ttlMillis = ttlMillis;
+        this.allowedLatenessSeconds = allowedLatenessSeconds;
+        this.clock = clock;
+    }
+
+    @Override
+    public StorageDataset dataset() {
+        return delegate.dataset();
+    }
+
+    @Override
+    public void write(List<CandleEntity> candles, List<CandleEntity> persistedCandles) {
+        delegate.write(candles, persistedCandles);
+        List<CandleEntity> written = new ArrayList<>(candles.size() + persistedCandles.size());
+        written.addAll(candles);
+        written.addAll(persistedCandles);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Readers keep seeing, and may cache, the old candles until the transaction ends
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(written);
+                }
+            });
+        } else {
+            invalidate(written);
+        }
+    }
+
+    @Override
+    public CandleSeries read(String symbol, String interval, long from, long to) {
+        RangeKey key = new RangeKey(symbol, interval, from, to);
+        long now = clock.getAsLong();
+        synchronized (lock) {
+            CachedRange cached = ranges.get(key);
+            if (cached != null) {
+                if (cached.expiresAt() > now) {
+                    hits.increment();
+                    return cached.candles();
+                }
+                remove(key);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+
+        AtomicLong version = versions.computeIfAbsent(key.series(), k -> new AtomicLong());
+        long readVersion = version.get();
+        CandleSeries candles = delegate.read(symbol, interval, from, to);
+        synchronized (lock) {
+            put(key, new CachedRange(candles, expiresAt(interval, to, now)));
+            // A write completed while reading, what was read may be older than it
+            if (version.get() != readVersion) {
+                remove(key);
+            }
+        }
+        return candles;
+    }
+
+    @Override
+    public CandleSeries readFirst(String symbol, String interval, long from, long to, int limit) {
+        return delegate.readFirst(symbol, interval, from, to, limit);
+    }
+
+    @Override
+    public CandleSeries readLast(String symbol, String interval, long from, long to, int limit) {
+        return delegate.readLast(symbol, interval, from, to, limit);
+    }
+
+    @Override
+    public void stream(String symbol, String interval, long from, long to, CandleRowHandler handler) {
+        delegate.stream(symbol, interval, from, to, handler);
+    }
+
+    public Stats stats() {
+        synchronized (lock) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), invalidations.sum(),
+                    ranges.size(), cachedCandles);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private void invalidate(List<CandleEntity> written) {
+        Map<SeriesKey, List<Long>> openTimes = new HashMap<>();
+        for (CandleEntity candle : written) {
+            openTimes.computeIfAbsent(new SeriesKey(candle.getSymbol(), candle.getCandleInterval()),
+                    k -> new ArrayList<>()).add(candle.getOpenTime());
+        }
+        for (Map.Entry<SeriesKey, List<Long>> series : openTimes.entrySet()) {
+            versions.computeIfAbsent(series.getKey(), k -> new AtomicLong()).incrementAndGet();
+            synchronized (lock) {
+                Set<RangeKey> keys = rangesBySeries.get(series.getKey());
+                if (keys == null) {
+                    continue;
+                }
+                for (RangeKey key : List.copyOf(keys)) {
+                    if (series.getValue().stream().anyMatch(openTime -> key.from() <= openTime && openTime <= key.to())) {
+                        remove(key);
+                        invalidations.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    // Closed candles only change through late corrections, which invalidate them
+    private long expiresAt(String interval, long to, long now) {
+        long closedBefore = now / 1000 - allowedLatenessSeconds - CandleIntervalUtil.toSeconds(interval);
+        return to < closedBefore ? Long.MAX_VALUE : now + ttlMillis;
+    }
+
+    private void put(RangeKey key, CachedRange range) {
+        long weight = weight(range);
+        if (weight > maxCandles) {
+            return;
+        }
+        remove(key);
+        ranges.put(key, range);
+        rangesBySeries.computeIfAbsent(key.series(), k -> new HashSet<>()).add(key);
+        cachedCandles += weight;
+        Iterator<Map.Entry<RangeKey, CachedRange>> leastRecentlyUsed = ranges.entrySet().iterator();
+        while (cachedCandles > maxCandles) {
+            Map.Entry<RangeKey, CachedRange> evicted = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            forget(evicted.getKey(), evicted.getValue());
+            evictions.increment();
+        }
+    }
+
+    private void remove(RangeKey key) {
+        CachedRange removed = ranges.remove(key);
+        if (removed != null) {
+            forget(key, removed);
+        }
+    }
+
+    private void forget(RangeKey key, CachedRange range) {
+        cachedCandles -= weight(range);
+        Set<RangeKey> keys = rangesBySeries.get(key.series());
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                rangesBySeries.remove(key.series());
+            }
+        }
+    }
+
+    // Empty ranges still take a slot
+    private static long weight(CachedRange range) {
+        return Math.max(1, range.candles().size());
+    }
+
+    /**
+     * Counters for sizing the cache: expirations are TTL expiries, evictions make room for new
+     * ranges and invalidations follow writes.
+     */
+    public record Stats(long hits, long misses, long evictions, long expirations, long invalidations,
+                        int ranges, long candles) {}
+
+    private record SeriesKey(String symbol, String interval) {}
+
+    private record RangeKey(String symbol, String interval, long from, long to) {
+        SeriesKey series() {
+            return new SeriesKey(symbol, interval);
+        }
+    }
+
+    private record CachedRange(CandleSeries candles, long expiresAt) {}
+}
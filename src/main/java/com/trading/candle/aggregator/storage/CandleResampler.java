@@ -0,0 +1,120 @@
+package com.trading.candle.aggregator.storage;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Merges candles of a finer interval, received in open time order, into candles of a coarser
+ * one that is a multiple of it: the first open, highest high, lowest low, last close and the
+ * summed volume of every candle in a bucket. Each merged candle is handed on once a candle of
+ * a later bucket arrives or on {@link #flush()}.
+ */
+public final class CandleResampler implements CandleRowHandler {
+
+    // Below this many candles a series is merged on the calling thread
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final long seconds;
+    private final CandleRowHandler downstream;
+    private boolean pending;
+    private long openTime;
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    private long volume;
+
+    public CandleResampler(long seconds, CandleRowHandler downstream) {
+        this.seconds = seconds;
+        this.downstream = downstream;
+    }
+
+    @Override
+    public void onCandle(long t, double o, double h, double l, double c, long v) {
+        long bucketTime = Math.floorDiv(t, seconds) * seconds;
+        if (pending && bucketTime == openTime) {
+            high = Math.max(high, h);
+            low = Math.min(low, l);
+            close = c;
+            volume += v;
+            return;
+        }
+        flush();
+        pending = true;
+        openTime = bucketTime;
+        open = o;
+        high = h;
+        low = l;
+        close = c;
+        volume = v;
+    }
+
+    /**
+     * Hands on the candle merged so far, if any.
+     */
+    public void flush() {
+        if (pending) {
+            pending = false;
+            downstream.onCandle(openTime, open, high, low, close, volume);
+        }
+    }
+
+    /**
+     * Merges a whole series into candles of {@code seconds}. Large series are split at bucket
+     * boundaries and the parts merged in parallel.
+     */
+    public static CandleSeries resample(CandleSeries candles, long seconds) {
+        int size = candles.size();
+        if (size < PARALLEL_THRESHOLD) {
+            return resample(candles, seconds, 0, size);
+        }
+        int parts = Math.min(ForkJoinPool.getCommonPoolParallelism(), size / (PARALLEL_THRESHOLD / 2));
+        int[] starts = new int[parts + 1];
+        for (int part = 1; part < parts; part++) {
+            int start = Math.max(starts[part - 1], (int) ((long) size * part / parts));
+            // Moves forward to the first candle of a bucket, so no bucket is split
+            while (start > 0 && start < size
+                    && Math.floorDiv(candles.openTimes()[start], seconds)
+                    == Math.floorDiv(candles.openTimes()[start - 1], seconds)) {
+                start++;
+            }
+            starts[part] = start;
+        }
+        starts[parts] = size;
+        List<CandleSeries> merged = IntStream.range(0, parts).parallel()
+                .mapToObj(part -> resample(candles, seconds, starts[part], starts[part + 1]))
+                .toList();
+        CandleSeries result = CandleSeries.empty();
+        for (CandleSeries part : merged) {
+            result = result.append(part);
+        }
+        return result;
+    }
+
+    private static CandleSeries resample(CandleSeries candles, long seconds, int from, int to) {
+        int length = to - from;
+        CandleSeries merged = new CandleSeries(new long[length], new double[length], new double[length],
+                new double[length], new double[length], new long[length]);
+        int[] count = {0};
+        CandleResampler resampler = new CandleResampler(seconds, (t, o, h, l, c, v) -> {
+            int index = count[0]++;
+            merged.openTimes()[index] = t;
+            merged.open()[index] = o;
+            merged.high()[index] = h;
+            merged.low()[index] = l;
+            merged.close()[index] = c;
+            merged.volume()[index] = v;
+        });
+        for (int i = from; i < to; i++) {
+            resampler.onCandle(candles.openTimes()[i], candles.open()[i], candles.high()[i], candles.low()[i],
+                    candles.close()[i], candles.volume()[i]);
+        }
+        resampler.flush();
+        int size = count[0];
+        return new CandleSeries(Arrays.copyOf(merged.openTimes(), size), Arrays.copyOf(merged.open(), size),
+                Arrays.copyOf(merged.high(), size), Arrays.copyOf(merged.low(), size),
+                Arrays.copyOf(merged.close(), size), Arrays.copyOf(merged.volume(), size));
+    }
+}
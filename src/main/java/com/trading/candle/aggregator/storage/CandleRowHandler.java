@@ -0,0 +1,10 @@
+package com.trading.candle.aggregator.storage;
+
+/**
+ * Receives streamed candles one at a time, in open time order.
+ */
+@FunctionalInterface
+public interface CandleRowHandler {
+
+    void onCandle(long openTime, double open, double high, double low, double close, long volume);
+}
@@ -0,0 +1,139 @@
+package com.trading.candle.aggregator.storage;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Candles of one symbol and interval in column form, ordered by open time.
+ */
+public record CandleSeries(
+        long[] openTimes,
+        double[] open,
+        double[] high,
+        double[] low,
+        double[] close,
+        long[] volume
+) {
+
+    private static final CandleSeries EMPTY = new CandleSeries(
+            new long[0], new double[0], new double[0], new double[0], new double[0], new long[0]);
+
+    public static CandleSeries empty() {
+        return EMPTY;
+    }
+
+    public static CandleSeries of(List<CandleEntity> candles) {
+        int size = candles.size();
+        CandleSeries series = new CandleSeries(new long[size], new double[size], new double[size],
+                new double[size], new double[size], new long[size]);
+        for (int i = 0; i < size; i++) {
+            CandleEntity candle = candles.get(i);
+            series.openTimes[i] = candle.getOpenTime();
+            series.open[i] = candle.getOpenPrice();
+            series.high[i] = candle.getHighPrice();
+            series.low[i] = candle.getLowPrice();
+            series.close[i] = candle.getClosePrice();
+            series.volume[i] = candle.getVolume();
+        }
+        return series;
+    }
+
+    /**
+     * Returns this series followed by the given, later one.
+     */
+    public CandleSeries append(CandleSeries later) {
+        if (later.size() == 0) {
+            return this;
+        }
+        if (size() == 0) {
+            return later;
+        }
+        return new CandleSeries(concat(openTimes, later.openTimes), concat(open, later.open),
+                concat(high, later.high), concat(low, later.low), concat(close, later.close),
+                concat(volume, later.volume));
+    }
+
+    /**
+     * Returns a copy with a newer part of a candle merged in: the open is kept if the candle is
+     * present, the close replaced and the volume added. Absent candles are inserted in order.
+     */
+    public CandleSeries mergeNewer(long openTime, double o, double h, double l, double c, long v) {
+        int index = Arrays.binarySearch(openTimes, openTime);
+        if (index >= 0) {
+            CandleSeries merged = new CandleSeries(openTimes, open, high.clone(), low.clone(), close.clone(),
+                    volume.clone());
+            merged.high[index] = Math.max(high[index], h);
+            merged.low[index] = Math.min(low[index], l);
+            merged.close[index] = c;
+            merged.volume[index] += v;
+            return merged;
+        }
+        int insertAt = -index - 1;
+        return new CandleSeries(insert(openTimes, insertAt, openTime), insert(open, insertAt, o),
+                insert(high, insertAt, h), insert(low, insertAt, l), insert(close, insertAt, c),
+                insert(volume, insertAt, v));
+    }
+
+    /**
+     * Returns at most the first {@code limit} candles.
+     */
+    public CandleSeries first(int limit) {
+        return slice(0, Math.min(limit, size()));
+    }
+
+    /**
+     * Returns at most the last {@code limit} candles.
+     */
+    public CandleSeries last(int limit) {
+        return slice(Math.max(0, size() - limit), size());
+    }
+
+    public void forEach(CandleRowHandler handler) {
+        for (int i = 0; i < openTimes.length; i++) {
+            handler.onCandle(openTimes[i], open[i], high[i], low[i], close[i], volume[i]);
+        }
+    }
+
+    public int size() {
+        return openTimes.length;
+    }
+
+    private CandleSeries slice(int from, int to) {
+        if (from == 0 && to == size()) {
+            return this;
+        }
+        return new CandleSeries(Arrays.copyOfRange(openTimes, from, to), Arrays.copyOfRange(open, from, to),
+                Arrays.copyOfRange(high, from, to), Arrays.copyOfRange(low, from, to),
+                Arrays.copyOfRange(close, from, to), Arrays.copyOfRange(volume, from, to));
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+
+    private static double[] concat(double[] first, double[] second) {
+        double[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+
+    private static long[] insert(long[] column, int index, long value) {
+        long[] inserted = new long[column.length + 1];
+        System.arraycopy(column, 0, inserted, 0, index);
+        inserted[index] = value;
+        System.arraycopy(column, index, inserted, index + 1, column.length - index);
+        return inserted;
+    }
+
+    private static double[] insert(double[] column, int index, double value) {
+        double[] inserted = new double[column.length + 1];
+        System.arraycopy(column, 0, inserted, 0, index);
+        inserted[index] = value;
+        System.arraycopy(column, index, inserted, index + 1, column.length - index);
+        return inserted;
+    }
+}
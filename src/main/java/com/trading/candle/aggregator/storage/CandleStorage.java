@@ -0,0 +1,53 @@
+package com.trading.candle.aggregator.storage;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+
+import java.util.List;
+
+/**
+ * Where flushed candles are kept and read back from. Writes aggregate into stored candles the
+ * same way for every engine: the stored open price is kept, high and low are widened, the close
+ * price is replaced and the volume is added.
+ */
+public interface CandleStorage {
+
+    /**
+     * Aggregates the candles into storage. {@code persistedCandles} carry the id of an earlier
+     * write, which an engine may use to skip looking them up.
+     */
+    void write(List<CandleEntity> candles, List<CandleEntity> persistedCandles);
+
+    /**
+     * Returns the candles of one series with {@code from <= openTime <= to}, ordered by open time.
+     */
+    CandleSeries read(String symbol, String interval, long from, long to);
+
+    /**
+     * Returns the first {@code limit} candles of the range, ordered by open time. Engines that
+     * can should seek to them instead of reading the whole range.
+     */
+    default CandleSeries readFirst(String symbol, String interval, long from, long to, int limit) {
+        return read(symbol, interval, from, to).first(limit);
+    }
+
+    /**
+     * Returns the last {@code limit} candles of the range, ordered by open time.
+     */
+    default CandleSeries readLast(String symbol, String interval, long from, long to, int limit) {
+        return read(symbol, interval, from, to).last(limit);
+    }
+
+    /**
+     * Hands the candles of one series with {@code from <= openTime <= to} to the handler, ordered
+     * by open time. Engines that can should do so without holding the range in memory.
+     */
+    default void stream(String symbol, String interval, long from, long to, CandleRowHandler handler) {
+        read(symbol, interval, from, to).forEach(handler);
+    }
+
+    /**
+     * The dataset the candles belong to. Engines keeping candles across restarts keep their
+     * dataset too.
+     */
+    StorageDataset dataset();
+}
@@ -0,0 +1,156 @@
+package com.trading.candle.aggregator.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable, memory-mapped segment of one series. After a small header the file holds one
+ * block per column: open times, open, high, low and close prices, volumes and the event times
+ * of each open and close, each {@code count} values long and ordered by open time. A range is located by binary search on the open time
+ * block and then copied block by block with bulk reads.
+ */
+final class ColumnSegment {
+
+    private static final int MAGIC = 0x43534547;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int COLUMNS = 8;
+
+    private final String fileName;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final long minOpenTime;
+    private final long maxOpenTime;
+
+    private ColumnSegment(String fileName, MappedByteBuffer buffer, int count) {
+        this.fileName = fileName;
+        this.buffer = buffer;
+        this.count = count;
+        this.minOpenTime = openTime(0);
+        this.maxOpenTime = openTime(count - 1);
+    }
+
+    /**
+     * Writes the first {@code count} candles of the series and their event times to a new
+     * segment file and maps it.
+     */
+    static ColumnSegment write(Path file, CandleSeries series, long[] firstEventTimes, long[] lastEventTimes,
+                               int count) throws IOException {
+        if (count == 0) {
+            throw new IllegalArgumentException("A segment must hold at least one candle");
+        }
+        ByteBuffer data = ByteBuffer.allocate(HEADER_BYTES + COLUMNS * Long.BYTES * count);
+        data.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0);
+        data.asLongBuffer().put(series.openTimes(), 0, count);
+        data.position(data.position() + count * Long.BYTES);
+        for (double[] column : new double[][]{series.open(), series.high(), series.low(), series.close()}) {
+            data.asDoubleBuffer().put(column, 0, count);
+            data.position(data.position() + count * Double.BYTES);
+        }
+        for (long[] column : new long[][]{series.volume(), firstEventTimes, lastEventTimes}) {
+            data.asLongBuffer().put(column, 0, count);
+            data.position(data.position() + count * Long.BYTES);
+        }
+        data.position(0);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        return open(file);
+    }
+
+    static ColumnSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a candle segment: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported candle segment version " + buffer.getInt(4) + ": " + file);
+            }
+            int count = buffer.getInt(8);
+            if (buffer.capacity() != HEADER_BYTES + COLUMNS * Long.BYTES * count) {
+                throw new IOException("Truncated candle segment: " + file);
+            }
+            return new ColumnSegment(file.getFileName().toString(), buffer, count);
+        }
+    }
+
+    String fileName() {
+        return fileName;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long minOpenTime() {
+        return minOpenTime;
+    }
+
+    long maxOpenTime() {
+        return maxOpenTime;
+    }
+
+    /**
+     * Index of the first candle with an open time of at least {@code openTime}.
+     */
+    int lowerBound(long openTime) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (openTime(mid) < openTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Copies {@code length} candles starting at {@code index} into the series at {@code offset}.
+     */
+    void copyTo(int index, int length, CandleSeries target, int offset) {
+        buffer.slice(columnOffset(0) + index * Long.BYTES, length * Long.BYTES)
+                .asLongBuffer().get(target.openTimes(), offset, length);
+        copyColumn(1, index, length, target.open(), offset);
+        copyColumn(2, index, length, target.high(), offset);
+        copyColumn(3, index, length, target.low(), offset);
+        copyColumn(4, index, length, target.close(), offset);
+        buffer.slice(columnOffset(5) + index * Long.BYTES, length * Long.BYTES)
+                .asLongBuffer().get(target.volume(), offset, length);
+    }
+
+    /**
+     * Copies the event times of {@code length} candles starting at {@code index} into the arrays
+     * at {@code offset}.
+     */
+    void copyEventTimesTo(int index, int length, long[] firstEventTimes, long[] lastEventTimes, int offset) {
+        buffer.slice(columnOffset(6) + index * Long.BYTES, length * Long.BYTES)
+                .asLongBuffer().get(firstEventTimes, offset, length);
+        buffer.slice(columnOffset(7) + index * Long.BYTES, length * Long.BYTES)
+                .asLongBuffer().get(lastEventTimes, offset, length);
+    }
+
+    private void copyColumn(int column, int index, int length, double[] target, int offset) {
+        buffer.slice(columnOffset(column) + index * Double.BYTES, length * Double.BYTES)
+                .asDoubleBuffer().get(target, offset, length);
+    }
+
+    long openTime(int index) {
+        return buffer.getLong(columnOffset(0) + index * Long.BYTES);
+    }
+
+    private int columnOffset(int column) {
+        return HEADER_BYTES + column * count * Long.BYTES;
+    }
+}
@@ -0,0 +1,177 @@
+package com.trading.candle.aggregator.storage;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.config.PersistenceWriteMode;
+import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.repository.CandleCursorRepository;
+import com.trading.candle.aggregator.repository.CandleMergeRepository;
+import com.trading.candle.aggregator.repository.CandleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+
+import java.util.*;
+
+/**
+ * Candles as rows of the candles table. Writes go through batched native MERGE statements or,
+ * in {@link PersistenceWriteMode#JPA} mode, through lookups, aggregation updates and saveAll.
+ * Streams are read through a JDBC cursor.
+ */
+public class RelationalCandleStorage implements CandleStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(RelationalCandleStorage.class);
+
+    private final CandleRepository candleRepository;
+    private final CandleMergeRepository mergeRepository;
+    private final CandleCursorRepository cursorRepository;
+    private final CandleAggregationProperties properties;
+    // The candles table is not known to outlive the process, the default database is in memory
+    private final StorageDataset dataset = StorageDataset.create();
+
+    public RelationalCandleStorage(CandleRepository candleRepository,
+                                   CandleMergeRepository mergeRepository,
+                                   CandleCursorRepository cursorRepository,
+                                   CandleAggregationProperties properties) {
+        this.candleRepository = candleRepository;
+        this.mergeRepository = mergeRepository;
+        this.cursorRepository = cursorRepository;
+        this.properties = properties;
+    }
+
+    @Override
+    public StorageDataset dataset() {
+        return dataset;
+    }
+
+    @Override
+    public void write(List<CandleEntity> candles, List<CandleEntity> persistedCandles) {
+        if (properties.getPersistence().getWriteMode() == PersistenceWriteMode.MERGE) {
+            // The merge resolves existing rows by key, known ids make no difference
+            List<CandleEntity> all = new ArrayList<>(candles.size() + persistedCandles.size());
+            all.addAll(candles);
+            all.addAll(persistedCandles);
+            int batches = mergeRepository.mergeCandles(all, properties.getPersistence().getBatchSize());
+            logger.debug("Merged {} candles in {} batches", all.size(), batches);
+            return;
+        }
+        List<CandleEntity> missing = updatePersistedCandles(persistedCandles);
+        if (missing.isEmpty()) {
+            persistCandlesBulk(candles);
+        } else {
+            List<CandleEntity> remaining = new ArrayList<>(candles);
+            remaining.addAll(missing);
+            persistCandlesBulk(remaining);
+        }
+    }
+
+    @Override
+    public CandleSeries read(String symbol, String interval, long from, long to) {
+        return CandleSeries.of(candleRepository
+                .findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(symbol, interval, from, to));
+    }
+
+    @Override
+    public CandleSeries readFirst(String symbol, String interval, long from, long to, int limit) {
+        return CandleSeries.of(candleRepository.findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(
+                symbol, interval, from, to, Limit.of(limit)));
+    }
+
+    @Override
+    public CandleSeries readLast(String symbol, String interval, long from, long to, int limit) {
+        List<CandleEntity> newestFirst = new ArrayList<>(candleRepository
+                .findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeDesc(
+                        symbol, interval, from, to, Limit.of(limit)));
+        Collections.reverse(newestFirst);
+        return CandleSeries.of(newestFirst);
+    }
+
+    @Override
+    public void stream(String symbol, String interval, long from, long to, CandleRowHandler handler) {
+        cursorRepository.streamRange(symbol, interval, from, to, properties.getHistory().getFetchSize(),
+                row -> handler.onCandle(row.getLong(1), row.getDouble(2), row.getDouble(3), row.getDouble(4),
+                        row.getDouble(5), row.getLong(6)));
+    }
+
+    // Candles whose id is already known are updated directly, without reading them back first
+    private List<CandleEntity> updatePersistedCandles(List<CandleEntity> candles) {
+        List<CandleEntity> missing = new ArrayList<>();
+        for (CandleEntity candle : candles) {
+            int updated = candleRepository.updateCandleAggregation(
+                    candle.getId(),
+                    candle.getOpenPrice(),
+                    candle.getHighPrice(),
+                    candle.getLowPrice(),
+                    candle.getClosePrice(),
+                    candle.getVolume(),
+                    candle.getFirstEventTime(),
+                    candle.getLastEventTime()
+            );
+            if (updated == 0) {
+                logger.warn("Candle ID {} no longer exists, falling back to lookup", candle.getId());
+                candle.setId(null);
+                missing.add(candle);
+            }
+        }
+        return missing;
+    }
+
+    private void persistCandlesBulk(List<CandleEntity> candles) {
+        // Group candles by symbol and interval for efficient bulk operations
+        Map<String, List<CandleEntity>> groupedCandles = candles.stream()
+                .collect(HashMap::new,
+                        (map, candle) -> map.computeIfAbsent(
+                                candle.getSymbol() + "_" + candle.getCandleInterval(),
+                                k -> new ArrayList<>()).add(candle),
+                        HashMap::putAll);
+
+        List<CandleEntity> candlesToInsert = new ArrayList<>();
+
+        for (List<CandleEntity> group : groupedCandles.values()) {
+            // Find existing candles in bulk
+            List<Long> openTimes = group.stream()
+                    .map(CandleEntity::getOpenTime)
+                    .toList();
+
+            String symbol = group.get(0).getSymbol();
+            String interval = group.get(0).getCandleInterval();
+
+            List<CandleEntity> existingCandles = candleRepository
+                    .findBySymbolAndCandleIntervalAndOpenTimeIn(symbol, interval, openTimes);
+
+            Map<Long, CandleEntity> existingMap = existingCandles.stream()
+                    .collect(HashMap::new,
+                            (map, candle) -> map.put(candle.getOpenTime(), candle),
+                            HashMap::putAll);
+
+            // Process each candle in the group
+            for (CandleEntity candle : group) {
+                CandleEntity existing = existingMap.get(candle.getOpenTime());
+                if (existing != null) {
+                    // Update existing candle with bulk query
+                    int updated = candleRepository.updateCandleAggregation(
+                            existing.getId(),
+                            candle.getOpenPrice(),
+                            candle.getHighPrice(),
+                            candle.getLowPrice(),
+                            candle.getClosePrice(),
+                            candle.getVolume(),
+                            candle.getFirstEventTime(),
+                            candle.getLastEventTime()
+                    );
+                    if (updated == 0) {
+                        logger.warn("No rows updated for candle ID: {}", existing.getId());
+                    }
+                    candle.setId(existing.getId());
+                } else {
+                    // Mark for bulk insert
+                    candlesToInsert.add(candle);
+                }
+            }
+        }
+
+        // Bulk insert new candles
+        if (!candlesToInsert.isEmpty()) {
+            candleRepository.saveAll(candlesToInsert);
+        }
+    }
+}
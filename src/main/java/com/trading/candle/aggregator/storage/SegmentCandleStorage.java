@@ -0,0 +1,224 @@
+package com.trading.candle.aggregator.storage;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Native storage engine: one directory per symbol and interval holding append-only column
+ * segments, see {@link SegmentSeries}. A range read locates the overlapping segments and
+ * copies their column blocks straight out of the mapped files.
+ * <p>
+ * A write is first appended to the tail log of every series it touches, and the logs are then
+ * forced together. If any append or force fails, the logs already written are truncated back,
+ * so a failed flush can be retried without counting volume twice. Writes only exclude each
+ * other on the series they share.
+ */
+public class SegmentCandleStorage implements CandleStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentCandleStorage.class);
+
+    private static final String DATASET_FILE = "dataset";
+    private static final int SYNC_THREADS = 8;
+    private static final Comparator<SeriesKey> SERIES_ORDER =
+            Comparator.comparing(SeriesKey::symbol).thenComparing(SeriesKey::interval);
+
+    private final Path directory;
+    private final int segmentCandles;
+    private final Map<SeriesKey, SegmentSeries> series = new ConcurrentHashMap<>();
+    private final StorageDataset dataset;
+    private final ExecutorService syncExecutor = Executors.newFixedThreadPool(SYNC_THREADS,
+            Thread.ofPlatform().name("candle-segment-sync-", 0).daemon().factory());
+
+    public SegmentCandleStorage(Path directory, int segmentCandles) {
+        if (segmentCandles <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive, got: " + segmentCandles);
+        }
+        this.directory = directory;
+        this.segmentCandles = segmentCandles;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create storage directory " + directory, e);
+        }
+        this.dataset = openDataset(directory.resolve(DATASET_FILE));
+        logger.info("Storing candles in column segments of {} candles under {}", segmentCandles, directory);
+    }
+
+    @Override
+    public StorageDataset dataset() {
+        return dataset;
+    }
+
+    @Override
+    public void write(List<CandleEntity> candles, List<CandleEntity> persistedCandles) {
+        // Sorted, so concurrent writes lock the series they share in the same order
+        Map<SeriesKey, List<CandleEntity>> byKey = new TreeMap<>(SERIES_ORDER);
+        for (List<CandleEntity> list : List.of(candles, persistedCandles)) {
+            for (CandleEntity candle : list) {
+                byKey.computeIfAbsent(new SeriesKey(candle.getSymbol(), candle.getCandleInterval()),
+                        k -> new ArrayList<>()).add(candle);
+            }
+        }
+
+        Map<SegmentSeries, List<CandleEntity>> bySeries = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<SeriesKey, List<CandleEntity>> entry : byKey.entrySet()) {
+                SegmentSeries written = seriesOf(entry.getKey().symbol(), entry.getKey().interval());
+                written.lockWrites();
+                bySeries.put(written, entry.getValue());
+            }
+
+            Map<SegmentSeries, Long> appended = new LinkedHashMap<>();
+            try {
+                for (Map.Entry<SegmentSeries, List<CandleEntity>> entry : bySeries.entrySet()) {
+                    appended.put(entry.getKey(), entry.getKey().append(entry.getValue()));
+                }
+                force(appended.keySet());
+            } catch (IOException e) {
+                rollback(appended);
+                throw new UncheckedIOException("Could not write candles to " + directory, e);
+            }
+            bySeries.forEach(SegmentSeries::apply);
+        } finally {
+            bySeries.keySet().forEach(SegmentSeries::unlockWrites);
+        }
+    }
+
+    @Override
+    public CandleSeries read(String symbol, String interval, long from, long to) {
+        SegmentSeries existing = existingSeries(symbol, interval, from, to);
+        return existing == null ? CandleSeries.empty() : existing.read(from, to);
+    }
+
+    @Override
+    public CandleSeries readFirst(String symbol, String interval, long from, long to, int limit) {
+        SegmentSeries existing = existingSeries(symbol, interval, from, to);
+        return existing == null ? CandleSeries.empty() : existing.readFirst(from, to, limit);
+    }
+
+    @Override
+    public CandleSeries readLast(String symbol, String interval, long from, long to, int limit) {
+        SegmentSeries existing = existingSeries(symbol, interval, from, to);
+        return existing == null ? CandleSeries.empty() : existing.readLast(from, to, limit);
+    }
+
+    @Override
+    public void stream(String symbol, String interval, long from, long to, CandleRowHandler handler) {
+        SegmentSeries existing = existingSeries(symbol, interval, from, to);
+        if (existing != null) {
+            existing.stream(from, to, handler);
+        }
+    }
+
+    public void close() {
+        for (SegmentSeries opened : series.values()) {
+            try {
+                opened.close();
+            } catch (IOException e) {
+                logger.warn("Could not close candle series: {}", e.getMessage());
+            }
+        }
+        series.clear();
+        syncExecutor.shutdown();
+    }
+
+    // Series that were never written have no directory, so reads of them touch no file
+    private SegmentSeries existingSeries(String symbol, String interval, long from, long to) {
+        if (from > to) {
+            return null;
+        }
+        SegmentSeries opened = series.get(new SeriesKey(symbol, interval));
+        if (opened != null) {
+            return opened;
+        }
+        return Files.isDirectory(seriesDirectory(symbol, interval)) ? seriesOf(symbol, interval) : null;
+    }
+
+    private SegmentSeries seriesOf(String symbol, String interval) {
+        return series.computeIfAbsent(new SeriesKey(symbol, interval), key -> {
+            try {
+                return SegmentSeries.open(seriesDirectory(symbol, interval), segmentCandles);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open candle series " + symbol + "/" + interval, e);
+            }
+        });
+    }
+
+    // Created with the directory and kept with the segments, so it lasts as long as they do
+    private static StorageDataset openDataset(Path file) {
+        try {
+            if (Files.exists(file)) {
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                return new StorageDataset(lines.get(0), Long.parseLong(lines.get(1)));
+            }
+            StorageDataset created = StorageDataset.create();
+            Path temporary = file.resolveSibling(DATASET_FILE + ".tmp");
+            Files.write(temporary, List.of(created.id(), Long.toString(created.createdAtMillis())),
+                    StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            return created;
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Could not open storage dataset " + file, e);
+        }
+    }
+
+    private Path seriesDirectory(String symbol, String interval) {
+        return directory.resolve(URLEncoder.encode(symbol, StandardCharsets.UTF_8))
+                .resolve(URLEncoder.encode(interval, StandardCharsets.UTF_8));
+    }
+
+    // The tail logs are forced side by side, so a write waits for about one sync, not one per series
+    private void force(Collection<SegmentSeries> appended) throws IOException {
+        List<CompletableFuture<Void>> forces = new ArrayList<>(appended.size());
+        for (SegmentSeries written : appended) {
+            forces.add(CompletableFuture.runAsync(() -> {
+                try {
+                    written.force();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, syncExecutor));
+        }
+        try {
+            CompletableFuture.allOf(forces.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void rollback(Map<SegmentSeries, Long> appended) {
+        appended.forEach((written, position) -> {
+            try {
+                written.rollback(position);
+            } catch (IOException e) {
+                logger.error("Could not roll back candle tail log: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    private record SeriesKey(String symbol, String interval) {}
+}
@@ -0,0 +1,650 @@
+package com.trading.candle.aggregator.storage;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Storage of one symbol and interval: sealed {@link ColumnSegment}s plus a tail of candles
+ * that may still change. Every write is appended to the tail log before it is merged into the
+ * in-memory tail. Once the tail holds enough candles, all but the newest few are sealed into a
+ * new segment; writes for candles that are already sealed stay in the tail as corrections
+ * until the next seal rewrites the affected segment.
+ * <p>
+ * Every candle keeps the event times of its open and close, in the tail and in the segments.
+ * Merging a later write only replaces the open if it started earlier and the close if it did not
+ * end earlier, so late ticks correct a candle in place.
+ * <p>
+ * Files are never modified in place. The manifest names the live segments and tail log and
+ * is replaced atomically after a seal, so a crash leaves either the old or the new state;
+ * files it does not name are deleted on open.
+ */
+final class SegmentSeries {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentSeries.class);
+
+    private static final String MANIFEST = "MANIFEST";
+    // Layout of the tail log records, checked against the manifest on open
+    private static final int FORMAT = 2;
+    private static final int TAIL_RECORD_BYTES = Long.BYTES * 4 + Double.BYTES * 4 + Integer.BYTES;
+    // The newest candles are usually still open and stay in the tail when sealing
+    private static final int RETAINED_CANDLES = 2;
+    private static final int STREAM_CHUNK_CANDLES = 1024;
+
+    private final Path directory;
+    private final int segmentCandles;
+    private final CRC32C crc = new CRC32C();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile List<ColumnSegment> segments = List.of();
+    private final TreeMap<Long, TailCandle> tail = new TreeMap<>();
+    private FileChannel tailLog;
+    private String tailLogName;
+    private long generation;
+
+    private SegmentSeries(Path directory, int segmentCandles) {
+        this.directory = directory;
+        this.segmentCandles = segmentCandles;
+    }
+
+    static SegmentSeries open(Path directory, int segmentCandles) throws IOException {
+        Files.createDirectories(directory);
+        SegmentSeries series = new SegmentSeries(directory, segmentCandles);
+        if (Files.exists(directory.resolve(MANIFEST))) {
+            series.load();
+        } else {
+            series.tailLogName = "tail-0.log";
+            series.tailLog = openTailLog(directory.resolve(series.tailLogName));
+            series.writeManifest(0, series.tailLogName, List.of());
+        }
+        return series;
+    }
+
+    /**
+     * Reserves the series for one write, from {@link #append} to {@link #apply}, so a
+     * {@link #rollback} only ever truncates records of the same write.
+     */
+    void lockWrites() {
+        writeLock.lock();
+    }
+
+    void unlockWrites() {
+        writeLock.unlock();
+    }
+
+    /**
+     * Appends the candles to the tail log without forcing it. Returns the previous end of the
+     * log, to which {@link #rollback} can truncate it again.
+     */
+    synchronized long append(List<CandleEntity> candles) throws IOException {
+        long position = tailLog.size();
+        ByteBuffer records = ByteBuffer.allocate(TAIL_RECORD_BYTES * candles.size());
+        for (CandleEntity candle : candles) {
+            encode(records, candle.getOpenTime(), TailCandle.of(candle));
+        }
+        records.flip();
+        while (records.hasRemaining()) {
+            tailLog.write(records, tailLog.size());
+        }
+        return position;
+    }
+
+    /**
+     * Forces appended records to disk. Only the seal in {@link #apply} replaces the tail log,
+     * so under the write lock this does not need to block readers of the series.
+     */
+    void force() throws IOException {
+        tailLog.force(false);
+    }
+
+    synchronized void rollback(long position) throws IOException {
+        tailLog.truncate(position);
+        tailLog.force(false);
+    }
+
+    /**
+     * Merges appended candles into the tail and seals it if it grew large enough.
+     */
+    synchronized void apply(List<CandleEntity> candles) {
+        for (CandleEntity candle : candles) {
+            merge(tail, candle.getOpenTime(), TailCandle.of(candle));
+        }
+        if (tail.size() >= segmentCandles + RETAINED_CANDLES) {
+            try {
+                seal();
+            } catch (IOException e) {
+                // Nothing is lost, the candles stay in the tail and the next write retries
+                logger.warn("Could not seal segment in {}: {}", directory, e.getMessage());
+            }
+        }
+    }
+
+    CandleSeries read(long from, long to) {
+        List<ColumnSegment> snapshot;
+        List<Map.Entry<Long, TailCandle>> tailRange;
+        synchronized (this) {
+            snapshot = segments;
+            tailRange = tail.subMap(from, true, to, true).entrySet().stream()
+                    .map(entry -> Map.entry(entry.getKey(), entry.getValue().copy()))
+                    .toList();
+        }
+
+        int total = 0;
+        int[] starts = new int[snapshot.size()];
+        int[] ends = new int[snapshot.size()];
+        for (int i = 0; i < snapshot.size(); i++) {
+            ColumnSegment segment = snapshot.get(i);
+            if (segment.maxOpenTime() < from || segment.minOpenTime() > to) {
+                continue;
+            }
+            starts[i] = segment.lowerBound(from);
+            ends[i] = to == Long.MAX_VALUE ? segment.count() : segment.lowerBound(to + 1);
+            total += ends[i] - starts[i];
+        }
+        CandleSeries sealed = allocate(total);
+        int offset = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            int length = ends[i] - starts[i];
+            if (length > 0) {
+                snapshot.get(i).copyTo(starts[i], length, sealed, offset);
+                offset += length;
+            }
+        }
+        if (tailRange.isEmpty()) {
+            return sealed;
+        }
+        // Only corrections of sealed candles need the event times of the sealed side
+        EventTimes sealedTimes = null;
+        if (total > 0 && tailRange.get(0).getKey() <= sealed.openTimes()[total - 1]) {
+            sealedTimes = EventTimes.allocate(total);
+            offset = 0;
+            for (int i = 0; i < snapshot.size(); i++) {
+                int length = ends[i] - starts[i];
+                if (length > 0) {
+                    snapshot.get(i).copyEventTimesTo(starts[i], length, sealedTimes.first(), sealedTimes.last(), offset);
+                    offset += length;
+                }
+            }
+        }
+        return mergeSorted(sealed, sealedTimes, total, tailRange, null);
+    }
+
+    /**
+     * Returns the first {@code limit} candles of the range. Sealed candles only ever gain
+     * neighbours from the tail, so the range ends at the last of the first {@code limit}
+     * sealed candles at the latest, and only the segments up to it are copied.
+     */
+    CandleSeries readFirst(long from, long to, int limit) {
+        long bound = to;
+        int remaining = limit;
+        for (ColumnSegment segment : segments) {
+            if (segment.maxOpenTime() < from || segment.minOpenTime() > to) {
+                continue;
+            }
+            int start = segment.lowerBound(from);
+            int end = to == Long.MAX_VALUE ? segment.count() : segment.lowerBound(to + 1);
+            if (end - start >= remaining) {
+                bound = segment.openTime(start + remaining - 1);
+                break;
+            }
+            remaining -= end - start;
+        }
+        return read(from, bound).first(limit);
+    }
+
+    /**
+     * Returns the last {@code limit} candles of the range, bounded like {@link #readFirst}.
+     */
+    CandleSeries readLast(long from, long to, int limit) {
+        long bound = from;
+        int remaining = limit;
+        List<ColumnSegment> snapshot = segments;
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            ColumnSegment segment = snapshot.get(i);
+            if (segment.maxOpenTime() < from || segment.minOpenTime() > to) {
+                continue;
+            }
+            int start = segment.lowerBound(from);
+            int end = to == Long.MAX_VALUE ? segment.count() : segment.lowerBound(to + 1);
+            if (end - start >= remaining) {
+                bound = segment.openTime(end - remaining);
+                break;
+            }
+            remaining -= end - start;
+        }
+        return read(bound, to).last(limit);
+    }
+
+    /**
+     * Streams the range chunk by chunk out of the mapped segments, merging the tail on the way.
+     */
+    void stream(long from, long to, CandleRowHandler handler) {
+        List<ColumnSegment> snapshot;
+        List<Map.Entry<Long, TailCandle>> tailRange;
+        synchronized (this) {
+            snapshot = segments;
+            tailRange = tail.subMap(from, true, to, true).entrySet().stream()
+                    .map(entry -> Map.entry(entry.getKey(), entry.getValue().copy()))
+                    .toList();
+        }
+
+        CandleSeries chunk = allocate(STREAM_CHUNK_CANDLES);
+        EventTimes chunkTimes = EventTimes.allocate(STREAM_CHUNK_CANDLES);
+        int j = 0;
+        for (ColumnSegment segment : snapshot) {
+            if (segment.maxOpenTime() < from || segment.minOpenTime() > to) {
+                continue;
+            }
+            int end = to == Long.MAX_VALUE ? segment.count() : segment.lowerBound(to + 1);
+            for (int position = segment.lowerBound(from); position < end; position += STREAM_CHUNK_CANDLES) {
+                int length = Math.min(STREAM_CHUNK_CANDLES, end - position);
+                segment.copyTo(position, length, chunk, 0);
+                if (j < tailRange.size() && tailRange.get(j).getKey() <= chunk.openTimes()[length - 1]) {
+                    segment.copyEventTimesTo(position, length, chunkTimes.first(), chunkTimes.last(), 0);
+                }
+                for (int k = 0; k < length; k++) {
+                    long openTime = chunk.openTimes()[k];
+                    while (j < tailRange.size() && tailRange.get(j).getKey() < openTime) {
+                        emit(tailRange.get(j++), handler);
+                    }
+                    if (j < tailRange.size() && tailRange.get(j).getKey() == openTime) {
+                        TailCandle correction = tailRange.get(j++).getValue();
+                        handler.onCandle(openTime,
+                                correction.firstEventTime < chunkTimes.first()[k] ? correction.open : chunk.open()[k],
+                                Math.max(chunk.high()[k], correction.high), Math.min(chunk.low()[k], correction.low),
+                                correction.lastEventTime >= chunkTimes.last()[k] ? correction.close : chunk.close()[k],
+                                chunk.volume()[k] + correction.volume);
+                    } else {
+                        handler.onCandle(openTime, chunk.open()[k], chunk.high()[k], chunk.low()[k],
+                                chunk.close()[k], chunk.volume()[k]);
+                    }
+                }
+            }
+        }
+        while (j < tailRange.size()) {
+            emit(tailRange.get(j++), handler);
+        }
+    }
+
+    synchronized void close() throws IOException {
+        tailLog.close();
+    }
+
+    private void seal() throws IOException {
+        long nextGeneration = generation + 1;
+        List<ColumnSegment> current = segments;
+        long sealedMax = current.isEmpty() ? Long.MIN_VALUE : current.get(current.size() - 1).maxOpenTime();
+        List<ColumnSegment> next = new ArrayList<>(current);
+        Set<String> obsolete = new HashSet<>();
+        obsolete.add(tailLogName);
+        List<ColumnSegment> written = new ArrayList<>();
+        String nextTailLogName = "tail-" + nextGeneration + ".log";
+        FileChannel nextTailLog = null;
+
+        try {
+            // Corrections of sealed candles rewrite the segment they belong to
+            NavigableMap<Long, TailCandle> corrections = tail.headMap(sealedMax, true);
+            Map<Integer, TreeMap<Long, TailCandle>> bySegment = new TreeMap<>();
+            for (Map.Entry<Long, TailCandle> correction : corrections.entrySet()) {
+                bySegment.computeIfAbsent(segmentIndexFor(current, correction.getKey()), k -> new TreeMap<>())
+                        .put(correction.getKey(), correction.getValue());
+            }
+            for (Map.Entry<Integer, TreeMap<Long, TailCandle>> entry : bySegment.entrySet()) {
+                ColumnSegment segment = current.get(entry.getKey());
+                EventTimes mergedTimes = EventTimes.allocate(segment.count() + entry.getValue().size());
+                CandleSeries merged = mergeSegment(segment, entry.getValue(), mergedTimes);
+                ColumnSegment rewritten = writeSegment(merged, mergedTimes, merged.size(), nextGeneration);
+                written.add(rewritten);
+                next.set(entry.getKey(), rewritten);
+                obsolete.add(segment.fileName());
+            }
+
+            NavigableMap<Long, TailCandle> fresh = tail.tailMap(sealedMax, false);
+            int sealCount = fresh.size() - RETAINED_CANDLES;
+            if (sealCount > 0) {
+                EventTimes sealedTimes = EventTimes.allocate(sealCount);
+                CandleSeries sealed = toSeries(fresh, sealCount, sealedTimes);
+                ColumnSegment segment = writeSegment(sealed, sealedTimes, sealCount, nextGeneration);
+                written.add(segment);
+                next.add(segment);
+            }
+
+            // The remaining tail becomes the content of a fresh tail log
+            TreeMap<Long, TailCandle> remaining = new TreeMap<>(fresh);
+            for (int i = 0; i < sealCount; i++) {
+                remaining.pollFirstEntry();
+            }
+            Files.deleteIfExists(directory.resolve(nextTailLogName));
+            nextTailLog = openTailLog(directory.resolve(nextTailLogName));
+            ByteBuffer records = ByteBuffer.allocate(TAIL_RECORD_BYTES * remaining.size());
+            remaining.forEach((openTime, candle) -> encode(records, openTime, candle));
+            records.flip();
+            while (records.hasRemaining()) {
+                nextTailLog.write(records);
+            }
+            nextTailLog.force(true);
+
+            writeManifest(nextGeneration, nextTailLogName, next);
+
+            tailLog.close();
+            tailLog = nextTailLog;
+            tailLogName = nextTailLogName;
+            generation = nextGeneration;
+            tail.clear();
+            tail.putAll(remaining);
+            segments = List.copyOf(next);
+        } catch (IOException e) {
+            if (nextTailLog != null) {
+                nextTailLog.close();
+                Files.deleteIfExists(directory.resolve(nextTailLogName));
+            }
+            for (ColumnSegment segment : written) {
+                Files.deleteIfExists(directory.resolve(segment.fileName()));
+            }
+            throw e;
+        }
+        for (String fileName : obsolete) {
+            Files.deleteIfExists(directory.resolve(fileName));
+        }
+    }
+
+    private void load() throws IOException {
+        List<String> segmentNames = new ArrayList<>();
+        int format = 1;
+        for (String line : Files.readAllLines(directory.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ", 2);
+            switch (parts[0]) {
+                case "format" -> format = Integer.parseInt(parts[1]);
+                case "generation" -> generation = Long.parseLong(parts[1]);
+                case "tail" -> tailLogName = parts[1];
+                case "segment" -> segmentNames.add(parts[1]);
+                default -> throw new IOException("Unexpected manifest line in " + directory + ": " + line);
+            }
+        }
+        if (format != FORMAT) {
+            throw new IOException("Unsupported candle series format " + format + " in " + directory);
+        }
+        List<ColumnSegment> loaded = new ArrayList<>(segmentNames.size());
+        for (String name : segmentNames) {
+            loaded.add(ColumnSegment.open(directory.resolve(name)));
+        }
+        segments = List.copyOf(loaded);
+        tailLog = openTailLog(directory.resolve(tailLogName));
+        replayTailLog();
+
+        Set<String> live = new HashSet<>(segmentNames);
+        live.add(tailLogName);
+        live.add(MANIFEST);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                if (!live.contains(file.getFileName().toString())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private void replayTailLog() throws IOException {
+        ByteBuffer records = ByteBuffer.allocate((int) tailLog.size());
+        while (records.hasRemaining() && tailLog.read(records, records.position()) > 0) {
+            // keep reading
+        }
+        records.flip();
+        long valid = 0;
+        while (records.remaining() >= TAIL_RECORD_BYTES) {
+            int start = records.position();
+            crc.reset();
+            crc.update(records.slice(start, TAIL_RECORD_BYTES - Integer.BYTES));
+            if (records.getInt(start + TAIL_RECORD_BYTES - Integer.BYTES) != (int) crc.getValue()) {
+                break;
+            }
+            long openTime = records.getLong();
+            merge(tail, openTime, new TailCandle(records.getDouble(), records.getDouble(), records.getDouble(),
+                    records.getDouble(), records.getLong(), records.getLong(), records.getLong()));
+            records.getInt();
+            valid += TAIL_RECORD_BYTES;
+        }
+        if (valid < tailLog.size()) {
+            logger.warn("Discarding torn tail log records in {}", directory);
+            tailLog.truncate(valid);
+        }
+    }
+
+    private ColumnSegment writeSegment(CandleSeries series, EventTimes times, int count, long segmentGeneration)
+            throws IOException {
+        String name = String.format("seg-%020d-%d.col", series.openTimes()[0], segmentGeneration);
+        return ColumnSegment.write(directory.resolve(name), series, times.first(), times.last(), count);
+    }
+
+    private void writeManifest(long manifestGeneration, String manifestTailLog, List<ColumnSegment> manifestSegments)
+            throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        manifest.append("format ").append(FORMAT).append('\n');
+        manifest.append("generation ").append(manifestGeneration).append('\n');
+        manifest.append("tail ").append(manifestTailLog).append('\n');
+        for (ColumnSegment segment : manifestSegments) {
+            manifest.append("segment ").append(segment.fileName()).append('\n');
+        }
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.wrap(manifest.toString().getBytes(StandardCharsets.UTF_8));
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(MANIFEST),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void encode(ByteBuffer records, long openTime, TailCandle candle) {
+        int start = records.position();
+        records.putLong(openTime).putDouble(candle.open).putDouble(candle.high).putDouble(candle.low)
+                .putDouble(candle.close).putLong(candle.volume)
+                .putLong(candle.firstEventTime).putLong(candle.lastEventTime);
+        crc.reset();
+        crc.update(records.slice(start, TAIL_RECORD_BYTES - Integer.BYTES));
+        records.putInt((int) crc.getValue());
+    }
+
+    private static FileChannel openTailLog(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * The last segment starting at or before the open time, or the first one.
+     */
+    private static int segmentIndexFor(List<ColumnSegment> segments, long openTime) {
+        int index = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).minOpenTime() <= openTime) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private static CandleSeries mergeSegment(ColumnSegment segment, TreeMap<Long, TailCandle> corrections,
+                                             EventTimes mergedTimes) {
+        CandleSeries existing = allocate(segment.count());
+        EventTimes existingTimes = EventTimes.allocate(segment.count());
+        segment.copyTo(0, segment.count(), existing, 0);
+        segment.copyEventTimesTo(0, segment.count(), existingTimes.first(), existingTimes.last(), 0);
+        return mergeSorted(existing, existingTimes, existing.size(), List.copyOf(corrections.entrySet()), mergedTimes);
+    }
+
+    /**
+     * Merges newer tail candles into the first {@code size} candles of an ordered series. The
+     * event times of the older candles are only read for candles both sides hold; those of the
+     * merged candles are written to {@code mergedTimes} unless it is null.
+     */
+    private static CandleSeries mergeSorted(CandleSeries older, EventTimes olderTimes, int size,
+                                            List<Map.Entry<Long, TailCandle>> newer, EventTimes mergedTimes) {
+        CandleSeries merged = allocate(size + newer.size());
+        int i = 0;
+        int j = 0;
+        int out = 0;
+        while (i < size || j < newer.size()) {
+            long olderTime = i < size ? older.openTimes()[i] : Long.MAX_VALUE;
+            long newerTime = j < newer.size() ? newer.get(j).getKey() : Long.MAX_VALUE;
+            if (i < size && (j == newer.size() || olderTime < newerTime)) {
+                if (mergedTimes != null) {
+                    mergedTimes.set(out, olderTimes.first()[i], olderTimes.last()[i]);
+                }
+                set(merged, out++, olderTime, older.open()[i], older.high()[i], older.low()[i],
+                        older.close()[i], older.volume()[i]);
+                i++;
+            } else if (i == size || newerTime < olderTime) {
+                TailCandle candle = newer.get(j).getValue();
+                if (mergedTimes != null) {
+                    mergedTimes.set(out, candle.firstEventTime, candle.lastEventTime);
+                }
+                set(merged, out++, newerTime, candle.open, candle.high, candle.low, candle.close, candle.volume);
+                j++;
+            } else {
+                TailCandle candle = newer.get(j).getValue();
+                long first = olderTimes.first()[i];
+                long last = olderTimes.last()[i];
+                if (mergedTimes != null) {
+                    mergedTimes.set(out, Math.min(first, candle.firstEventTime), Math.max(last, candle.lastEventTime));
+                }
+                set(merged, out++, olderTime, candle.firstEventTime < first ? candle.open : older.open()[i],
+                        Math.max(older.high()[i], candle.high), Math.min(older.low()[i], candle.low),
+                        candle.lastEventTime >= last ? candle.close : older.close()[i],
+                        older.volume()[i] + candle.volume);
+                i++;
+                j++;
+            }
+        }
+        return out == merged.size() ? merged : truncate(merged, out);
+    }
+
+    private static void emit(Map.Entry<Long, TailCandle> entry, CandleRowHandler handler) {
+        TailCandle candle = entry.getValue();
+        handler.onCandle(entry.getKey(), candle.open, candle.high, candle.low, candle.close, candle.volume);
+    }
+
+    private static CandleSeries toSeries(NavigableMap<Long, TailCandle> candles, int count, EventTimes times) {
+        CandleSeries series = allocate(count);
+        int index = 0;
+        for (Map.Entry<Long, TailCandle> entry : candles.entrySet()) {
+            if (index == count) {
+                break;
+            }
+            TailCandle candle = entry.getValue();
+            times.set(index, candle.firstEventTime, candle.lastEventTime);
+            set(series, index++, entry.getKey(), candle.open, candle.high, candle.low, candle.close, candle.volume);
+        }
+        return series;
+    }
+
+    private static void merge(TreeMap<Long, TailCandle> candles, long openTime, TailCandle change) {
+        TailCandle existing = candles.putIfAbsent(openTime, change);
+        if (existing != null) {
+            existing.merge(change);
+        }
+    }
+
+    private static CandleSeries allocate(int size) {
+        return new CandleSeries(new long[size], new double[size], new double[size], new double[size],
+                new double[size], new long[size]);
+    }
+
+    private static CandleSeries truncate(CandleSeries series, int size) {
+        CandleSeries truncated = allocate(size);
+        System.arraycopy(series.openTimes(), 0, truncated.openTimes(), 0, size);
+        System.arraycopy(series.open(), 0, truncated.open(), 0, size);
+        System.arraycopy(series.high(), 0, truncated.high(), 0, size);
+        System.arraycopy(series.low(), 0, truncated.low(), 0, size);
+        System.arraycopy(series.close(), 0, truncated.close(), 0, size);
+        System.arraycopy(series.volume(), 0, truncated.volume(), 0, size);
+        return truncated;
+    }
+
+    private static void set(CandleSeries series, int index, long openTime, double open, double high, double low,
+                            double close, long volume) {
+        series.openTimes()[index] = openTime;
+        series.open()[index] = open;
+        series.high()[index] = high;
+        series.low()[index] = low;
+        series.close()[index] = close;
+        series.volume()[index] = volume;
+    }
+
+    private static final class TailCandle {
+        double open;
+        double high;
+        double low;
+        double close;
+        long volume;
+        long firstEventTime;
+        long lastEventTime;
+
+        TailCandle(double open, double high, double low, double close, long volume, long firstEventTime,
+                   long lastEventTime) {
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.volume = volume;
+            this.firstEventTime = firstEventTime;
+            this.lastEventTime = lastEventTime;
+        }
+
+        static TailCandle of(CandleEntity candle) {
+            return new TailCandle(candle.getOpenPrice(), candle.getHighPrice(), candle.getLowPrice(),
+                    candle.getClosePrice(), candle.getVolume(), candle.getFirstEventTime(), candle.getLastEventTime());
+        }
+
+        void merge(TailCandle change) {
+            if (change.firstEventTime < firstEventTime) {
+                open = change.open;
+                firstEventTime = change.firstEventTime;
+            }
+            high = Math.max(high, change.high);
+            low = Math.min(low, change.low);
+            if (change.lastEventTime >= lastEventTime) {
+                close = change.close;
+                lastEventTime = change.lastEventTime;
+            }
+            volume += change.volume;
+        }
+
+        TailCandle copy() {
+            return new TailCandle(open, high, low, close, volume, firstEventTime, lastEventTime);
+        }
+    }
+
+    // Event times of the open and close of each candle of a series, by index
+    private record EventTimes(long[] first, long[] last) {
+
+        static EventTimes allocate(int size) {
+            return new EventTimes(new long[size], new long[size]);
+        }
+
+        void set(int index, long firstEventTime, long lastEventTime) {
+            first[index] = firstEventTime;
+            last[index] = lastEventTime;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.trading.candle.aggregator.storage;
+
+import java.util.UUID;
+
+/**
+ * Identifies the candles held by a storage engine. A range that is final reads the same for
+ * as long as the dataset stays the same; a new dataset, e.g. an emptied database, starts over.
+ */
+public record StorageDataset(String id, long createdAtMillis) {
+
+    public static StorageDataset create() {
+        return new StorageDataset(UUID.randomUUID().toString(), System.currentTimeMillis());
+    }
+}
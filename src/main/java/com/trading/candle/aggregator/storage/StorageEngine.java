@@ -0,0 +1,8 @@
+package com.trading.candle.aggregator.storage;
+
+public enum StorageEngine {
+    /** Candles are rows of the candles table, written through JPA or native MERGE statements. */
+    RELATIONAL,
+    /** Candles are kept in memory-mapped column segments per symbol and interval. */
+    SEGMENT
+}
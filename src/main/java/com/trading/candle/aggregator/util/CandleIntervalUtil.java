@@ -1,37 +1,70 @@
 package com.trading.candle.aggregator.util;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class CandleIntervalUtil {
 
+    // A count of seconds, minutes, hours, days or weeks, e.g. 5s, 3m, 2h, 1w
+    private static final Pattern INTERVAL = Pattern.compile("([1-9][0-9]{0,5})([smhdw])");
+    // Intervals come from requests, so the cache stops growing once it holds this many
+    private static final int MAX_CACHED_INTERVALS = 1024;
+    private static final Map<String, Long> SECONDS = new ConcurrentHashMap<>();
+
+    /**
+     * Length of the interval in seconds. Candles of every interval are aligned to the Unix
+     * epoch, a Thursday, so weekly candles run from Thursday to Wednesday in UTC.
+     */
     public static long toSeconds(String interval) {
-        return switch (interval) {
-            case "1s" -> 1;
-            case "5s" -> 5;
-            case "1m" -> 60;
-            case "5m" -> 300;
-            case "15m" -> 900;
-            case "1h" -> 3600;
-            case "4h" -> 14400;
-            case "1d" -> 86400;
-            default -> throw new IllegalArgumentException("Unsupported interval: " + interval);
+        Long cached = SECONDS.get(interval);
+        if (cached != null) {
+            return cached;
+        }
+        long seconds = parseSeconds(interval);
+        if (SECONDS.size() < MAX_CACHED_INTERVALS) {
+            SECONDS.put(interval, seconds);
+        }
+        return seconds;
+    }
+
+    private static long parseSeconds(String interval) {
+        Matcher matcher = INTERVAL.matcher(interval);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Unsupported interval: " + interval);
+        }
+        long unit = switch (matcher.group(2)) {
+            case "s" -> 1;
+            case "m" -> 60;
+            case "h" -> 3600;
+            case "d" -> 86400;
+            default -> 604800;
         };
+        return Long.parseLong(matcher.group(1)) * unit;
     }
 
     public static long alignTime(long timestamp, String interval) {
         long seconds = toSeconds(interval);
         return (timestamp / seconds) * seconds;
     }
-    
-    public static long alignTimeWithDelay(long timestamp, String interval) {
+
+    /**
+     * Returns the coarsest of the stored intervals that the interval is a multiple of, the
+     * interval itself if it is stored, or null if candles of it cannot be built from any.
+     */
+    public static String baseInterval(String interval, Collection<String> storedIntervals) {
         long seconds = toSeconds(interval);
-        long alignedTime = (timestamp / seconds) * seconds;
-        
-        // Allow for slight delays (up to 10% of interval)
-        long delayThreshold = seconds / 10;
-        if (timestamp - alignedTime > delayThreshold) {
-            // If event is significantly delayed, align to next interval
-            return alignedTime + seconds;
+        String base = null;
+        long baseSeconds = 0;
+        for (String stored : storedIntervals) {
+            long storedSeconds = toSeconds(stored);
+            if (seconds % storedSeconds == 0 && storedSeconds > baseSeconds) {
+                base = stored;
+                baseSeconds = storedSeconds;
+            }
         }
-        
-        return alignedTime;
+        return base;
     }
 }
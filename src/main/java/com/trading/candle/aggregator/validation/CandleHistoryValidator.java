@@ -2,14 +2,15 @@ package com.trading.candle.aggregator.validation;
 
 import com.trading.candle.aggregator.config.CandleAggregationProperties;
 import com.trading.candle.aggregator.dto.ErrorResponse;
+import com.trading.candle.aggregator.dto.HistoryQuery;
+import com.trading.candle.aggregator.util.CandleIntervalUtil;
 import org.springframework.stereotype.Component;
 
-import java.util.Set;
+import java.util.List;
 
 @Component
 public class CandleHistoryValidator {
 
-    private static final Set<String> VALID_INTERVALS = Set.of("1s", "5s", "1m", "5m", "15m", "1h", "4h", "1d");
     private final CandleAggregationProperties properties;
 
     public CandleHistoryValidator(CandleAggregationProperties properties) {
@@ -23,6 +24,47 @@ public class CandleHistoryValidator {
                validateTimestampRange(from, to);
     }
 
+    public ErrorResponse validateSubscription(String symbol, String interval) {
+        ErrorResponse error = validateSymbol(symbol);
+        return error != null ? error : validateInterval(interval);
+    }
+
+    /**
+     * Validates the optional paging parameters: at most one of limit and countback, within the
+     * configured page size, and a cursor only together with one of them.
+     */
+    public ErrorResponse validatePage(Integer limit, Integer countback, String cursor) {
+        if (limit != null && countback != null) {
+            return new ErrorResponse("BAD_REQUEST", "Only one of limit and countback may be given");
+        }
+        Integer size = limit != null ? limit : countback;
+        if (size == null) {
+            return cursor != null ? new ErrorResponse("BAD_REQUEST", "Cursor requires limit or countback") : null;
+        }
+        int maxPageCandles = properties.getHistory().getMaxPageCandles();
+        return size <= 0 || size > maxPageCandles ?
+            new ErrorResponse("BAD_REQUEST", "Limit and countback must be between 1 and " + maxPageCandles) : null;
+    }
+
+    /**
+     * Validates the size of a batch and every query in it, naming the first invalid query.
+     */
+    public ErrorResponse validateBatch(List<HistoryQuery> queries) {
+        int maxBatchQueries = properties.getHistory().getMaxBatchQueries();
+        if (queries == null || queries.isEmpty() || queries.size() > maxBatchQueries) {
+            return new ErrorResponse("BAD_REQUEST", "A batch must hold between 1 and " + maxBatchQueries + " queries");
+        }
+        for (int i = 0; i < queries.size(); i++) {
+            HistoryQuery query = queries.get(i);
+            ErrorResponse error = query == null ? new ErrorResponse("BAD_REQUEST", "Query cannot be null")
+                    : validateInputs(query.symbol(), query.interval(), query.from(), query.to());
+            if (error != null) {
+                return new ErrorResponse(error.getError(), "Query " + i + ": " + error.getMessage());
+            }
+        }
+        return null;
+    }
+
     private ErrorResponse validateSymbol(String symbol) {
         if (symbol == null || symbol.isBlank()) {
             return new ErrorResponse("BAD_REQUEST", "Symbol cannot be null or empty");
@@ -36,11 +78,19 @@ public class CandleHistoryValidator {
         return null;
     }
 
-    private static ErrorResponse validateInterval(String interval) {
+    // Any multiple of an aggregated interval is served, by resampling its candles
+    private ErrorResponse validateInterval(String interval) {
         if (interval == null || interval.isBlank())
             return new ErrorResponse("BAD_REQUEST", "Interval cannot be null or empty");
-        return !VALID_INTERVALS.contains(interval.trim()) ?
-            new ErrorResponse("BAD_REQUEST", "Invalid interval. Must be one of: 1s, 5s, 1m, 5m, 15m, 1h, 4h, 1d") : null;
+        try {
+            if (CandleIntervalUtil.baseInterval(interval.trim(), properties.getIntervals()) != null) {
+                return null;
+            }
+        } catch (IllegalArgumentException e) {
+            // Not an interval at all, reported below
+        }
+        return new ErrorResponse("BAD_REQUEST",
+            "Invalid interval. Must be a multiple of one of: " + String.join(", ", properties.getIntervals()));
     }
 
     private static ErrorResponse validateTimestampRange(long from, long to) {
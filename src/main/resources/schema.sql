@@ -8,6 +8,8 @@ CREATE TABLE candles (
     low_price DOUBLE,
     close_price DOUBLE,
     volume BIGINT,
+    first_event_time BIGINT NOT NULL DEFAULT 0,
+    last_event_time BIGINT NOT NULL DEFAULT 0,
     CONSTRAINT uk_symbol_interval_time UNIQUE (symbol, candle_interval, open_time)
 );
 
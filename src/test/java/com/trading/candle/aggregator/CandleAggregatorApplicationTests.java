@@ -3,7 +3,8 @@ package com.trading.candle.aggregator;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// Nothing may be journaled to or recovered from the working directory
+@SpringBootTest(properties = "candle.aggregation.journal.enabled=false")
 class CandleAggregatorApplicationTests {
 
 	@Test
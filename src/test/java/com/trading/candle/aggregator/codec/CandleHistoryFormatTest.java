@@ -0,0 +1,31 @@
+package com.trading.candle.aggregator.codec;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleHistoryFormatTest {
+
+    @Test
+    void negotiate_shouldDefaultToJson() {
+        assertEquals(CandleHistoryFormat.JSON, CandleHistoryFormat.negotiate(null));
+        assertEquals(CandleHistoryFormat.JSON, CandleHistoryFormat.negotiate("*/*"));
+        assertEquals(CandleHistoryFormat.JSON, CandleHistoryFormat.negotiate("application/*"));
+    }
+
+    @Test
+    void negotiate_shouldPickColumnarWhenPreferred() {
+        assertEquals(CandleHistoryFormat.COLUMNAR,
+                CandleHistoryFormat.negotiate("application/vnd.candles.columnar"));
+        assertEquals(CandleHistoryFormat.COLUMNAR,
+                CandleHistoryFormat.negotiate("application/json;q=0.5, application/vnd.candles.columnar"));
+        assertEquals(CandleHistoryFormat.JSON,
+                CandleHistoryFormat.negotiate("application/vnd.candles.columnar;q=0.1, application/json"));
+    }
+
+    @Test
+    void negotiate_shouldReturnNull_whenNoFormatAccepted() {
+        assertNull(CandleHistoryFormat.negotiate("text/csv"));
+        assertNull(CandleHistoryFormat.negotiate("application/json;q=0"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.trading.candle.aggregator.codec;
+
+import com.trading.candle.aggregator.storage.CandleSeries;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarBinaryEncoderTest {
+
+    private static final long START = 1640995200L;
+
+    @Test
+    void encode_shouldWriteAlignedLittleEndianColumns() {
+        CandleSeries candles = new CandleSeries(
+                new long[]{START, START + 60, START + 180, START + 240},
+                new double[]{100.0, 101.0, 102.0, 103.0},
+                new double[]{105.0, 106.0, 107.0, 108.0},
+                new double[]{95.0, 96.0, 97.0, 98.0},
+                new double[]{102.0, 103.0, 104.0, 105.0},
+                new long[]{10, 20, 30, 40});
+
+        ByteBuffer buffer = encode(candles);
+
+        assertEquals('C', buffer.get(0));
+        assertEquals('L', buffer.get(3));
+        assertEquals(ColumnarBinaryEncoder.VERSION, buffer.get(4));
+        assertEquals(ColumnarBinaryEncoder.STATUS_OK, buffer.get(5));
+        assertEquals(4, buffer.getInt(8));
+        assertEquals(START, buffer.getLong(16));
+        assertEquals(60, buffer.getInt(24));
+        assertEquals(120, buffer.getInt(28));
+        assertEquals(60, buffer.getInt(32));
+        // Three deltas are padded to 16 bytes, so the open prices start at 40
+        int open = 40;
+        assertEquals(100.0, buffer.getDouble(open));
+        assertEquals(103.0, buffer.getDouble(open + 24));
+        assertEquals(108.0, buffer.getDouble(open + 32 + 24));
+        assertEquals(95.0, buffer.getDouble(open + 64));
+        assertEquals(105.0, buffer.getDouble(open + 96 + 24));
+        int volume = open + 128;
+        assertEquals(10, buffer.getLong(volume));
+        assertEquals(40, buffer.getLong(volume + 24));
+        assertEquals(volume + 32, buffer.capacity());
+    }
+
+    @Test
+    void encode_shouldWriteHeaderOnly_whenEmpty() {
+        ByteBuffer buffer = encode(CandleSeries.empty());
+
+        assertEquals(ColumnarBinaryEncoder.HEADER_BYTES, buffer.capacity());
+        assertEquals(0, buffer.getInt(8));
+    }
+
+    @Test
+    void encodeError_shouldWriteErrorHeaderWithoutCandles() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ColumnarBinaryEncoder(out).encodeError();
+
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(ColumnarBinaryEncoder.HEADER_BYTES, buffer.capacity());
+        assertEquals(ColumnarBinaryEncoder.STATUS_ERROR, buffer.get(5));
+        assertEquals(0, buffer.getInt(8));
+    }
+
+    @Test
+    void encode_shouldSpanBufferBoundaries() {
+        int count = 5000;
+        long[] openTimes = new long[count];
+        double[] prices = new double[count];
+        long[] volumes = new long[count];
+        for (int i = 0; i < count; i++) {
+            openTimes[i] = START + i * 60L;
+            prices[i] = i;
+            volumes[i] = i;
+        }
+
+        ByteBuffer buffer = encode(new CandleSeries(openTimes, prices, prices, prices, prices, volumes));
+
+        int open = 16 + 8 + 4 * count;
+        int volume = open + 4 * 8 * count;
+        assertEquals(volume + 8 * count, buffer.capacity());
+        assertEquals(60, buffer.getInt(24 + 4 * (count - 2)));
+        assertEquals(count - 1.0, buffer.getDouble(open + 8 * (count - 1)));
+        assertEquals(count - 1L, buffer.getLong(volume + 8 * (count - 1)));
+    }
+
+    @Test
+    void endColumn_shouldRejectColumnNotMatchingCount() {
+        ColumnarBinaryEncoder encoder = new ColumnarBinaryEncoder(new ByteArrayOutputStream());
+        encoder.begin(2);
+        encoder.beginColumn(CandleColumn.OPEN_TIME);
+        encoder.writeLong(START);
+
+        assertThrows(IllegalStateException.class, encoder::endColumn);
+    }
+
+    private ByteBuffer encode(CandleSeries candles) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ColumnarBinaryEncoder(out).encode(candles);
+        return ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
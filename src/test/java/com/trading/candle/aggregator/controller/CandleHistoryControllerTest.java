@@ -0,0 +1,36 @@
+package com.trading.candle.aggregator.controller;
+
+import com.trading.candle.aggregator.codec.CandleHistoryFormat;
+import com.trading.candle.aggregator.storage.StorageDataset;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleHistoryControllerTest {
+
+    private static final StorageDataset DATASET = new StorageDataset("dataset", 0);
+    private static final long FROM = 1640995200L;
+
+    @Test
+    void finalizedETag_shouldOnlyDependOnDatasetAndQuery() {
+        String eTag = CandleHistoryController.finalizedETag(DATASET, "BTC-USD", "1m", FROM, FROM + 60,
+                CandleHistoryFormat.JSON);
+
+        assertEquals(eTag, CandleHistoryController.finalizedETag(new StorageDataset("dataset", 1), "BTC-USD", "1m",
+                FROM, FROM + 60, CandleHistoryFormat.JSON));
+        assertNotEquals(eTag, CandleHistoryController.finalizedETag(new StorageDataset("other", 0), "BTC-USD", "1m",
+                FROM, FROM + 60, CandleHistoryFormat.JSON));
+        assertNotEquals(eTag, CandleHistoryController.finalizedETag(DATASET, "BTC-USD", "1m", FROM, FROM + 60,
+                CandleHistoryFormat.COLUMNAR));
+    }
+
+    @Test
+    void finalizedETag_shouldTellApartQueriesWithTheSameCharacters() {
+        assertNotEquals(
+                CandleHistoryController.finalizedETag(DATASET, "AB", "C1m", FROM, FROM, CandleHistoryFormat.JSON),
+                CandleHistoryController.finalizedETag(DATASET, "ABC", "1m", FROM, FROM, CandleHistoryFormat.JSON));
+        assertNotEquals(
+                CandleHistoryController.finalizedETag(DATASET, "BTC-USD", "1m", FROM, FROM + 1, CandleHistoryFormat.JSON),
+                CandleHistoryController.finalizedETag(DATASET, "BTC-USD", "1m", FROM + 1, FROM, CandleHistoryFormat.JSON));
+    }
+}
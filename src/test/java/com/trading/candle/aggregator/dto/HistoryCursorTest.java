@@ -0,0 +1,24 @@
+package com.trading.candle.aggregator.dto;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryCursorTest {
+
+    @Test
+    void decode_shouldReturnEncodedCursor() {
+        HistoryCursor cursor = new HistoryCursor("BTC-USD", "1m", true, 1640995139L);
+
+        String encoded = cursor.encode();
+
+        assertFalse(encoded.contains("BTC-USD"));
+        assertEquals(cursor, HistoryCursor.decode(encoded));
+    }
+
+    @Test
+    void decode_shouldRejectMalformedCursor() {
+        assertThrows(IllegalArgumentException.class, () -> HistoryCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> HistoryCursor.decode("QlRDLVVTRHwxbQ"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.trading.candle.aggregator.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleStoreTest {
+
+    @Test
+    void pack_shouldRoundTripAllComponents() {
+        long key = CandleKeyCodec.pack(CandleKeyCodec.MAX_SYMBOLS - 1, 31, 1640995200L);
+
+        assertTrue(key >= 0);
+        assertEquals(CandleKeyCodec.MAX_SYMBOLS - 1, CandleKeyCodec.symbolId(key));
+        assertEquals(31, CandleKeyCodec.intervalId(key));
+        assertEquals(1640995200L, CandleKeyCodec.bucket(key));
+    }
+
+    @Test
+    void update_shouldCreateThenAggregateCandle() {
+        CandleStore store = new CandleStore(16);
+        long key = CandleKeyCodec.pack(1, 0, 100);
+
+        assertTrue(store.update(key, 6000, 10.0));
+        assertFalse(store.update(key, 6001, 12.0));
+        assertFalse(store.update(key, 6002, 8.0));
+
+        double[] ohlc = new double[4];
+        long[] volume = new long[1];
+        store.forEach((k, first, last, o, h, l, c, v) -> {
+            ohlc[0] = o;
+            ohlc[1] = h;
+            ohlc[2] = l;
+            ohlc[3] = c;
+            volume[0] = v;
+        });
+        assertArrayEquals(new double[]{10.0, 12.0, 8.0, 8.0}, ohlc);
+        assertEquals(3, volume[0]);
+    }
+
+    @Test
+    void update_shouldKeepAllCandlesAcrossResizes() {
+        CandleStore store = new CandleStore(16);
+        for (int bucket = 0; bucket < 10_000; bucket++) {
+            store.update(CandleKeyCodec.pack(bucket % 7, bucket % 3, bucket), bucket, bucket);
+        }
+
+        Map<Long, Double> closes = new HashMap<>();
+        store.forEach((k, first, last, o, h, l, c, v) -> closes.put(CandleKeyCodec.bucket(k), c));
+
+        assertEquals(10_000, store.size());
+        assertEquals(10_000, closes.size());
+        assertEquals(4242.0, closes.get(4242L));
+    }
+
+    @Test
+    void update_shouldOrderOpenAndCloseByEventTime_whenTickIsLate() {
+        CandleStore store = new CandleStore(16);
+        long key = CandleKeyCodec.pack(0, 1, 100);
+
+        store.update(key, 6030, 10.0);
+        store.update(key, 6050, 12.0);
+        // Late ticks, before the first and between the first and the last
+        store.update(key, 6010, 9.0);
+        store.update(key, 6040, 11.0);
+
+        store.forEach((k, first, last, o, h, l, c, v) -> {
+            assertEquals(9.0, o);
+            assertEquals(12.0, c);
+            assertEquals(4, v);
+        });
+    }
+
+    @Test
+    void merge_shouldKeepLaterClose_whenMergedPartIsOlder() {
+        CandleStore store = new CandleStore(16);
+        long key = CandleKeyCodec.pack(0, 1, 100);
+        store.merge(key, 6030, 6050, 10.0, 12.0, 10.0, 12.0, 2);
+
+        store.merge(key, 6010, 6020, 9.0, 9.5, 8.0, 8.5, 3);
+
+        store.forEach((k, first, last, o, h, l, c, v) -> {
+            assertEquals(9.0, o);
+            assertEquals(12.0, h);
+            assertEquals(8.0, l);
+            assertEquals(12.0, c);
+            assertEquals(5, v);
+        });
+    }
+
+    @Test
+    void clear_shouldEmptyStore() {
+        CandleStore store = new CandleStore(16);
+        store.update(CandleKeyCodec.pack(0, 0, 1), 60, 1.0);
+
+        store.clear();
+
+        assertTrue(store.isEmpty());
+        store.forEach((k, first, last, o, h, l, c, v) -> fail("Store should be empty"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.trading.candle.aggregator.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CascadingRollupTest {
+
+    private static final String[] NAMES = {"1s", "1m", "3m", "5m", "15m", "1h"};
+    private static final long[] SECONDS = {1, 60, 180, 300, 900, 3600};
+
+    @Test
+    void hierarchy_shouldFeedEachIntervalFromCoarsestDivisor() {
+        IntervalHierarchy hierarchy = new IntervalHierarchy(NAMES, SECONDS);
+
+        assertEquals(0, hierarchy.base());
+        assertArrayEquals(new int[]{1}, hierarchy.children(0));
+        assertArrayEquals(new int[]{2, 3}, hierarchy.children(1));
+        assertArrayEquals(new int[]{4}, hierarchy.children(3));
+        assertArrayEquals(new int[]{5}, hierarchy.children(4));
+        assertArrayEquals(new int[0], hierarchy.children(2));
+    }
+
+    @Test
+    void hierarchy_shouldRejectIntervalThatCannotBeRolledUp() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new IntervalHierarchy(new String[]{"1m", "90s"}, new long[]{60, 90}));
+    }
+
+    @Test
+    void propagateAll_shouldMatchDirectAggregationForEveryInterval() {
+        CandleStore store = new CandleStore(16);
+        CascadingRollup rollup = new CascadingRollup(new IntervalHierarchy(NAMES, SECONDS));
+        Map<Long, double[]> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        long timestamp = 1640995200L;
+        for (int i = 0; i < 20_000; i++) {
+            // Mostly increasing time with an occasional late tick
+            timestamp += random.nextInt(3);
+            long tickTime = random.nextInt(50) == 0 ? timestamp - random.nextInt(120) : timestamp;
+            double price = 100 + random.nextInt(1000) / 10.0;
+            int symbolId = random.nextInt(3);
+
+            rollup.onTick(store, symbolId, tickTime, price);
+            for (int interval = 0; interval < SECONDS.length; interval++) {
+                long key = CandleKeyCodec.pack(symbolId, interval, tickTime / SECONDS[interval]);
+                // Open and close follow event time, ties go by arrival
+                expected.merge(key, new double[]{price, price, price, price, 1, tickTime, tickTime}, (current, tick) -> {
+                    if (tick[5] < current[5]) {
+                        current[0] = tick[0];
+                        current[5] = tick[5];
+                    }
+                    current[1] = Math.max(current[1], tick[1]);
+                    current[2] = Math.min(current[2], tick[2]);
+                    if (tick[6] >= current[6]) {
+                        current[3] = tick[3];
+                        current[6] = tick[6];
+                    }
+                    current[4] += 1;
+                    return current;
+                });
+            }
+        }
+        rollup.propagateAll(store);
+
+        Map<Long, double[]> actual = new HashMap<>();
+        store.forEach((key, first, last, o, h, l, c, v) -> actual.put(key, new double[]{o, h, l, c, v}));
+
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((key, candle) -> assertArrayEquals(Arrays.copyOf(candle, 5), actual.get(key),
+                "Mismatch for interval " + NAMES[CandleKeyCodec.intervalId(key)]));
+    }
+
+    @Test
+    void onTick_shouldKeepLaterClose_whenTickForPreviousBaseCandleIsLate() {
+        CandleStore store = new CandleStore(16);
+        CascadingRollup rollup = new CascadingRollup(new IntervalHierarchy(NAMES, SECONDS));
+        long minute = 1640995200L;
+
+        rollup.onTick(store, 0, minute + 10, 10.0);
+        rollup.onTick(store, 0, minute + 11, 12.0);
+        // Late tick for the previous base candle, then the stream carries on
+        rollup.onTick(store, 0, minute + 10, 7.0);
+        rollup.onTick(store, 0, minute + 5, 8.0);
+        rollup.onTick(store, 0, minute + 11, 13.0);
+        rollup.propagateAll(store);
+
+        Map<Long, double[]> candles = new HashMap<>();
+        store.forEach((key, first, last, o, h, l, c, v) -> candles.put(key, new double[]{o, h, l, c, v}));
+        assertArrayEquals(new double[]{10.0, 10.0, 7.0, 7.0, 2}, candles.get(CandleKeyCodec.pack(0, 0, minute + 10)));
+        assertArrayEquals(new double[]{12.0, 13.0, 12.0, 13.0, 2}, candles.get(CandleKeyCodec.pack(0, 0, minute + 11)));
+        for (int interval = 1; interval < SECONDS.length; interval++) {
+            assertArrayEquals(new double[]{8.0, 13.0, 7.0, 13.0, 5},
+                    candles.get(CandleKeyCodec.pack(0, interval, minute / SECONDS[interval])),
+                    "Mismatch for interval " + NAMES[interval]);
+        }
+    }
+
+    @Test
+    void onTick_shouldOnlyTouchBaseCandleUntilPropagated() {
+        CandleStore store = new CandleStore(16);
+        CascadingRollup rollup = new CascadingRollup(new IntervalHierarchy(NAMES, SECONDS));
+
+        assertTrue(rollup.onTick(store, 0, 1640995200L, 10.0));
+        assertFalse(rollup.onTick(store, 0, 1640995200L, 11.0));
+
+        assertEquals(1, store.size());
+        rollup.propagateAll(store);
+        assertEquals(SECONDS.length, store.size());
+    }
+}
@@ -0,0 +1,107 @@
+package com.trading.candle.aggregator.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventRingBufferTest {
+
+    @Test
+    void drain_shouldDeliverEventsInOrderAndBatched() {
+        EventRingBuffer ring = new EventRingBuffer(8, OverflowPolicy.BLOCK);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(ring.publish("BTC-USD", i, i, 1000L + i));
+        }
+
+        List<Long> timestamps = new ArrayList<>();
+        assertEquals(3, ring.drain((symbol, bid, ask, timestamp, ingestNanos) -> timestamps.add(timestamp), 3));
+        assertEquals(2, ring.drain((symbol, bid, ask, timestamp, ingestNanos) -> timestamps.add(timestamp), 3));
+
+        assertEquals(List.of(1000L, 1001L, 1002L, 1003L, 1004L), timestamps);
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    void drain_shouldHandOverIngestStamps() {
+        EventRingBuffer ring = new EventRingBuffer(8, OverflowPolicy.BLOCK);
+        long before = System.nanoTime();
+        ring.publish("BTC-USD", 1, 1, 1000L);
+        ring.publish("BTC-USD", 1, 1, 1001L, EventRingBuffer.UNSTAMPED, OverflowPolicy.BLOCK);
+
+        List<Long> stamps = new ArrayList<>();
+        ring.drain((symbol, bid, ask, timestamp, ingestNanos) -> stamps.add(ingestNanos), 8);
+
+        assertTrue(stamps.get(0) - before >= 0);
+        assertEquals(EventRingBuffer.UNSTAMPED, stamps.get(1));
+    }
+
+    @Test
+    void publish_shouldDropNewestWhenFull() {
+        EventRingBuffer ring = new EventRingBuffer(4, OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.publish("BTC-USD", i, i, i));
+        }
+
+        assertFalse(ring.publish("BTC-USD", 9, 9, 9));
+
+        IngestionStats stats = ring.stats(0, 0, 0);
+        assertEquals(1, stats.droppedNewest());
+        assertEquals(4, stats.lag());
+    }
+
+    @Test
+    void publish_shouldDropOldestWhenFull() {
+        EventRingBuffer ring = new EventRingBuffer(4, OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(ring.publish("BTC-USD", i, i, i));
+        }
+
+        List<Long> timestamps = new ArrayList<>();
+        ring.drain((symbol, bid, ask, timestamp, ingestNanos) -> timestamps.add(timestamp), 10);
+
+        assertEquals(List.of(2L, 3L, 4L, 5L), timestamps);
+        assertEquals(2, ring.stats(0, 0, 0).droppedOldest());
+    }
+
+    @Test
+    void publish_shouldNotLoseEventsFromConcurrentProducersWhenBlocking() throws InterruptedException {
+        EventRingBuffer ring = new EventRingBuffer(64, OverflowPolicy.BLOCK);
+        int producers = 4;
+        int eventsPerProducer = 10_000;
+        AtomicLong consumed = new AtomicLong();
+
+        Thread consumer = new Thread(() -> {
+            while (consumed.get() < (long) producers * eventsPerProducer) {
+                ring.drain((symbol, bid, ask, timestamp, ingestNanos) -> consumed.incrementAndGet(), 32);
+            }
+        });
+        consumer.start();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < eventsPerProducer; i++) {
+                    ring.publish("BTC-USD", i, i, i);
+                }
+            });
+            threads.add(producer);
+            producer.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        consumer.join(10_000);
+
+        assertEquals((long) producers * eventsPerProducer, consumed.get());
+        assertEquals(0, ring.stats(0, 0, 0).lag());
+    }
+
+    @Test
+    void constructor_shouldRejectSizeThatIsNotPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new EventRingBuffer(100, OverflowPolicy.BLOCK));
+    }
+}
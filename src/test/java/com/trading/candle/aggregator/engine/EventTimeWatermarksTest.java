@@ -0,0 +1,92 @@
+package com.trading.candle.aggregator.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventTimeWatermarksTest {
+
+    private static final long TIMESTAMP = 1640995200L;
+
+    @Test
+    void admit_shouldCorrectLateEventsWithinAllowedLateness() {
+        EventTimeWatermarks watermarks = new EventTimeWatermarks(new long[]{1, 60}, 5);
+
+        assertTrue(watermarks.admit(0, TIMESTAMP + 10, 0));
+        assertTrue(watermarks.admit(0, TIMESTAMP + 5, 0));
+        assertFalse(watermarks.admit(0, TIMESTAMP + 4, 0));
+    }
+
+    @Test
+    void admit_shouldTrackWatermarksPerSymbol() {
+        EventTimeWatermarks watermarks = new EventTimeWatermarks(new long[]{1}, 0);
+
+        assertTrue(watermarks.admit(0, TIMESTAMP + 100, 0));
+        assertTrue(watermarks.admit(1, TIMESTAMP, 0));
+        assertFalse(watermarks.admit(0, TIMESTAMP, 0));
+    }
+
+    @Test
+    void takeFinalized_shouldReportFirstOpenCandlePerInterval() {
+        EventTimeWatermarks watermarks = new EventTimeWatermarks(new long[]{1, 60}, 5);
+        watermarks.admit(3, TIMESTAMP, 0);
+        watermarks.takeFinalized();
+
+        watermarks.admit(3, TIMESTAMP + 65, 0);
+        long[] finalized = watermarks.takeFinalized();
+
+        assertArrayEquals(new long[]{
+                CandleKeyCodec.pack(3, 0, TIMESTAMP + 60),
+                CandleKeyCodec.pack(3, 1, (TIMESTAMP + 60) / 60)
+        }, finalized);
+        assertEquals(0, watermarks.takeFinalized().length);
+    }
+
+    @Test
+    void admit_shouldNotRecordFinalizationWithinFinestCandle() {
+        EventTimeWatermarks watermarks = new EventTimeWatermarks(new long[]{60}, 0);
+        watermarks.admit(0, TIMESTAMP, 0);
+        watermarks.takeFinalized();
+
+        watermarks.admit(0, TIMESTAMP + 30, 0);
+
+        assertEquals(0, watermarks.takeFinalized().length);
+    }
+
+    @Test
+    void advanceIdle_shouldFinalizeCandlesOfSymbolWithoutNewEvents() {
+        EventTimeWatermarks watermarks = new EventTimeWatermarks(new long[]{1, 60}, 5);
+        watermarks.admit(0, TIMESTAMP + 10, 0);
+        watermarks.takeFinalized();
+
+        watermarks.advanceIdle(TimeUnit.SECONDS.toNanos(1) - 1);
+        assertEquals(0, watermarks.takeFinalized().length);
+
+        // Idle for a minute: the watermark moved on to TIMESTAMP + 65
+        watermarks.advanceIdle(TimeUnit.SECONDS.toNanos(60));
+        assertArrayEquals(new long[]{
+                CandleKeyCodec.pack(0, 0, TIMESTAMP + 65),
+                CandleKeyCodec.pack(0, 1, (TIMESTAMP + 60) / 60)
+        }, watermarks.takeFinalized());
+        assertFalse(watermarks.admit(0, TIMESTAMP + 64, TimeUnit.SECONDS.toNanos(60)));
+    }
+
+    @Test
+    void advanceIdle_shouldStartIdleClockOfReplayedSymbolAtFirstAdvance() {
+        EventTimeWatermarks watermarks = new EventTimeWatermarks(new long[]{1}, 0);
+        watermarks.admit(0, TIMESTAMP, EventRingBuffer.UNSTAMPED);
+        watermarks.takeFinalized();
+
+        watermarks.advanceIdle(TimeUnit.SECONDS.toNanos(100));
+        assertEquals(0, watermarks.takeFinalized().length);
+        watermarks.advanceIdle(TimeUnit.SECONDS.toNanos(102));
+        assertArrayEquals(new long[]{CandleKeyCodec.pack(0, 0, TIMESTAMP + 2)}, watermarks.takeFinalized());
+    }
+
+    @Test
+    void constructor_shouldRejectNegativeLateness() {
+        assertThrows(IllegalArgumentException.class, () -> new EventTimeWatermarks(new long[]{1}, -1));
+    }
+}
@@ -0,0 +1,60 @@
+package com.trading.candle.aggregator.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void snapshot_shouldReportPercentilesOfRecordedValues() {
+        LatencyHistogram histogram = LatencyHistogram.singleWriter(3);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.count());
+        assertEquals(500_000, snapshot.p50Nanos(), 5_000);
+        assertEquals(990_000, snapshot.p99Nanos(), 10_000);
+        assertEquals(999_000, snapshot.p999Nanos(), 10_000);
+        assertEquals(1_000_000, snapshot.maxNanos(), 10_000);
+    }
+
+    @Test
+    void rotate_shouldDropValuesOlderThanTheWindow() {
+        LatencyHistogram histogram = LatencyHistogram.concurrent(2);
+        histogram.record(1_000);
+        histogram.rotate();
+        histogram.record(2_000);
+
+        assertEquals(2, histogram.snapshot().count());
+
+        histogram.rotate();
+        assertEquals(1, histogram.snapshot().count());
+
+        histogram.rotate();
+        assertEquals(0, histogram.snapshot().count());
+    }
+
+    @Test
+    void snapshot_shouldCombineHistogramsAndClampOutliers() {
+        LatencyHistogram first = LatencyHistogram.singleWriter(1);
+        LatencyHistogram second = LatencyHistogram.singleWriter(1);
+        first.record(-5);
+        second.record(TimeUnit.DAYS.toNanos(1));
+
+        LatencySnapshot snapshot = LatencyHistogram.snapshot(first, second);
+
+        assertEquals(2, snapshot.count());
+        assertTrue(snapshot.maxNanos() <= TimeUnit.HOURS.toNanos(1) * 101 / 100);
+    }
+
+    @Test
+    void constructor_shouldRejectEmptyWindow() {
+        assertThrows(IllegalArgumentException.class, () -> LatencyHistogram.concurrent(0));
+    }
+}
@@ -0,0 +1,106 @@
+package com.trading.candle.aggregator.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiveCandleTableTest {
+
+    private final LiveCandleTable table = new LiveCandleTable(new long[]{1, 60});
+
+    @Test
+    void read_shouldReturnNull_whenSeriesHasNoLiveCandle() {
+        assertNull(table.read(0, 0));
+        assertNull(table.read(1000, 1));
+    }
+
+    @Test
+    void update_shouldAggregateTicksOfNewestBucket() {
+        table.update(3, 6000, 10.0, 0);
+        table.update(3, 6000, 12.0, 0);
+        table.update(3, 6000, 9.0, 0);
+
+        LiveCandle live = table.read(3, 1);
+        assertEquals(6000, live.openTime());
+        assertEquals(10.0, live.open());
+        assertEquals(12.0, live.high());
+        assertEquals(9.0, live.low());
+        assertEquals(9.0, live.close());
+        assertEquals(3, live.volume());
+        assertNull(table.read(2, 1));
+    }
+
+    @Test
+    void update_shouldMoveToNewerBucketAndIgnoreLateTicks() {
+        table.update(0, 6000, 10.0, 0);
+        table.update(0, 6060, 11.0, 0);
+        table.update(0, 6000, 50.0, 0);
+
+        LiveCandle live = table.read(0, 1);
+        assertEquals(6060, live.openTime());
+        assertEquals(11.0, live.high());
+        assertEquals(1, live.volume());
+    }
+
+    @Test
+    void update_shouldStartOverInNewGeneration() {
+        table.update(0, 6000, 10.0, 0);
+        table.update(0, 6000, 11.0, 1);
+
+        LiveCandle live = table.read(0, 1);
+        assertEquals(1, live.generation());
+        assertEquals(11.0, live.open());
+        assertEquals(1, live.volume());
+    }
+
+    @Test
+    void read_shouldAddCurrentRootCandleToRolledUpOnes() {
+        table.update(0, 6001, 10.0, 0);
+        table.update(0, 6002, 14.0, 0);
+        table.update(0, 6002, 8.0, 0);
+        table.update(0, 6003, 11.0, 0);
+
+        LiveCandle second = table.read(0, 0);
+        assertEquals(6003, second.openTime());
+        assertEquals(1, second.volume());
+
+        LiveCandle minute = table.read(0, 1);
+        assertEquals(6000, minute.openTime());
+        assertEquals(10.0, minute.open());
+        assertEquals(14.0, minute.high());
+        assertEquals(8.0, minute.low());
+        assertEquals(11.0, minute.close());
+        assertEquals(4, minute.volume());
+    }
+
+    @Test
+    void update_shouldShowLateTickInCoarserCandleItStillBelongsTo() {
+        table.update(0, 6002, 10.0, 0);
+        table.update(0, 6003, 11.0, 0);
+        table.update(0, 6001, 20.0, 0);
+
+        LiveCandle minute = table.read(0, 1);
+        assertEquals(20.0, minute.high());
+        assertEquals(11.0, minute.close());
+        assertEquals(3, minute.volume());
+        assertEquals(1, table.read(0, 0).volume());
+    }
+
+    @Test
+    void update_shouldOnlyWriteFinestIntervalDividingTheOthers() {
+        LiveCandleTable daily = new LiveCandleTable(new long[]{1, 60, 300, 900, 3600, 14400, 86400});
+        assertEquals(1, daily.rootCount());
+
+        // 90s is not a multiple of 1m, so it is updated on its own
+        LiveCandleTable uneven = new LiveCandleTable(new long[]{60, 90, 180, 300});
+        assertEquals(2, uneven.rootCount());
+        uneven.update(0, 5940, 10.0, 0);
+        uneven.update(0, 6000, 12.0, 0);
+        assertEquals(5940, uneven.read(0, 1).openTime());
+        assertEquals(2, uneven.read(0, 1).volume());
+        assertEquals(5940, uneven.read(0, 2).openTime());
+        assertEquals(2, uneven.read(0, 2).volume());
+        assertEquals(6000, uneven.read(0, 3).openTime());
+        assertEquals(1, uneven.read(0, 3).volume());
+    }
+}
@@ -0,0 +1,102 @@
+package com.trading.candle.aggregator.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionJournalTest {
+
+    private static final byte[] SYMBOL = "BTC-USD".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replay_shouldReturnRecordsInOrderAcrossSegments() {
+        PartitionJournal journal = new PartitionJournal(directory, 0, 2048, 10);
+        for (int i = 0; i < 200; i++) {
+            journal.append(SYMBOL, i, i + 1, 1640995200L + i);
+        }
+        journal.sync();
+
+        List<Long> timestamps = new ArrayList<>();
+        long replayed = PartitionJournal.replay(directory, 0, 0, (symbol, bid, ask, timestamp) -> {
+            assertEquals("BTC-USD", symbol);
+            assertEquals(bid + 1, ask);
+            timestamps.add(timestamp);
+        });
+
+        assertEquals(200, replayed);
+        assertEquals(1640995200L, timestamps.get(0));
+        assertEquals(1640995399L, timestamps.get(199));
+        assertTrue(segmentCount() > 1);
+    }
+
+    @Test
+    void replay_shouldStartAtPosition() {
+        PartitionJournal journal = new PartitionJournal(directory, 1, 2048, 10);
+        journal.append(SYMBOL, 1, 1, 1);
+        long position = journal.position();
+        journal.append(SYMBOL, 2, 2, 2);
+        journal.sync();
+
+        List<Long> timestamps = new ArrayList<>();
+        PartitionJournal.replay(directory, 1, position, (symbol, bid, ask, timestamp) -> timestamps.add(timestamp));
+
+        assertEquals(List.of(2L), timestamps);
+    }
+
+    @Test
+    void replay_shouldStopAtTornRecord() throws IOException {
+        PartitionJournal journal = new PartitionJournal(directory, 0, 2048, 10);
+        journal.append(SYMBOL, 1, 1, 1);
+        long position = journal.position();
+        journal.append(SYMBOL, 2, 2, 2);
+        journal.sync();
+        corruptByteAt((int) position + 12);
+
+        assertEquals(1, PartitionJournal.replay(directory, 0, 0, (symbol, bid, ask, timestamp) -> { }));
+    }
+
+    @Test
+    void deleteBefore_shouldKeepSegmentOfPosition() {
+        PartitionJournal journal = new PartitionJournal(directory, 0, 2048, 10);
+        for (int i = 0; i < 200; i++) {
+            journal.append(SYMBOL, i, i, i);
+        }
+        long segments = segmentCount();
+
+        journal.deleteBefore(journal.position());
+
+        assertTrue(segments > 1);
+        assertEquals(1, segmentCount());
+        assertEquals(List.of(0), PartitionJournal.partitions(directory));
+    }
+
+    private long segmentCount() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void corruptByteAt(int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve("partition-0-0000000000.journal"),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), offset);
+        }
+    }
+}
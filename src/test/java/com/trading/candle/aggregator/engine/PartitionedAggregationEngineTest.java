@@ -0,0 +1,256 @@
+package com.trading.candle.aggregator.engine;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.model.BidAskEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedAggregationEngineTest {
+
+    private static final long TIMESTAMP = 1640995200L;
+
+    private PartitionedAggregationEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new PartitionedAggregationEngine(properties(4));
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    void partitionIndex_shouldBeStablePerSymbol() {
+        int first = engine.partitionIndex("BTC-USD");
+
+        assertEquals(first, engine.partitionIndex("BTC-USD"));
+        assertTrue(first >= 0 && first < engine.partitionCount());
+    }
+
+    @Test
+    void submit_shouldApplyEventsOfSymbolInOrder() {
+        for (int i = 1; i <= 500; i++) {
+            assertTrue(engine.publish(new BidAskEvent("BTC-USD", i, i, TIMESTAMP)));
+        }
+
+        CandleEntity candle = findCandle(engine.drain(), "BTC-USD", "1s");
+        assertEquals(1.0, candle.getOpenPrice());
+        assertEquals(500.0, candle.getHighPrice());
+        assertEquals(1.0, candle.getLowPrice());
+        assertEquals(500.0, candle.getClosePrice());
+        assertEquals(500, candle.getVolume());
+    }
+
+    @Test
+    void drain_shouldHandOverAndResetCandles() {
+        engine.publish(new BidAskEvent("BTC-USD", 100.0, 100.0, TIMESTAMP));
+        engine.publish(new BidAskEvent("ETH-USD", 10.0, 10.0, TIMESTAMP));
+
+        List<CandleEntity> drained = engine.drain();
+
+        assertEquals(4, drained.size());
+        assertTrue(engine.drain().isEmpty());
+    }
+
+    @Test
+    void drain_shouldNotLoseEventsPublishedWhileFlushing() throws InterruptedException {
+        int events = 50_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < events; i++) {
+                engine.publish(new BidAskEvent(i % 2 == 0 ? "BTC-USD" : "ETH-USD", 1.0, 1.0, TIMESTAMP + i / 100));
+            }
+        });
+        producer.start();
+
+        long drainedVolume = 0;
+        while (producer.isAlive()) {
+            drainedVolume += baseVolume(engine.drain());
+        }
+        producer.join();
+        drainedVolume += baseVolume(engine.drain());
+
+        assertEquals(events, drainedVolume);
+    }
+
+    @Test
+    void publish_shouldBucketEventsByTheirOwnTimestamp() {
+        // Late within its second, must not be pushed into the next candle
+        engine.publish(new BidAskEvent("BTC-USD", 100.0, 100.0, TIMESTAMP + 59));
+
+        assertEquals(TIMESTAMP, findCandle(engine.drain(), "BTC-USD", "1m").getOpenTime());
+    }
+
+    @Test
+    void drain_shouldReportFinalizedCandlesAndCountLateEvents() {
+        Map<String, Long> closedBefore = new HashMap<>();
+        engine.addFinalizationListener((symbol, interval, closed) -> closedBefore.put(symbol + "/" + interval, closed));
+
+        engine.publish(new BidAskEvent("BTC-USD", 100.0, 100.0, TIMESTAMP));
+        engine.publish(new BidAskEvent("BTC-USD", 100.0, 100.0, TIMESTAMP + 65));
+        engine.publish(new BidAskEvent("BTC-USD", 90.0, 90.0, TIMESTAMP + 61));
+        engine.publish(new BidAskEvent("BTC-USD", 80.0, 80.0, TIMESTAMP + 30));
+        List<CandleEntity> drained = engine.drain();
+
+        assertEquals(TIMESTAMP + 60, closedBefore.get("BTC-USD/1s"));
+        assertEquals(TIMESTAMP + 60, closedBefore.get("BTC-USD/1m"));
+        assertEquals(3, baseVolume(drained));
+        assertEquals(1, engine.ingestionStats().stream().mapToLong(IngestionStats::lateEvents).sum());
+    }
+
+    @Test
+    void recover_shouldRestoreCheckpointAndReplayJournalAfterRestart(@TempDir Path directory) {
+        CandleAggregationProperties properties = properties(2);
+        properties.getJournal().setEnabled(true);
+        properties.getJournal().setDirectory(directory.resolve("journal").toString());
+        properties.getJournal().setSegmentSizeBytes(4096);
+
+        PartitionedAggregationEngine first = new PartitionedAggregationEngine(properties);
+        for (int i = 0; i < 200; i++) {
+            first.publish(new BidAskEvent("BTC-USD", 100.0 + i, 100.0 + i, TIMESTAMP));
+        }
+        // Drained but not persisted yet: covered by the checkpoint, not by the journal
+        List<CandleEntity> unpersisted = first.drain();
+        first.checkpoint(unpersisted);
+        first.publish(new BidAskEvent("BTC-USD", 50.0, 50.0, TIMESTAMP));
+        first.publish(new BidAskEvent("ETH-USD", 10.0, 10.0, TIMESTAMP));
+        first.shutdown();
+
+        PartitionedAggregationEngine second = new PartitionedAggregationEngine(properties);
+        try {
+            List<CandleEntity> checkpointed = second.recover();
+
+            assertEquals(200, baseVolume(checkpointed));
+            List<CandleEntity> replayed = second.drain();
+            assertEquals(2, baseVolume(replayed));
+            assertEquals(50.0, findCandle(replayed, "BTC-USD", "1s").getClosePrice());
+            assertTrue(second.recover().isEmpty());
+        } finally {
+            second.shutdown();
+        }
+    }
+
+    @Test
+    void liveCandle_shouldExposeChangesSinceLastDrain() {
+        engine.publish(new BidAskEvent("BTC-USD", 100.0, 100.0, TIMESTAMP));
+        engine.publish(new BidAskEvent("BTC-USD", 110.0, 110.0, TIMESTAMP + 1));
+        awaitApplied(2);
+
+        LiveCandle beforeDrain = engine.liveCandle("BTC-USD", "1m");
+        assertEquals(TIMESTAMP, beforeDrain.openTime());
+        assertEquals(100.0, beforeDrain.open());
+        assertEquals(110.0, beforeDrain.close());
+        assertEquals(2, beforeDrain.volume());
+        assertEquals(0, beforeDrain.generation());
+
+        engine.drain();
+        engine.publish(new BidAskEvent("BTC-USD", 90.0, 90.0, TIMESTAMP + 2));
+        awaitApplied(3);
+
+        LiveCandle afterDrain = engine.liveCandle("BTC-USD", "1m");
+        assertEquals(1, engine.drainedEpoch());
+        assertEquals(1, afterDrain.generation());
+        assertEquals(90.0, afterDrain.open());
+        assertEquals(1, afterDrain.volume());
+        assertNull(engine.liveCandle("ETH-USD", "1m"));
+        assertNull(engine.liveCandle("BTC-USD", "1h"));
+    }
+
+    @Test
+    void ingestionStats_shouldReportOneEntryPerPartitionWithoutLag() {
+        engine.publish(new BidAskEvent("BTC-USD", 100.0, 100.0, TIMESTAMP));
+        awaitApplied(1);
+
+        List<IngestionStats> stats = engine.ingestionStats();
+
+        assertEquals(4, stats.size());
+        assertEquals(1, stats.stream().mapToLong(IngestionStats::producerSequence).sum());
+        assertTrue(stats.stream().allMatch(s -> s.lag() == 0));
+    }
+
+    @Test
+    void appliedEvents_shouldCountAdmittedEventsPerSymbol() {
+        engine.publish(new BidAskEvent("BTC-USD", 100.0, 100.0, TIMESTAMP));
+        engine.publish(new BidAskEvent("BTC-USD", 100.0, 100.0, TIMESTAMP + 65));
+        engine.publish(new BidAskEvent("BTC-USD", 80.0, 80.0, TIMESTAMP + 30));
+        engine.publish(new BidAskEvent("ETH-USD", 10.0, 10.0, TIMESTAMP));
+        awaitApplied(4);
+
+        assertEquals(2, engine.appliedEvents("BTC-USD"));
+        assertEquals(1, engine.appliedEvents("ETH-USD"));
+        assertEquals(0, engine.appliedEvents("DOGE-USD"));
+        long batched = 0;
+        for (int partition = 0; partition < engine.partitionCount(); partition++) {
+            batched += engine.batchedEvents(partition);
+            assertTrue(engine.batchNanos(partition) >= 0);
+        }
+        assertTrue(batched <= 4);
+    }
+
+    @Test
+    void drain_shouldReportOldestIngestStampAndRecordAggregationLatency() {
+        long before = System.nanoTime();
+        engine.publish(new BidAskEvent("BTC-USD", 100.0, 100.0, TIMESTAMP));
+        engine.publish(new BidAskEvent("ETH-USD", 10.0, 10.0, TIMESTAMP));
+        long after = System.nanoTime();
+
+        engine.drain();
+
+        long ingestedSince = engine.drainedIngestedSince();
+        assertTrue(ingestedSince - before >= 0 && after - ingestedSince >= 0);
+        assertEquals(2, engine.aggregationLatency().count());
+
+        engine.drain();
+        assertEquals(PartitionedAggregationEngine.UNSTAMPED, engine.drainedIngestedSince());
+    }
+
+    @Test
+    void constructor_shouldRejectRingSizeThatIsNotPowerOfTwo() {
+        CandleAggregationProperties properties = properties(1);
+        properties.getIngestion().setRingBufferSize(1000);
+
+        assertThrows(IllegalArgumentException.class, () -> new PartitionedAggregationEngine(properties));
+    }
+
+    private static long baseVolume(List<CandleEntity> candles) {
+        return candles.stream()
+                .filter(c -> c.getCandleInterval().equals("1s"))
+                .mapToLong(CandleEntity::getVolume)
+                .sum();
+    }
+
+    private static CandleAggregationProperties properties(int partitions) {
+        CandleAggregationProperties properties = new CandleAggregationProperties();
+        properties.setIntervals(List.of("1s", "1m"));
+        properties.getProcessing().setPriceCalculationDivisor(2.0);
+        properties.getProcessing().setPartitions(partitions);
+        properties.getProcessing().setAllowedLatenessSeconds(5);
+        properties.getIngestion().setRingBufferSize(1024);
+        return properties;
+    }
+
+    // Every partition has consumed the given number of events in total and applied them
+    private void awaitApplied(long events) {
+        while (engine.ingestionStats().stream().mapToLong(IngestionStats::consumerSequence).sum() < events) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static CandleEntity findCandle(List<CandleEntity> candles, String symbol, String interval) {
+        return candles.stream()
+                .filter(c -> c.getSymbol().equals(symbol) && c.getCandleInterval().equals(interval))
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,98 @@
+package com.trading.candle.aggregator.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DroppingAsyncAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("test");
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch firstWrite = new CountDownLatch(1);
+    private final List<ILoggingEvent> written = new CopyOnWriteArrayList<>();
+    private DroppingAsyncAppender appender;
+
+    @BeforeEach
+    void setUp() {
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        // Holds the worker on the first event until released, so the queue fills up
+        AppenderBase<ILoggingEvent> slow = new AppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                firstWrite.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                written.add(event);
+            }
+        };
+        slow.setContext(context);
+        slow.start();
+
+        appender = new DroppingAsyncAppender();
+        appender.setContext(context);
+        appender.setName("ASYNC");
+        appender.setQueueSize(2);
+        appender.addAppender(slow);
+        appender.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        appender.stop();
+    }
+
+    @Test
+    void dropsEventsWithoutBlockingWhenTheQueueIsFull() throws InterruptedException {
+        appender.doAppend(event("first"));
+        assertTrue(firstWrite.await(5, TimeUnit.SECONDS));
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            appender.doAppend(event("event " + i));
+        }
+
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(8, appender.getDroppedEvents());
+        assertEquals(2, appender.getQueuedEvents());
+    }
+
+    @Test
+    void writesQueuedEventsInOrderAndReportsDrops() throws InterruptedException {
+        appender.doAppend(event("first"));
+        assertTrue(firstWrite.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            appender.doAppend(event("event " + i));
+        }
+        release.countDown();
+
+        appender.stop();
+
+        List<String> messages = written.stream().map(ILoggingEvent::getFormattedMessage).toList();
+        assertEquals(List.of("first", "event 0", "event 1"),
+                messages.stream().filter(message -> !message.startsWith("Dropped")).toList());
+        assertEquals(1, messages.stream().filter(message -> message.startsWith("Dropped 3 log events")).count());
+    }
+
+    private LoggingEvent event(String message) {
+        return new LoggingEvent(DroppingAsyncAppenderTest.class.getName(), logger, Level.INFO, message, null, null);
+    }
+}
@@ -0,0 +1,42 @@
+package com.trading.candle.aggregator.logging;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSamplerTest {
+
+    @Test
+    void passesConfiguredLinesPerSecondAndCountsTheRest() {
+        LogSampler sampler = new LogSampler(2);
+
+        assertTrue(sampler.sample());
+        assertTrue(sampler.sample());
+        for (int i = 0; i < 10; i++) {
+            assertFalse(sampler.sample());
+        }
+
+        assertEquals(10, sampler.takeSuppressed());
+        assertEquals(0, sampler.takeSuppressed());
+    }
+
+    @Test
+    void passesAgainInTheNextSecond() throws InterruptedException {
+        LogSampler sampler = new LogSampler(1);
+        assertTrue(sampler.sample());
+        assertFalse(sampler.sample());
+
+        Thread.sleep(1100);
+
+        assertTrue(sampler.sample());
+    }
+
+    @Test
+    void zeroLinesPerSecondSuppressesEverything() {
+        LogSampler sampler = new LogSampler(0);
+
+        assertFalse(sampler.sample());
+        assertFalse(sampler.sample());
+        assertEquals(2, sampler.takeSuppressed());
+    }
+}
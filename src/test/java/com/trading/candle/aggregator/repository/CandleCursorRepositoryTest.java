@@ -0,0 +1,62 @@
+package com.trading.candle.aggregator.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleCursorRepositoryTest {
+
+    private static final long START = 1640995200L;
+
+    private JdbcTemplate jdbcTemplate;
+    private CandleCursorRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        repository = new CandleCursorRepository(jdbcTemplate);
+    }
+
+    @Test
+    void streamRange_shouldHandOverRowsOfSeriesInOpenTimeOrder() {
+        // Inserted out of order, next to another interval of the same symbol
+        for (int i = 2500; i >= 0; i--) {
+            insert("1m", START + i * 60L, i);
+        }
+        insert("5m", START, 99);
+
+        List<Long> openTimes = new ArrayList<>();
+        List<Long> volumes = new ArrayList<>();
+        repository.streamRange("BTC-USD", "1m", START + 60, START + 2000 * 60, 100, row -> {
+            openTimes.add(row.getLong(1));
+            volumes.add(row.getLong(6));
+        });
+
+        assertEquals(2000, openTimes.size());
+        assertEquals(START + 60, openTimes.get(0));
+        assertEquals(START + 2000 * 60, openTimes.get(1999));
+        assertEquals(1L, volumes.get(0));
+        for (int i = 1; i < openTimes.size(); i++) {
+            assertTrue(openTimes.get(i) > openTimes.get(i - 1));
+        }
+    }
+
+    private void insert(String interval, long openTime, long volume) {
+        jdbcTemplate.update("""
+                INSERT INTO candles (symbol, candle_interval, open_time, open_price, high_price, low_price,
+                                     close_price, volume)
+                VALUES ('BTC-USD', ?, ?, 1.0, 1.0, 1.0, 1.0, ?)""", interval, openTime, volume);
+    }
+}
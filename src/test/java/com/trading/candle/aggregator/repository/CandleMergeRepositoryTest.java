@@ -0,0 +1,99 @@
+package com.trading.candle.aggregator.repository;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleMergeRepositoryTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private CandleMergeRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        repository = new CandleMergeRepository(jdbcTemplate);
+    }
+
+    @Test
+    void mergeCandles_shouldInsertNewAndAggregateExistingCandles() {
+        repository.mergeCandles(List.of(createCandle(1640995200L, 100.0, 105.0, 95.0, 102.0, 10)), 100);
+
+        repository.mergeCandles(List.of(
+                createCandle(1640995200L, 101.0, 110.0, 97.0, 99.0, 5),
+                createCandle(1640995260L, 99.0, 99.0, 99.0, 99.0, 1)), 100);
+
+        Map<String, Object> merged = jdbcTemplate.queryForMap(
+                "SELECT * FROM candles WHERE open_time = ?", 1640995200L);
+        assertEquals(100.0, merged.get("OPEN_PRICE"));
+        assertEquals(110.0, merged.get("HIGH_PRICE"));
+        assertEquals(95.0, merged.get("LOW_PRICE"));
+        assertEquals(99.0, merged.get("CLOSE_PRICE"));
+        assertEquals(15L, merged.get("VOLUME"));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM candles", Integer.class));
+    }
+
+    @Test
+    void mergeCandles_shouldSendOneBatchPerBatchSizeCandles() {
+        List<CandleEntity> candles = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            candles.add(createCandle(1640995200L + i * 60L, 100.0, 100.0, 100.0, 100.0, 1));
+        }
+
+        assertEquals(3, repository.mergeCandles(candles, 1000));
+        assertEquals(2500, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM candles", Integer.class));
+    }
+
+    @Test
+    void mergeCandles_shouldTakeOpenAndCloseByEventTime() {
+        CandleEntity stored = createCandle(1640995200L, 100.0, 105.0, 95.0, 107.0, 10);
+        stored.setFirstEventTime(1640995210L);
+        stored.setLastEventTime(1640995250L);
+        repository.mergeCandles(List.of(stored), 100);
+
+        CandleEntity late = createCandle(1640995200L, 99.0, 101.0, 90.0, 98.0, 2);
+        late.setFirstEventTime(1640995205L);
+        late.setLastEventTime(1640995220L);
+        repository.mergeCandles(List.of(late), 100);
+
+        Map<String, Object> merged = jdbcTemplate.queryForMap(
+                "SELECT * FROM candles WHERE open_time = ?", 1640995200L);
+        assertEquals(99.0, merged.get("OPEN_PRICE"));
+        assertEquals(107.0, merged.get("CLOSE_PRICE"));
+        assertEquals(1640995205L, merged.get("FIRST_EVENT_TIME"));
+        assertEquals(1640995250L, merged.get("LAST_EVENT_TIME"));
+    }
+
+    @Test
+    void mergeCandles_shouldSkipEmptyList() {
+        assertEquals(0, repository.mergeCandles(List.of(), 1000));
+    }
+
+    private static CandleEntity createCandle(long openTime, double open, double high, double low, double close,
+                                             long volume) {
+        CandleEntity candle = new CandleEntity();
+        candle.setSymbol("BTC-USD");
+        candle.setCandleInterval("1m");
+        candle.setOpenTime(openTime);
+        candle.setOpenPrice(open);
+        candle.setHighPrice(high);
+        candle.setLowPrice(low);
+        candle.setClosePrice(close);
+        candle.setVolume(volume);
+        return candle;
+    }
+}
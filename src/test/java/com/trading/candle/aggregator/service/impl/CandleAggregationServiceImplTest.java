@@ -1,20 +1,27 @@
 package com.trading.candle.aggregator.service.impl;
 
+import com.trading.candle.aggregator.engine.PartitionedAggregationEngine;
 import com.trading.candle.aggregator.entity.CandleEntity;
 import com.trading.candle.aggregator.model.BidAskEvent;
-import com.trading.candle.aggregator.repository.CandleRepository;
 import com.trading.candle.aggregator.service.CandlePersistenceService;
+import com.trading.candle.aggregator.service.PipelineLatencyService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -24,15 +31,9 @@ import static org.mockito.Mockito.*;
 @MockitoSettings(strictness = Strictness.LENIENT)
 class CandleAggregationServiceImplTest {
 
-    @Mock
-    private CandleRepository candleRepository;
-
     @Mock
     private CandlePersistenceService persistenceService;
 
-    @Mock
-    private Executor taskExecutor;
-
     @Mock
     private com.trading.candle.aggregator.config.CandleAggregationProperties properties;
 
@@ -42,6 +43,13 @@ class CandleAggregationServiceImplTest {
     @Mock
     private com.trading.candle.aggregator.controller.HealthController healthController;
 
+    @Mock
+    private RecentCandleCache recentCandles;
+
+    private PartitionedAggregationEngine aggregationEngine;
+
+    private PipelineLatencyService pipelineLatency;
+
     private CandleAggregationServiceImpl service;
 
     private BidAskEvent testEvent;
@@ -50,27 +58,33 @@ class CandleAggregationServiceImplTest {
     void setUp() {
         testEvent = new BidAskEvent("BTC-USD", 30000.0, 30100.0, 1640995200L);
         
-        // Mock executor to run tasks synchronously for testing
-        doAnswer(invocation -> {
-            Runnable task = invocation.getArgument(0);
-            task.run();
-            return null;
-        }).when(taskExecutor).execute(any(Runnable.class));
-        
         when(properties.getIntervals()).thenReturn(java.util.Arrays.asList("1s", "1m"));
         var processing = new com.trading.candle.aggregator.config.CandleAggregationProperties.Processing();
         processing.setPriceCalculationDivisor(2.0);
         when(properties.getProcessing()).thenReturn(processing);
+        when(properties.getPersistence()).thenReturn(new com.trading.candle.aggregator.config.CandleAggregationProperties.Persistence());
+        when(properties.getJournal()).thenReturn(new com.trading.candle.aggregator.config.CandleAggregationProperties.Journal());
         
         // Mock lifecycle manager to not be shutting down
         when(lifecycleManager.isShuttingDown()).thenReturn(false);
         
-        service = new CandleAggregationServiceImpl(candleRepository, persistenceService, taskExecutor, properties, lifecycleManager, healthController);
+        when(properties.getIngestion()).thenReturn(new com.trading.candle.aggregator.config.CandleAggregationProperties.Ingestion());
+        when(properties.getLatency()).thenReturn(new com.trading.candle.aggregator.config.CandleAggregationProperties.Latency());
+        when(properties.getLogging()).thenReturn(new com.trading.candle.aggregator.config.CandleAggregationProperties.Logging());
+        processing.setPartitions(2);
+        aggregationEngine = new PartitionedAggregationEngine(properties);
+        pipelineLatency = new PipelineLatencyServiceImpl(aggregationEngine, properties);
+        service = new CandleAggregationServiceImpl(persistenceService, aggregationEngine, properties, lifecycleManager, healthController, recentCandles, pipelineLatency, new SimpleMeterRegistry());
         
         // Manually call init since @PostConstruct doesn't work in unit tests
         service.init();
     }
 
+    @AfterEach
+    void tearDown() {
+        aggregationEngine.shutdown();
+    }
+
     @Test
     void processEvent_shouldCreateNewCandlesForAllIntervals() {
         service.processEvent(testEvent);
@@ -79,11 +93,11 @@ class CandleAggregationServiceImplTest {
         assertEquals(2, activeCandles.size());
         
         // Check that candles exist for both intervals (don't hardcode exact timestamps)
-        long candleCountFor1s = activeCandles.keySet().stream()
-                .filter(key -> key.startsWith("BTC-USD_1s_"))
+        long candleCountFor1s = activeCandles.stream()
+                .filter(c -> c.getSymbol().equals("BTC-USD") && c.getCandleInterval().equals("1s"))
                 .count();
-        long candleCountFor1m = activeCandles.keySet().stream()
-                .filter(key -> key.startsWith("BTC-USD_1m_"))
+        long candleCountFor1m = activeCandles.stream()
+                .filter(c -> c.getSymbol().equals("BTC-USD") && c.getCandleInterval().equals("1m"))
                 .count();
         
         assertEquals(1, candleCountFor1s);
@@ -97,7 +111,7 @@ class CandleAggregationServiceImplTest {
         var activeCandles = getActiveCandles();
         double expectedMidPrice = (30000.0 + 30100.0) / 2.0;
         
-        activeCandles.values().forEach(candle -> {
+        activeCandles.forEach(candle -> {
             assertEquals(expectedMidPrice, candle.getOpenPrice());
             assertEquals(expectedMidPrice, candle.getHighPrice());
             assertEquals(expectedMidPrice, candle.getLowPrice());
@@ -114,7 +128,7 @@ class CandleAggregationServiceImplTest {
 
         var activeCandles = getActiveCandles();
         // Find the 1s candle dynamically
-        CandleEntity candle = activeCandles.values().stream()
+        CandleEntity candle = activeCandles.stream()
                 .filter(c -> c.getSymbol().equals("BTC-USD") && c.getCandleInterval().equals("1s"))
                 .findFirst()
                 .orElse(null);
@@ -136,7 +150,7 @@ class CandleAggregationServiceImplTest {
 
         var activeCandles = getActiveCandles();
         // Find the 1s candle dynamically
-        CandleEntity candle = activeCandles.values().stream()
+        CandleEntity candle = activeCandles.stream()
                 .filter(c -> c.getSymbol().equals("BTC-USD") && c.getCandleInterval().equals("1s"))
                 .findFirst()
                 .orElse(null);
@@ -154,7 +168,7 @@ class CandleAggregationServiceImplTest {
 
         var activeCandles = getActiveCandles();
         // Find the 1s candle dynamically
-        CandleEntity candle = activeCandles.values().stream()
+        CandleEntity candle = activeCandles.stream()
                 .filter(c -> c.getSymbol().equals("BTC-USD") && c.getCandleInterval().equals("1s"))
                 .findFirst()
                 .orElse(null);
@@ -174,12 +188,12 @@ class CandleAggregationServiceImplTest {
         assertEquals(4, activeCandles.size());
         
         // Check for BTC candles
-        long btcCandleCount = activeCandles.keySet().stream()
-                .filter(key -> key.startsWith("BTC-USD_"))
+        long btcCandleCount = activeCandles.stream()
+                .filter(c -> c.getSymbol().equals("BTC-USD"))
                 .count();
         // Check for ETH candles
-        long ethCandleCount = activeCandles.keySet().stream()
-                .filter(key -> key.startsWith("ETH-USD_"))
+        long ethCandleCount = activeCandles.stream()
+                .filter(c -> c.getSymbol().equals("ETH-USD"))
                 .count();
         
         assertEquals(2, btcCandleCount);
@@ -198,11 +212,11 @@ class CandleAggregationServiceImplTest {
         assertEquals(4, activeCandles.size());
         
         // Count candles for each interval
-        long candle1sCount = activeCandles.keySet().stream()
-                .filter(key -> key.contains("_1s_"))
+        long candle1sCount = activeCandles.stream()
+                .filter(c -> c.getCandleInterval().equals("1s"))
                 .count();
-        long candle1mCount = activeCandles.keySet().stream()
-                .filter(key -> key.contains("_1m_"))
+        long candle1mCount = activeCandles.stream()
+                .filter(c -> c.getCandleInterval().equals("1m"))
                 .count();
         
         assertEquals(2, candle1sCount);
@@ -216,7 +230,7 @@ class CandleAggregationServiceImplTest {
         service.processEvent(zeroEvent);
 
         var activeCandles = getActiveCandles();
-        activeCandles.values().forEach(candle -> {
+        activeCandles.forEach(candle -> {
             assertEquals(0.0, candle.getOpenPrice());
             assertEquals(0.0, candle.getHighPrice());
             assertEquals(0.0, candle.getLowPrice());
@@ -237,18 +251,17 @@ class CandleAggregationServiceImplTest {
         service.flushToDatabase();
         
         verify(persistenceService, never()).persistCandles(any());
-        verify(candleRepository, never()).save(any(CandleEntity.class));
-        verify(candleRepository, never()).findBySymbolAndCandleIntervalAndOpenTime(anyString(), anyString(), anyLong());
+        verify(persistenceService, never()).persistCandles(any(), any());
     }
 
     @Test
     void flushToDatabase_shouldInsertNewCandles() {
         service.processEvent(testEvent);
-        when(persistenceService.persistCandles(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(persistenceService.persistCandles(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
         
         service.flushToDatabase().join();
 
-        verify(persistenceService, times(1)).persistCandles(any());
+        verify(persistenceService, times(1)).persistCandles(any(), any());
         
         var activeCandles = getActiveCandles();
         assertTrue(activeCandles.isEmpty());
@@ -257,11 +270,11 @@ class CandleAggregationServiceImplTest {
     @Test
     void flushToDatabase_shouldUpdateExistingCandles() {
         service.processEvent(testEvent);
-        when(persistenceService.persistCandles(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(persistenceService.persistCandles(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
         
         service.flushToDatabase().join();
 
-        verify(persistenceService, times(1)).persistCandles(any());
+        verify(persistenceService, times(1)).persistCandles(any(), any());
         
         var activeCandles = getActiveCandles();
         assertTrue(activeCandles.isEmpty());
@@ -270,16 +283,127 @@ class CandleAggregationServiceImplTest {
     @Test
     void flushToDatabase_shouldHandleMixedInsertAndUpdate() {
         service.processEvent(testEvent);
-        when(persistenceService.persistCandles(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(persistenceService.persistCandles(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
         
         service.flushToDatabase().join();
 
-        verify(persistenceService, times(1)).persistCandles(any());
+        verify(persistenceService, times(1)).persistCandles(any(), any());
         
         var activeCandles = getActiveCandles();
         assertTrue(activeCandles.isEmpty());
     }
 
+    @Test
+    void flushToDatabase_shouldNotRewriteUnchangedOpenCandles() {
+        service.processEvent(testEvent);
+        when(persistenceService.persistCandles(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        service.flushToDatabase().join();
+        service.flushToDatabase().join();
+
+        verify(persistenceService, times(1)).persistCandles(any(), any());
+    }
+
+    @Test
+    void flushToDatabase_shouldFinalizeClosedCandleOnce() {
+        AtomicLong ids = new AtomicLong();
+        service.processEvent(testEvent);
+        when(persistenceService.persistCandles(any(), any())).thenAnswer(invocation -> {
+            List<CandleEntity> inserted = invocation.getArgument(0);
+            inserted.forEach(candle -> candle.setId(ids.incrementAndGet()));
+            return CompletableFuture.completedFuture(null);
+        });
+        service.flushToDatabase().join();
+
+        // Still within the same 1s candle, then a tick past the allowed lateness finalizes it
+        service.processEvent(new BidAskEvent("BTC-USD", 30200.0, 30300.0, 1640995200L));
+        service.processEvent(new BidAskEvent("BTC-USD", 30200.0, 30300.0, 1640995206L));
+        service.flushToDatabase().join();
+
+        // Only the finalized 1s candle and the new 1s candle are written, the open 1m candle waits
+        verify(persistenceService).persistCandles(
+                argThat(candles -> candles.size() == 1 && candles.get(0).getOpenTime() == 1640995206L),
+                argThat(candles -> candles.size() == 1 && candles.get(0).getOpenTime() == 1640995200L
+                        && candles.get(0).getCandleInterval().equals("1s") && candles.get(0).getVolume() == 1));
+    }
+
+    @Test
+    void flushToDatabase_shouldRecordLatencyOfEveryStage() {
+        service.processEvent(testEvent);
+        when(persistenceService.persistCandles(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        service.flushToDatabase().join();
+
+        var latency = pipelineLatency.latency();
+        assertEquals(1, latency.get(PipelineLatencyService.Stage.AGGREGATION).count());
+        assertEquals(1, latency.get(PipelineLatencyService.Stage.FLUSH).count());
+        assertEquals(1, latency.get(PipelineLatencyService.Stage.COMMIT).count());
+        assertTrue(latency.get(PipelineLatencyService.Stage.COMMIT).maxNanos()
+                >= latency.get(PipelineLatencyService.Stage.FLUSH).maxNanos());
+    }
+
+    @Test
+    void flushToDatabase_shouldKeepFailedWritesUncommitted() {
+        service.processEvent(testEvent);
+        when(persistenceService.persistCandles(any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("down")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        service.flushToDatabase().join();
+        assertEquals(0, pipelineLatency.latency().get(PipelineLatencyService.Stage.COMMIT).count());
+
+        service.flushToDatabase().join();
+        assertEquals(1, pipelineLatency.latency().get(PipelineLatencyService.Stage.COMMIT).count());
+    }
+
+    @Test
+    void recoverJournal_shouldNotReplayEventsWrittenAfterTheLastCheckpoint(@TempDir Path directory) {
+        var journal = new com.trading.candle.aggregator.config.CandleAggregationProperties.Journal();
+        journal.setEnabled(true);
+        journal.setDirectory(directory.resolve("journal").toString());
+        journal.setSegmentSizeBytes(4096);
+        when(properties.getJournal()).thenReturn(journal);
+        // Adds the volume of every write to the stored candle, like both storage engines
+        Map<String, Long> storedVolume = new ConcurrentHashMap<>();
+        when(persistenceService.persistCandles(any(), any())).thenAnswer(invocation -> {
+            for (int argument = 0; argument < 2; argument++) {
+                List<CandleEntity> candles = invocation.getArgument(argument);
+                candles.forEach(candle -> storedVolume.merge(candle.getCandleInterval() + "@" + candle.getOpenTime(),
+                        candle.getVolume(), Long::sum));
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+
+        PartitionedAggregationEngine crashed = new PartitionedAggregationEngine(properties);
+        CandleAggregationServiceImpl first = new CandleAggregationServiceImpl(persistenceService, crashed, properties,
+                lifecycleManager, healthController, recentCandles, pipelineLatency, new SimpleMeterRegistry());
+        first.init();
+        for (int i = 0; i < 3; i++) {
+            first.processEvent(testEvent);
+        }
+        first.checkpoint();
+        for (int i = 0; i < 2; i++) {
+            first.processEvent(testEvent);
+        }
+        first.flushToDatabase().join();
+        // Crash: the engine stops without the service flushing or checkpointing again
+        crashed.shutdown();
+
+        PartitionedAggregationEngine recovered = new PartitionedAggregationEngine(properties);
+        try {
+            CandleAggregationServiceImpl second = new CandleAggregationServiceImpl(persistenceService, recovered,
+                    properties, lifecycleManager, healthController, recentCandles, pipelineLatency,
+                    new SimpleMeterRegistry());
+            second.init();
+            second.flushToDatabase().join();
+
+            assertEquals(5, storedVolume.get("1s@1640995200"));
+            assertEquals(5, storedVolume.get("1m@1640995200"));
+        } finally {
+            recovered.shutdown();
+        }
+    }
+
     @Test
     void processEvent_shouldHandleConcurrentAccess() throws InterruptedException {
         int threadCount = 10;
@@ -312,21 +436,14 @@ class CandleAggregationServiceImplTest {
         var activeCandles = getActiveCandles();
         assertTrue(activeCandles.size() > 0);
         
-        activeCandles.values().forEach(candle -> {
+        activeCandles.forEach(candle -> {
             assertNotNull(candle.getSymbol());
             assertNotNull(candle.getCandleInterval());
             assertTrue(candle.getVolume() > 0);
         });
     }
 
-    @SuppressWarnings("unchecked")
-    private ConcurrentHashMap<String, CandleEntity> getActiveCandles() {
-        try {
-            var field = CandleAggregationServiceImpl.class.getDeclaredField("activeCandles");
-            field.setAccessible(true);
-            return (ConcurrentHashMap<String, CandleEntity>) field.get(service);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to access activeCandles field", e);
-        }
+    private List<CandleEntity> getActiveCandles() {
+        return aggregationEngine.drain();
     }
 }
@@ -0,0 +1,133 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.codec.CandleHistoryFormat;
+import com.trading.candle.aggregator.codec.ColumnarBinaryEncoder;
+import com.trading.candle.aggregator.dto.HistoryQuery;
+import com.trading.candle.aggregator.service.CandleHistoryService;
+import com.trading.candle.aggregator.storage.CandleSeries;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CandleHistoryBatchServiceImplTest {
+
+    private static final long FROM = 1640995200L;
+    private static final long TO = 1641081600L;
+
+    @Mock
+    private CandleHistoryService candleHistoryService;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private ExecutorService executor;
+    private CandleHistoryBatchServiceImpl batchService;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        batchService = new CandleHistoryBatchServiceImpl(candleHistoryService, executor, jsonMapper);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void writeCandleHistories_shouldReadQueriesConcurrentlyAndWriteThemInOrder() {
+        // Every read waits for all others to start, which only completes if they run in parallel
+        CountDownLatch started = new CountDownLatch(3);
+        when(candleHistoryService.readCandleHistory(anyString(), eq("1m"), eq(FROM), eq(TO))).thenAnswer(call -> {
+            started.countDown();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            return series(call.getArgument(0).equals("AAPL") ? 7 : 1);
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batchService.writeCandleHistories(List.of(query("BTC-USD"), query("AAPL"), query("TSLA")),
+                CandleHistoryFormat.JSON, out);
+
+        Map<String, Object> response = jsonMapper.readValue(out.toByteArray(), Map.class);
+        List<Map<String, Object>> results = (List<Map<String, Object>>) response.get("results");
+        assertEquals("ok", response.get("s"));
+        assertEquals(3, results.size());
+        assertEquals(List.of(1), results.get(0).get("v"));
+        assertEquals(List.of(7), results.get(1).get("v"));
+        assertEquals(List.of(1), results.get(2).get("v"));
+    }
+
+    @Test
+    void writeCandleHistories_shouldAnswerFailedQueryWithErrorEntry() {
+        when(candleHistoryService.readCandleHistory("BTC-USD", "1m", FROM, TO)).thenReturn(series(1));
+        when(candleHistoryService.readCandleHistory("AAPL", "1m", FROM, TO))
+                .thenThrow(new RuntimeException("Database unavailable"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batchService.writeCandleHistories(List.of(query("BTC-USD"), query("AAPL")), CandleHistoryFormat.JSON, out);
+
+        Map<String, Object> response = jsonMapper.readValue(out.toByteArray(), Map.class);
+        List<Map<String, Object>> results = (List<Map<String, Object>>) response.get("results");
+        assertEquals("ok", results.get(0).get("s"));
+        assertEquals("error", results.get(1).get("s"));
+    }
+
+    @Test
+    void writeCandleHistories_shouldWriteOneColumnarBlockPerQuery() {
+        when(candleHistoryService.readCandleHistory("BTC-USD", "1m", FROM, TO)).thenReturn(series(1));
+        when(candleHistoryService.readCandleHistory("AAPL", "1m", FROM, TO)).thenReturn(CandleSeries.empty());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batchService.writeCandleHistories(List.of(query("BTC-USD"), query("AAPL")), CandleHistoryFormat.COLUMNAR, out);
+
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        // One candle: header, base open time, padding-free deltas and five 8-byte values
+        int firstBlock = 16 + 8 + 5 * 8;
+        assertEquals(1, buffer.getInt(8));
+        assertEquals('C', buffer.get(firstBlock));
+        assertEquals(0, buffer.getInt(firstBlock + 8));
+        assertEquals(firstBlock + 16, buffer.capacity());
+    }
+
+    @Test
+    void writeCandleHistories_shouldAnswerFailedQueryWithColumnarErrorBlock() {
+        when(candleHistoryService.readCandleHistory("BTC-USD", "1m", FROM, TO))
+                .thenThrow(new RuntimeException("Database unavailable"));
+        when(candleHistoryService.readCandleHistory("AAPL", "1m", FROM, TO)).thenReturn(series(1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batchService.writeCandleHistories(List.of(query("BTC-USD"), query("AAPL")), CandleHistoryFormat.COLUMNAR, out);
+
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(ColumnarBinaryEncoder.STATUS_ERROR, buffer.get(5));
+        assertEquals(0, buffer.getInt(8));
+        assertEquals(ColumnarBinaryEncoder.STATUS_OK, buffer.get(16 + 5));
+        assertEquals(1, buffer.getInt(16 + 8));
+        assertEquals(16 + 16 + 8 + 5 * 8, buffer.capacity());
+    }
+
+    private static HistoryQuery query(String symbol) {
+        return new HistoryQuery(symbol, "1m", FROM, TO);
+    }
+
+    private static CandleSeries series(long volume) {
+        return new CandleSeries(new long[]{FROM}, new double[]{100.0}, new double[]{105.0}, new double[]{95.0},
+                new double[]{102.0}, new long[]{volume});
+    }
+}
@@ -1,20 +1,34 @@
 package com.trading.candle.aggregator.service.impl;
 
+import com.trading.candle.aggregator.codec.CandleHistoryFormat;
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.engine.LiveCandle;
+import com.trading.candle.aggregator.engine.PartitionedAggregationEngine;
 import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.repository.CandleCursorRepository;
+import com.trading.candle.aggregator.repository.CandleMergeRepository;
 import com.trading.candle.aggregator.repository.CandleRepository;
+import com.trading.candle.aggregator.storage.CandleSeries;
+import com.trading.candle.aggregator.storage.CandleStorage;
+import com.trading.candle.aggregator.storage.RelationalCandleStorage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class CandleHistoryServiceImplTest {
@@ -22,8 +36,22 @@ class CandleHistoryServiceImplTest {
     @Mock
     private CandleRepository candleRepository;
 
-    @InjectMocks
+    @Mock
+    private CandleMergeRepository mergeRepository;
+
+    @Mock
+    private CandleAggregationProperties properties;
+
+    @Mock
+    private CandleCursorRepository cursorRepository;
+
+    @Mock
+    private PartitionedAggregationEngine aggregationEngine;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
     private CandleHistoryServiceImpl candleHistoryService;
+    private RecentCandleCache recentCandles;
 
     private List<CandleEntity> mockCandles;
     private static final String SYMBOL = "BTCUSD";
@@ -33,6 +61,11 @@ class CandleHistoryServiceImplTest {
 
     @BeforeEach
     void setUp() {
+        RelationalCandleStorage storage = new RelationalCandleStorage(candleRepository, mergeRepository,
+                cursorRepository, properties);
+        recentCandles = new RecentCandleCache(storage, properties);
+        candleHistoryService = new CandleHistoryServiceImpl(storage, recentCandles, aggregationEngine, jsonMapper,
+                properties);
         mockCandles = List.of(
                 createCandleEntity(1L, SYMBOL, INTERVAL, FROM, 100.0, 105.0, 95.0, 102.0, 1000L),
                 createCandleEntity(2L, SYMBOL, INTERVAL, FROM + 60, 102.0, 108.0, 98.0, 107.0, 1200L),
@@ -156,6 +189,341 @@ class CandleHistoryServiceImplTest {
         assertEquals(List.of(0L), result.get("v"));
     }
 
+    @Test
+    void getCandleHistory_shouldServeRecentRangeFromMemory() {
+        prewarmRecentCandles();
+
+        Map<String, Object> result = candleHistoryService.getCandleHistory(SYMBOL, INTERVAL, FROM + 60, FROM + 120);
+
+        assertEquals(List.of(FROM + 60, FROM + 120), result.get("t"));
+        assertEquals(List.of(108.0, 110.0), result.get("h"));
+        assertEquals(List.of(1200L, 800L), result.get("v"));
+        verifyNoMoreInteractions(candleRepository);
+    }
+
+    @Test
+    void getCandleHistory_shouldReadOnlyOlderPartFromStorage() {
+        prewarmRecentCandles();
+        CandleEntity older = createCandleEntity(4L, SYMBOL, INTERVAL, FROM - 60, 99.0, 101.0, 97.0, 100.0, 300L);
+        when(candleRepository.findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(
+                SYMBOL, INTERVAL, FROM - 120, FROM - 1))
+                .thenReturn(List.of(older));
+
+        Map<String, Object> result = candleHistoryService.getCandleHistory(SYMBOL, INTERVAL, FROM - 120, FROM + 120);
+
+        assertEquals(List.of(FROM - 60, FROM, FROM + 60, FROM + 120), result.get("t"));
+        assertEquals(List.of(300L, 1000L, 1200L, 800L), result.get("v"));
+    }
+
+    @Test
+    void getCandleHistory_shouldIncludeDrainedChangesInCachedRange() {
+        prewarmRecentCandles();
+        recentCandles.apply(List.of(
+                createCandleEntity(3L, SYMBOL, INTERVAL, FROM + 120, 107.0, 112.0, 103.0, 111.0, 50L)), 0);
+
+        Map<String, Object> result = candleHistoryService.getCandleHistory(SYMBOL, INTERVAL, FROM + 120, TO);
+
+        assertEquals(List.of(FROM + 120), result.get("t"));
+        assertEquals(List.of(112.0), result.get("h"));
+        assertEquals(List.of(111.0), result.get("c"));
+        assertEquals(List.of(850L), result.get("v"));
+    }
+
+    @Test
+    void getCandleHistory_shouldMergeLiveCandleOfCurrentGeneration() {
+        prewarmRecentCandles();
+        recentCandles.apply(List.of(), 2);
+        when(aggregationEngine.liveCandle(SYMBOL, INTERVAL))
+                .thenReturn(new LiveCandle(FROM + 120, 109.5, 115.0, 109.0, 114.0, 7L, 2));
+
+        Map<String, Object> result = candleHistoryService.getCandleHistory(SYMBOL, INTERVAL, FROM + 60, TO);
+
+        assertEquals(List.of(FROM + 60, FROM + 120), result.get("t"));
+        assertEquals(List.of(102.0, 107.0), result.get("o"));
+        assertEquals(List.of(108.0, 115.0), result.get("h"));
+        assertEquals(List.of(107.0, 114.0), result.get("c"));
+        assertEquals(List.of(1200L, 807L), result.get("v"));
+    }
+
+    @Test
+    void getCandleHistory_shouldAppendLiveCandleThatIsNotDrainedYet() {
+        prewarmRecentCandles();
+        when(aggregationEngine.liveCandle(SYMBOL, INTERVAL))
+                .thenReturn(new LiveCandle(FROM + 180, 109.0, 111.0, 108.0, 110.0, 3L, 0));
+
+        Map<String, Object> result = candleHistoryService.getCandleHistory(SYMBOL, INTERVAL, FROM + 120, TO);
+
+        assertEquals(List.of(FROM + 120, FROM + 180), result.get("t"));
+        assertEquals(List.of(800L, 3L), result.get("v"));
+    }
+
+    @Test
+    void getCandleHistory_shouldIgnoreLiveCandleOfOtherGeneration() {
+        prewarmRecentCandles();
+        recentCandles.apply(List.of(), 3);
+        when(aggregationEngine.liveCandle(SYMBOL, INTERVAL))
+                .thenReturn(new LiveCandle(FROM + 120, 109.5, 115.0, 109.0, 114.0, 7L, 2));
+
+        Map<String, Object> result = candleHistoryService.getCandleHistory(SYMBOL, INTERVAL, FROM + 60, TO);
+
+        assertEquals(List.of(1200L, 800L), result.get("v"));
+    }
+
+    @Test
+    void isStreamed_shouldStreamRangesAboveThreshold() {
+        CandleAggregationProperties.History history = new CandleAggregationProperties.History();
+        history.setStreamingThresholdCandles(1440);
+        when(properties.getHistory()).thenReturn(history);
+
+        assertFalse(candleHistoryService.isStreamed(INTERVAL, FROM, FROM + 1439 * 60));
+        assertTrue(candleHistoryService.isStreamed(INTERVAL, FROM, FROM + 1440 * 60));
+        assertTrue(candleHistoryService.isStreamed("1s", FROM, TO));
+    }
+
+    @Test
+    void streamCandleHistory_shouldWriteSameResponseAsInMemoryHistory() {
+        CandleStorage storage = mock(CandleStorage.class);
+        when(storage.read(SYMBOL, INTERVAL, FROM, TO)).thenReturn(CandleSeries.of(mockCandles));
+        when(storage.read(SYMBOL, INTERVAL, FROM, FROM + 120)).thenReturn(CandleSeries.of(mockCandles));
+        doCallRealMethod().when(storage).stream(any(), any(), anyLong(), anyLong(), any());
+        CandleHistoryServiceImpl service = new CandleHistoryServiceImpl(storage,
+                new RecentCandleCache(storage, properties), aggregationEngine, jsonMapper, properties);
+
+        Map<String, Object> streamed = streamToMap(service);
+
+        assertEquals(service.getCandleHistory(SYMBOL, INTERVAL, FROM, TO), streamed);
+    }
+
+    @Test
+    void streamCandleHistory_shouldKeepColumnsAligned_whenCandleIsInsertedBetweenPasses() {
+        CandleStorage storage = mock(CandleStorage.class);
+        // The first pass misses the candle at FROM + 60, a late write inserts it before the next
+        when(storage.read(SYMBOL, INTERVAL, FROM, TO))
+                .thenReturn(CandleSeries.of(List.of(mockCandles.get(0), mockCandles.get(2))));
+        when(storage.read(SYMBOL, INTERVAL, FROM, FROM + 120)).thenReturn(CandleSeries.of(mockCandles));
+        doCallRealMethod().when(storage).stream(any(), any(), anyLong(), anyLong(), any());
+        CandleHistoryServiceImpl service = new CandleHistoryServiceImpl(storage,
+                new RecentCandleCache(storage, properties), aggregationEngine, jsonMapper, properties);
+
+        Map<String, Object> streamed = streamToMap(service);
+
+        assertEquals(List.of(FROM, FROM + 120), streamed.get("t"));
+        assertEquals(List.of(1000L, 800L), streamed.get("v"));
+        assertEquals(List.of(105.0, 110.0), streamed.get("h"));
+        assertEquals(List.of(102.0, 109.0), streamed.get("c"));
+    }
+
+    @Test
+    void streamCandleHistory_shouldAppendCachedAndLiveCandlesToStoredColumns() {
+        prewarmRecentCandles();
+        CandleEntity older = createCandleEntity(4L, SYMBOL, INTERVAL, FROM - 60, 99.0, 101.0, 97.0, 100.0, 300L);
+        CandleStorage storage = mock(CandleStorage.class);
+        when(storage.read(SYMBOL, INTERVAL, FROM - 120, FROM - 1)).thenReturn(CandleSeries.of(List.of(older)));
+        when(storage.read(SYMBOL, INTERVAL, FROM - 120, FROM - 60)).thenReturn(CandleSeries.of(List.of(older)));
+        doCallRealMethod().when(storage).stream(any(), any(), anyLong(), anyLong(), any());
+        when(aggregationEngine.liveCandle(SYMBOL, INTERVAL))
+                .thenReturn(new LiveCandle(FROM + 180, 109.0, 111.0, 108.0, 110.0, 3L, 0));
+        CandleHistoryServiceImpl service = new CandleHistoryServiceImpl(storage, recentCandles, aggregationEngine,
+                jsonMapper, properties);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.streamCandleHistory(SYMBOL, INTERVAL, FROM - 120, TO, CandleHistoryFormat.JSON, out);
+        Map<String, Object> streamed = jsonMapper.readValue(out.toByteArray(), Map.class);
+
+        assertEquals(List.of((int) (FROM - 60), (int) FROM, (int) (FROM + 60), (int) (FROM + 120), (int) (FROM + 180)),
+                streamed.get("t"));
+        assertEquals(List.of(300, 1000, 1200, 800, 3), streamed.get("v"));
+        assertEquals(List.of(101.0, 105.0, 108.0, 110.0, 111.0), streamed.get("h"));
+    }
+
+    @Test
+    void streamCandleHistory_shouldWriteSameColumnarBytesAsInMemoryHistory() {
+        prewarmRecentCandles();
+        CandleEntity older = createCandleEntity(4L, SYMBOL, INTERVAL, FROM - 60, 99.0, 101.0, 97.0, 100.0, 300L);
+        CandleStorage storage = mock(CandleStorage.class);
+        when(storage.read(SYMBOL, INTERVAL, FROM - 120, FROM - 1)).thenReturn(CandleSeries.of(List.of(older)));
+        when(storage.read(SYMBOL, INTERVAL, FROM - 120, FROM - 60)).thenReturn(CandleSeries.of(List.of(older)));
+        doCallRealMethod().when(storage).stream(any(), any(), anyLong(), anyLong(), any());
+        CandleHistoryServiceImpl service = new CandleHistoryServiceImpl(storage, recentCandles, aggregationEngine,
+                jsonMapper, properties);
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        service.writeCandleHistory(SYMBOL, INTERVAL, FROM - 120, TO, CandleHistoryFormat.COLUMNAR, written);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        service.streamCandleHistory(SYMBOL, INTERVAL, FROM - 120, TO, CandleHistoryFormat.COLUMNAR, streamed);
+
+        assertArrayEquals(written.toByteArray(), streamed.toByteArray());
+        assertEquals(4, ByteBuffer.wrap(streamed.toByteArray()).order(ByteOrder.LITTLE_ENDIAN).getInt(8));
+    }
+
+    @Test
+    void writeCandleHistory_shouldWriteJsonColumnsOfCandles() {
+        when(candleRepository.findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(
+                eq(SYMBOL), eq(INTERVAL), eq(FROM), eq(TO)))
+                .thenReturn(mockCandles);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        candleHistoryService.writeCandleHistory(SYMBOL, INTERVAL, FROM, TO, CandleHistoryFormat.JSON, out);
+
+        assertEquals("{\"s\":\"ok\",\"t\":[1640995200,1640995260,1640995320],\"o\":[100.0,102.0,107.0],"
+                        + "\"h\":[105.0,108.0,110.0],\"l\":[95.0,98.0,103.0],\"c\":[102.0,107.0,109.0],"
+                        + "\"v\":[1000,1200,800]}",
+                out.toString());
+    }
+
+    @Test
+    void isFinalized_shouldHoldOnceEveryCandleOfRangeIsFinalAndCommitted() {
+        prewarmRecentCandles();
+
+        // Finalized and applied, but not yet written
+        recentCandles.onFinalized(SYMBOL, INTERVAL, FROM + 120);
+        recentCandles.apply(List.of(), 1);
+        assertFalse(candleHistoryService.isFinalized(SYMBOL, INTERVAL, FROM, FROM + 60));
+
+        recentCandles.onCommitted(SYMBOL, INTERVAL, FROM + 120);
+        assertTrue(candleHistoryService.isFinalized(SYMBOL, INTERVAL, FROM, FROM + 119));
+        assertFalse(candleHistoryService.isFinalized(SYMBOL, INTERVAL, FROM, FROM + 120));
+        assertFalse(candleHistoryService.isFinalized("ETHUSD", INTERVAL, FROM, FROM + 60));
+        // Resampled candles are final with the stored candles they span
+        assertTrue(candleHistoryService.isFinalized(SYMBOL, "2m", FROM, FROM + 60));
+        assertFalse(candleHistoryService.isFinalized(SYMBOL, "2m", FROM, FROM + 120));
+    }
+
+    @Test
+    void plan_shouldReadCoarsestDividingIntervalOverWholeCandles() {
+        when(properties.getIntervals()).thenReturn(List.of("1m", "5m", "1h"));
+
+        assertEquals(new CandleHistoryServiceImpl.QueryPlan("5m", FROM, TO, 0),
+                candleHistoryService.plan("5m", FROM, TO));
+        assertEquals(new CandleHistoryServiceImpl.QueryPlan("5m", FROM + 600, FROM + 1799, 600),
+                candleHistoryService.plan("10m", FROM + 1, FROM + 1200));
+    }
+
+    @Test
+    void getCandleHistory_shouldResampleStoredCandles_whenIntervalNotAggregated() {
+        when(properties.getIntervals()).thenReturn(List.of(INTERVAL));
+        when(candleRepository.findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(
+                SYMBOL, INTERVAL, FROM, FROM + 179))
+                .thenReturn(mockCandles);
+
+        Map<String, Object> result = candleHistoryService.getCandleHistory(SYMBOL, "3m", FROM, FROM + 60);
+
+        assertEquals(List.of(FROM), result.get("t"));
+        assertEquals(List.of(100.0), result.get("o"));
+        assertEquals(List.of(110.0), result.get("h"));
+        assertEquals(List.of(95.0), result.get("l"));
+        assertEquals(List.of(109.0), result.get("c"));
+        assertEquals(List.of(3000L), result.get("v"));
+    }
+
+    @Test
+    void streamCandleHistory_shouldResampleInTheStreamingPass() {
+        when(properties.getIntervals()).thenReturn(List.of(INTERVAL));
+        CandleStorage storage = mock(CandleStorage.class);
+        when(storage.read(SYMBOL, INTERVAL, FROM, FROM + 239)).thenReturn(CandleSeries.of(mockCandles));
+        when(storage.read(SYMBOL, INTERVAL, FROM, FROM + 120)).thenReturn(CandleSeries.of(mockCandles));
+        doCallRealMethod().when(storage).stream(any(), any(), anyLong(), anyLong(), any());
+        CandleHistoryServiceImpl service = new CandleHistoryServiceImpl(storage,
+                new RecentCandleCache(storage, properties), aggregationEngine, jsonMapper, properties);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.streamCandleHistory(SYMBOL, "2m", FROM, FROM + 120, CandleHistoryFormat.JSON, out);
+        Map<String, Object> streamed = jsonMapper.readValue(out.toByteArray(), Map.class);
+
+        assertEquals(List.of((int) FROM, (int) (FROM + 120)), streamed.get("t"));
+        assertEquals(List.of(100.0, 107.0), streamed.get("o"));
+        assertEquals(List.of(108.0, 110.0), streamed.get("h"));
+        assertEquals(List.of(107.0, 109.0), streamed.get("c"));
+        assertEquals(List.of(2200, 800), streamed.get("v"));
+    }
+
+    @Test
+    void writeCandlePage_shouldReturnNextPosition_whenMoreCandlesFollow() {
+        when(candleRepository.findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(
+                SYMBOL, INTERVAL, FROM, TO, Limit.of(3)))
+                .thenReturn(mockCandles);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Long next = candleHistoryService.writeCandlePage(SYMBOL, INTERVAL, FROM, TO, 2, false,
+                CandleHistoryFormat.JSON, out);
+
+        assertEquals(FROM + 61, next);
+        Map<String, Object> page = jsonMapper.readValue(out.toByteArray(), Map.class);
+        assertEquals(List.of(1000, 1200), page.get("v"));
+    }
+
+    @Test
+    void writeCandlePage_shouldReturnNoPosition_whenRangeExhausted() {
+        when(candleRepository.findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(
+                SYMBOL, INTERVAL, FROM, TO, Limit.of(4)))
+                .thenReturn(mockCandles);
+
+        Long next = candleHistoryService.writeCandlePage(SYMBOL, INTERVAL, FROM, TO, 3, false,
+                CandleHistoryFormat.JSON, new ByteArrayOutputStream());
+
+        assertNull(next);
+    }
+
+    @Test
+    void writeCandlePage_shouldCountBackThroughRecentThenStoredCandles() {
+        prewarmRecentCandles();
+        CandleEntity older = createCandleEntity(4L, SYMBOL, INTERVAL, FROM - 60, 99.0, 101.0, 97.0, 100.0, 300L);
+        CandleEntity oldest = createCandleEntity(5L, SYMBOL, INTERVAL, FROM - 120, 98.0, 100.0, 96.0, 99.0, 200L);
+        when(candleRepository.findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeDesc(
+                SYMBOL, INTERVAL, 0L, FROM - 1, Limit.of(2)))
+                .thenReturn(List.of(older, oldest));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Long next = candleHistoryService.writeCandlePage(SYMBOL, INTERVAL, 0L, TO, 4, true,
+                CandleHistoryFormat.JSON, out);
+
+        assertEquals(FROM - 61, next);
+        Map<String, Object> page = jsonMapper.readValue(out.toByteArray(), Map.class);
+        assertEquals(List.of(300, 1000, 1200, 800), page.get("v"));
+    }
+
+    @Test
+    void writeCandlePage_shouldBoundResampledPagesByTime() {
+        when(properties.getIntervals()).thenReturn(List.of(INTERVAL));
+        when(candleRepository.findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(
+                SYMBOL, INTERVAL, FROM, FROM + 119))
+                .thenReturn(mockCandles.subList(0, 2));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Long next = candleHistoryService.writeCandlePage(SYMBOL, "2m", FROM, TO, 1, false,
+                CandleHistoryFormat.JSON, out);
+
+        assertEquals(FROM + 1, next);
+        Map<String, Object> page = jsonMapper.readValue(out.toByteArray(), Map.class);
+        assertEquals(List.of(2200), page.get("v"));
+    }
+
+    // Parses the streamed body back into the shape of getCandleHistory
+    private Map<String, Object> streamToMap(CandleHistoryServiceImpl service) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.streamCandleHistory(SYMBOL, INTERVAL, FROM, TO, CandleHistoryFormat.JSON, out);
+        Map<String, Object> parsed = jsonMapper.readValue(out.toByteArray(), Map.class);
+        Map<String, Object> response = new HashMap<>(parsed);
+        for (String column : List.of("t", "v")) {
+            response.put(column, ((List<Number>) parsed.get(column)).stream().map(Number::longValue).toList());
+        }
+        return response;
+    }
+
+    // Caches the three minutes ending at FROM + 120
+    private void prewarmRecentCandles() {
+        CandleAggregationProperties.History history = new CandleAggregationProperties.History();
+        history.setRecentCandles(3);
+        when(properties.getHistory()).thenReturn(history);
+        when(properties.getSupportedSymbols()).thenReturn(List.of(SYMBOL));
+        when(properties.getIntervals()).thenReturn(List.of(INTERVAL));
+        when(candleRepository.findBySymbolAndCandleIntervalAndOpenTimeBetweenOrderByOpenTimeAsc(
+                SYMBOL, INTERVAL, FROM, Long.MAX_VALUE))
+                .thenReturn(mockCandles);
+        recentCandles.prewarm(FROM + 150);
+        clearInvocations(candleRepository);
+    }
+
     private CandleEntity createCandleEntity(Long id, String symbol, String interval, long openTime,
                                             double openPrice, double highPrice, double lowPrice,
                                             double closePrice, long volume) {
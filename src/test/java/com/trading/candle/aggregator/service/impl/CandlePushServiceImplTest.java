@@ -0,0 +1,167 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.service.CandleHistoryService;
+import com.trading.candle.aggregator.storage.CandleSeries;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.trading.candle.aggregator.service.impl.CandleSubscriberTest.sentUpdates;
+import static com.trading.candle.aggregator.service.impl.CandleSubscriberTest.update;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CandlePushServiceImplTest {
+
+    private static final String SYMBOL = "BTC-USD";
+    private static final String INTERVAL = "1m";
+    private static final long NOW = 1640995200L;
+
+    @Mock
+    private CandleHistoryService candleHistoryService;
+
+    private final CandleAggregationProperties properties = new CandleAggregationProperties();
+
+    private CandlePushServiceImpl pushService;
+
+    @BeforeEach
+    void setUp() {
+        pushService = new CandlePushServiceImpl(candleHistoryService, properties, Runnable::run, Runnable::run);
+    }
+
+    @Test
+    void publishUpdates_shouldPushOnlyChangedCandles() throws IOException {
+        SseEmitter emitter = subscribe();
+        when(candleHistoryService.readCandleHistory(SYMBOL, INTERVAL, NOW - 60, NOW + 60))
+                .thenReturn(series(candle(NOW - 60, 10), candle(NOW, 1)));
+        when(candleHistoryService.readCandleHistory(SYMBOL, INTERVAL, NOW - 60, NOW + 70))
+                .thenReturn(series(candle(NOW - 60, 10), candle(NOW, 1)));
+        when(candleHistoryService.readCandleHistory(SYMBOL, INTERVAL, NOW - 60, NOW + 90))
+                .thenReturn(series(candle(NOW - 60, 10), candle(NOW, 2)));
+
+        pushService.publishUpdates(NOW, false);
+        pushService.publishUpdates(NOW + 10, false);
+        pushService.publishUpdates(NOW + 30, false);
+
+        assertEquals(List.of(update(NOW - 60, 10), update(NOW, 1), update(NOW, 2)), sentUpdates(emitter, 3));
+    }
+
+    @Test
+    void publishUpdates_shouldNotPushOlderStateOfCandle() throws IOException {
+        SseEmitter emitter = subscribe();
+        when(candleHistoryService.readCandleHistory(SYMBOL, INTERVAL, NOW - 60, NOW + 60))
+                .thenReturn(series(candle(NOW - 60, 10), candle(NOW, 5)));
+        when(candleHistoryService.readCandleHistory(SYMBOL, INTERVAL, NOW - 60, NOW + 70))
+                .thenReturn(series(candle(NOW - 60, 10), candle(NOW, 3)));
+
+        pushService.publishUpdates(NOW, false);
+        pushService.publishUpdates(NOW + 10, false);
+
+        assertEquals(List.of(update(NOW - 60, 10), update(NOW, 5)), sentUpdates(emitter, 2));
+    }
+
+    @Test
+    void subscribe_shouldOfferLatestCandlesToNewSubscriber() throws IOException {
+        subscribe();
+        when(candleHistoryService.readCandleHistory(SYMBOL, INTERVAL, NOW - 60, NOW + 60))
+                .thenReturn(series(candle(NOW - 60, 10), candle(NOW, 1)));
+        pushService.publishUpdates(NOW, false);
+
+        SseEmitter late = subscribe();
+
+        assertEquals(List.of(update(NOW - 60, 10), update(NOW, 1)), sentUpdates(late, 2));
+    }
+
+    @Test
+    void publishUpdates_shouldSendHeartbeat_whenNothingChanged() throws IOException {
+        SseEmitter emitter = subscribe();
+        when(candleHistoryService.readCandleHistory(any(), any(), anyLong(), anyLong()))
+                .thenReturn(CandleSeries.empty());
+
+        pushService.publishUpdates(NOW, false);
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+        pushService.publishUpdates(NOW, true);
+        verify(emitter).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void publishUpdates_shouldReadSeriesOnPublishExecutor() {
+        List<Runnable> published = new ArrayList<>();
+        pushService = new CandlePushServiceImpl(candleHistoryService, properties, Runnable::run, published::add);
+        subscribe();
+        when(candleHistoryService.readCandleHistory(any(), any(), anyLong(), anyLong()))
+                .thenReturn(CandleSeries.empty());
+
+        pushService.publishUpdates();
+        verifyNoInteractions(candleHistoryService);
+
+        published.forEach(Runnable::run);
+        verify(candleHistoryService).readCandleHistory(any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void subscribe_shouldRejectSubscribersBeyondLimit() {
+        properties.getPush().setMaxSubscribers(1);
+
+        assertNotNull(pushService.subscribe(SYMBOL, INTERVAL));
+        assertNull(pushService.subscribe(SYMBOL, INTERVAL));
+        assertEquals(1, pushService.subscriberCount());
+    }
+
+    @Test
+    void publishUpdates_shouldStopReadingSeries_whenLastSubscriberLeaves() throws IOException {
+        SseEmitter emitter = subscribe();
+        when(candleHistoryService.readCandleHistory(any(), any(), anyLong(), anyLong()))
+                .thenReturn(series(candle(NOW, 1)));
+        doThrow(new IOException("Broken pipe")).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        ArgumentCaptor<Runnable> completion = ArgumentCaptor.forClass(Runnable.class);
+        verify(emitter).onCompletion(completion.capture());
+        // The container completes a failed emitter
+        doAnswer(invocation -> {
+            completion.getValue().run();
+            return null;
+        }).when(emitter).completeWithError(any());
+
+        pushService.publishUpdates(NOW, false);
+        pushService.publishUpdates(NOW + 1, false);
+
+        verify(candleHistoryService, times(1)).readCandleHistory(any(), any(), anyLong(), anyLong());
+        assertEquals(0, pushService.subscriberCount());
+    }
+
+    private SseEmitter subscribe() {
+        SseEmitter emitter = mock(SseEmitter.class);
+        assertTrue(pushService.subscribe(SYMBOL, INTERVAL, new CandleSubscriber(emitter, Runnable::run, 16)));
+        return emitter;
+    }
+
+    private static CandleSeries series(CandleEntity... candles) {
+        return CandleSeries.of(List.of(candles));
+    }
+
+    private static CandleEntity candle(long openTime, long volume) {
+        CandleEntity candle = new CandleEntity();
+        candle.setSymbol(SYMBOL);
+        candle.setCandleInterval(INTERVAL);
+        candle.setOpenTime(openTime);
+        candle.setOpenPrice(100.0);
+        candle.setHighPrice(101.0);
+        candle.setLowPrice(99.0);
+        candle.setClosePrice(100.5);
+        candle.setVolume(volume);
+        return candle;
+    }
+}
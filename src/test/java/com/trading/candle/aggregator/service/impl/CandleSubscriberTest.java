@@ -0,0 +1,115 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.dto.CandleUpdate;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CandleSubscriberTest {
+
+    private static final long NOW = 1640995200L;
+
+    private final SseEmitter emitter = mock(SseEmitter.class);
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    @Test
+    void offer_shouldConflateToNewestStatePerCandleWhileSendPending() throws IOException {
+        CandleSubscriber subscriber = new CandleSubscriber(emitter, tasks::add, 2);
+
+        subscriber.offer(update(NOW, 1));
+        subscriber.offer(update(NOW, 2));
+        subscriber.offer(update(NOW + 60, 1));
+        subscriber.offer(update(NOW + 60, 3));
+
+        assertEquals(1, tasks.size());
+        tasks.removeFirst().run();
+        assertEquals(List.of(update(NOW, 2), update(NOW + 60, 3)), sent(2));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    void offer_shouldDropOldestCandles_whenPendingBufferFull() throws IOException {
+        CandleSubscriber subscriber = new CandleSubscriber(emitter, tasks::add, 2);
+
+        subscriber.offer(update(NOW, 1));
+        subscriber.offer(update(NOW + 60, 1));
+        subscriber.offer(update(NOW + 120, 1));
+        tasks.removeFirst().run();
+
+        assertEquals(List.of(update(NOW + 60, 1), update(NOW + 120, 1)), sent(2));
+        assertEquals(1, subscriber.dropped());
+    }
+
+    @Test
+    void send_shouldRequeue_whenUpdatesArrivedWhileSending() throws IOException {
+        CandleSubscriber subscriber = new CandleSubscriber(emitter, tasks::add, 16);
+        doAnswer(invocation -> {
+            subscriber.offer(update(NOW + 60, 1));
+            return null;
+        }).doNothing().when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+
+        subscriber.offer(update(NOW, 1));
+        tasks.removeFirst().run();
+        assertEquals(1, tasks.size());
+        tasks.removeFirst().run();
+
+        assertEquals(List.of(update(NOW, 1), update(NOW + 60, 1)), sent(2));
+    }
+
+    @Test
+    void send_shouldCloseSubscriber_whenConnectionFails() throws IOException {
+        CandleSubscriber subscriber = new CandleSubscriber(emitter, Runnable::run, 16);
+        IOException broken = new IOException("Broken pipe");
+        doThrow(broken).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+
+        subscriber.offer(update(NOW, 1));
+        subscriber.offer(update(NOW + 60, 1));
+
+        verify(emitter).completeWithError(broken);
+        verify(emitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+        assertTrue(subscriber.close());
+        assertFalse(subscriber.close());
+    }
+
+    @Test
+    void heartbeat_shouldSendComment_whenNothingPending() throws IOException {
+        CandleSubscriber subscriber = new CandleSubscriber(emitter, Runnable::run, 16);
+
+        subscriber.heartbeat();
+
+        ArgumentCaptor<SseEmitter.SseEventBuilder> events = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter).send(events.capture());
+        assertEquals(":heartbeat\n\n", events.getValue().build().iterator().next().getData());
+    }
+
+    private List<CandleUpdate> sent(int count) throws IOException {
+        return sentUpdates(emitter, count);
+    }
+
+    static List<CandleUpdate> sentUpdates(SseEmitter emitter, int count) throws IOException {
+        ArgumentCaptor<SseEmitter.SseEventBuilder> events = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter, times(count)).send(events.capture());
+        List<CandleUpdate> updates = new ArrayList<>();
+        for (SseEmitter.SseEventBuilder event : events.getAllValues()) {
+            for (ResponseBodyEmitter.DataWithMediaType data : event.build()) {
+                if (data.getData() instanceof CandleUpdate update) {
+                    updates.add(update);
+                }
+            }
+        }
+        return updates;
+    }
+
+    static CandleUpdate update(long openTime, long volume) {
+        return new CandleUpdate(openTime, 100.0, 101.0, 99.0, 100.5, volume);
+    }
+}
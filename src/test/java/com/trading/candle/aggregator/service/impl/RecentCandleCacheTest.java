@@ -0,0 +1,142 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.config.CandleAggregationProperties;
+import com.trading.candle.aggregator.entity.CandleEntity;
+import com.trading.candle.aggregator.storage.CandleSeries;
+import com.trading.candle.aggregator.storage.CandleStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RecentCandleCacheTest {
+
+    private static final String SYMBOL = "BTC-USD";
+    private static final String INTERVAL = "1m";
+    private static final long NOW = 1640995200L;
+
+    @Mock
+    private CandleStorage candleStorage;
+
+    @Mock
+    private CandleAggregationProperties properties;
+
+    private RecentCandleCache cache;
+
+    @BeforeEach
+    void setUp() {
+        CandleAggregationProperties.History history = new CandleAggregationProperties.History();
+        history.setRecentCandles(4);
+        when(properties.getHistory()).thenReturn(history);
+        when(properties.getSupportedSymbols()).thenReturn(List.of(SYMBOL));
+        when(properties.getIntervals()).thenReturn(List.of(INTERVAL));
+        cache = new RecentCandleCache(candleStorage, properties);
+    }
+
+    @Test
+    void prewarm_shouldLoadWindowEndingAtCurrentBucket() {
+        when(candleStorage.read(SYMBOL, INTERVAL, NOW - 180, Long.MAX_VALUE))
+                .thenReturn(CandleSeries.of(List.of(candle(NOW - 120, 10), candle(NOW, 20))));
+
+        cache.prewarm(NOW + 30);
+
+        RecentCandleCache.CachedRange cached = cache.read(SYMBOL, INTERVAL, 0, NOW + 3600);
+        assertEquals(NOW - 180, cached.coveredFrom());
+        assertArrayEquals(new long[]{NOW - 120, NOW}, cached.candles().openTimes());
+        assertArrayEquals(new long[]{10, 20}, cached.candles().volume());
+    }
+
+    @Test
+    void apply_shouldEvictOldestCandlesWhenWindowMoves() {
+        when(candleStorage.read(any(), any(), anyLong(), anyLong()))
+                .thenReturn(CandleSeries.of(List.of(candle(NOW - 120, 10), candle(NOW, 20))));
+        cache.prewarm(NOW);
+
+        cache.apply(List.of(candle(NOW + 120, 5), candle(NOW, 1)), 1);
+
+        RecentCandleCache.CachedRange cached = cache.read(SYMBOL, INTERVAL, 0, NOW + 3600);
+        assertEquals(NOW - 60, cached.coveredFrom());
+        assertArrayEquals(new long[]{NOW, NOW + 120}, cached.candles().openTimes());
+        assertArrayEquals(new long[]{21, 5}, cached.candles().volume());
+        assertEquals(1, cached.drainedEpoch());
+    }
+
+    @Test
+    void apply_shouldTakeOpenAndCloseByEventTimeOfMergedParts() {
+        when(candleStorage.read(any(), any(), anyLong(), anyLong())).thenReturn(CandleSeries.empty());
+        cache.prewarm(NOW);
+        CandleEntity first = candle(NOW, 3);
+        first.setFirstEventTime(NOW + 10);
+        first.setLastEventTime(NOW + 50);
+        CandleEntity late = candle(NOW, 1);
+        late.setOpenPrice(98.0);
+        late.setClosePrice(99.5);
+        late.setFirstEventTime(NOW + 5);
+        late.setLastEventTime(NOW + 20);
+
+        cache.apply(List.of(first), 1);
+        cache.apply(List.of(late), 2);
+
+        CandleSeries candles = cache.read(SYMBOL, INTERVAL, NOW, NOW).candles();
+        assertEquals(98.0, candles.open()[0]);
+        assertEquals(100.5, candles.close()[0]);
+        assertEquals(4, candles.volume()[0]);
+    }
+
+    @Test
+    void apply_shouldIgnoreCandlesBeforeCoveredRange() {
+        when(candleStorage.read(any(), any(), anyLong(), anyLong())).thenReturn(CandleSeries.empty());
+        cache.prewarm(NOW);
+
+        cache.apply(List.of(candle(NOW - 600, 5)), 1);
+
+        assertEquals(0, cache.read(SYMBOL, INTERVAL, 0, NOW).candles().size());
+    }
+
+    @Test
+    void closedBefore_shouldPublishFinalizationWithNextApply() {
+        when(candleStorage.read(any(), any(), anyLong(), anyLong())).thenReturn(CandleSeries.empty());
+        cache.prewarm(NOW);
+
+        cache.onFinalized(SYMBOL, INTERVAL, NOW - 60);
+        cache.onFinalized(SYMBOL, INTERVAL, NOW - 120);
+        assertEquals(Long.MIN_VALUE, cache.closedBefore(SYMBOL, INTERVAL));
+
+        cache.apply(List.of(candle(NOW - 120, 5)), 1);
+        assertEquals(NOW - 60, cache.closedBefore(SYMBOL, INTERVAL));
+        assertEquals(Long.MIN_VALUE, cache.closedBefore("ETH-USD", INTERVAL));
+
+        cache.apply(List.of(), 2);
+        assertEquals(NOW - 60, cache.closedBefore(SYMBOL, INTERVAL));
+    }
+
+    @Test
+    void read_shouldReturnNull_whenSeriesNotCached() {
+        when(candleStorage.read(any(), any(), anyLong(), anyLong())).thenThrow(new RuntimeException("down"));
+        cache.prewarm(NOW);
+
+        assertNull(cache.read(SYMBOL, INTERVAL, 0, NOW));
+        assertNull(cache.read("ETH-USD", INTERVAL, 0, NOW));
+    }
+
+    private CandleEntity candle(long openTime, long volume) {
+        CandleEntity candle = new CandleEntity();
+        candle.setSymbol(SYMBOL);
+        candle.setCandleInterval(INTERVAL);
+        candle.setOpenTime(openTime);
+        candle.setOpenPrice(100.0);
+        candle.setHighPrice(101.0);
+        candle.setLowPrice(99.0);
+        candle.setClosePrice(100.5);
+        candle.setVolume(volume);
+        return candle;
+    }
+}
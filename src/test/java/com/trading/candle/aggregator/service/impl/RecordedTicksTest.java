@@ -0,0 +1,45 @@
+package com.trading.candle.aggregator.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordedTicksTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsTicksAndSkipsHeaderAndInvalidLines() throws IOException {
+        Path file = directory.resolve("ticks.csv");
+        Files.writeString(file, """
+                symbol,bid,ask,timestamp
+                BTC-USD,30000.0,30001.0,1640995200
+                ETH-USD,not-a-price,2001.0,1640995200
+
+                BTC-USD,30002.5,30003.5,1640995201
+                AAPL,-1.0,150.0,1640995201
+                """);
+
+        RecordedTicks ticks = RecordedTicks.load(file);
+
+        assertEquals(2, ticks.size());
+        assertEquals("BTC-USD", ticks.symbol(0));
+        assertEquals(30000.0, ticks.bid(0));
+        assertEquals(30003.5, ticks.ask(1));
+        assertSame(ticks.symbol(0), ticks.symbol(1));
+    }
+
+    @Test
+    void rejectsFileWithoutValidTicks() throws IOException {
+        Path file = directory.resolve("empty.csv");
+        Files.writeString(file, "symbol,bid,ask,timestamp\n");
+
+        assertThrows(IllegalArgumentException.class, () -> RecordedTicks.load(file));
+    }
+}
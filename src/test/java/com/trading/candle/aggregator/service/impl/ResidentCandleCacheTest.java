@@ -0,0 +1,172 @@
+package com.trading.candle.aggregator.service.impl;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResidentCandleCacheTest {
+
+    private static final String SYMBOL = "BTC-USD";
+    private static final long OPEN_TIME = 1640995200L;
+
+    private final List<Long> committed = new ArrayList<>();
+    private ResidentCandleCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ResidentCandleCache(60_000, (symbol, interval, committedBefore) -> committed.add(committedBefore));
+    }
+
+    @Test
+    void collectWrites_shouldWriteNewCandleImmediately() {
+        cache.apply(List.of(createCandle("1d", OPEN_TIME, 100.0, 1)));
+
+        ResidentCandleCache.FlushBatch batch = cache.collectWrites(1_000, false);
+
+        assertEquals(1, batch.newCandles().size());
+        assertTrue(batch.persistedCandles().isEmpty());
+    }
+
+    @Test
+    void collectWrites_shouldThrottleOpenCandlesAndSendVolumeDelta() {
+        cache.apply(List.of(createCandle("1d", OPEN_TIME, 100.0, 3)));
+        ResidentCandleCache.FlushBatch first = cache.collectWrites(1_000, false);
+        first.newCandles().get(0).setId(7L);
+        cache.onWritten(first);
+
+        cache.apply(List.of(createCandle("1d", OPEN_TIME, 110.0, 2)));
+        assertTrue(cache.collectWrites(2_000, false).isEmpty());
+
+        ResidentCandleCache.FlushBatch second = cache.collectWrites(61_000, false);
+        assertEquals(1, second.persistedCandles().size());
+        CandleEntity write = second.persistedCandles().get(0);
+        assertEquals(7L, write.getId());
+        assertEquals(110.0, write.getHighPrice());
+        assertEquals(2, write.getVolume());
+    }
+
+    @Test
+    void collectWrites_shouldWriteFinalizedCandlesOnceAndEvictThem() {
+        cache.apply(List.of(createCandle("1m", OPEN_TIME, 100.0, 1)));
+        cache.onWritten(cache.collectWrites(1_000, false));
+
+        cache.apply(List.of(createCandle("1m", OPEN_TIME, 101.0, 1), createCandle("1m", OPEN_TIME + 60, 102.0, 1)));
+        cache.onFinalized(SYMBOL, "1m", OPEN_TIME + 60);
+        ResidentCandleCache.FlushBatch batch = cache.collectWrites(2_000, false);
+        assertEquals(2, batch.size());
+        cache.onWritten(batch);
+
+        assertEquals(1, cache.size());
+        assertTrue(cache.collectWrites(3_000, false).isEmpty());
+    }
+
+    @Test
+    void collectWrites_shouldKeepCandlesDirtyAfterFailedWrite() {
+        cache.apply(List.of(createCandle("1m", OPEN_TIME, 100.0, 1)));
+        ResidentCandleCache.FlushBatch batch = cache.collectWrites(1_000, false);
+
+        assertTrue(cache.collectWrites(1_000, true).isEmpty());
+        cache.onWriteFailed(batch);
+
+        assertEquals(1, cache.collectWrites(1_500, true).size());
+    }
+
+    @Test
+    void collectWrites_shouldNotCommitFinalizationBeforeDrainedCandlesAreApplied() {
+        cache.apply(List.of(createCandle("1m", OPEN_TIME, 100.0, 1), createCandle("1m", OPEN_TIME + 60, 101.0, 1)));
+        cache.onWritten(cache.collectWrites(1_000, false));
+        assertTrue(committed.isEmpty());
+
+        // Reported by a drain whose candles are not applied yet
+        cache.onFinalized(SYMBOL, "1m", OPEN_TIME + 120);
+        assertTrue(cache.collectWrites(2_000, false).isEmpty());
+        assertTrue(committed.isEmpty());
+
+        cache.apply(List.of());
+        assertTrue(cache.collectWrites(3_000, false).isEmpty());
+        assertEquals(List.of(OPEN_TIME + 120), committed);
+    }
+
+    @Test
+    void onWriteFailed_shouldNotAdvanceCommittedHorizon() {
+        cache.apply(List.of(createCandle("1m", OPEN_TIME, 100.0, 1), createCandle("1m", OPEN_TIME + 60, 101.0, 1)));
+        cache.onWritten(cache.collectWrites(1_000, false));
+        cache.apply(List.of(createCandle("1m", OPEN_TIME + 60, 102.0, 1)));
+        cache.onFinalized(SYMBOL, "1m", OPEN_TIME + 120);
+        cache.apply(List.of());
+
+        // The unchanged first candle is committed already, the changed second one is not
+        ResidentCandleCache.FlushBatch batch = cache.collectWrites(2_000, false);
+        assertEquals(List.of(OPEN_TIME + 60), committed);
+        cache.onWriteFailed(batch);
+        assertEquals(List.of(OPEN_TIME + 60), committed);
+
+        cache.onWritten(cache.collectWrites(3_000, false));
+        assertEquals(List.of(OPEN_TIME + 60, OPEN_TIME + 120), committed);
+    }
+
+    @Test
+    void collectWrites_shouldStampBatchWithOldestUnwrittenEventOfItsCandles() {
+        cache.apply(List.of(createCandle("1d", OPEN_TIME, 100.0, 1)), 100);
+        ResidentCandleCache.FlushBatch first = cache.collectWrites(1_000, false);
+        assertEquals(100, first.ingestedSince());
+        cache.onWritten(first);
+
+        // The open daily candle is throttled and keeps its stamp for its own write
+        cache.apply(List.of(createCandle("1d", OPEN_TIME, 101.0, 1)), 200);
+        cache.apply(List.of(createCandle("1m", OPEN_TIME, 102.0, 1)), 300);
+        ResidentCandleCache.FlushBatch second = cache.collectWrites(2_000, false);
+        assertEquals(1, second.size());
+        assertEquals(300, second.ingestedSince());
+        cache.onWritten(second);
+
+        assertEquals(200, cache.collectWrites(61_000, false).ingestedSince());
+    }
+
+    @Test
+    void onWriteFailed_shouldKeepStampForNextBatch() {
+        cache.apply(List.of(createCandle("1m", OPEN_TIME, 100.0, 1)), 100);
+        ResidentCandleCache.FlushBatch failed = cache.collectWrites(1_000, false);
+        cache.apply(List.of(createCandle("1m", OPEN_TIME, 101.0, 1)), 200);
+        cache.onWriteFailed(failed);
+
+        assertEquals(100, cache.collectWrites(2_000, false).ingestedSince());
+    }
+
+    @Test
+    void apply_shouldTakeOpenAndCloseByEventTimeOfMergedParts() {
+        cache.apply(List.of(timed(createCandle("1d", OPEN_TIME, 100.0, 1), OPEN_TIME + 10, OPEN_TIME + 50)));
+        cache.apply(List.of(timed(createCandle("1d", OPEN_TIME, 90.0, 1), OPEN_TIME + 5, OPEN_TIME + 20)));
+
+        CandleEntity write = cache.collectWrites(1_000, false).newCandles().get(0);
+
+        assertEquals(90.0, write.getOpenPrice());
+        assertEquals(100.0, write.getClosePrice());
+        assertEquals(OPEN_TIME + 5, write.getFirstEventTime());
+        assertEquals(OPEN_TIME + 50, write.getLastEventTime());
+    }
+
+    private static CandleEntity timed(CandleEntity candle, long firstEventTime, long lastEventTime) {
+        candle.setFirstEventTime(firstEventTime);
+        candle.setLastEventTime(lastEventTime);
+        return candle;
+    }
+
+    private static CandleEntity createCandle(String interval, long openTime, double price, long volume) {
+        CandleEntity candle = new CandleEntity();
+        candle.setSymbol(SYMBOL);
+        candle.setCandleInterval(interval);
+        candle.setOpenTime(openTime);
+        candle.setOpenPrice(price);
+        candle.setHighPrice(price);
+        candle.setLowPrice(price);
+        candle.setClosePrice(price);
+        candle.setVolume(volume);
+        return candle;
+    }
+}
@@ -0,0 +1,56 @@
+package com.trading.candle.aggregator.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipfSymbolSamplerTest {
+
+    @Test
+    void sameSeedDrawsSameSymbols() {
+        ZipfSymbolSampler sampler = new ZipfSymbolSampler(100, 1.1);
+        SplittableRandom first = new SplittableRandom(42);
+        SplittableRandom second = new SplittableRandom(42);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(sampler.next(first), sampler.next(second));
+        }
+    }
+
+    @Test
+    void lowRanksAreDrawnMostOften() {
+        ZipfSymbolSampler sampler = new ZipfSymbolSampler(1000, 1.1);
+        SplittableRandom random = new SplittableRandom(7);
+        Map<String, Integer> counts = new HashMap<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            counts.merge(sampler.next(random), 1, Integer::sum);
+        }
+
+        int top = counts.getOrDefault(sampler.symbol(1), 0);
+        int second = counts.getOrDefault(sampler.symbol(2), 0);
+        int tail = counts.getOrDefault(sampler.symbol(1000), 0);
+        assertTrue(top > second, "rank 1 should beat rank 2");
+        assertTrue(second > tail * 10, "rank 2 should dwarf the tail");
+        // Rank 1 has about 1 / H(1000, 1.1) of the mass, roughly 18%
+        assertEquals(0.18, top / 100_000.0, 0.03);
+    }
+
+    @Test
+    void namesSymbolsByRank() {
+        ZipfSymbolSampler sampler = new ZipfSymbolSampler(3, 1.0);
+
+        assertEquals(3, sampler.size());
+        assertEquals("SYM00001", sampler.symbol(1));
+        assertEquals("SYM00003", sampler.symbol(3));
+    }
+
+    @Test
+    void rejectsEmptyUniverse() {
+        assertThrows(IllegalArgumentException.class, () -> new ZipfSymbolSampler(0, 1.1));
+    }
+}
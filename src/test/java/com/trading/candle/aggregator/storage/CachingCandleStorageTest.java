@@ -0,0 +1,141 @@
+package com.trading.candle.aggregator.storage;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingCandleStorageTest {
+
+    private static final String SYMBOL = "BTC-USD";
+    private static final String INTERVAL = "1m";
+    private static final long START = 1640995200L;
+    // Long after every candle of the tests closed
+    private static final long NOW_MILLIS = (START + 86400) * 1000;
+
+    @Mock
+    private CandleStorage delegate;
+
+    private final AtomicLong clock = new AtomicLong(NOW_MILLIS);
+    private CachingCandleStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new CachingCandleStorage(delegate, 10, 5000, 5, clock::get);
+    }
+
+    @Test
+    void read_shouldServeRepeatedRangeFromCache() {
+        when(delegate.read(SYMBOL, INTERVAL, START, START + 120)).thenReturn(series(3));
+
+        CandleSeries first = storage.read(SYMBOL, INTERVAL, START, START + 120);
+        CandleSeries second = storage.read(SYMBOL, INTERVAL, START, START + 120);
+
+        assertSame(first, second);
+        verify(delegate, times(1)).read(SYMBOL, INTERVAL, START, START + 120);
+        assertEquals(1, storage.stats().hits());
+        assertEquals(1, storage.stats().misses());
+    }
+
+    @Test
+    void write_shouldInvalidateOnlyRangesContainingWrittenCandle() {
+        when(delegate.read(eq(SYMBOL), eq(INTERVAL), anyLong(), anyLong())).thenReturn(series(1));
+        storage.read(SYMBOL, INTERVAL, START, START + 60);
+        storage.read(SYMBOL, INTERVAL, START + 120, START + 180);
+
+        storage.write(List.of(candle(START + 60)), List.of());
+        storage.read(SYMBOL, INTERVAL, START, START + 60);
+        storage.read(SYMBOL, INTERVAL, START + 120, START + 180);
+
+        verify(delegate, times(2)).read(SYMBOL, INTERVAL, START, START + 60);
+        verify(delegate, times(1)).read(SYMBOL, INTERVAL, START + 120, START + 180);
+        assertEquals(1, storage.stats().invalidations());
+    }
+
+    @Test
+    void write_shouldInvalidateAfterTransactionCompletes() {
+        when(delegate.read(SYMBOL, INTERVAL, START, START + 60)).thenReturn(series(1));
+        storage.read(SYMBOL, INTERVAL, START, START + 60);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            storage.write(List.of(candle(START)), List.of());
+            assertEquals(0, storage.stats().invalidations());
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(1, storage.stats().invalidations());
+        assertEquals(0, storage.stats().ranges());
+    }
+
+    @Test
+    void read_shouldNotCacheRangeWrittenWhileReading() {
+        when(delegate.read(SYMBOL, INTERVAL, START, START + 60)).thenAnswer(call -> {
+            storage.write(List.of(candle(START)), List.of());
+            return series(1);
+        });
+
+        storage.read(SYMBOL, INTERVAL, START, START + 60);
+
+        assertEquals(0, storage.stats().ranges());
+    }
+
+    @Test
+    void read_shouldExpireRangesOfOpenCandlesAfterTtl() {
+        long openTo = NOW_MILLIS / 1000;
+        when(delegate.read(SYMBOL, INTERVAL, START, openTo)).thenReturn(series(1));
+        when(delegate.read(SYMBOL, INTERVAL, START, START + 60)).thenReturn(series(1));
+        storage.read(SYMBOL, INTERVAL, START, openTo);
+        storage.read(SYMBOL, INTERVAL, START, START + 60);
+
+        clock.addAndGet(5001);
+        storage.read(SYMBOL, INTERVAL, START, openTo);
+        storage.read(SYMBOL, INTERVAL, START, START + 60);
+
+        verify(delegate, times(2)).read(SYMBOL, INTERVAL, START, openTo);
+        verify(delegate, times(1)).read(SYMBOL, INTERVAL, START, START + 60);
+        assertEquals(1, storage.stats().expirations());
+    }
+
+    @Test
+    void read_shouldEvictLeastRecentlyUsedRangesBeyondMaxCandles() {
+        when(delegate.read(eq(SYMBOL), eq(INTERVAL), anyLong(), anyLong())).thenReturn(series(4));
+        storage.read(SYMBOL, INTERVAL, START, START + 1);
+        storage.read(SYMBOL, INTERVAL, START, START + 2);
+        storage.read(SYMBOL, INTERVAL, START, START + 1);
+
+        storage.read(SYMBOL, INTERVAL, START, START + 3);
+
+        assertEquals(1, storage.stats().evictions());
+        assertEquals(8, storage.stats().candles());
+        storage.read(SYMBOL, INTERVAL, START, START + 1);
+        verify(delegate, times(1)).read(SYMBOL, INTERVAL, START, START + 1);
+    }
+
+    private static CandleSeries series(int size) {
+        return new CandleSeries(new long[size], new double[size], new double[size], new double[size],
+                new double[size], new long[size]);
+    }
+
+    private static CandleEntity candle(long openTime) {
+        CandleEntity candle = new CandleEntity();
+        candle.setSymbol(SYMBOL);
+        candle.setCandleInterval(INTERVAL);
+        candle.setOpenTime(openTime);
+        return candle;
+    }
+}
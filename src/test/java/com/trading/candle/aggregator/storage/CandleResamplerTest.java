@@ -0,0 +1,70 @@
+package com.trading.candle.aggregator.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleResamplerTest {
+
+    private static final long START = 1640995200L;
+
+    @Test
+    void resample_shouldMergeCandlesOfEachBucket() {
+        CandleSeries minutes = new CandleSeries(
+                new long[]{START, START + 60, START + 120, START + 180, START + 300},
+                new double[]{100.0, 102.0, 107.0, 109.0, 111.0},
+                new double[]{105.0, 108.0, 110.0, 112.0, 115.0},
+                new double[]{95.0, 98.0, 103.0, 104.0, 110.0},
+                new double[]{102.0, 107.0, 109.0, 111.0, 114.0},
+                new long[]{1000, 1200, 800, 10, 20});
+
+        CandleSeries merged = CandleResampler.resample(minutes, 180);
+
+        assertArrayEquals(new long[]{START, START + 180}, merged.openTimes());
+        assertArrayEquals(new double[]{100.0, 109.0}, merged.open());
+        assertArrayEquals(new double[]{110.0, 115.0}, merged.high());
+        assertArrayEquals(new double[]{95.0, 104.0}, merged.low());
+        assertArrayEquals(new double[]{109.0, 114.0}, merged.close());
+        assertArrayEquals(new long[]{3000, 30}, merged.volume());
+    }
+
+    @Test
+    void resample_shouldMatchSequentialMerge_whenMergedInParallel() {
+        int size = CandleResampler.PARALLEL_THRESHOLD * 3 + 7;
+        CandleSeries seconds = new CandleSeries(new long[size], new double[size], new double[size],
+                new double[size], new double[size], new long[size]);
+        for (int i = 0; i < size; i++) {
+            seconds.openTimes()[i] = START + i;
+            seconds.open()[i] = i;
+            seconds.high()[i] = i + 1;
+            seconds.low()[i] = i - 1;
+            seconds.close()[i] = i + 0.5;
+            seconds.volume()[i] = 1;
+        }
+        List<long[]> sequential = new ArrayList<>();
+        CandleResampler resampler = new CandleResampler(300, (t, o, h, l, c, v) -> sequential.add(new long[]{t, v}));
+        seconds.forEach(resampler);
+        resampler.flush();
+
+        CandleSeries merged = CandleResampler.resample(seconds, 300);
+
+        assertEquals(sequential.size(), merged.size());
+        for (int i = 0; i < merged.size(); i++) {
+            assertEquals(sequential.get(i)[0], merged.openTimes()[i]);
+            assertEquals(sequential.get(i)[1], merged.volume()[i]);
+        }
+        assertEquals(size, Arrays.stream(merged.volume()).sum());
+    }
+
+    @Test
+    void flush_shouldHandOnNothing_whenNoCandles() {
+        List<Long> received = new ArrayList<>();
+        new CandleResampler(60, (t, o, h, l, c, v) -> received.add(t)).flush();
+
+        assertTrue(received.isEmpty());
+    }
+}
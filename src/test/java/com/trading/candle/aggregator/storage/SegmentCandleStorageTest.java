@@ -0,0 +1,278 @@
+package com.trading.candle.aggregator.storage;
+
+import com.trading.candle.aggregator.entity.CandleEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentCandleStorageTest {
+
+    private static final String SYMBOL = "BTC-USD";
+    private static final String INTERVAL = "1m";
+    private static final long START = 1640995200L;
+
+    @TempDir
+    Path directory;
+
+    private SegmentCandleStorage storage;
+
+    @AfterEach
+    void tearDown() {
+        if (storage != null) {
+            storage.close();
+        }
+    }
+
+    @Test
+    void read_shouldReturnEmptySeries_whenNothingWritten() {
+        storage = new SegmentCandleStorage(directory, 4);
+
+        assertEquals(0, storage.read(SYMBOL, INTERVAL, START, START + 600).size());
+    }
+
+    @Test
+    void write_shouldAggregateRepeatedWritesOfOpenCandle() {
+        storage = new SegmentCandleStorage(directory, 4);
+
+        storage.write(List.of(candle(START, 100.0, 105.0, 95.0, 102.0, 10)), List.of());
+        storage.write(List.of(candle(START, 102.0, 108.0, 97.0, 107.0, 5)), List.of());
+
+        CandleSeries series = storage.read(SYMBOL, INTERVAL, START, START);
+        assertEquals(1, series.size());
+        assertEquals(100.0, series.open()[0]);
+        assertEquals(108.0, series.high()[0]);
+        assertEquals(95.0, series.low()[0]);
+        assertEquals(107.0, series.close()[0]);
+        assertEquals(15, series.volume()[0]);
+    }
+
+    @Test
+    void read_shouldCombineSealedSegmentsAndTail() throws IOException {
+        storage = new SegmentCandleStorage(directory, 4);
+
+        for (int i = 0; i < 15; i++) {
+            storage.write(List.of(minute(i)), List.of());
+        }
+
+        assertTrue(countFiles(".col") >= 2, "Expected sealed column segments");
+        CandleSeries series = storage.read(SYMBOL, INTERVAL, START + 3 * 60, START + 12 * 60);
+        assertEquals(10, series.size());
+        for (int i = 0; i < series.size(); i++) {
+            assertEquals(START + (i + 3) * 60, series.openTimes()[i]);
+            assertEquals(i + 3, series.volume()[i]);
+        }
+    }
+
+    @Test
+    void write_shouldCorrectCandleInSealedSegment() {
+        storage = new SegmentCandleStorage(directory, 4);
+        for (int i = 0; i < 8; i++) {
+            storage.write(List.of(minute(i)), List.of());
+        }
+
+        storage.write(List.of(), List.of(candle(START + 60, 101.0, 150.0, 50.0, 120.0, 100)));
+        for (int i = 8; i < 16; i++) {
+            storage.write(List.of(minute(i)), List.of());
+        }
+
+        CandleSeries series = storage.read(SYMBOL, INTERVAL, START + 60, START + 60);
+        assertEquals(1, series.size());
+        assertEquals(150.0, series.high()[0]);
+        assertEquals(50.0, series.low()[0]);
+        assertEquals(120.0, series.close()[0]);
+        assertEquals(101, series.volume()[0]);
+    }
+
+    @Test
+    void write_shouldKeepLaterCloseWhenLatePartOfOpenCandleArrives() {
+        storage = new SegmentCandleStorage(directory, 4);
+
+        storage.write(List.of(timed(candle(START, 100.0, 105.0, 95.0, 107.0, 10), START + 10, START + 50)), List.of());
+        storage.write(List.of(timed(candle(START, 99.0, 101.0, 90.0, 98.0, 2), START + 5, START + 20)), List.of());
+
+        CandleSeries series = storage.read(SYMBOL, INTERVAL, START, START);
+        assertEquals(99.0, series.open()[0]);
+        assertEquals(90.0, series.low()[0]);
+        assertEquals(107.0, series.close()[0]);
+        assertEquals(12, series.volume()[0]);
+    }
+
+    @Test
+    void write_shouldCompareEventTimesWhenCorrectingSealedCandle() {
+        storage = new SegmentCandleStorage(directory, 4);
+        for (int i = 0; i < 8; i++) {
+            long openTime = START + i * 60L;
+            storage.write(List.of(timed(minute(i), openTime + 10, openTime + 50)), List.of());
+        }
+
+        storage.write(List.of(), List.of(timed(candle(START + 60, 90.0, 150.0, 50.0, 120.0, 100), START + 65, START + 70)));
+        CandleSeries read = storage.read(SYMBOL, INTERVAL, START + 60, START + 60);
+        List<Double> streamed = new ArrayList<>();
+        storage.stream(SYMBOL, INTERVAL, START + 60, START + 60, (t, o, h, l, c, v) -> {
+            streamed.add(o);
+            streamed.add(c);
+        });
+
+        assertEquals(90.0, read.open()[0]);
+        assertEquals(101.0, read.close()[0]);
+        assertEquals(List.of(90.0, 101.0), streamed);
+
+        for (int i = 8; i < 16; i++) {
+            storage.write(List.of(minute(i)), List.of());
+        }
+        storage.close();
+        storage = new SegmentCandleStorage(directory, 4);
+        storage.write(List.of(), List.of(timed(candle(START + 60, 95.0, 95.0, 95.0, 95.0, 1), START + 80, START + 90)));
+
+        CandleSeries rewritten = storage.read(SYMBOL, INTERVAL, START + 60, START + 60);
+        assertEquals(90.0, rewritten.open()[0]);
+        assertEquals(101.0, rewritten.close()[0]);
+        assertEquals(102, rewritten.volume()[0]);
+    }
+
+    @Test
+    void open_shouldRecoverSegmentsAndTailLogAfterReopen() {
+        storage = new SegmentCandleStorage(directory, 4);
+        List<CandleEntity> candles = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            candles.add(minute(i));
+        }
+        storage.write(candles, List.of());
+        storage.write(List.of(minute(12)), List.of());
+        storage.close();
+
+        storage = new SegmentCandleStorage(directory, 4);
+        CandleSeries series = storage.read(SYMBOL, INTERVAL, START, START + 12 * 60);
+
+        assertEquals(12, series.size());
+        assertEquals(START + 12 * 60, series.openTimes()[11]);
+        assertEquals(12, series.volume()[11]);
+    }
+
+    @Test
+    void stream_shouldMatchReadAcrossSegmentsCorrectionsAndTail() {
+        storage = new SegmentCandleStorage(directory, 4);
+        for (int i = 0; i < 15; i++) {
+            storage.write(List.of(minute(i)), List.of());
+        }
+        storage.write(List.of(), List.of(candle(START + 120, 101.0, 150.0, 50.0, 120.0, 100)));
+
+        CandleSeries read = storage.read(SYMBOL, INTERVAL, START + 60, START + 13 * 60);
+        List<Long> streamedTimes = new ArrayList<>();
+        List<Long> streamedVolumes = new ArrayList<>();
+        storage.stream(SYMBOL, INTERVAL, START + 60, START + 13 * 60, (t, o, h, l, c, v) -> {
+            streamedTimes.add(t);
+            streamedVolumes.add(v);
+        });
+
+        assertEquals(Arrays.stream(read.openTimes()).boxed().toList(), streamedTimes);
+        assertEquals(Arrays.stream(read.volume()).boxed().toList(), streamedVolumes);
+        assertEquals(102L, streamedVolumes.get(1));
+    }
+
+    @Test
+    void readFirstAndLast_shouldMatchReadAcrossSegmentsAndTail() {
+        storage = new SegmentCandleStorage(directory, 4);
+        for (int i = 0; i < 15; i++) {
+            storage.write(List.of(minute(i)), List.of());
+        }
+
+        for (int limit = 1; limit <= 16; limit++) {
+            CandleSeries read = storage.read(SYMBOL, INTERVAL, START + 60, START + 13 * 60);
+            assertArrayEquals(read.first(limit).openTimes(),
+                    storage.readFirst(SYMBOL, INTERVAL, START + 60, START + 13 * 60, limit).openTimes());
+            assertArrayEquals(read.last(limit).openTimes(),
+                    storage.readLast(SYMBOL, INTERVAL, START + 60, START + 13 * 60, limit).openTimes());
+        }
+        assertArrayEquals(new long[]{12, 13}, storage.readLast(SYMBOL, INTERVAL, START, START + 13 * 60, 2).volume());
+    }
+
+    @Test
+    void write_shouldCountEveryConcurrentWriteOfSharedSeries() throws Exception {
+        storage = new SegmentCandleStorage(directory, 4);
+        CandleEntity fiveMinutes = candle(START, 100.0, 100.0, 100.0, 100.0, 1);
+        fiveMinutes.setCandleInterval("5m");
+        CandleEntity minute = candle(START, 100.0, 100.0, 100.0, 100.0, 1);
+
+        // Opposite order in each writer, so unordered locking would deadlock
+        List<Callable<Void>> writers = List.of(List.of(minute, fiveMinutes), List.of(fiveMinutes, minute)).stream()
+                .<Callable<Void>>map(candles -> () -> {
+                    for (int i = 0; i < 200; i++) {
+                        storage.write(candles, List.of());
+                    }
+                    return null;
+                })
+                .toList();
+        try (ExecutorService executor = Executors.newFixedThreadPool(writers.size())) {
+            for (Future<Void> written : executor.invokeAll(writers, 30, TimeUnit.SECONDS)) {
+                written.get();
+            }
+        }
+
+        assertEquals(400, storage.read(SYMBOL, INTERVAL, START, START).volume()[0]);
+        assertEquals(400, storage.read(SYMBOL, "5m", START, START).volume()[0]);
+    }
+
+    @Test
+    void dataset_shouldSurviveReopeningTheDirectory(@TempDir Path otherDirectory) {
+        storage = new SegmentCandleStorage(directory, 4);
+        StorageDataset dataset = storage.dataset();
+        storage.close();
+
+        storage = new SegmentCandleStorage(directory, 4);
+        assertEquals(dataset, storage.dataset());
+        SegmentCandleStorage other = new SegmentCandleStorage(otherDirectory, 4);
+        assertNotEquals(dataset.id(), other.dataset().id());
+        other.close();
+    }
+
+    @Test
+    void constructor_shouldRejectNonPositiveSegmentSize() {
+        assertThrows(IllegalArgumentException.class, () -> new SegmentCandleStorage(directory, 0));
+    }
+
+    private long countFiles(String suffix) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).count();
+        }
+    }
+
+    private CandleEntity minute(int index) {
+        double price = 100.0 + index;
+        return candle(START + index * 60L, price, price + 1, price - 1, price, index);
+    }
+
+    private CandleEntity timed(CandleEntity candle, long firstEventTime, long lastEventTime) {
+        candle.setFirstEventTime(firstEventTime);
+        candle.setLastEventTime(lastEventTime);
+        return candle;
+    }
+
+    private CandleEntity candle(long openTime, double open, double high, double low, double close, long volume) {
+        CandleEntity candle = new CandleEntity();
+        candle.setSymbol(SYMBOL);
+        candle.setCandleInterval(INTERVAL);
+        candle.setOpenTime(openTime);
+        candle.setOpenPrice(open);
+        candle.setHighPrice(high);
+        candle.setLowPrice(low);
+        candle.setClosePrice(close);
+        candle.setVolume(volume);
+        return candle;
+    }
+}
@@ -0,0 +1,50 @@
+package com.trading.candle.aggregator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleIntervalUtilTest {
+
+    private static final List<String> STORED = List.of("1s", "1m", "5m", "15m", "1h", "4h", "1d");
+
+    @Test
+    void toSeconds_shouldParseAnyCountOfUnit() {
+        assertEquals(180, CandleIntervalUtil.toSeconds("3m"));
+        assertEquals(7200, CandleIntervalUtil.toSeconds("2h"));
+        assertEquals(604800, CandleIntervalUtil.toSeconds("1w"));
+        assertThrows(IllegalArgumentException.class, () -> CandleIntervalUtil.toSeconds("0m"));
+        assertThrows(IllegalArgumentException.class, () -> CandleIntervalUtil.toSeconds("1y"));
+        assertThrows(IllegalArgumentException.class, () -> CandleIntervalUtil.toSeconds("m"));
+    }
+
+    @Test
+    void alignTime_shouldStartWeeksOnThursday() {
+        // Monday 2022-01-03 12:00 UTC falls in the week starting Thursday 2021-12-30
+        long aligned = CandleIntervalUtil.alignTime(1641211200L, "1w");
+
+        assertEquals(1640822400L, aligned);
+        assertEquals(DayOfWeek.THURSDAY,
+                Instant.ofEpochSecond(aligned).atZone(ZoneOffset.UTC).getDayOfWeek());
+    }
+
+    @Test
+    void baseInterval_shouldPickCoarsestDividingInterval() {
+        assertEquals("1m", CandleIntervalUtil.baseInterval("3m", STORED));
+        assertEquals("15m", CandleIntervalUtil.baseInterval("30m", STORED));
+        assertEquals("1h", CandleIntervalUtil.baseInterval("2h", STORED));
+        assertEquals("1d", CandleIntervalUtil.baseInterval("1w", STORED));
+        assertEquals("4h", CandleIntervalUtil.baseInterval("4h", STORED));
+        assertEquals("1s", CandleIntervalUtil.baseInterval("7s", STORED));
+    }
+
+    @Test
+    void baseInterval_shouldReturnNull_whenNoIntervalDivides() {
+        assertNull(CandleIntervalUtil.baseInterval("90s", List.of("1m", "1h")));
+    }
+}